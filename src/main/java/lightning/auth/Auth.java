@@ -1,11 +1,16 @@
 package lightning.auth;
 
-import java.security.SecureRandom;
-import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lightning.crypt.Digests;
 import lightning.crypt.SecureCookieManager.InsecureCookieException;
+import lightning.crypt.Tokens;
 import lightning.sessions.Session;
 import lightning.sessions.Session.SessionException;
 import lightning.users.User;
@@ -13,9 +18,7 @@ import lightning.users.Users;
 import lightning.users.Users.UsersException;
 import lightning.util.Time;
 
-import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
-import com.google.common.hash.Hashing;
 
 /**
  * Provides an implementation of authentication for the Spark web framework.
@@ -27,6 +30,8 @@ import com.google.common.hash.Hashing;
  * - Call various methods on Auth (e.g. Auth.isLoggedIn(), Auth.getUser());
  */
 public final class Auth {
+  private static final Logger logger = LoggerFactory.getLogger(Auth.class);
+
   // a[i] gives throttling time in seconds after i failed attempts; if > i failed attempts, then uses last value in list.
   private static final List<Integer> THROTTLING_SECONDS = ImmutableList.of(0, 0, 0, 2, 4, 8, 16, 30, 60, 120, 300);
 
@@ -85,48 +90,55 @@ public final class Auth {
    * @return Hashed authentication token.
    */
   private static String hashToken(String plaintextToken) {
-    return Hashing.sha256().hashString(plaintextToken, Charsets.UTF_8).toString();
+    return Digests.sha256Hex(plaintextToken);
   }
 
   /**
-   * Generates a random authentication token.
+   * Generates a random authentication token. Tokens are long enough that collisions need not be
+   * checked for.
    * @return Raw (un-encrypted) authentication token.
    */
   public static String generateToken() {
-    while (true) {
-      SecureRandom generator = new SecureRandom();
-      byte bytes[] = new byte[AUTH_TOKEN_BYTES];
-      generator.nextBytes(bytes);
-      String token = Base64.getEncoder().encodeToString(bytes);
-
-      if (tokenIsInUse(token)) {
-        continue; // Pick again.
-      }
-
-      return token;
-    }
+    return Tokens.base64Url(AUTH_TOKEN_BYTES);
   }
 
   /**
-   * Returns whether or not an authentication token is in use.
-   * @param token Raw authentication token.
-   * @return Whether or not the token is safe to use.
+   * Returns a new instance of Auth for the given session.
+   * @param session
+   * @return
    */
-  private static boolean tokenIsInUse(String token) {
-    return false; // TODO(mschurr): Should check DB for duplicates.
+  public static Auth forSession(Session session, AuthDriver driver, Users users) {
+    return forSession(session, driver, users, null);
   }
 
   /**
-   * Returns a new instance of Auth for the given session.
+   * Returns a new instance of Auth for the given session that throttles login attempts using
+   * the given (shared) throttle rather than by querying the driver.
    * @param session
+   * @param throttle Counts failed login attempts; null to query the driver instead.
    * @return
    */
-  public static Auth forSession(Session session, AuthDriver driver, Users users) {
+  public static Auth forSession(Session session, AuthDriver driver, Users users, @Nullable LoginThrottle throttle) {
     if (driver == null) {
       throw new RuntimeException("Must provide a driver when calling Auth.forSession().");
     }
 
-    return new Auth(session, driver, users);
+    return new Auth(session, driver, users, throttle);
+  }
+
+  /**
+   * @return The number of failed login attempts that should be tracked per IP address or user
+   *         (throttling does not distinguish between larger counts).
+   */
+  public static int getMaxThrottledAttempts() {
+    return THROTTLING_SECONDS.size();
+  }
+
+  /**
+   * @return The period (in seconds) over which failed login attempts are counted for throttling.
+   */
+  public static long getThrottlingPeriod() {
+    return THROTTLING_PERIOD;
   }
 
   /**
@@ -174,19 +186,24 @@ public final class Auth {
   // How long one-time sessions should last before timing out.
   private static final long SESSION_TIMEOUT = 60 * 60; // in seconds (1 hr)
 
+  // How often the last activity time of a session login should be refreshed.
+  private static final long LAST_ACTIVE_GRANULARITY = 60; // in seconds (1 min)
+
   // How far in the past we should look when deciding to throttle.
   private static final long THROTTLING_PERIOD = 60 * 15; // in seconds (15 min)
 
   private final AuthDriver driver;
   private final Session session;
   private final Users users;
+  private final @Nullable LoginThrottle throttle;
   private User user;
   private boolean hasTriedAuth;
 
-  private Auth(Session session, AuthDriver driver, Users users) {
+  private Auth(Session session, AuthDriver driver, Users users, @Nullable LoginThrottle throttle) {
     this.session = session;
     this.driver = driver;
     this.users = users;
+    this.throttle = throttle;
     user = null;
     hasTriedAuth = false;
   }
@@ -305,7 +322,7 @@ public final class Auth {
     if (!user.checkPassword(plaintextPassword)) {
       try {
         // Log the attempt (for purposes of brute-force protection).
-        driver.saveAuthAttempt(AuthAttempt.createFailed(user.getId(), getIP(), Time.now()));
+        saveFailedAuthAttempt(AuthAttempt.createFailed(user.getId(), getIP(), Time.now()));
       } catch (Exception e) {
         throw new AuthException(AuthException.Type.DRIVER_ERROR, "Failed to save auth attempt.");
       }
@@ -327,7 +344,9 @@ public final class Auth {
     // most recent failed login attempt.
     AuthCountAndTimestamp info;
     try {
-      info = driver.getFailedLoginCountSince(getIP(), Time.now() - THROTTLING_PERIOD);
+      info = (throttle != null)
+          ? throttle.getFailuresByIP(getIP(), Time.now() - THROTTLING_PERIOD)
+          : driver.getFailedLoginCountSince(getIP(), Time.now() - THROTTLING_PERIOD);
     } catch (Exception e) {
       throw new AuthException(AuthException.Type.DRIVER_ERROR, e);
     }
@@ -352,7 +371,9 @@ public final class Auth {
     // most recent failed login attempt.
     AuthCountAndTimestamp info;
     try {
-      info = driver.getFailedLoginCountSince(userId, Time.now() - THROTTLING_PERIOD);
+      info = (throttle != null)
+          ? throttle.getFailuresByUser(userId, Time.now() - THROTTLING_PERIOD)
+          : driver.getFailedLoginCountSince(userId, Time.now() - THROTTLING_PERIOD);
     } catch (Exception e) {
       throw new AuthException(AuthException.Type.DRIVER_ERROR, e);
     }
@@ -367,6 +388,19 @@ public final class Auth {
     }
   }
 
+  /**
+   * Logs a failed authentication attempt (for purposes of brute-force protection).
+   * @param attempt A failed attempt.
+   * @throws Exception On driver failure.
+   */
+  private void saveFailedAuthAttempt(AuthAttempt attempt) throws Exception {
+    if (throttle != null) {
+      throttle.recordFailure(attempt.ip, attempt.userId, attempt.timestamp);
+    }
+
+    driver.saveAuthAttempt(attempt);
+  }
+
   /**
    * Terminates all active sessions and persistent tokens for the current user account (excluding this one).
    * Has no effect unless isLoggedIn() = true.
@@ -380,8 +414,19 @@ public final class Auth {
       return;
     }
 
-    // TODO(mschurr) Implement.
-    throw new AuthException(AuthException.Type.DRIVER_ERROR, "terminateOtherSessions not implemented.");
+    try {
+      // Terminate everything except the current session's token (this also revokes this client's
+      // persistent token, so issue a new one if the client had one).
+      driver.terminateAllSessionsForUserExcepting(user.getId(), session.get(AUTH_TOKEN_KEY).stringValue());
+
+      if (session.getCookieManager().has(TOKEN_COOKIE_NAME)) {
+        String persistentTokenId = Auth.generateToken();
+        driver.insertPersistentAuthToken(new AuthToken(hashToken(persistentTokenId), user.getId(), Time.now() + PERSISTENT_TIMEOUT));
+        session.getCookieManager().set(TOKEN_COOKIE_NAME, persistentTokenId);
+      }
+    } catch (Exception e) {
+      throw new AuthException(AuthException.Type.DRIVER_ERROR, e);
+    }
   }
 
   /**
@@ -472,8 +517,11 @@ public final class Auth {
         return;
       }
 
-      // Otherwise, we are logged in.
-      session.set(LAST_ACTIVE_KEY, Time.now());
+      // Otherwise, we are logged in. Only refresh the activity time occasionally (since doing so
+      // forces the session to be written).
+      if (Time.now() - session.get(LAST_ACTIVE_KEY).longValue() >= LAST_ACTIVE_GRANULARITY) {
+        session.set(LAST_ACTIVE_KEY, Time.now());
+      }
 
       try {
         // Note: if the user does not exist, we won't be logged in (user will be null). This is intended.
@@ -510,7 +558,7 @@ public final class Auth {
     if (token == null) {
       try {
         // Log the failed attempt (important for preventing brute-force).
-        driver.saveAuthAttempt(AuthAttempt.createFailed(getIP(), Time.now()));
+        saveFailedAuthAttempt(AuthAttempt.createFailed(getIP(), Time.now()));
       } catch (Exception e) {
         throw new AuthException(AuthException.Type.DRIVER_ERROR, e);
       }
@@ -531,7 +579,7 @@ public final class Auth {
     if (user == null) {
       try {
         // Log the failed attempt (important for preventing brute-force).
-        driver.saveAuthAttempt(AuthAttempt.createFailed(getIP(), Time.now()));
+        saveFailedAuthAttempt(AuthAttempt.createFailed(getIP(), Time.now()));
       } catch (Exception e) {
         throw new AuthException(AuthException.Type.DRIVER_ERROR, e);
       }
@@ -646,7 +694,7 @@ public final class Auth {
     if (user == null) {
       // If not, log the failed attempt and throw an error.
       try {
-        driver.saveAuthAttempt(AuthAttempt.createFailed(getIP(), Time.now()));
+        saveFailedAuthAttempt(AuthAttempt.createFailed(getIP(), Time.now()));
       } catch (Exception e) {
         throw new AuthException(AuthException.Type.DRIVER_ERROR, e);
       }
@@ -664,7 +712,7 @@ public final class Auth {
     if (user.checkPassword(plaintextPassword) == false) {
       // If not, log the failed attempt and throw an error.
       try {
-        driver.saveAuthAttempt(AuthAttempt.createFailed(user.getId(), getIP(), Time.now()));
+        saveFailedAuthAttempt(AuthAttempt.createFailed(user.getId(), getIP(), Time.now()));
       } catch (Exception e) {
         throw new AuthException(AuthException.Type.DRIVER_ERROR, e);
       }
@@ -677,6 +725,16 @@ public final class Auth {
       throw new AuthException(AuthException.Type.USER_BANNED, "That user is banned.");
     }
 
+    // Upgrade the stored password hash if it was created with a lower cost than is now configured.
+    if (user.passwordNeedsRehash()) {
+      try {
+        user.setPassword(plaintextPassword);
+        user.save();
+      } catch (Exception e) {
+        logger.warn("Failed to upgrade password hash for user {}:", user.getId(), e);
+      }
+    }
+
     // Update the user's session and (optionally) install a persistent token.
     this.loginAs(user, isPersistent, false);
   }
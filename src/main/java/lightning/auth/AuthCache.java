@@ -0,0 +1,354 @@
+package lightning.auth;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import lightning.cache.driver.InvalidationChannel;
+import lightning.cache.driver.LocalInvalidationChannel;
+import lightning.users.PrivilegeSet;
+
+/**
+ * A bounded, in-process cache of validated session auth tokens, user snapshots, and privilege
+ * sets, shared by all requests, so that authenticated requests (and privilege checks) usually do
+ * not query the database.
+ *
+ * Semantics:
+ * - Entries are held for at most the configured TTL; this bounds staleness of changes made by
+ *   other servers if invalidation messages are not exchanged (or are lost).
+ * - Invalidations evict the local entry and are broadcast over the channel so that peers evict
+ *   theirs. CachingAuthDriver, CachingUsersDriver and CachingGroupsDriver invalidate on every
+ *   write.
+ * - Each invalidation (local or received from a peer) advances a version stamp; a value read from
+ *   the database is only cached if no invalidation occurred while it was being read (otherwise it
+ *   may already be stale). The stamp is local: it only guards against invalidations this server
+ *   has received, so the channel must reach every server (see LocalInvalidationChannel).
+ * - Misses (e.g. revoked tokens, deleted users) are not cached.
+ * - Cached values are shared between requests and must be immutable.
+ *
+ * This class is thread-safe.
+ */
+public final class AuthCache implements InvalidationChannel.Listener, AutoCloseable {
+  private static final String TOKEN_PREFIX = "lightning-auth-token:";
+  private static final String USER_PREFIX = "lightning-auth-user:";
+  private static final String USER_TOKENS_PREFIX = "lightning-auth-user-tokens:";
+  private static final String USER_PRIVILEGES_PREFIX = "lightning-auth-user-privileges:";
+  private static final String GROUP_PRIVILEGES_PREFIX = "lightning-auth-group-privileges:";
+  private static final String ALL_GROUP_PRIVILEGES = "lightning-auth-all-group-privileges";
+
+  @FunctionalInterface
+  public static interface Loader<T> {
+    public T load() throws Exception;
+  }
+
+  @FunctionalInterface
+  public static interface BulkLoader<T> {
+    /**
+     * @param ids The IDs that are not cached.
+     * @return A map containing an entry for each of ids that exists.
+     */
+    public Map<Long, T> load(Collection<Long> ids) throws Exception;
+  }
+
+  private final InvalidationChannel channel;
+  private final Cache<String, AuthToken> tokens;
+  private final Cache<Long, Object> users;
+  private final Cache<Long, PrivilegeSet> userPrivileges;  // Granted directly to user.
+  private final Cache<Long, PrivilegeSet> groupPrivileges; // Granted to user's groups.
+  private final AtomicLong version;
+
+  /**
+   * @param channel The channel used to exchange invalidation messages with peers.
+   * @param maximumSize The maximum number of tokens (and users) to hold.
+   * @param ttl The maximum amount of time to hold an entry.
+   * @param unit The unit of ttl.
+   */
+  public AuthCache(InvalidationChannel channel, long maximumSize, long ttl, TimeUnit unit) {
+    this.channel = channel;
+    this.version = new AtomicLong();
+    this.tokens = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttl, unit)
+        .build();
+    this.users = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttl, unit)
+        .build();
+    this.userPrivileges = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttl, unit)
+        .build();
+    this.groupPrivileges = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttl, unit)
+        .build();
+    this.channel.subscribe(this);
+  }
+
+  /**
+   * Creates a cache that does not exchange invalidations with peers (suitable for a single server).
+   * @param maximumSize The maximum number of tokens (and users) to hold.
+   * @param ttl The maximum amount of time to hold an entry.
+   * @param unit The unit of ttl.
+   */
+  public AuthCache(long maximumSize, long ttl, TimeUnit unit) {
+    this(new LocalInvalidationChannel(), maximumSize, ttl, unit);
+  }
+
+  /**
+   * @param hashedToken A hashed session auth token.
+   * @param loader Loads the token if not cached.
+   * @return The token (or null if the loader returned null).
+   * @throws Exception If the loader fails.
+   */
+  public AuthToken getSessionToken(String hashedToken, Loader<AuthToken> loader) throws Exception {
+    return get(tokens, hashedToken, loader);
+  }
+
+  /**
+   * @param userId A user ID.
+   * @param loader Loads an (immutable) snapshot of the user if not cached.
+   * @return The snapshot (or null if the loader returned null).
+   * @throws Exception If the loader fails.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T getUser(long userId, Loader<T> loader) throws Exception {
+    return (T) get(users, userId, (Loader<Object>) loader);
+  }
+
+  /**
+   * @param userIds User IDs.
+   * @param loader Loads (immutable) snapshots of the users that are not cached.
+   * @return A map (in the order of userIds) containing an entry for each snapshot found.
+   * @throws Exception If the loader fails.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Map<Long, T> getUsers(Collection<Long> userIds, BulkLoader<T> loader) throws Exception {
+    return (Map<Long, T>) getAll(users, userIds, (BulkLoader<Object>) loader);
+  }
+
+  /**
+   * @param userIds User IDs.
+   * @param loader Loads the privileges granted directly to the users that are not cached.
+   * @return A map (in the order of userIds) containing an entry for each privilege set found.
+   * @throws Exception If the loader fails.
+   */
+  public Map<Long, PrivilegeSet> getUserPrivileges(Collection<Long> userIds, BulkLoader<PrivilegeSet> loader) throws Exception {
+    return getAll(userPrivileges, userIds, loader);
+  }
+
+  /**
+   * @param userIds User IDs.
+   * @param loader Loads the privileges granted to the groups of the users that are not cached.
+   * @return A map (in the order of userIds) containing an entry for each privilege set found.
+   * @throws Exception If the loader fails.
+   */
+  public Map<Long, PrivilegeSet> getGroupPrivilegesForUsers(Collection<Long> userIds, BulkLoader<PrivilegeSet> loader) throws Exception {
+    return getAll(groupPrivileges, userIds, loader);
+  }
+
+  /**
+   * @param userId A user ID.
+   * @param loader Loads the privileges granted directly to the user if not cached.
+   * @return The privileges.
+   * @throws Exception If the loader fails.
+   */
+  public PrivilegeSet getUserPrivileges(long userId, Loader<PrivilegeSet> loader) throws Exception {
+    return get(userPrivileges, userId, loader);
+  }
+
+  /**
+   * @param userId A user ID.
+   * @param loader Loads the privileges granted to the user's groups if not cached.
+   * @return The privileges.
+   * @throws Exception If the loader fails.
+   */
+  public PrivilegeSet getGroupPrivilegesForUser(long userId, Loader<PrivilegeSet> loader) throws Exception {
+    return get(groupPrivileges, userId, loader);
+  }
+
+  /**
+   * Evicts a session auth token on all servers.
+   * @param hashedToken A hashed session auth token.
+   */
+  public void invalidateSessionToken(String hashedToken) {
+    evictToken(hashedToken);
+    channel.publish(TOKEN_PREFIX + hashedToken);
+  }
+
+  /**
+   * Evicts all session auth tokens belonging to a user on all servers.
+   * @param userId A user ID.
+   */
+  public void invalidateSessionTokensForUser(long userId) {
+    evictTokensForUser(userId);
+    channel.publish(USER_TOKENS_PREFIX + userId);
+  }
+
+  /**
+   * Evicts a user on all servers.
+   * @param userId A user ID.
+   */
+  public void invalidateUser(long userId) {
+    evict(users, userId);
+    channel.publish(USER_PREFIX + userId);
+  }
+
+  /**
+   * Evicts the privileges granted directly to a user on all servers.
+   * @param userId A user ID.
+   */
+  public void invalidateUserPrivileges(long userId) {
+    evict(userPrivileges, userId);
+    channel.publish(USER_PRIVILEGES_PREFIX + userId);
+  }
+
+  /**
+   * Evicts the privileges a user inherits from groups on all servers (e.g. on joining a group).
+   * @param userId A user ID.
+   */
+  public void invalidateGroupPrivilegesForUser(long userId) {
+    evict(groupPrivileges, userId);
+    channel.publish(GROUP_PRIVILEGES_PREFIX + userId);
+  }
+
+  /**
+   * Evicts the privileges all users inherit from groups on all servers (e.g. on changing the
+   * privileges of a group).
+   */
+  public void invalidateAllGroupPrivileges() {
+    evictAll(groupPrivileges);
+    channel.publish(ALL_GROUP_PRIVILEGES);
+  }
+
+  /**
+   * Evicts all entries on all servers.
+   */
+  public void invalidateAll() {
+    onInvalidateAll();
+    channel.publishAll();
+  }
+
+  @Override
+  public void onInvalidate(String key) {
+    if (key.startsWith(TOKEN_PREFIX)) {
+      evictToken(key.substring(TOKEN_PREFIX.length()));
+    } else if (key.startsWith(USER_TOKENS_PREFIX)) {
+      evictTokensForUser(Long.parseLong(key.substring(USER_TOKENS_PREFIX.length())));
+    } else if (key.startsWith(USER_PRIVILEGES_PREFIX)) {
+      evict(userPrivileges, Long.parseLong(key.substring(USER_PRIVILEGES_PREFIX.length())));
+    } else if (key.startsWith(GROUP_PRIVILEGES_PREFIX)) {
+      evict(groupPrivileges, Long.parseLong(key.substring(GROUP_PRIVILEGES_PREFIX.length())));
+    } else if (key.equals(ALL_GROUP_PRIVILEGES)) {
+      evictAll(groupPrivileges);
+    } else if (key.startsWith(USER_PREFIX)) {
+      evict(users, Long.parseLong(key.substring(USER_PREFIX.length())));
+    }
+  }
+
+  @Override
+  public void onInvalidateAll() {
+    version.incrementAndGet();
+    tokens.invalidateAll();
+    users.invalidateAll();
+    userPrivileges.invalidateAll();
+    groupPrivileges.invalidateAll();
+  }
+
+  @Override
+  public void close() {
+    channel.unsubscribe(this);
+  }
+
+  private void evictToken(String hashedToken) {
+    evict(tokens, hashedToken);
+  }
+
+  private void evictTokensForUser(long userId) {
+    version.incrementAndGet();
+    tokens.asMap().values().removeIf(token -> token.userId == userId);
+  }
+
+  private <K> void evict(Cache<K, ?> cache, K key) {
+    version.incrementAndGet();
+    cache.invalidate(key);
+  }
+
+  private void evictAll(Cache<?, ?> cache) {
+    version.incrementAndGet();
+    cache.invalidateAll();
+  }
+
+  private <K, V> V get(Cache<K, V> cache, K key, Loader<V> loader) throws Exception {
+    V value = cache.getIfPresent(key);
+
+    if (value != null) {
+      return value;
+    }
+
+    long observedVersion = version.get();
+    value = loader.load();
+
+    if (value != null) {
+      fill(cache, key, value, observedVersion);
+    }
+
+    return value;
+  }
+
+  private <V> Map<Long, V> getAll(Cache<Long, V> cache, Collection<Long> keys, BulkLoader<V> loader) throws Exception {
+    Map<Long, V> present = cache.getAllPresent(keys);
+    List<Long> missing = new ArrayList<>();
+
+    for (Long key : keys) {
+      if (!present.containsKey(key)) {
+        missing.add(key);
+      }
+    }
+
+    Map<Long, V> loaded = new LinkedHashMap<>();
+
+    if (!missing.isEmpty()) {
+      long observedVersion = version.get();
+      loaded = loader.load(missing);
+
+      for (Map.Entry<Long, V> entry : loaded.entrySet()) {
+        if (entry.getValue() != null) {
+          fill(cache, entry.getKey(), entry.getValue(), observedVersion);
+        }
+      }
+    }
+
+    Map<Long, V> values = new LinkedHashMap<>();
+
+    for (Long key : keys) {
+      V value = present.containsKey(key) ? present.get(key) : loaded.get(key);
+
+      if (value != null) {
+        values.put(key, value);
+      }
+    }
+
+    return values;
+  }
+
+  private <K, V> void fill(Cache<K, V> cache, K key, V value, long observedVersion) {
+    if (version.get() != observedVersion) {
+      return;
+    }
+
+    cache.put(key, value);
+
+    // An invalidation may have raced with the put above; undo it if so.
+    if (version.get() != observedVersion) {
+      cache.invalidate(key);
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package lightning.auth;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lightning.cache.Cache;
+import lightning.mvc.ObjectParam;
+
+/**
+ * Counts recent failed login attempts per IP address and per user in memory, so that throttling
+ * a login attempt does not require querying the database (the auth driver remains the durable
+ * log of attempts).
+ *
+ * Each key keeps a sliding window of the timestamps of its most recent failures (at most
+ * maxFailuresPerKey; throttling does not distinguish between larger counts). Keys are partitioned
+ * across independently locked stripes; each stripe holds its share of maxKeys, evicts keys that
+ * have had no failures within the window first, and otherwise evicts its least recently used keys.
+ *
+ * Optionally, failures are also counted in a shared Cache (using atomic increments on per-minute
+ * buckets) so that attempts are throttled consistently across servers. If the shared cache fails,
+ * the local counts are used.
+ *
+ * This class is thread-safe.
+ */
+public final class LoginThrottle {
+  private static final Logger logger = LoggerFactory.getLogger(LoginThrottle.class);
+  private static final int STRIPES = 16;
+  private static final long BUCKET_SECONDS = 60;
+  private static final String KEY_PREFIX = "lightning-throttle:";
+
+  private static final class Window {
+    final long[] times; // Ring buffer of failure timestamps.
+    int next = 0;
+    int size = 0;
+    long lastTime = 0;
+
+    Window(int capacity) {
+      this.times = new long[capacity];
+    }
+
+    void add(long time) {
+      times[next] = time;
+      next = (next + 1) % times.length;
+      size = Math.min(size + 1, times.length);
+      lastTime = Math.max(lastTime, time);
+    }
+
+    long countSince(long since) {
+      long count = 0;
+      for (int i = 0; i < size; i++) {
+        if (times[i] >= since) {
+          count++;
+        }
+      }
+      return count;
+    }
+  }
+
+  private final class Stripe {
+    final ReentrantLock lock = new ReentrantLock();
+    final LinkedHashMap<String, Window> windows = new LinkedHashMap<>(16, 0.75f, true); // LRU order.
+
+    // Caller must hold lock.
+    void record(String key, long time) {
+      Window window = windows.get(key);
+      if (window == null) {
+        window = new Window(maxFailuresPerKey);
+        windows.put(key, window);
+      }
+      window.add(time);
+
+      // Evict idle keys (in LRU order), then the least recently used keys if still over capacity.
+      long idleBefore = time - windowSeconds;
+      Iterator<Map.Entry<String, Window>> eldest = windows.entrySet().iterator();
+      while (eldest.hasNext()) {
+        Map.Entry<String, Window> victim = eldest.next();
+        if (victim.getKey().equals(key)) {
+          break;
+        }
+        if (victim.getValue().lastTime >= idleBefore && windows.size() <= maxKeysPerStripe) {
+          break;
+        }
+        eldest.remove();
+      }
+    }
+
+    // Caller must hold lock.
+    AuthCountAndTimestamp get(String key, long since) {
+      Window window = windows.get(key);
+      if (window == null) {
+        return AuthCountAndTimestamp.create(0, 0);
+      }
+
+      long count = window.countSince(since);
+      if (count == 0) {
+        windows.remove(key); // Idle.
+        return AuthCountAndTimestamp.create(0, 0);
+      }
+
+      return AuthCountAndTimestamp.create(count, window.lastTime);
+    }
+  }
+
+  private final Stripe[] stripes;
+  private final int maxFailuresPerKey;
+  private final long maxKeysPerStripe;
+  private final long windowSeconds;
+  private final @Nullable Cache shared;
+
+  /**
+   * @param maxKeys The maximum number of IP addresses and users to track.
+   * @param maxFailuresPerKey The maximum number of failures to count for a single key.
+   * @param windowSeconds The length of the sliding window (failures older than this are dropped).
+   * @param shared A cache in which to also count failures (shared between servers), or null.
+   */
+  public LoginThrottle(long maxKeys, int maxFailuresPerKey, long windowSeconds, @Nullable Cache shared) {
+    this.maxFailuresPerKey = Math.max(1, maxFailuresPerKey);
+    this.maxKeysPerStripe = Math.max(1, maxKeys / STRIPES);
+    this.windowSeconds = windowSeconds;
+    this.shared = shared;
+    this.stripes = new Stripe[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Records a failed login attempt.
+   * @param ip The IP address the attempt originated from.
+   * @param userId The user the attempt was for (or 0 if unknown).
+   * @param time The time of the attempt (in seconds).
+   */
+  public void recordFailure(String ip, long userId, long time) {
+    record(ipKey(ip), time);
+
+    if (userId > 0) {
+      record(userKey(userId), time);
+    }
+  }
+
+  /**
+   * @param ip An IP address.
+   * @param since A time (in seconds).
+   * @return The number of failed login attempts from ip since the given time (capped at
+   *         maxFailuresPerKey) and the time of the most recent one.
+   */
+  public AuthCountAndTimestamp getFailuresByIP(String ip, long since) {
+    return get(ipKey(ip), since);
+  }
+
+  /**
+   * @param userId A user ID.
+   * @param since A time (in seconds).
+   * @return The number of failed login attempts for userId since the given time (capped at
+   *         maxFailuresPerKey) and the time of the most recent one.
+   */
+  public AuthCountAndTimestamp getFailuresByUser(long userId, long since) {
+    return get(userKey(userId), since);
+  }
+
+  /**
+   * @return The number of keys currently tracked on this server.
+   */
+  public long size() {
+    long size = 0;
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        size += stripe.windows.size();
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return size;
+  }
+
+  private static String ipKey(String ip) {
+    return "ip:" + ip;
+  }
+
+  private static String userKey(long userId) {
+    return "user:" + userId;
+  }
+
+  private Stripe stripe(String key) {
+    int hash = key.hashCode();
+    return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+  }
+
+  private void record(String key, long time) {
+    Stripe stripe = stripe(key);
+    stripe.lock.lock();
+    try {
+      stripe.record(key, time);
+    } finally {
+      stripe.lock.unlock();
+    }
+
+    if (shared != null) {
+      try {
+        shared.increment(bucketKey(key, time / BUCKET_SECONDS), 1, 1, windowSeconds + BUCKET_SECONDS);
+        shared.set(lastKey(key), time, windowSeconds);
+      } catch (Exception e) {
+        logger.warn("Failed to record login failure in shared cache:", e);
+      }
+    }
+  }
+
+  private AuthCountAndTimestamp get(String key, long since) {
+    AuthCountAndTimestamp local;
+    Stripe stripe = stripe(key);
+    stripe.lock.lock();
+    try {
+      local = stripe.get(key, since);
+    } finally {
+      stripe.lock.unlock();
+    }
+
+    if (shared == null) {
+      return local;
+    }
+
+    try {
+      // Buckets overlapping [since, now]; the oldest may include slightly older failures.
+      List<String> keys = new ArrayList<>();
+      for (long bucket = since / BUCKET_SECONDS; bucket <= (since + windowSeconds) / BUCKET_SECONDS; bucket++) {
+        keys.add(bucketKey(key, bucket));
+      }
+      keys.add(lastKey(key));
+
+      Map<String, ObjectParam> values = shared.getMulti(keys);
+      long count = 0;
+      long lastTime = 0;
+      for (Map.Entry<String, ObjectParam> entry : values.entrySet()) {
+        if (entry.getKey().equals(lastKey(key))) {
+          lastTime = entry.getValue().longValue();
+        } else {
+          count += entry.getValue().longValue();
+        }
+      }
+
+      // Local failures are included in the shared counts (unless they failed to be recorded).
+      return AuthCountAndTimestamp.create(
+          Math.max(local.rowCount(), Math.min(count, maxFailuresPerKey)),
+          Math.max(local.maxTimestamp(), lastTime));
+    } catch (Exception e) {
+      logger.warn("Failed to read login failures from shared cache:", e);
+      return local;
+    }
+  }
+
+  private static String bucketKey(String key, long bucket) {
+    return KEY_PREFIX + key + ":" + bucket;
+  }
+
+  private static String lastKey(String key) {
+    return KEY_PREFIX + key + ":last";
+  }
+}
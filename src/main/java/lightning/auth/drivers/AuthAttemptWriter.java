@@ -0,0 +1,245 @@
+package lightning.auth.drivers;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+import lightning.auth.AuthAttempt;
+import lightning.db.MySQLDatabase;
+import lightning.db.MySQLDatabaseProvider;
+
+/**
+ * Writes authentication attempts to the auth_attempts table off of the request thread.
+ *
+ * - enqueue() places an attempt into a bounded queue. If the queue is full, the caller waits for
+ *   up to enqueueTimeoutMs for space (back pressure) and the attempt is dropped (and counted) if
+ *   none becomes available, so that bursts of attempts (e.g. during an attack) cannot stall logins.
+ * - A background thread drains the queue as attempts arrive and writes them using multi-row
+ *   INSERT statements of up to batchSize rows. If a batch violates a constraint (e.g. it refers to
+ *   a user that has since been deleted), its rows are written one at a time and only the offending
+ *   rows are dropped; batches that fail for other reasons are dropped. Dropped rows are counted.
+ * - close() stops the background thread and writes any queued attempts.
+ *
+ * Throttling that counts attempts in the database (see MySQLAuthDriver) may observe an attempt
+ * slightly late; use LoginThrottle to count attempts in memory instead.
+ *
+ * This class is thread-safe and should be shared between requests.
+ */
+public class AuthAttemptWriter implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(AuthAttemptWriter.class);
+
+  private final MySQLDatabaseProvider provider;
+  private final BlockingQueue<AuthAttempt> queue;
+  private final int batchSize;
+  private final long enqueueTimeoutMs;
+  private final Object writeLock;
+  private final Thread thread;
+  private final LongAdder attemptsWritten;
+  private final LongAdder attemptsDropped;
+  private final LongAdder attemptsFailed;
+  private final LongAdder batchesWritten;
+  private volatile boolean isClosed;
+
+  /**
+   * @param provider Provides database connections.
+   * @param maxQueueSize Maximum number of queued attempts.
+   * @param batchSize Maximum number of rows written by a single statement.
+   * @param enqueueTimeoutMs Maximum amount of time to wait for space in a full queue.
+   */
+  public AuthAttemptWriter(MySQLDatabaseProvider provider, int maxQueueSize, int batchSize, long enqueueTimeoutMs) {
+    if (maxQueueSize < 1 || batchSize < 1 || enqueueTimeoutMs < 0) {
+      throw new IllegalArgumentException("Queue size and batch size must be positive; timeout must not be negative.");
+    }
+
+    this.provider = provider;
+    this.queue = new ArrayBlockingQueue<>(maxQueueSize);
+    this.batchSize = batchSize;
+    this.enqueueTimeoutMs = enqueueTimeoutMs;
+    this.writeLock = new Object();
+    this.attemptsWritten = new LongAdder();
+    this.attemptsDropped = new LongAdder();
+    this.attemptsFailed = new LongAdder();
+    this.batchesWritten = new LongAdder();
+    this.isClosed = false;
+    this.thread = new Thread(this::run, "lightning-auth-attempt-writer");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Queues an attempt to be written.
+   * @param attempt An attempt.
+   * @return Whether or not the attempt was queued (false if it was dropped).
+   */
+  public boolean enqueue(AuthAttempt attempt) {
+    if (!isClosed) {
+      try {
+        if (queue.offer(attempt, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    attemptsDropped.increment();
+    logger.debug("Dropped auth attempt: queue is full.");
+    return false;
+  }
+
+  /**
+   * Writes all queued attempts to the database on the calling thread.
+   * @throws SQLException On failure (the failed batch is dropped).
+   */
+  public void flush() throws SQLException {
+    synchronized (writeLock) {
+      List<AuthAttempt> batch = new ArrayList<>(batchSize);
+
+      while (queue.drainTo(batch, batchSize) > 0) {
+        writeBatch(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * @return The number of queued attempts.
+   */
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  /**
+   * @return Counters describing the writer's activity (suitable for JSON).
+   */
+  public Map<String, Object> getStats() {
+    return ImmutableMap.<String, Object>builder()
+        .put("queued", queue.size())
+        .put("written", attemptsWritten.sum())
+        .put("batches", batchesWritten.sum())
+        .put("dropped", attemptsDropped.sum())
+        .put("failed", attemptsFailed.sum())
+        .build();
+  }
+
+  /**
+   * Stops the background writer and writes any queued attempts.
+   */
+  @Override
+  public void close() throws SQLException {
+    if (isClosed) {
+      return;
+    }
+
+    isClosed = true;
+    thread.interrupt();
+
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(30));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    flush();
+  }
+
+  private void run() {
+    List<AuthAttempt> batch = new ArrayList<>(batchSize);
+
+    while (!isClosed) {
+      try {
+        AuthAttempt first = queue.take();
+
+        synchronized (writeLock) {
+          batch.add(first);
+          queue.drainTo(batch, batchSize - 1);
+          writeBatch(batch);
+        }
+      } catch (InterruptedException e) {
+        // Closing; remaining attempts are written by close().
+      } catch (Exception e) {
+        logger.warn("Failed to write {} auth attempts:", batch.size(), e);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  // Caller must hold writeLock.
+  private void writeBatch(List<AuthAttempt> batch) throws SQLException {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    try {
+      insert(batch);
+      attemptsWritten.add(batch.size());
+      batchesWritten.increment();
+      return;
+    } catch (SQLException e) {
+      if (batch.size() == 1 || !isConstraintViolation(e)) {
+        attemptsFailed.add(batch.size());
+        throw e;
+      }
+
+      logger.debug("Failed to write batch of {} auth attempts; writing individually:", batch.size(), e);
+    }
+
+    for (int i = 0; i < batch.size(); i++) {
+      try {
+        insert(batch.subList(i, i + 1));
+        attemptsWritten.increment();
+      } catch (SQLException e) {
+        attemptsFailed.increment();
+
+        if (!isConstraintViolation(e)) {
+          attemptsFailed.add(batch.size() - i - 1);
+          throw e;
+        }
+
+        logger.warn("Dropped auth attempt that could not be written:", e);
+      }
+    }
+
+    batchesWritten.increment();
+  }
+
+  private void insert(List<AuthAttempt> attempts) throws SQLException {
+    StringBuilder sql = new StringBuilder(
+        "INSERT INTO auth_attempts (ipaddress, user_id, time, successful, fraudulent) VALUES ");
+    List<Object> params = new ArrayList<>(attempts.size() * 5);
+
+    for (AuthAttempt attempt : attempts) {
+      sql.append(params.isEmpty() ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+      params.add(attempt.ip);
+      params.add((attempt.userId > 0) ? attempt.userId : null);
+      params.add(attempt.timestamp);
+      params.add(attempt.wasSuccessful);
+      params.add(attempt.wasFraudulent);
+    }
+
+    try (MySQLDatabase db = provider.getDatabase()) {
+      PreparedStatement query = db.prepare(sql.append(";").toString(), params);
+      query.executeUpdate();
+      query.close();
+    }
+  }
+
+  private static boolean isConstraintViolation(SQLException e) {
+    // SQLSTATE class 23: integrity constraint violation (e.g. a foreign key).
+    return (e instanceof SQLIntegrityConstraintViolationException)
+        || (e.getSQLState() != null && e.getSQLState().startsWith("23"));
+  }
+}
@@ -0,0 +1,123 @@
+package lightning.auth.drivers;
+
+import lightning.auth.AuthAttempt;
+import lightning.auth.AuthCache;
+import lightning.auth.AuthCountAndTimestamp;
+import lightning.auth.AuthToken;
+import lightning.auth.Auth.AuthDriver;
+
+/**
+ * An authentication driver that serves session auth token lookups from an AuthCache and
+ * invalidates the cache whenever session auth tokens are changed.
+ * All other operations are passed through to the underlying driver.
+ */
+public class CachingAuthDriver implements AuthDriver {
+  private final AuthDriver delegate;
+  private final AuthCache cache;
+
+  public CachingAuthDriver(AuthDriver delegate, AuthCache cache) {
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  @Override
+  public AuthToken getSessionAuthToken(String hashedId) throws Exception {
+    return cache.getSessionToken(hashedId, () -> delegate.getSessionAuthToken(hashedId));
+  }
+
+  @Override
+  public void updateSessionAuthToken(AuthToken token) throws Exception {
+    try {
+      delegate.updateSessionAuthToken(token);
+    } finally {
+      cache.invalidateSessionToken(token.hashedToken);
+    }
+  }
+
+  @Override
+  public void insertSessionAuthToken(AuthToken token) throws Exception {
+    delegate.insertSessionAuthToken(token);
+  }
+
+  @Override
+  public void deleteSessionAuthToken(AuthToken token) throws Exception {
+    try {
+      delegate.deleteSessionAuthToken(token);
+    } finally {
+      cache.invalidateSessionToken(token.hashedToken);
+    }
+  }
+
+  @Override
+  public void terminateAllSessionsForUser(long userId) throws Exception {
+    try {
+      delegate.terminateAllSessionsForUser(userId);
+    } finally {
+      cache.invalidateSessionTokensForUser(userId);
+    }
+  }
+
+  @Override
+  public void terminateAllSessionsForUserExcepting(long userId, String hashedIdToIgnore) throws Exception {
+    try {
+      delegate.terminateAllSessionsForUserExcepting(userId, hashedIdToIgnore);
+    } finally {
+      cache.invalidateSessionTokensForUser(userId);
+    }
+  }
+
+  @Override
+  public AuthCountAndTimestamp getFailedLoginCountSince(long userId, long time) throws Exception {
+    return delegate.getFailedLoginCountSince(userId, time);
+  }
+
+  @Override
+  public AuthCountAndTimestamp getFailedLoginCountSince(String ip, long time) throws Exception {
+    return delegate.getFailedLoginCountSince(ip, time);
+  }
+
+  @Override
+  public void saveAuthAttempt(AuthAttempt attempt) throws Exception {
+    delegate.saveAuthAttempt(attempt);
+  }
+
+  @Override
+  public long getSuccessfulLoginCountSince(long userId, long time) throws Exception {
+    return delegate.getSuccessfulLoginCountSince(userId, time);
+  }
+
+  @Override
+  public long getFraudulentLoginCountSince(long userId, long time) throws Exception {
+    return delegate.getFraudulentLoginCountSince(userId, time);
+  }
+
+  @Override
+  public long getSuccessfulLoginCountSince(String ip, long time) throws Exception {
+    return delegate.getSuccessfulLoginCountSince(ip, time);
+  }
+
+  @Override
+  public long getFraudulentLoginCountSince(String ip, long time) throws Exception {
+    return delegate.getFraudulentLoginCountSince(ip, time);
+  }
+
+  @Override
+  public void updatePersistentAuthToken(AuthToken token) throws Exception {
+    delegate.updatePersistentAuthToken(token);
+  }
+
+  @Override
+  public void insertPersistentAuthToken(AuthToken token) throws Exception {
+    delegate.insertPersistentAuthToken(token);
+  }
+
+  @Override
+  public void deletePersistentAuthToken(AuthToken token) throws Exception {
+    delegate.deletePersistentAuthToken(token);
+  }
+
+  @Override
+  public AuthToken getPersistentAuthToken(String hashedId) throws Exception {
+    return delegate.getPersistentAuthToken(hashedId);
+  }
+}
@@ -3,6 +3,8 @@ package lightning.auth.drivers;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import javax.annotation.Nullable;
+
 import lightning.auth.AuthAttempt;
 import lightning.auth.AuthCountAndTimestamp;
 import lightning.auth.AuthToken;
@@ -19,9 +21,19 @@ import com.google.common.collect.ImmutableMap;
  */
 public class MySQLAuthDriver implements AuthDriver {
   public final MySQLDatabaseProvider provider;
+  private final @Nullable AuthAttemptWriter attemptWriter;
   
   public MySQLAuthDriver(MySQLDatabaseProvider provider) {
+    this(provider, null);
+  }
+  
+  /**
+   * @param provider
+   * @param attemptWriter If non-null, auth attempts are written asynchronously by attemptWriter.
+   */
+  public MySQLAuthDriver(MySQLDatabaseProvider provider, @Nullable AuthAttemptWriter attemptWriter) {
     this.provider = provider;
+    this.attemptWriter = attemptWriter;
   }
     
   @Override
@@ -109,6 +121,11 @@ public class MySQLAuthDriver implements AuthDriver {
 
   @Override
   public void saveAuthAttempt(AuthAttempt attempt) throws Exception {
+    if (attemptWriter != null) {
+      attemptWriter.enqueue(attempt); // Dropped (and counted) if the writer is overloaded.
+      return;
+    }
+    
     try (MySQLDatabase db = provider.getDatabase()) {
       if (attempt.userId <= 0) {
         db.prepareInsert("auth_attempts", 
@@ -0,0 +1,14 @@
+package lightning.cache;
+
+import java.util.Map;
+import java.util.Set;
+
+@FunctionalInterface
+public interface BulkCacheProducer<T> {
+  /**
+   * @param keys The keys which were not found in the cache.
+   * @return Values for (some subset of) the given keys. Keys absent from the result are not cached.
+   * @throws Exception
+   */
+  public Map<String, T> yield(Set<String> keys) throws Exception;
+}
@@ -1,17 +1,172 @@
 package lightning.cache;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import lightning.mvc.ObjectParam;
 
 /**
  * Defines an interface for a cache.
  * Caches may store any type of serializable object.
+ *
+ * Loads performed through get(key, type, producer, ...) are coalesced per key: if several threads
+ * miss on the same key at once, the producer runs only once and the other threads wait for its
+ * result (within this JVM). Threads that wait longer than the load wait time run the producer
+ * themselves.
+ *
+ * Hits, misses, loads, and errors are counted (see getStats()).
  */
 public final class Cache {
+  private static final Logger logger = LoggerFactory.getLogger(Cache.class);
   private static final long DEFAULT_EXPIRATION = 0;
+  private static final int DEFAULT_REFRESH_THREADS = 4;
+  private static final int DEFAULT_REFRESH_QUEUE_SIZE = 256;
+  private static final long DEFAULT_LOAD_WAIT_MS = 10000;
   private final CacheDriver driver;
+  private final ConcurrentHashMap<String, CompletableFuture<Object>> loads;        // For plain values.
+  private final ConcurrentHashMap<String, CompletableFuture<CacheEntry>> entryLoads; // For CacheEntry values.
+  private final long loadWaitMs;
+  private final int refreshThreads;
+  private final int refreshQueueSize;
+  private final CacheStatsRecorder stats;
+  private volatile ThreadPoolExecutor refreshExecutor;
+  
+  @FunctionalInterface
+  private static interface DriverOperation<T> {
+    public T run() throws CacheException;
+  }
   
   public Cache(CacheDriver driver) {
+    this(driver, DEFAULT_REFRESH_THREADS, DEFAULT_REFRESH_QUEUE_SIZE);
+  }
+  
+  /**
+   * @param driver
+   * @param refreshThreads Maximum number of background refreshes (stale-while-revalidate) to run at once.
+   * @param refreshQueueSize Maximum number of background refreshes to queue; when full, stale values
+   *                         continue to be served until a refresh can be scheduled.
+   */
+  public Cache(CacheDriver driver, int refreshThreads, int refreshQueueSize) {
+    this(driver, refreshThreads, refreshQueueSize, ImmutableList.of());
+  }
+  
+  /**
+   * @param driver
+   * @param refreshThreads Maximum number of background refreshes (stale-while-revalidate) to run at once.
+   * @param refreshQueueSize Maximum number of background refreshes to queue; when full, stale values
+   *                         continue to be served until a refresh can be scheduled.
+   * @param statsKeyPrefixes Key prefixes for which to collect separate statistics.
+   */
+  public Cache(CacheDriver driver, int refreshThreads, int refreshQueueSize, List<String> statsKeyPrefixes) {
+    this(driver, refreshThreads, refreshQueueSize, statsKeyPrefixes, DEFAULT_LOAD_WAIT_MS);
+  }
+  
+  /**
+   * @param driver
+   * @param refreshThreads Maximum number of background refreshes (stale-while-revalidate) to run at once.
+   * @param refreshQueueSize Maximum number of background refreshes to queue; when full, stale values
+   *                         continue to be served until a refresh can be scheduled.
+   * @param statsKeyPrefixes Key prefixes for which to collect separate statistics.
+   * @param loadWaitMs Maximum time to wait for another thread's load of the same key before
+   *                   loading the key on the calling thread.
+   */
+  public Cache(CacheDriver driver, int refreshThreads, int refreshQueueSize, List<String> statsKeyPrefixes,
+               long loadWaitMs) {
     this.driver = driver;
+    this.loads = new ConcurrentHashMap<>();
+    this.entryLoads = new ConcurrentHashMap<>();
+    this.loadWaitMs = loadWaitMs;
+    this.refreshThreads = refreshThreads;
+    this.refreshQueueSize = refreshQueueSize;
+    this.stats = new CacheStatsRecorder(statsKeyPrefixes);
+  }
+  
+  /**
+   * @return A snapshot of the statistics collected since this cache was created.
+   */
+  public CacheStats getStats() {
+    long evictions;
+    
+    try {
+      evictions = driver.evictionCount();
+    } catch (RuntimeException e) {
+      evictions = 0;
+    }
+    
+    return stats.snapshot(evictions);
+  }
+  
+  private <T> T execute(String key, DriverOperation<T> operation) throws CacheException {
+    try {
+      return operation.run();
+    } catch (CacheException | RuntimeException e) {
+      stats.recordError(key);
+      throw e;
+    }
+  }
+  
+  private <T> T execute(Collection<String> keys, DriverOperation<T> operation) throws CacheException {
+    try {
+      return operation.run();
+    } catch (CacheException | RuntimeException e) {
+      stats.recordError(keys);
+      throw e;
+    }
+  }
+  
+  private Object read(String key) throws CacheException {
+    Object value = execute(key, () -> driver.get(key));
+    
+    if (value != null) {
+      stats.recordHit(key);
+    } else {
+      stats.recordMiss(key);
+    }
+    
+    return value;
+  }
+  
+  /**
+   * Re-reads a key that was just missed, without recording it again in the stats. A load that
+   * becomes the single-flight leader only after another leader has finished (and stored its value)
+   * would otherwise produce the value a second time.
+   */
+  private Object reread(String key) throws CacheException {
+    return execute(key, () -> driver.get(key));
+  }
+  
+  private <T> T produce(String key, CacheProducer<T> producer) throws Exception {
+    long start = System.nanoTime();
+    boolean success = false;
+    
+    try {
+      T value = producer.yield();
+      success = true;
+      return value;
+    } finally {
+      stats.recordLoad(key, System.nanoTime() - start, success);
+    }
   }
   
   /**
@@ -38,21 +193,187 @@ public final class Cache {
    * @throws CacheException
    */
   public <T> T get(String key, Class<T> type, CacheProducer<T> producer, long expiration) throws CacheException {
-    ObjectParam result = get(key);
+    Object cached = read(key);
+    
+    if (cached != null) {
+      return new ObjectParam(cached).castTo(type);
+    }
+    
+    Object item = singleFlight(loads, key, () -> {
+      Object current = reread(key);
+      
+      if (current != null) {
+        return current;
+      }
+      
+      Object produced = produce(key, producer);
+      set(key, produced, expiration);
+      return produced;
+    });
+    
+    return new ObjectParam(item).castTo(type);
+  }
+  
+  /**
+   * Attempts to get the value of a key if it exists. If no value exists, invokes the producer to produce
+   * a value, sets the value, and returns the set value. Depending on the options, stale values may be
+   * returned while a single background refresh is performed, and values may be refreshed early.
+   *
+   * Values loaded this way are stored wrapped with freshness metadata and should only be read back
+   * through this method.
+   * @param key
+   * @param type
+   * @param producer
+   * @param options
+   * @return
+   * @throws CacheException
+   */
+  public <T> T get(String key, Class<T> type, CacheProducer<T> producer, CacheLoadOptions options) throws CacheException {
+    Object stored = read(key);
+    
+    if (stored instanceof CacheEntry) {
+      CacheEntry entry = (CacheEntry) stored;
+      
+      if (shouldRefresh(entry, options)) {
+        refreshInBackground(key, producer, options);
+      }
+      
+      return new ObjectParam(entry.value).castTo(type);
+    }
+    
+    CacheEntry entry = singleFlight(entryLoads, key, () -> {
+      Object current = reread(key);
+      return (current instanceof CacheEntry) ? (CacheEntry) current : load(key, producer, options);
+    });
+    
+    return new ObjectParam(entry.value).castTo(type);
+  }
+  
+  private static boolean shouldRefresh(CacheEntry entry, CacheLoadOptions options) {
+    if (entry.freshUntilMs == 0) {
+      return false;
+    }
+    
+    long now = System.currentTimeMillis();
+    
+    if (now >= entry.freshUntilMs) {
+      return true;
+    }
+    
+    if (options.getEarlyExpirationBeta() > 0) {
+      // XFetch: recompute early with probability that grows as expiration nears.
+      double random = 1.0 - ThreadLocalRandom.current().nextDouble(); // In (0, 1].
+      double gap = -entry.computeTimeMs * options.getEarlyExpirationBeta() * Math.log(random);
+      return now + gap >= entry.freshUntilMs;
+    }
+    
+    return false;
+  }
+  
+  private CacheEntry load(String key, CacheProducer<?> producer, CacheLoadOptions options) throws Exception {
+    long start = System.currentTimeMillis();
+    Object value = produce(key, producer);
+    long end = System.currentTimeMillis();
+    long freshUntilMs = (options.getExpireAfter() == 0)
+        ? 0
+        : end + TimeUnit.SECONDS.toMillis(options.getExpireAfter());
+    CacheEntry entry = new CacheEntry(value, freshUntilMs, end - start);
+    set(key, entry, options.getHardExpiration());
+    return entry;
+  }
+  
+  private void refreshInBackground(String key, CacheProducer<?> producer, CacheLoadOptions options) {
+    CompletableFuture<CacheEntry> future = new CompletableFuture<>();
     
-    if (result.exists()) {
-      return result.castTo(type);
+    if (entryLoads.putIfAbsent(key, future) != null) {
+      return; // Already being refreshed (or loaded).
     }
     
-    T item = null;
     try {
-      item = producer.yield();
-    } catch (Exception e) {
-      throw new CacheException(e);
+      refreshExecutor().execute(() -> {
+        try {
+          future.complete(load(key, producer, options));
+        } catch (Exception e) {
+          logger.warn("Failed to refresh cache key {}:", key, e);
+          future.completeExceptionally(e);
+        } finally {
+          entryLoads.remove(key, future);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Refresh queue is full; keep serving the stale value and try again on a later read.
+      entryLoads.remove(key, future);
+      future.completeExceptionally(e);
+    }
+  }
+  
+  private ThreadPoolExecutor refreshExecutor() {
+    ThreadPoolExecutor executor = refreshExecutor;
+    
+    if (executor == null) {
+      synchronized (this) {
+        if (refreshExecutor == null) {
+          refreshExecutor = new ThreadPoolExecutor(
+              refreshThreads, refreshThreads, 60, TimeUnit.SECONDS,
+              new ArrayBlockingQueue<>(refreshQueueSize),
+              new ThreadFactoryBuilder().setDaemon(true).setNameFormat("lightning-cache-refresh-%d").build());
+          refreshExecutor.allowCoreThreadTimeOut(true);
+        }
+        
+        executor = refreshExecutor;
+      }
     }
     
-    set(key, item, expiration);
-    return item;
+    return executor;
+  }
+  
+  /**
+   * Runs loader unless a load for the same key is already in progress, in which case waits for
+   * and returns the result of that load instead. If that load does not finish within loadWaitMs
+   * (or could not be scheduled), runs loader on the calling thread.
+   */
+  private <V> V singleFlight(ConcurrentHashMap<String, CompletableFuture<V>> inflight, String key,
+                             CacheProducer<V> loader) throws CacheException {
+    CompletableFuture<V> future = new CompletableFuture<>();
+    CompletableFuture<V> existing = inflight.putIfAbsent(key, future);
+    
+    if (existing != null) {
+      try {
+        return existing.get(loadWaitMs, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CacheException(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        
+        if (!(cause instanceof RejectedExecutionException)) {
+          throw (cause instanceof Exception) ? new CacheException((Exception) cause) : new CacheException(e);
+        }
+      } catch (TimeoutException e) {
+        logger.warn("Timed out waiting for another thread to load cache key {}.", key);
+      }
+      
+      return loadUncoalesced(loader);
+    }
+    
+    try {
+      V result = loader.yield();
+      future.complete(result);
+      return result;
+    } catch (Exception e) {
+      future.completeExceptionally(e);
+      throw (e instanceof CacheException) ? (CacheException) e : new CacheException(e);
+    } finally {
+      inflight.remove(key, future);
+    }
+  }
+  
+  private static <V> V loadUncoalesced(CacheProducer<V> loader) throws CacheException {
+    try {
+      return loader.yield();
+    } catch (Exception e) {
+      throw (e instanceof CacheException) ? (CacheException) e : new CacheException(e);
+    }
   }
   
   /**
@@ -62,7 +383,147 @@ public final class Cache {
    * @throws CacheException
    */
   public ObjectParam get(String key) throws CacheException {
-    return new ObjectParam(driver.get(key));
+    return new ObjectParam(read(key));
+  }
+  
+  /**
+   * Gets the values for several keys. Keys not found in the cache are loaded with a single
+   * invocation of the producer and then set.
+   * @param keys
+   * @param type
+   * @param producer
+   * @return A map (in the iteration order of keys) containing a value for each key that was
+   *         either cached or produced.
+   * @throws CacheException
+   */
+  public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type, BulkCacheProducer<T> producer) throws CacheException {
+    return getAll(keys, type, producer, DEFAULT_EXPIRATION);
+  }
+  
+  /**
+   * Gets the values for several keys. Keys not found in the cache are loaded with a single
+   * invocation of the producer and then set.
+   * @param keys
+   * @param type
+   * @param producer
+   * @param expiration
+   * @return A map (in the iteration order of keys) containing a value for each key that was
+   *         either cached or produced.
+   * @throws CacheException
+   */
+  public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type, BulkCacheProducer<T> producer, long expiration) throws CacheException {
+    Map<String, Object> cached = execute(keys, () -> driver.getMulti(keys));
+    Set<String> missing = new LinkedHashSet<>();
+    
+    for (String key : keys) {
+      if (!cached.containsKey(key)) {
+        stats.recordMiss(key);
+        missing.add(key);
+      } else {
+        stats.recordHit(key);
+      }
+    }
+    
+    Map<String, T> produced = new HashMap<>();
+    
+    if (!missing.isEmpty()) {
+      long start = System.nanoTime();
+      boolean success = false;
+      
+      try {
+        Map<String, T> result = producer.yield(missing);
+        success = true;
+        
+        if (result != null) {
+          produced = result;
+        }
+      } catch (Exception e) {
+        throw new CacheException(e);
+      } finally {
+        stats.recordLoad(missing, System.nanoTime() - start, success);
+      }
+      
+      Map<String, T> toStore = new HashMap<>();
+      for (String key : missing) {
+        if (produced.get(key) != null) {
+          toStore.put(key, produced.get(key));
+        }
+      }
+      
+      if (!toStore.isEmpty()) {
+        execute(toStore.keySet(), () -> {
+          driver.setMulti(toStore, expiration);
+          return null;
+        });
+      }
+    }
+    
+    Map<String, T> results = new LinkedHashMap<>();
+    
+    for (String key : keys) {
+      if (cached.containsKey(key)) {
+        results.put(key, new ObjectParam(cached.get(key)).castTo(type));
+      } else if (produced.get(key) != null) {
+        results.put(key, produced.get(key));
+      }
+    }
+    
+    return results;
+  }
+  
+  /**
+   * Gets the values for several keys.
+   * @param keys
+   * @return A map containing an entry for each key that exists in the cache.
+   * @throws CacheException
+   */
+  public Map<String, ObjectParam> getMulti(Collection<String> keys) throws CacheException {
+    Map<String, ObjectParam> results = new LinkedHashMap<>();
+    
+    Map<String, Object> values = execute(keys, () -> driver.getMulti(keys));
+    
+    for (String key : keys) {
+      if (values.containsKey(key)) {
+        stats.recordHit(key);
+        results.put(key, new ObjectParam(values.get(key)));
+      } else {
+        stats.recordMiss(key);
+      }
+    }
+    
+    return results;
+  }
+  
+  /**
+   * Sets the values for several keys.
+   * @param values
+   * @param expiration
+   * @throws CacheException
+   */
+  public void setMulti(Map<String, ?> values, long expiration) throws CacheException {
+    execute(values.keySet(), () -> {
+      driver.setMulti(values, expiration);
+      return null;
+    });
+  }
+  
+  /**
+   * Sets the values for several keys.
+   * @param values
+   * @throws CacheException
+   */
+  public void setMulti(Map<String, ?> values) throws CacheException {
+    setMulti(values, DEFAULT_EXPIRATION);
+  }
+  
+  /**
+   * Deletes the values stored for several keys.
+   * @param keys
+   * @return The number of keys that were deleted.
+   * @throws CacheException
+   */
+  public int deleteMulti(Collection<String> keys) throws CacheException {
+    return execute(keys, () -> driver.deleteMulti(keys));
   }
   
   /**
@@ -72,7 +533,15 @@ public final class Cache {
    * @throws CacheException
    */
   public CacheResult gets(String key) throws CacheException {
-    return driver.gets(key);
+    CacheResult result = execute(key, () -> driver.gets(key));
+    
+    if (result != null && result.value.exists()) {
+      stats.recordHit(key);
+    } else {
+      stats.recordMiss(key);
+    }
+    
+    return result;
   }
   
   /**
@@ -83,7 +552,10 @@ public final class Cache {
    * @throws CacheException
    */
   public void set(String key, Object value, long expiration) throws CacheException {
-    driver.set(key, value, expiration);
+    execute(key, () -> {
+      driver.set(key, value, expiration);
+      return null;
+    });
   }
   
   /**
@@ -103,7 +575,7 @@ public final class Cache {
    * @throws CacheException
    */
   public boolean delete(String key) throws CacheException {
-    return driver.delete(key);
+    return execute(key, () -> driver.delete(key));
   }
   
   /**
@@ -116,7 +588,7 @@ public final class Cache {
    * @throws CacheException
    */
   public long increment(String key, long amount, long initial, long expiration) throws CacheException {
-    return driver.incrdecr(key, amount, initial, expiration);
+    return execute(key, () -> driver.incrdecr(key, amount, initial, expiration));
   }
   
   /**
@@ -141,7 +613,7 @@ public final class Cache {
    * @throws CacheException
    */
   public long decrement(String key, long amount, long initial, long expiration) throws CacheException {
-    return driver.incrdecr(key, -amount, initial, expiration);
+    return execute(key, () -> driver.incrdecr(key, -amount, initial, expiration));
   }
   
   /**
@@ -166,7 +638,7 @@ public final class Cache {
    * @throws CacheException
    */
   public boolean cas(String key, Object token, Object value, long expiration) throws CacheException {
-    return driver.cas(key, token, value, expiration);
+    return execute(key, () -> driver.cas(key, token, value, expiration));
   }
   
   /**
@@ -189,7 +661,7 @@ public final class Cache {
    * @throws CacheException
    */
   public boolean touch(String key, long expiration) throws CacheException {
-    return driver.touch(key, expiration);
+    return execute(key, () -> driver.touch(key, expiration));
   }
   
   /**
@@ -207,6 +679,6 @@ public final class Cache {
    * @throws CacheException
    */
   public void clear() throws CacheException {
-    driver.clear();
+    execute(Collections.<String>emptyList(), () -> driver.clear());
   }
 }
@@ -1,5 +1,9 @@
 package lightning.cache;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 public interface CacheDriver {
   public void set(String key, Object value, long expiration) throws CacheException;
   public Object get(String key) throws CacheException;
@@ -9,4 +13,63 @@ public interface CacheDriver {
   public boolean clear() throws CacheException;
   public boolean touch(String key, long expiration) throws CacheException;
   public boolean cas(String key, Object token, Object value, long expiration) throws CacheException;
+
+  /**
+   * Gets the values for several keys. Drivers backed by remote stores should override this to
+   * fetch all keys in a single round trip.
+   * @param keys
+   * @return A map containing an entry for each key that exists in the cache.
+   * @throws CacheException
+   */
+  public default Map<String, Object> getMulti(Collection<String> keys) throws CacheException {
+    Map<String, Object> results = new HashMap<>();
+
+    for (String key : keys) {
+      Object value = get(key);
+
+      if (value != null) {
+        results.put(key, value);
+      }
+    }
+
+    return results;
+  }
+
+  /**
+   * Sets the values for several keys.
+   * @param values
+   * @param expiration
+   * @throws CacheException
+   */
+  public default void setMulti(Map<String, ?> values, long expiration) throws CacheException {
+    for (Map.Entry<String, ?> entry : values.entrySet()) {
+      set(entry.getKey(), entry.getValue(), expiration);
+    }
+  }
+
+  /**
+   * Deletes the values stored for several keys.
+   * @param keys
+   * @return The number of keys that were deleted.
+   * @throws CacheException
+   */
+  public default int deleteMulti(Collection<String> keys) throws CacheException {
+    int count = 0;
+
+    for (String key : keys) {
+      if (delete(key)) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * @return The number of entries evicted by the cache (for capacity or expiration) since the driver
+   *         was created, or 0 if the driver does not track evictions.
+   */
+  public default long evictionCount() {
+    return 0;
+  }
 }
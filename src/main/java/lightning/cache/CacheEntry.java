@@ -0,0 +1,21 @@
+package lightning.cache;
+
+import java.io.Serializable;
+
+/**
+ * The form in which values produced under CacheLoadOptions are stored in the cache driver.
+ * Records when the value stops being fresh and how long it took to produce.
+ */
+final class CacheEntry implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  final Object value;
+  final long freshUntilMs; // 0 if the value never goes stale.
+  final long computeTimeMs;
+
+  CacheEntry(Object value, long freshUntilMs, long computeTimeMs) {
+    this.value = value;
+    this.freshUntilMs = freshUntilMs;
+    this.computeTimeMs = computeTimeMs;
+  }
+}
@@ -0,0 +1,83 @@
+package lightning.cache;
+
+/**
+ * Controls how Cache.get(key, type, producer, options) refreshes values.
+ *
+ * Example:
+ *   // Fresh for 60 seconds, then served stale for up to 30 seconds while one refresh runs in the
+ *   // background. Refreshes probabilistically begin slightly before the value goes stale.
+ *   CacheLoadOptions options = CacheLoadOptions.expireAfter(60).staleFor(30).earlyExpiration(1.0);
+ */
+public final class CacheLoadOptions {
+  private final long expireAfter;
+  private final long staleFor;
+  private final double beta;
+
+  private CacheLoadOptions(long expireAfter, long staleFor, double beta) {
+    this.expireAfter = expireAfter;
+    this.staleFor = staleFor;
+    this.beta = beta;
+  }
+
+  /**
+   * @param seconds Number of seconds for which a produced value is considered fresh (0 for forever).
+   * @return Options with no stale window and no early expiration.
+   */
+  public static CacheLoadOptions expireAfter(long seconds) {
+    if (seconds < 0) {
+      throw new IllegalArgumentException("Expiration must be non-negative.");
+    }
+
+    return new CacheLoadOptions(seconds, 0, 0);
+  }
+
+  /**
+   * Enables stale-while-revalidate: once a value is no longer fresh, it will continue to be served
+   * for the given number of seconds while a single background refresh is performed.
+   * @param seconds Length of the stale window in seconds.
+   * @return A copy of these options with the stale window set.
+   */
+  public CacheLoadOptions staleFor(long seconds) {
+    if (seconds < 0) {
+      throw new IllegalArgumentException("Stale window must be non-negative.");
+    }
+
+    return new CacheLoadOptions(expireAfter, seconds, beta);
+  }
+
+  /**
+   * Enables probabilistic early expiration: a value may be recomputed before it becomes stale
+   * with a probability that increases as expiration approaches and with the time that the
+   * producer took to compute the value. A beta of 1.0 is a reasonable default; larger values
+   * favor earlier recomputation.
+   * @param beta A non-negative scaling factor (0 disables early expiration).
+   * @return A copy of these options with early expiration set.
+   * @see http://www.vldb.org/pvldb/vol8/p886-vattani.pdf
+   */
+  public CacheLoadOptions earlyExpiration(double beta) {
+    if (beta < 0) {
+      throw new IllegalArgumentException("Beta must be non-negative.");
+    }
+
+    return new CacheLoadOptions(expireAfter, staleFor, beta);
+  }
+
+  public long getExpireAfter() {
+    return expireAfter;
+  }
+
+  public long getStaleFor() {
+    return staleFor;
+  }
+
+  public double getEarlyExpirationBeta() {
+    return beta;
+  }
+
+  /**
+   * @return The expiration (in seconds) to pass to the cache driver.
+   */
+  long getHardExpiration() {
+    return (expireAfter == 0) ? 0 : expireAfter + staleFor;
+  }
+}
@@ -0,0 +1,139 @@
+package lightning.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * An immutable snapshot of the statistics collected by a Cache.
+ *
+ * Hits and misses are counted for every key read through the Cache; loads are counted for every
+ * invocation of a producer (including background refreshes). Evictions are as reported by the
+ * cache driver (and are only available in aggregate).
+ */
+public final class CacheStats {
+  private final long hits;
+  private final long misses;
+  private final long loads;
+  private final long loadFailures;
+  private final long loadTimeNanos;
+  private final long errors;
+  private final long evictions;
+  private final long[] loadTimeHistogram;
+  private final Map<String, CacheStats> byPrefix;
+
+  CacheStats(long hits, long misses, long loads, long loadFailures, long loadTimeNanos,
+             long errors, long evictions, long[] loadTimeHistogram, Map<String, CacheStats> byPrefix) {
+    this.hits = hits;
+    this.misses = misses;
+    this.loads = loads;
+    this.loadFailures = loadFailures;
+    this.loadTimeNanos = loadTimeNanos;
+    this.errors = errors;
+    this.evictions = evictions;
+    this.loadTimeHistogram = loadTimeHistogram;
+    this.byPrefix = (byPrefix != null) ? ImmutableMap.copyOf(byPrefix) : ImmutableMap.of();
+  }
+
+  public long getHitCount() {
+    return hits;
+  }
+
+  public long getMissCount() {
+    return misses;
+  }
+
+  public long getRequestCount() {
+    return hits + misses;
+  }
+
+  /**
+   * @return The fraction of reads that were hits (or 1.0 if there were no reads).
+   */
+  public double getHitRatio() {
+    long requests = getRequestCount();
+    return (requests == 0) ? 1.0 : (double) hits / requests;
+  }
+
+  public long getLoadCount() {
+    return loads;
+  }
+
+  public long getLoadFailureCount() {
+    return loadFailures;
+  }
+
+  public long getTotalLoadTimeNanos() {
+    return loadTimeNanos;
+  }
+
+  public double getAverageLoadTimeMs() {
+    return (loads == 0) ? 0.0 : (double) loadTimeNanos / loads / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  /**
+   * @return The number of driver operations that failed with an exception.
+   */
+  public long getErrorCount() {
+    return errors;
+  }
+
+  public long getEvictionCount() {
+    return evictions;
+  }
+
+  /**
+   * @return Load counts keyed by bucket label (e.g. "<=5ms", ">10000ms"), in ascending order.
+   */
+  public Map<String, Long> getLoadTimeHistogram() {
+    Map<String, Long> result = new LinkedHashMap<>();
+    long[] bounds = CacheStatsRecorder.LOAD_TIME_BUCKETS_MS;
+
+    for (int i = 0; i < bounds.length; i++) {
+      result.put("<=" + bounds[i] + "ms", loadTimeHistogram[i]);
+    }
+
+    result.put(">" + bounds[bounds.length - 1] + "ms", loadTimeHistogram[bounds.length]);
+    return result;
+  }
+
+  /**
+   * @return Statistics for each configured key prefix.
+   */
+  public Map<String, CacheStats> getStatsByPrefix() {
+    return byPrefix;
+  }
+
+  /**
+   * @return A representation of these statistics suitable for JSON encoding.
+   */
+  public Map<String, Object> toMap() {
+    ImmutableMap.Builder<String, Object> builder = new ImmutableMap.Builder<String, Object>()
+        .put("hits", hits)
+        .put("misses", misses)
+        .put("hit_ratio", getHitRatio())
+        .put("loads", loads)
+        .put("load_failures", loadFailures)
+        .put("average_load_time_ms", getAverageLoadTimeMs())
+        .put("load_time_histogram", getLoadTimeHistogram())
+        .put("errors", errors)
+        .put("evictions", evictions);
+
+    if (!byPrefix.isEmpty()) {
+      Map<String, Object> prefixes = new LinkedHashMap<>();
+      for (Map.Entry<String, CacheStats> entry : byPrefix.entrySet()) {
+        prefixes.put(entry.getKey(), entry.getValue().toMap());
+      }
+      builder.put("prefixes", prefixes);
+    }
+
+    return builder.build();
+  }
+
+  @Override
+  public String toString() {
+    return toMap().toString();
+  }
+}
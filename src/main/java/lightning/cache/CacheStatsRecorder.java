@@ -0,0 +1,178 @@
+package lightning.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Lock-free counters for cache operations, kept both globally and per configured key prefix.
+ * Keys that match several prefixes are attributed to the longest one. An operation on several keys
+ * counts once in total and once for each distinct prefix matched by its keys.
+ */
+final class CacheStatsRecorder {
+  // Upper bounds (inclusive, in milliseconds) of the load time histogram buckets.
+  static final long[] LOAD_TIME_BUCKETS_MS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+  static final class Counters {
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder loads = new LongAdder();
+    final LongAdder loadFailures = new LongAdder();
+    final LongAdder loadTimeNanos = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder[] loadTimeHistogram;
+
+    Counters() {
+      loadTimeHistogram = new LongAdder[LOAD_TIME_BUCKETS_MS.length + 1];
+      for (int i = 0; i < loadTimeHistogram.length; i++) {
+        loadTimeHistogram[i] = new LongAdder();
+      }
+    }
+
+    CacheStats snapshot(long evictions, Map<String, CacheStats> byPrefix) {
+      long[] histogram = new long[loadTimeHistogram.length];
+      for (int i = 0; i < histogram.length; i++) {
+        histogram[i] = loadTimeHistogram[i].sum();
+      }
+
+      return new CacheStats(hits.sum(), misses.sum(), loads.sum(), loadFailures.sum(),
+          loadTimeNanos.sum(), errors.sum(), evictions, histogram, byPrefix);
+    }
+  }
+
+  private final Counters total;
+  private final List<String> prefixes;   // Sorted by descending length.
+  private final Counters[] prefixCounters; // Parallel to prefixes.
+
+  CacheStatsRecorder(List<String> prefixes) {
+    this.total = new Counters();
+    this.prefixes = ImmutableList.copyOf(prefixes.stream()
+        .distinct()
+        .sorted((a, b) -> Integer.compare(b.length(), a.length()))
+        .iterator());
+    this.prefixCounters = new Counters[this.prefixes.size()];
+    for (int i = 0; i < prefixCounters.length; i++) {
+      prefixCounters[i] = new Counters();
+    }
+  }
+
+  private int indexFor(String key) {
+    for (int i = 0; i < prefixCounters.length; i++) {
+      if (key.startsWith(prefixes.get(i))) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private Counters forKey(String key) {
+    int index = indexFor(key);
+    return (index != -1) ? prefixCounters[index] : null;
+  }
+
+  /**
+   * @return The counters for each distinct prefix matched by keys.
+   */
+  private List<Counters> forKeys(Collection<String> keys) {
+    if (prefixCounters.length == 0 || keys.isEmpty()) {
+      return ImmutableList.of();
+    }
+
+    boolean[] matched = new boolean[prefixCounters.length];
+    List<Counters> result = new ArrayList<>();
+
+    for (String key : keys) {
+      int index = indexFor(key);
+      if (index != -1 && !matched[index]) {
+        matched[index] = true;
+        result.add(prefixCounters[index]);
+      }
+    }
+
+    return result;
+  }
+
+  void recordHit(String key) {
+    total.hits.increment();
+    Counters counters = forKey(key);
+    if (counters != null) {
+      counters.hits.increment();
+    }
+  }
+
+  void recordMiss(String key) {
+    total.misses.increment();
+    Counters counters = forKey(key);
+    if (counters != null) {
+      counters.misses.increment();
+    }
+  }
+
+  void recordError(String key) {
+    total.errors.increment();
+    Counters counters = forKey(key);
+    if (counters != null) {
+      counters.errors.increment();
+    }
+  }
+
+  void recordError(Collection<String> keys) {
+    total.errors.increment();
+    for (Counters counters : forKeys(keys)) {
+      counters.errors.increment();
+    }
+  }
+
+  void recordLoad(Collection<String> keys, long nanos, boolean success) {
+    int bucket = bucketFor(TimeUnit.NANOSECONDS.toMillis(nanos));
+    record(total, nanos, bucket, success);
+    for (Counters counters : forKeys(keys)) {
+      record(counters, nanos, bucket, success);
+    }
+  }
+
+  void recordLoad(String key, long nanos, boolean success) {
+    int bucket = bucketFor(TimeUnit.NANOSECONDS.toMillis(nanos));
+    record(total, nanos, bucket, success);
+    Counters counters = forKey(key);
+    if (counters != null) {
+      record(counters, nanos, bucket, success);
+    }
+  }
+
+  private static void record(Counters counters, long nanos, int bucket, boolean success) {
+    counters.loads.increment();
+    counters.loadTimeNanos.add(nanos);
+    counters.loadTimeHistogram[bucket].increment();
+    if (!success) {
+      counters.loadFailures.increment();
+    }
+  }
+
+  private static int bucketFor(long millis) {
+    for (int i = 0; i < LOAD_TIME_BUCKETS_MS.length; i++) {
+      if (millis <= LOAD_TIME_BUCKETS_MS[i]) {
+        return i;
+      }
+    }
+
+    return LOAD_TIME_BUCKETS_MS.length;
+  }
+
+  CacheStats snapshot(long evictions) {
+    Map<String, CacheStats> byPrefix = new TreeMap<>();
+
+    for (int i = 0; i < prefixCounters.length; i++) {
+      byPrefix.put(prefixes.get(i), prefixCounters[i].snapshot(0, null));
+    }
+
+    return total.snapshot(evictions, byPrefix);
+  }
+}
@@ -0,0 +1,48 @@
+package lightning.cache.driver;
+
+/**
+ * A channel over which cache nodes broadcast that locally held copies of keys have become stale.
+ * Used by NearCacheDriver to evict entries from the in-process caches of peers.
+ *
+ * Implementations must deliver messages published by any node to every subscribed listener
+ * (including listeners in the publishing process). Delivery may be asynchronous and need not be
+ * ordered; near caches additionally bound staleness with a TTL.
+ */
+public interface InvalidationChannel {
+  /**
+   * Receives invalidation messages.
+   */
+  public static interface Listener {
+    /**
+     * Invoked when the value stored for a key has changed.
+     * @param key A cache key.
+     */
+    public void onInvalidate(String key);
+
+    /**
+     * Invoked when the entire cache has been cleared.
+     */
+    public void onInvalidateAll();
+  }
+
+  /**
+   * Announces to all subscribers that a key has changed.
+   * @param key A cache key.
+   */
+  public void publish(String key);
+
+  /**
+   * Announces to all subscribers that the cache has been cleared.
+   */
+  public void publishAll();
+
+  /**
+   * @param listener A listener to receive all future messages.
+   */
+  public void subscribe(Listener listener);
+
+  /**
+   * @param listener A listener that should no longer receive messages.
+   */
+  public void unsubscribe(Listener listener);
+}
@@ -0,0 +1,40 @@
+package lightning.cache.driver;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An invalidation channel which delivers messages synchronously to listeners within the
+ * same JVM. Useful for tests and for processes that run several near caches over one remote cache.
+ */
+public class LocalInvalidationChannel implements InvalidationChannel {
+  private final List<Listener> listeners;
+
+  public LocalInvalidationChannel() {
+    listeners = new CopyOnWriteArrayList<>();
+  }
+
+  @Override
+  public void publish(String key) {
+    for (Listener listener : listeners) {
+      listener.onInvalidate(key);
+    }
+  }
+
+  @Override
+  public void publishAll() {
+    for (Listener listener : listeners) {
+      listener.onInvalidateAll();
+    }
+  }
+
+  @Override
+  public void subscribe(Listener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void unsubscribe(Listener listener) {
+    listeners.remove(listener);
+  }
+}
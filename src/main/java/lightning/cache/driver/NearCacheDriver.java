@@ -0,0 +1,261 @@
+package lightning.cache.driver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import lightning.cache.CacheDriver;
+import lightning.cache.CacheException;
+import lightning.cache.CacheResult;
+
+/**
+ * A two-tier cache driver which fronts a (typically remote) cache driver with a small in-process
+ * cache, so that reads of hot keys usually do not leave the JVM.
+ *
+ * Semantics:
+ * - Entries are held locally for at most the configured TTL; this bounds staleness if an
+ *   invalidation message is lost.
+ * - Writes (set, delete, cas, incrdecr, clear and their multi-key forms) always go to the remote driver, evict the local copy,
+ *   and broadcast an invalidation over the channel so that peers evict their copies.
+ * - gets always consults the remote driver (check-and-set tokens are never cached locally).
+ * - Misses are not cached locally.
+ * - Values returned from the local tier are shared between callers and must not be mutated.
+ *
+ * With more than one server, the channel must reach every server (e.g. RedisInvalidationChannel);
+ * a LocalInvalidationChannel (the default) only suits a single server, since other servers would
+ * observe writes up to the TTL late.
+ *
+ * Usage:
+ *   CacheDriver remote = new RedisCacheDriver("localhost");
+ *   InvalidationChannel channel = new RedisInvalidationChannel("localhost");
+ *   module.bindClassToInstance(CacheDriver.class, new NearCacheDriver(remote, channel, 1000, 5, TimeUnit.SECONDS));
+ */
+public class NearCacheDriver implements CacheDriver, InvalidationChannel.Listener, AutoCloseable {
+  private final CacheDriver remote;
+  private final InvalidationChannel channel;
+  private final Cache<String, Object> local;
+
+  // Incremented on every invalidation; a value read from the remote driver is only stored locally
+  // if no invalidation occurred while it was being read (otherwise it may already be stale).
+  private final AtomicLong epoch;
+
+  /**
+   * @param remote The driver to use as the authoritative (second) tier.
+   * @param channel The channel used to exchange invalidation messages with peers.
+   * @param maximumSize The maximum number of entries to hold locally.
+   * @param ttl The maximum amount of time to hold an entry locally.
+   * @param unit The unit of ttl.
+   */
+  public NearCacheDriver(CacheDriver remote, InvalidationChannel channel, long maximumSize, long ttl, TimeUnit unit) {
+    this.remote = remote;
+    this.channel = channel;
+    this.epoch = new AtomicLong();
+    this.local = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttl, unit)
+        .recordStats()
+        .build();
+    this.channel.subscribe(this);
+  }
+
+  /**
+   * Creates a driver that does not exchange invalidations with peers (suitable for a single server).
+   * @param remote The driver to use as the authoritative (second) tier.
+   * @param maximumSize The maximum number of entries to hold locally.
+   * @param ttl The maximum amount of time to hold an entry locally.
+   * @param unit The unit of ttl.
+   */
+  public NearCacheDriver(CacheDriver remote, long maximumSize, long ttl, TimeUnit unit) {
+    this(remote, new LocalInvalidationChannel(), maximumSize, ttl, unit);
+  }
+
+  /**
+   * @return The driver used as the second tier.
+   */
+  public CacheDriver getRemoteDriver() {
+    return remote;
+  }
+
+  private void fill(String key, Object value, long observedEpoch) {
+    if (value == null || epoch.get() != observedEpoch) {
+      return;
+    }
+
+    local.put(key, value);
+
+    // An invalidation may have raced with the put above; undo it if so.
+    if (epoch.get() != observedEpoch) {
+      local.invalidate(key);
+    }
+  }
+
+  private void invalidate(String key) {
+    onInvalidate(key);
+    channel.publish(key);
+  }
+
+  @Override
+  public void onInvalidate(String key) {
+    epoch.incrementAndGet();
+    local.invalidate(key);
+  }
+
+  @Override
+  public void onInvalidateAll() {
+    epoch.incrementAndGet();
+    local.invalidateAll();
+  }
+
+  @Override
+  public void set(String key, Object value, long expiration) throws CacheException {
+    try {
+      remote.set(key, value, expiration);
+    } finally {
+      invalidate(key);
+    }
+  }
+
+  @Override
+  public Object get(String key) throws CacheException {
+    Object value = local.getIfPresent(key);
+
+    if (value != null) {
+      return value;
+    }
+
+    long observedEpoch = epoch.get();
+    value = remote.get(key);
+    fill(key, value, observedEpoch);
+    return value;
+  }
+
+  @Override
+  public CacheResult gets(String key) throws CacheException {
+    long observedEpoch = epoch.get();
+    CacheResult result = remote.gets(key);
+
+    if (result != null && result.value.exists()) {
+      fill(key, result.value.objectOption().orNull(), observedEpoch);
+    }
+
+    return result;
+  }
+
+  @Override
+  public boolean delete(String key) throws CacheException {
+    try {
+      return remote.delete(key);
+    } finally {
+      invalidate(key);
+    }
+  }
+
+  @Override
+  public Map<String, Object> getMulti(Collection<String> keys) throws CacheException {
+    Map<String, Object> results = new HashMap<>();
+    List<String> missing = new ArrayList<>();
+
+    for (String key : keys) {
+      Object value = local.getIfPresent(key);
+
+      if (value != null) {
+        results.put(key, value);
+      } else {
+        missing.add(key);
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      long observedEpoch = epoch.get();
+      Map<String, Object> fetched = remote.getMulti(missing);
+
+      for (Map.Entry<String, Object> entry : fetched.entrySet()) {
+        fill(entry.getKey(), entry.getValue(), observedEpoch);
+        results.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    return results;
+  }
+
+  @Override
+  public void setMulti(Map<String, ?> values, long expiration) throws CacheException {
+    try {
+      remote.setMulti(values, expiration);
+    } finally {
+      for (String key : values.keySet()) {
+        invalidate(key);
+      }
+    }
+  }
+
+  @Override
+  public int deleteMulti(Collection<String> keys) throws CacheException {
+    try {
+      return remote.deleteMulti(keys);
+    } finally {
+      for (String key : keys) {
+        invalidate(key);
+      }
+    }
+  }
+
+  @Override
+  public long incrdecr(String key, long amount, long initial, long expiration) throws CacheException {
+    try {
+      return remote.incrdecr(key, amount, initial, expiration);
+    } finally {
+      invalidate(key);
+    }
+  }
+
+  @Override
+  public boolean clear() throws CacheException {
+    try {
+      return remote.clear();
+    } finally {
+      onInvalidateAll();
+      channel.publishAll();
+    }
+  }
+
+  @Override
+  public boolean touch(String key, long expiration) throws CacheException {
+    return remote.touch(key, expiration);
+  }
+
+  @Override
+  public boolean cas(String key, Object token, Object value, long expiration) throws CacheException {
+    try {
+      return remote.cas(key, token, value, expiration);
+    } finally {
+      // Even if the cas failed, the local copy may be stale (that may be why it failed).
+      invalidate(key);
+    }
+  }
+
+  /**
+   * @return The number of entries evicted from the local tier (for size or TTL).
+   */
+  @Override
+  public long evictionCount() {
+    return local.stats().evictionCount();
+  }
+
+  @Override
+  public void close() throws Exception {
+    channel.unsubscribe(this);
+    local.invalidateAll();
+
+    if (remote instanceof AutoCloseable) {
+      ((AutoCloseable) remote).close();
+    }
+  }
+}
@@ -0,0 +1,404 @@
+package lightning.cache.driver;
+
+import static lightning.cache.driver.RespReader.bytes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.collect.ImmutableList;
+
+import lightning.cache.CacheDriver;
+import lightning.cache.CacheException;
+import lightning.cache.CacheResult;
+import lightning.codec.BinaryCodec;
+import lightning.codec.Codec;
+import lightning.codec.CodecException;
+
+/**
+ * A cache driver backed by a Redis server (speaking RESP2 over a non-blocking socket channel).
+ *
+ * Commands issued concurrently by request threads are merged into pipelined writes on a single
+ * shared connection, so many concurrent cache operations cost roughly one network round trip.
+ *
+ * Semantics:
+ * - Expirations are specified in seconds relative to now; zero means the item never expires.
+ * - Integral values (Long, Integer, Short, Byte) are stored as decimal strings so that they may be
+ *   used with increment/decrement; they are always read back as Long. Other values are encoded
+ *   with a Codec (by default, BinaryCodec).
+ * - incrdecr uses SET NX followed by INCRBY (no server-side scripting is required).
+ * - getMulti and deleteMulti use a single MGET or DEL; setMulti pipelines one SET per key.
+ * - cas uses WATCH/MULTI/EXEC on a dedicated connection; the check-and-set token returned by gets
+ *   is the raw stored value.
+ *
+ * Usage:
+ *   InjectorModule module = new InjectorModule();
+ *   module.bindClassToInstance(CacheDriver.class, new RedisCacheDriver("localhost", 6379));
+ *   new LightningServer(config, module).start().join();
+ */
+public class RedisCacheDriver implements CacheDriver, AutoCloseable {
+  private static final byte[] SET = bytes("SET");
+  private static final byte[] GET = bytes("GET");
+  private static final byte[] MGET = bytes("MGET");
+  private static final byte[] DEL = bytes("DEL");
+  private static final byte[] EXISTS = bytes("EXISTS");
+  private static final byte[] EXPIRE = bytes("EXPIRE");
+  private static final byte[] PERSIST = bytes("PERSIST");
+  private static final byte[] INCRBY = bytes("INCRBY");
+  private static final byte[] FLUSHDB = bytes("FLUSHDB");
+  private static final byte[] WATCH = bytes("WATCH");
+  private static final byte[] UNWATCH = bytes("UNWATCH");
+  private static final byte[] MULTI = bytes("MULTI");
+  private static final byte[] EXEC = bytes("EXEC");
+  private static final byte[] AUTH = bytes("AUTH");
+  private static final byte[] SELECT = bytes("SELECT");
+  private static final byte[] NX = bytes("NX");
+  private static final byte[] EX = bytes("EX");
+
+  private static final int DEFAULT_PORT = 6379;
+  private static final long DEFAULT_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(1);
+  private static final int DEFAULT_CONNECT_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(2);
+
+  private final String host;
+  private final int port;
+  private final String password;
+  private final int database;
+  private final long timeoutMs;
+  private final Codec codec;
+  private final ReentrantLock casLock;
+  private volatile RedisConnection connection;
+  private RedisConnection casConnection;
+
+  public RedisCacheDriver(String host) {
+    this(host, DEFAULT_PORT);
+  }
+
+  public RedisCacheDriver(String host, int port) {
+    this(host, port, null, 0, DEFAULT_TIMEOUT_MS);
+  }
+
+  /**
+   * @param host Host name of the redis server.
+   * @param port Port of the redis server.
+   * @param password Password to AUTH with (or null if none is required).
+   * @param database Index of the database to SELECT.
+   * @param timeoutMs Maximum amount of time to wait for a reply before failing.
+   */
+  public RedisCacheDriver(String host, int port, String password, int database, long timeoutMs) {
+    this(host, port, password, database, timeoutMs, BinaryCodec.getDefault());
+  }
+
+  /**
+   * @param host Host name of the redis server.
+   * @param port Port of the redis server.
+   * @param password Password to AUTH with (or null if none is required).
+   * @param database Index of the database to SELECT.
+   * @param timeoutMs Maximum amount of time to wait for a reply before failing.
+   * @param codec Codec used to encode non-integral values.
+   */
+  public RedisCacheDriver(String host, int port, String password, int database, long timeoutMs, Codec codec) {
+    this.codec = codec;
+    this.host = host;
+    this.port = port;
+    this.password = password;
+    this.database = database;
+    this.timeoutMs = timeoutMs;
+    this.casLock = new ReentrantLock();
+  }
+
+  private RedisConnection open() throws CacheException {
+    RedisConnection conn;
+
+    try {
+      conn = new RedisConnection(host, port, DEFAULT_CONNECT_TIMEOUT_MS, timeoutMs);
+    } catch (IOException e) {
+      throw new CacheException("Failed to connect to redis at " + host + ":" + port + ".", e);
+    }
+
+    try {
+      if (password != null) {
+        conn.execute(AUTH, bytes(password));
+      }
+
+      if (database != 0) {
+        conn.execute(SELECT, bytes(Integer.toString(database)));
+      }
+    } catch (CacheException e) {
+      conn.close();
+      throw e;
+    }
+
+    return conn;
+  }
+
+  /**
+   * @return The shared pipelined connection (re-established if it was lost).
+   * @throws CacheException On failure to connect.
+   */
+  private RedisConnection connection() throws CacheException {
+    RedisConnection conn = connection;
+
+    if (conn != null && conn.isOpen()) {
+      return conn;
+    }
+
+    synchronized (this) {
+      if (connection == null || !connection.isOpen()) {
+        connection = open();
+      }
+
+      return connection;
+    }
+  }
+
+  /**
+   * @return The connection reserved for check-and-set transactions. Caller must hold casLock.
+   * @throws CacheException On failure to connect.
+   */
+  private RedisConnection casConnection() throws CacheException {
+    if (casConnection == null || !casConnection.isOpen()) {
+      casConnection = open();
+    }
+
+    return casConnection;
+  }
+
+  private static byte[] key(String key) {
+    return key.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] seconds(long expiration) {
+    return bytes(Long.toString(expiration));
+  }
+
+  private static byte[][] setCommand(String key, byte[] value, long expiration) {
+    if (expiration > 0) {
+      return new byte[][] {SET, key(key), value, EX, seconds(expiration)};
+    }
+
+    return new byte[][] {SET, key(key), value};
+  }
+
+  /**
+   * Encodes a value for storage.
+   * @param value A value.
+   * @return The bytes to store in redis.
+   * @throws CacheException If the value cannot be serialized.
+   */
+  protected byte[] encodeValue(Object value) throws CacheException {
+    if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return bytes(value.toString());
+    }
+
+    try {
+      return codec.encode(value);
+    } catch (CodecException e) {
+      throw new CacheException("Unable to encode value.", e);
+    }
+  }
+
+  /**
+   * Decodes a value that was stored by encodeValue (or by INCRBY).
+   * @param data Bytes stored in redis (or null).
+   * @return The decoded value.
+   * @throws CacheException If the value cannot be deserialized.
+   */
+  protected Object decodeValue(byte[] data) throws CacheException {
+    if (data == null) {
+      return null;
+    }
+
+    if (isInteger(data)) {
+      return Long.parseLong(new String(data, StandardCharsets.US_ASCII));
+    }
+
+    try {
+      return codec.decode(data);
+    } catch (CodecException e) {
+      throw new CacheException("Unable to decode value.", e);
+    }
+  }
+
+  private static boolean isInteger(byte[] data) {
+    if (data.length == 0 || data.length > 20) {
+      return false;
+    }
+
+    for (int i = 0; i < data.length; i++) {
+      byte b = data[i];
+      if (!((b >= '0' && b <= '9') || (i == 0 && b == '-' && data.length > 1))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public void set(String key, Object value, long expiration) throws CacheException {
+    connection().execute(setCommand(key, encodeValue(value), expiration));
+  }
+
+  @Override
+  public Object get(String key) throws CacheException {
+    return decodeValue((byte[]) connection().execute(GET, key(key)));
+  }
+
+  @Override
+  public CacheResult gets(String key) throws CacheException {
+    byte[] data = (byte[]) connection().execute(GET, key(key));
+    return new CacheResult(data, decodeValue(data));
+  }
+
+  @Override
+  public boolean delete(String key) throws CacheException {
+    return ((Long) connection().execute(DEL, key(key))) > 0;
+  }
+
+  @Override
+  public Map<String, Object> getMulti(Collection<String> keys) throws CacheException {
+    Map<String, Object> results = new HashMap<>();
+
+    if (keys.isEmpty()) {
+      return results;
+    }
+
+    List<String> orderedKeys = new ArrayList<>(keys);
+    byte[][] command = new byte[orderedKeys.size() + 1][];
+    command[0] = MGET;
+    for (int i = 0; i < orderedKeys.size(); i++) {
+      command[i + 1] = key(orderedKeys.get(i));
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Object> replies = (List<Object>) connection().execute(command);
+
+    for (int i = 0; i < orderedKeys.size(); i++) {
+      Object value = decodeValue((byte[]) replies.get(i));
+
+      if (value != null) {
+        results.put(orderedKeys.get(i), value);
+      }
+    }
+
+    return results;
+  }
+
+  @Override
+  public void setMulti(Map<String, ?> values, long expiration) throws CacheException {
+    if (values.isEmpty()) {
+      return;
+    }
+
+    List<byte[][]> commands = new ArrayList<>(values.size());
+
+    for (Map.Entry<String, ?> entry : values.entrySet()) {
+      commands.add(setCommand(entry.getKey(), encodeValue(entry.getValue()), expiration));
+    }
+
+    connection().executeAll(commands);
+  }
+
+  @Override
+  public int deleteMulti(Collection<String> keys) throws CacheException {
+    if (keys.isEmpty()) {
+      return 0;
+    }
+
+    byte[][] command = new byte[keys.size() + 1][];
+    command[0] = DEL;
+    int i = 1;
+    for (String key : keys) {
+      command[i++] = key(key);
+    }
+
+    return ((Long) connection().execute(command)).intValue();
+  }
+
+  @Override
+  public long incrdecr(String key, long amount, long initial, long expiration) throws CacheException {
+    // Seed the key such that the increment below yields the initial value iff the key was absent.
+    byte[] seed = bytes(Long.toString(initial - amount));
+    byte[][] create = (expiration > 0)
+        ? new byte[][] {SET, key(key), seed, NX, EX, seconds(expiration)}
+        : new byte[][] {SET, key(key), seed, NX};
+    byte[][] increment = new byte[][] {INCRBY, key(key), bytes(Long.toString(amount))};
+
+    List<Object> replies = connection().executeAll(ImmutableList.of(create, increment));
+    return (Long) replies.get(1);
+  }
+
+  @Override
+  public boolean clear() throws CacheException {
+    connection().execute(FLUSHDB);
+    return true;
+  }
+
+  @Override
+  public boolean touch(String key, long expiration) throws CacheException {
+    if (expiration > 0) {
+      return ((Long) connection().execute(EXPIRE, key(key), seconds(expiration))) > 0;
+    }
+
+    List<Object> replies = connection().executeAll(ImmutableList.of(
+        new byte[][] {PERSIST, key(key)},
+        new byte[][] {EXISTS, key(key)}));
+    return ((Long) replies.get(1)) > 0;
+  }
+
+  @Override
+  public boolean cas(String key, Object token, Object value, long expiration) throws CacheException {
+    if (!(token instanceof byte[])) {
+      return false;
+    }
+
+    byte[] replacement = encodeValue(value);
+    casLock.lock();
+
+    try {
+      RedisConnection conn = casConnection();
+      conn.execute(WATCH, key(key));
+
+      byte[] current = (byte[]) conn.execute(GET, key(key));
+      if (current == null || !Arrays.equals(current, (byte[]) token)) {
+        conn.execute(UNWATCH);
+        return false;
+      }
+
+      List<Object> replies = conn.executeAll(ImmutableList.of(
+          new byte[][] {MULTI},
+          setCommand(key, replacement, expiration),
+          new byte[][] {EXEC}));
+
+      // EXEC returns nil if the watched key was modified by another client.
+      return replies.get(2) != null;
+    } finally {
+      casLock.unlock();
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (connection != null) {
+      connection.close();
+      connection = null;
+    }
+
+    casLock.lock();
+    try {
+      if (casConnection != null) {
+        casConnection.close();
+        casConnection = null;
+      }
+    } finally {
+      casLock.unlock();
+    }
+  }
+}
@@ -0,0 +1,247 @@
+package lightning.cache.driver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lightning.cache.CacheException;
+import lightning.cache.driver.RespReader.ErrorReply;
+import lightning.cache.driver.RespReader.RespBuffer;
+
+/**
+ * A single pipelined connection to a Redis server.
+ *
+ * Any number of threads may submit commands concurrently. Submitted commands are placed on a queue
+ * which is drained by a writer thread; every command waiting in the queue is written to the socket
+ * in a single write (so concurrent requests are automatically merged into pipelines). A reader
+ * thread decodes replies and completes the futures of in-flight commands in the order that they
+ * were written.
+ *
+ * If the connection fails, all pending and future commands fail; the owner is expected to open
+ * a new connection.
+ */
+final class RedisConnection implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(RedisConnection.class);
+  private static final int MAX_COMMANDS_PER_WRITE = 1024;
+  private static final int BUFFER_SIZE = 1024 * 64;
+
+  private static final class PendingCommand {
+    final byte[][] args;
+    final CompletableFuture<Object> future;
+
+    PendingCommand(byte[][] args) {
+      this.args = args;
+      this.future = new CompletableFuture<>();
+    }
+  }
+
+  private final SocketChannel channel;
+  private final BlockingQueue<PendingCommand> outgoing;
+  private final Queue<PendingCommand> inflight;
+  private final Thread writer;
+  private final Thread reader;
+  private final long timeoutMs;
+  private volatile boolean isClosed;
+
+  RedisConnection(String host, int port, int connectTimeoutMs, long timeoutMs) throws IOException {
+    this.timeoutMs = timeoutMs;
+    this.outgoing = new LinkedBlockingQueue<>();
+    this.inflight = new ConcurrentLinkedQueue<>();
+    this.channel = SocketChannel.open();
+    this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    this.channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+    this.channel.socket().connect(new InetSocketAddress(host, port), connectTimeoutMs);
+    this.isClosed = false;
+
+    String name = String.format("lightning-redis-%s:%d", host, port);
+    this.writer = new Thread(this::writeLoop, name + "-writer");
+    this.writer.setDaemon(true);
+    this.reader = new Thread(this::readLoop, name + "-reader");
+    this.reader.setDaemon(true);
+    this.writer.start();
+    this.reader.start();
+  }
+
+  boolean isOpen() {
+    return !isClosed;
+  }
+
+  /**
+   * Queues a command for execution.
+   * @param args Command name and arguments.
+   * @return A future that completes with the decoded reply.
+   */
+  CompletableFuture<Object> submit(byte[]... args) {
+    PendingCommand command = new PendingCommand(args);
+
+    if (isClosed) {
+      command.future.completeExceptionally(new IOException("Connection is closed."));
+      return command.future;
+    }
+
+    outgoing.add(command);
+
+    if (isClosed) {
+      // Raced with close(); make sure the command does not hang.
+      failAll(new IOException("Connection is closed."));
+    }
+
+    return command.future;
+  }
+
+  /**
+   * Executes a single command and waits for its reply.
+   * @param args Command name and arguments.
+   * @return The decoded reply.
+   * @throws CacheException On failure, timeout, or if the server returned an error.
+   */
+  Object execute(byte[]... args) throws CacheException {
+    return await(submit(args));
+  }
+
+  /**
+   * Queues several commands at once and waits for all of their replies. The commands are
+   * written to the server in the order given.
+   * @param commands A list of commands.
+   * @return The decoded replies (in the same order as commands).
+   * @throws CacheException On failure, timeout, or if the server returned an error for any command.
+   */
+  List<Object> executeAll(List<byte[][]> commands) throws CacheException {
+    List<CompletableFuture<Object>> futures = new ArrayList<>(commands.size());
+
+    for (byte[][] command : commands) {
+      futures.add(submit(command));
+    }
+
+    List<Object> replies = new ArrayList<>(futures.size());
+
+    for (CompletableFuture<Object> future : futures) {
+      replies.add(await(future));
+    }
+
+    return replies;
+  }
+
+  private Object await(CompletableFuture<Object> future) throws CacheException {
+    Object reply;
+
+    try {
+      reply = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      close();
+      throw new CacheException("Timed out waiting for a reply from redis.", e);
+    } catch (ExecutionException e) {
+      throw new CacheException("Failed to communicate with redis.", (Exception) e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheException(e);
+    }
+
+    if (reply instanceof ErrorReply) {
+      throw new CacheException("Redis returned an error: " + reply);
+    }
+
+    return reply;
+  }
+
+  private void writeLoop() {
+    RespBuffer buffer = new RespBuffer(BUFFER_SIZE);
+    List<PendingCommand> batch = new ArrayList<>();
+
+    try {
+      while (!isClosed) {
+        batch.add(outgoing.take());
+        outgoing.drainTo(batch, MAX_COMMANDS_PER_WRITE - 1);
+
+        buffer.reset();
+        for (PendingCommand command : batch) {
+          RespReader.encode(buffer, command.args);
+          inflight.add(command); // Must happen before write so the reader can match the reply.
+        }
+        batch.clear();
+
+        ByteBuffer data = buffer.asByteBuffer();
+        while (data.hasRemaining()) {
+          channel.write(data);
+        }
+      }
+    } catch (InterruptedException e) {
+      // Closing.
+    } catch (IOException e) {
+      if (!isClosed) {
+        logger.warn("Lost connection to redis:", e);
+      }
+    } finally {
+      for (PendingCommand command : batch) {
+        inflight.add(command);
+      }
+      close();
+    }
+  }
+
+  private void readLoop() {
+    RespReader parser = new RespReader(channel, BUFFER_SIZE);
+
+    try {
+      while (!isClosed) {
+        Object reply = parser.read();
+        PendingCommand command = inflight.poll();
+
+        if (command == null) {
+          throw new IOException("Protocol error: received a reply for no command.");
+        }
+
+        command.future.complete(reply);
+      }
+    } catch (IOException e) {
+      if (!isClosed) {
+        logger.warn("Lost connection to redis:", e);
+      }
+    } finally {
+      close();
+    }
+  }
+
+  private void failAll(Exception e) {
+    PendingCommand command;
+
+    while ((command = inflight.poll()) != null) {
+      command.future.completeExceptionally(e);
+    }
+
+    while ((command = outgoing.poll()) != null) {
+      command.future.completeExceptionally(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (!isClosed) {
+      isClosed = true;
+      writer.interrupt();
+
+      try {
+        channel.close();
+      } catch (IOException e) {
+        logger.debug("Error closing redis connection:", e);
+      }
+    }
+
+    failAll(new IOException("Connection is closed."));
+  }
+}
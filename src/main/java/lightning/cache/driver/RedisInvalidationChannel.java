@@ -0,0 +1,358 @@
+package lightning.cache.driver;
+
+import static lightning.cache.driver.RespReader.bytes;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lightning.cache.CacheException;
+import lightning.cache.driver.RespReader.ErrorReply;
+import lightning.cache.driver.RespReader.RespBuffer;
+
+/**
+ * An invalidation channel which exchanges messages between servers using Redis pub/sub, so that
+ * near caches (see NearCacheDriver) and auth caches (see AuthCache) on every server observe writes
+ * made on any server.
+ *
+ * Semantics:
+ * - Messages are delivered to listeners in the publishing process synchronously, and to listeners
+ *   in other processes asynchronously (on a dedicated subscriber thread).
+ * - Publishing never blocks on or fails because of Redis: messages for other processes are queued
+ *   and sent by a dedicated sender thread, which also (re)connects to Redis with a delay between
+ *   attempts. If messages may have been lost (the queue overflowed or a send failed), every other
+ *   server is told to invalidate everything once a message can be sent again.
+ * - If the subscription is lost, it is re-established in the background and every listener is
+ *   told to invalidate everything (since messages may have been missed in the meantime).
+ *
+ * Usage:
+ *   InvalidationChannel channel = new RedisInvalidationChannel("localhost", 6379);
+ *   module.bindClassToInstance(InvalidationChannel.class, channel);
+ *   module.bindClassToInstance(CacheDriver.class, new NearCacheDriver(remote, channel, 1000, 5, TimeUnit.SECONDS));
+ */
+public class RedisInvalidationChannel implements InvalidationChannel, AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(RedisInvalidationChannel.class);
+  private static final byte[] AUTH = bytes("AUTH");
+  private static final byte[] PUBLISH = bytes("PUBLISH");
+  private static final byte[] SUBSCRIBE = bytes("SUBSCRIBE");
+  private static final byte[] MESSAGE = bytes("message");
+  private static final String ALL = "*";
+  private static final String KEY = "=";
+
+  private static final int DEFAULT_PORT = 6379;
+  private static final String DEFAULT_CHANNEL = "lightning-invalidations";
+  private static final long DEFAULT_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(1);
+  private static final int CONNECT_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(2);
+  private static final long RECONNECT_DELAY_MS = TimeUnit.SECONDS.toMillis(1);
+  private static final int BUFFER_SIZE = 1024 * 16;
+  private static final int MAX_QUEUED_MESSAGES = 10000;
+
+  private final String host;
+  private final int port;
+  private final String password;
+  private final byte[] channel;
+  private final long timeoutMs;
+  private final String nodeId;
+  private final List<Listener> listeners;
+  private final Thread subscriber;
+  private final Thread sender;
+  private final BlockingQueue<String> outgoing;
+  private volatile RedisConnection publisher;     // Opened only by the sender thread.
+  private volatile boolean lostMessages;          // Whether peers may have missed a message.
+  private volatile SocketChannel subscription;
+  private volatile boolean isSubscribed;
+  private volatile boolean isClosed;
+
+  public RedisInvalidationChannel(String host) {
+    this(host, DEFAULT_PORT);
+  }
+
+  public RedisInvalidationChannel(String host, int port) {
+    this(host, port, null, DEFAULT_CHANNEL, DEFAULT_TIMEOUT_MS);
+  }
+
+  /**
+   * @param host Host name of the redis server.
+   * @param port Port of the redis server.
+   * @param password Password to AUTH with (or null if none is required).
+   * @param channel Name of the pub/sub channel (must be the same on every server).
+   * @param timeoutMs Maximum amount of time to wait for a reply before failing.
+   */
+  public RedisInvalidationChannel(String host, int port, String password, String channel, long timeoutMs) {
+    this.host = host;
+    this.port = port;
+    this.password = password;
+    this.channel = bytes(channel);
+    this.timeoutMs = timeoutMs;
+    this.nodeId = UUID.randomUUID().toString();
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.isSubscribed = false;
+    this.isClosed = false;
+    this.outgoing = new LinkedBlockingQueue<>(MAX_QUEUED_MESSAGES);
+    this.lostMessages = false;
+    this.subscriber = new Thread(this::subscribeLoop, String.format("lightning-invalidations-%s:%d", host, port));
+    this.subscriber.setDaemon(true);
+    this.sender = new Thread(this::sendLoop, String.format("lightning-invalidations-%s:%d-sender", host, port));
+    this.sender.setDaemon(true);
+    this.subscriber.start();
+    this.sender.start();
+  }
+
+  /**
+   * @return Whether messages published by other servers are currently being received.
+   */
+  public boolean isSubscribed() {
+    return isSubscribed;
+  }
+
+  @Override
+  public void publish(String key) {
+    deliver(KEY + key);
+    send(KEY + key);
+  }
+
+  @Override
+  public void publishAll() {
+    deliver(ALL);
+    send(ALL);
+  }
+
+  @Override
+  public void subscribe(Listener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void unsubscribe(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  @Override
+  public void close() {
+    isClosed = true;
+    subscriber.interrupt();
+    sender.interrupt();
+
+    SocketChannel socket = subscription;
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        logger.debug("Error closing redis subscription:", e);
+      }
+    }
+
+    RedisConnection connection = publisher;
+    if (connection != null) {
+      connection.close();
+    }
+  }
+
+  /**
+   * Queues a message for other processes (never blocks).
+   */
+  private void send(String message) {
+    if (!outgoing.offer(message)) {
+      // Rather than dropping messages silently, have every peer invalidate everything.
+      lostMessages = true;
+      outgoing.clear();
+      logger.warn("Cache invalidation queue is full; peers will invalidate everything.");
+    }
+  }
+
+  private void sendLoop() {
+    while (!isClosed) {
+      String message;
+
+      try {
+        message = outgoing.take();
+      } catch (InterruptedException e) {
+        return; // Closing.
+      }
+
+      try {
+        RedisConnection connection = publisher();
+
+        if (lostMessages) {
+          lostMessages = false;
+          publish(connection, ALL);
+        }
+
+        publish(connection, message);
+      } catch (CacheException e) {
+        lostMessages = true;
+        if (!isClosed) {
+          logger.warn("Failed to publish cache invalidation:", e);
+        }
+
+        try {
+          Thread.sleep(RECONNECT_DELAY_MS); // Messages queued meanwhile are covered by lostMessages.
+        } catch (InterruptedException e2) {
+          return; // Closing.
+        }
+      }
+    }
+  }
+
+  private void publish(RedisConnection connection, String message) {
+    connection.submit(PUBLISH, channel, bytes(nodeId + " " + message)).whenComplete((reply, e) -> {
+      if (e != null || reply instanceof ErrorReply) {
+        lostMessages = true;
+        logger.warn("Failed to publish cache invalidation: {}", (e != null) ? e : reply);
+      }
+    });
+  }
+
+  /**
+   * Called only on the sender thread.
+   * @return An open connection for publishing.
+   */
+  private RedisConnection publisher() throws CacheException {
+    RedisConnection connection = publisher;
+
+    if (connection != null && connection.isOpen()) {
+      return connection;
+    }
+
+    if (isClosed) {
+      throw new CacheException("Channel is closed.");
+    }
+
+    try {
+      connection = new RedisConnection(host, port, CONNECT_TIMEOUT_MS, timeoutMs);
+    } catch (IOException e) {
+      throw new CacheException("Failed to connect to redis at " + host + ":" + port + ".", e);
+    }
+
+    if (password != null) {
+      try {
+        connection.execute(AUTH, bytes(password));
+      } catch (CacheException e) {
+        connection.close();
+        throw e;
+      }
+    }
+
+    publisher = connection;
+
+    if (isClosed) {
+      connection.close(); // Raced with close().
+      throw new CacheException("Channel is closed.");
+    }
+
+    return connection;
+  }
+
+  private void subscribeLoop() {
+    boolean missedMessages = false;
+
+    while (!isClosed) {
+      try (SocketChannel socket = SocketChannel.open()) {
+        subscription = socket;
+        if (isClosed) {
+          return; // Raced with close().
+        }
+
+        socket.socket().connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+        RespReader reader = new RespReader(socket, BUFFER_SIZE);
+
+        if (password != null) {
+          write(socket, AUTH, bytes(password));
+          expectReply(reader.read());
+        }
+
+        write(socket, SUBSCRIBE, channel);
+        expectReply(reader.read());
+        isSubscribed = true;
+
+        if (missedMessages) {
+          deliver(ALL);
+          missedMessages = false;
+        }
+
+        while (!isClosed) {
+          dispatch(reader.read());
+        }
+      } catch (IOException e) {
+        if (!isClosed) {
+          logger.warn("Lost cache invalidation subscription to redis:", e);
+        }
+      } finally {
+        isSubscribed = false;
+        missedMessages = true;
+      }
+
+      try {
+        Thread.sleep(RECONNECT_DELAY_MS);
+      } catch (InterruptedException e) {
+        return; // Closing.
+      }
+    }
+  }
+
+  private void dispatch(Object reply) {
+    if (!(reply instanceof List) || ((List<?>) reply).size() != 3) {
+      return;
+    }
+
+    List<?> items = (List<?>) reply;
+    if (!(items.get(0) instanceof byte[]) || !(items.get(2) instanceof byte[])) {
+      return;
+    }
+
+    if (!Arrays.equals(MESSAGE, (byte[]) items.get(0))) {
+      return;
+    }
+
+    String message = new String((byte[]) items.get(2), StandardCharsets.UTF_8);
+    int space = message.indexOf(' ');
+
+    if (space == -1 || message.substring(0, space).equals(nodeId)) {
+      return; // Malformed, or published by (and already delivered in) this process.
+    }
+
+    deliver(message.substring(space + 1));
+  }
+
+  private void deliver(String message) {
+    for (Listener listener : listeners) {
+      try {
+        if (message.equals(ALL)) {
+          listener.onInvalidateAll();
+        } else if (message.startsWith(KEY)) {
+          listener.onInvalidate(message.substring(KEY.length()));
+        }
+      } catch (RuntimeException e) {
+        logger.warn("Cache invalidation listener failed:", e);
+      }
+    }
+  }
+
+  private static void expectReply(Object reply) throws IOException {
+    if (reply instanceof ErrorReply) {
+      throw new IOException("Redis returned an error: " + reply);
+    }
+  }
+
+  private static void write(SocketChannel socket, byte[]... args) throws IOException {
+    RespBuffer buffer = new RespBuffer(256);
+    RespReader.encode(buffer, args);
+    ByteBuffer data = buffer.asByteBuffer();
+
+    while (data.hasRemaining()) {
+      socket.write(data);
+    }
+  }
+}
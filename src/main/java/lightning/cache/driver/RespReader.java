@@ -0,0 +1,209 @@
+package lightning.cache.driver;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses replies encoded in the Redis serialization protocol (RESP2) from a channel.
+ *
+ * Replies are decoded as follows:
+ *   Simple String -> String
+ *   Error         -> RespReader.ErrorReply
+ *   Integer       -> Long
+ *   Bulk String   -> byte[] (or null if nil)
+ *   Array         -> List<Object> (or null if nil)
+ *
+ * This class is not thread-safe.
+ * @see https://redis.io/topics/protocol
+ */
+final class RespReader {
+  private final ReadableByteChannel channel;
+  private final ByteBuffer buffer;
+
+  /**
+   * Represents an error reply sent by the server.
+   */
+  static final class ErrorReply {
+    public final String message;
+
+    ErrorReply(String message) {
+      this.message = message;
+    }
+
+    @Override
+    public String toString() {
+      return message;
+    }
+  }
+
+  RespReader(ReadableByteChannel channel, int bufferSize) {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocate(bufferSize);
+    this.buffer.flip(); // Start empty.
+  }
+
+  /**
+   * Blocks until a complete reply is available and returns it.
+   * @return A decoded reply.
+   * @throws IOException On failure or if the stream ends.
+   */
+  public Object read() throws IOException {
+    byte type = readByte();
+
+    switch (type) {
+      case '+':
+        return readLine();
+      case '-':
+        return new ErrorReply(readLine());
+      case ':':
+        return Long.parseLong(readLine());
+      case '$': {
+        int length = Integer.parseInt(readLine());
+        if (length < 0) {
+          return null;
+        }
+        byte[] data = new byte[length];
+        readFully(data);
+        readByte(); // \r
+        readByte(); // \n
+        return data;
+      }
+      case '*': {
+        int length = Integer.parseInt(readLine());
+        if (length < 0) {
+          return null;
+        }
+        List<Object> items = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+          items.add(read());
+        }
+        return items;
+      }
+      default:
+        throw new IOException("Protocol error: unexpected reply type '" + (char) type + "'.");
+    }
+  }
+
+  private void fill() throws IOException {
+    buffer.compact();
+    try {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException("Connection closed by server.");
+      }
+    } finally {
+      buffer.flip();
+    }
+  }
+
+  private byte readByte() throws IOException {
+    while (!buffer.hasRemaining()) {
+      fill();
+    }
+    return buffer.get();
+  }
+
+  private void readFully(byte[] data) throws IOException {
+    int offset = 0;
+    while (offset < data.length) {
+      while (!buffer.hasRemaining()) {
+        fill();
+      }
+      int n = Math.min(buffer.remaining(), data.length - offset);
+      buffer.get(data, offset, n);
+      offset += n;
+    }
+  }
+
+  private String readLine() throws IOException {
+    StringBuilder line = new StringBuilder();
+
+    while (true) {
+      byte b = readByte();
+      if (b == '\r') {
+        readByte(); // \n
+        return line.toString();
+      }
+      line.append((char) (b & 0xFF));
+    }
+  }
+
+  /**
+   * Encodes a command as a RESP array of bulk strings.
+   * @param out Buffer to append to.
+   * @param args Command name and arguments.
+   */
+  static void encode(RespBuffer out, byte[][] args) {
+    out.write('*');
+    out.writeAscii(Integer.toString(args.length));
+    out.writeCrlf();
+    for (byte[] arg : args) {
+      out.write('$');
+      out.writeAscii(Integer.toString(arg.length));
+      out.writeCrlf();
+      out.write(arg, 0, arg.length);
+      out.writeCrlf();
+    }
+  }
+
+  static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A growable, reusable output buffer.
+   */
+  static final class RespBuffer {
+    private byte[] data;
+    private int size;
+
+    RespBuffer(int initialCapacity) {
+      data = new byte[initialCapacity];
+      size = 0;
+    }
+
+    private void ensure(int extra) {
+      if (size + extra > data.length) {
+        byte[] grown = new byte[Math.max(data.length * 2, size + extra)];
+        System.arraycopy(data, 0, grown, 0, size);
+        data = grown;
+      }
+    }
+
+    void write(int b) {
+      ensure(1);
+      data[size++] = (byte) b;
+    }
+
+    void write(byte[] b, int offset, int length) {
+      ensure(length);
+      System.arraycopy(b, offset, data, size, length);
+      size += length;
+    }
+
+    void writeAscii(String s) {
+      ensure(s.length());
+      for (int i = 0; i < s.length(); i++) {
+        data[size++] = (byte) s.charAt(i);
+      }
+    }
+
+    void writeCrlf() {
+      ensure(2);
+      data[size++] = '\r';
+      data[size++] = '\n';
+    }
+
+    ByteBuffer asByteBuffer() {
+      return ByteBuffer.wrap(data, 0, size);
+    }
+
+    void reset() {
+      size = 0;
+    }
+  }
+}
@@ -0,0 +1,482 @@
+package lightning.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+
+/**
+ * A compact tagged binary codec.
+ *
+ * The following types are encoded natively (without class descriptors):
+ *   null, Boolean, Byte, Short, Character, Integer, Long, Float, Double, String, byte[],
+ *   ArrayList, HashSet, LinkedHashSet, TreeSet, HashMap, LinkedHashMap, and TreeMap (whose
+ *   elements are themselves encoded recursively).
+ * All other objects (including other collection types, subclasses of the above, and sorted
+ * collections with a comparator) are encoded using Java serialization and must therefore be
+ * Serializable, so that they are decoded as the same class.
+ *
+ * Natively encoded collections are decoded as ArrayList, LinkedHashSet, TreeSet, LinkedHashMap,
+ * and TreeMap respectively (so a HashSet or HashMap is decoded as its Linked subclass, which
+ * preserves iteration order). Collections must not contain themselves.
+ *
+ * Encoded values larger than a threshold are compressed with DEFLATE.
+ *
+ * For compatibility with data written before this codec was introduced, decode also accepts
+ * plain Java serialization streams.
+ */
+public class BinaryCodec implements Codec {
+  private static final BinaryCodec DEFAULT = new BinaryCodec();
+  private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+  private static final byte MAGIC = 'L';
+  private static final byte FLAG_DEFLATE = 0x01;
+
+  private static final byte TAG_NULL = 0;
+  private static final byte TAG_TRUE = 1;
+  private static final byte TAG_FALSE = 2;
+  private static final byte TAG_BYTE = 3;
+  private static final byte TAG_SHORT = 4;
+  private static final byte TAG_CHAR = 5;
+  private static final byte TAG_INT = 6;
+  private static final byte TAG_LONG = 7;
+  private static final byte TAG_FLOAT = 8;
+  private static final byte TAG_DOUBLE = 9;
+  private static final byte TAG_STRING = 10;
+  private static final byte TAG_BYTES = 11;
+  private static final byte TAG_LIST = 12;
+  private static final byte TAG_SET = 13;
+  private static final byte TAG_SORTED_SET = 14;
+  private static final byte TAG_MAP = 15;
+  private static final byte TAG_SORTED_MAP = 16;
+  private static final byte TAG_SERIALIZED = 17;
+
+  private final int compressionThreshold;
+  private final int compressionLevel;
+
+  /**
+   * @return A shared instance with default settings.
+   */
+  public static BinaryCodec getDefault() {
+    return DEFAULT;
+  }
+
+  public BinaryCodec() {
+    this(DEFAULT_COMPRESSION_THRESHOLD, Deflater.BEST_SPEED);
+  }
+
+  /**
+   * @param compressionThreshold Encoded values of at least this many bytes are compressed; a
+   *                             negative value disables compression.
+   * @param compressionLevel A DEFLATE compression level (see java.util.zip.Deflater).
+   */
+  public BinaryCodec(int compressionThreshold, int compressionLevel) {
+    this.compressionThreshold = compressionThreshold;
+    this.compressionLevel = compressionLevel;
+  }
+
+  @Override
+  public byte[] encode(Object value) throws CodecException {
+    Output out = new Output(64);
+    out.write(MAGIC);
+    out.write(0); // Flags.
+    writeValue(out, value);
+
+    int payloadLength = out.size - 2;
+    if (compressionThreshold < 0 || payloadLength < compressionThreshold) {
+      return out.toByteArray();
+    }
+
+    byte[] compressed = deflate(out.data, 2, payloadLength);
+    Output result = new Output(compressed.length + 8);
+    result.write(MAGIC);
+    result.write(FLAG_DEFLATE);
+    result.writeVarLong(payloadLength);
+    result.write(compressed, 0, compressed.length);
+
+    // Keep the uncompressed form if compression did not help.
+    return (result.size < out.size) ? result.toByteArray() : out.toByteArray();
+  }
+
+  @Override
+  public Object decode(byte[] data) throws CodecException {
+    if (data == null) {
+      return null;
+    }
+
+    if (data.length >= 2 && data[0] == (byte) 0xAC && data[1] == (byte) 0xED) {
+      return deserialize(data, 0, data.length);
+    }
+
+    if (data.length < 3 || data[0] != MAGIC) {
+      throw new CodecException("Unrecognized encoding.");
+    }
+
+    Input in = new Input(data, 2);
+
+    if ((data[1] & FLAG_DEFLATE) != 0) {
+      long length = in.readVarLong();
+      if (length < 0 || length > Integer.MAX_VALUE) {
+        throw new CodecException("Invalid length.");
+      }
+      in = new Input(inflate(data, in.position, data.length - in.position, (int) length), 0);
+    }
+
+    Object value = readValue(in);
+
+    if (in.position != in.data.length) {
+      throw new CodecException("Unexpected trailing data.");
+    }
+
+    return value;
+  }
+
+  private void writeValue(Output out, Object value) throws CodecException {
+    if (value == null) {
+      out.write(TAG_NULL);
+    } else if (value instanceof String) {
+      byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+      out.write(TAG_STRING);
+      out.writeVarLong(bytes.length);
+      out.write(bytes, 0, bytes.length);
+    } else if (value instanceof Long) {
+      out.write(TAG_LONG);
+      out.writeZigZag((Long) value);
+    } else if (value instanceof Integer) {
+      out.write(TAG_INT);
+      out.writeZigZag((Integer) value);
+    } else if (value instanceof Boolean) {
+      out.write(((Boolean) value) ? TAG_TRUE : TAG_FALSE);
+    } else if (value instanceof Double) {
+      out.write(TAG_DOUBLE);
+      out.writeFixedLong(Double.doubleToLongBits((Double) value));
+    } else if (value instanceof Float) {
+      out.write(TAG_FLOAT);
+      out.writeFixedInt(Float.floatToIntBits((Float) value));
+    } else if (value instanceof Short) {
+      out.write(TAG_SHORT);
+      out.writeZigZag((Short) value);
+    } else if (value instanceof Byte) {
+      out.write(TAG_BYTE);
+      out.write((Byte) value);
+    } else if (value instanceof Character) {
+      out.write(TAG_CHAR);
+      out.writeVarLong((Character) value);
+    } else if (value instanceof byte[]) {
+      byte[] bytes = (byte[]) value;
+      out.write(TAG_BYTES);
+      out.writeVarLong(bytes.length);
+      out.write(bytes, 0, bytes.length);
+    } else if (value.getClass() == ArrayList.class) {
+      writeCollection(out, TAG_LIST, (List<?>) value);
+    } else if (value.getClass() == TreeSet.class && ((TreeSet<?>) value).comparator() == null) {
+      writeCollection(out, TAG_SORTED_SET, (Set<?>) value);
+    } else if (value.getClass() == HashSet.class || value.getClass() == LinkedHashSet.class) {
+      writeCollection(out, TAG_SET, (Set<?>) value);
+    } else if (value.getClass() == TreeMap.class && ((TreeMap<?, ?>) value).comparator() == null) {
+      writeMap(out, TAG_SORTED_MAP, (Map<?, ?>) value);
+    } else if (value.getClass() == HashMap.class || value.getClass() == LinkedHashMap.class) {
+      writeMap(out, TAG_MAP, (Map<?, ?>) value);
+    } else {
+      byte[] bytes = serialize(value);
+      out.write(TAG_SERIALIZED);
+      out.writeVarLong(bytes.length);
+      out.write(bytes, 0, bytes.length);
+    }
+  }
+
+  private void writeCollection(Output out, byte tag, Collection<?> values) throws CodecException {
+    out.write(tag);
+    out.writeVarLong(values.size());
+    for (Object item : values) {
+      writeValue(out, item);
+    }
+  }
+
+  private void writeMap(Output out, byte tag, Map<?, ?> values) throws CodecException {
+    out.write(tag);
+    out.writeVarLong(values.size());
+    for (Map.Entry<?, ?> entry : values.entrySet()) {
+      writeValue(out, entry.getKey());
+      writeValue(out, entry.getValue());
+    }
+  }
+
+  private Object readValue(Input in) throws CodecException {
+    byte tag = in.read();
+
+    switch (tag) {
+      case TAG_NULL:
+        return null;
+      case TAG_TRUE:
+        return Boolean.TRUE;
+      case TAG_FALSE:
+        return Boolean.FALSE;
+      case TAG_BYTE:
+        return in.read();
+      case TAG_SHORT:
+        return (short) in.readZigZag();
+      case TAG_CHAR:
+        return (char) in.readVarLong();
+      case TAG_INT:
+        return (int) in.readZigZag();
+      case TAG_LONG:
+        return in.readZigZag();
+      case TAG_FLOAT:
+        return Float.intBitsToFloat(in.readFixedInt());
+      case TAG_DOUBLE:
+        return Double.longBitsToDouble(in.readFixedLong());
+      case TAG_STRING: {
+        int length = in.readLength();
+        String value = new String(in.data, in.position, length, StandardCharsets.UTF_8);
+        in.position += length;
+        return value;
+      }
+      case TAG_BYTES: {
+        int length = in.readLength();
+        byte[] value = new byte[length];
+        System.arraycopy(in.data, in.position, value, 0, length);
+        in.position += length;
+        return value;
+      }
+      case TAG_LIST: {
+        int size = in.readLength();
+        List<Object> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          list.add(readValue(in));
+        }
+        return list;
+      }
+      case TAG_SET:
+      case TAG_SORTED_SET: {
+        int size = in.readLength();
+        Set<Object> set = (tag == TAG_SET) ? new LinkedHashSet<>() : new TreeSet<>();
+        for (int i = 0; i < size; i++) {
+          set.add(readValue(in));
+        }
+        return set;
+      }
+      case TAG_MAP:
+      case TAG_SORTED_MAP: {
+        int size = in.readLength();
+        Map<Object, Object> map = (tag == TAG_MAP) ? new LinkedHashMap<>() : new TreeMap<>();
+        for (int i = 0; i < size; i++) {
+          Object key = readValue(in);
+          map.put(key, readValue(in));
+        }
+        return map;
+      }
+      case TAG_SERIALIZED: {
+        int length = in.readLength();
+        Object value = deserialize(in.data, in.position, length);
+        in.position += length;
+        return value;
+      }
+      default:
+        throw new CodecException("Unrecognized tag " + tag + ".");
+    }
+  }
+
+  private static byte[] serialize(Object value) throws CodecException {
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+      oos.writeObject(value);
+      oos.flush();
+      return baos.toByteArray();
+    } catch (IOException e) {
+      throw new CodecException("Unable to serialize " + value.getClass().getName() + ".", e);
+    }
+  }
+
+  private static Object deserialize(byte[] data, int offset, int length) throws CodecException {
+    try (ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(new ByteArrayInputStream(data, offset, length))) {
+      return ois.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      throw new CodecException("Unable to deserialize value.", e);
+    }
+  }
+
+  private byte[] deflate(byte[] data, int offset, int length) {
+    Deflater deflater = new Deflater(compressionLevel, true);
+
+    try {
+      deflater.setInput(data, offset, length);
+      deflater.finish();
+      Output out = new Output(Math.max(64, length / 2));
+      byte[] chunk = new byte[4096];
+      while (!deflater.finished()) {
+        int n = deflater.deflate(chunk);
+        out.write(chunk, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] data, int offset, int length, int inflatedLength) throws CodecException {
+    Inflater inflater = new Inflater(true);
+
+    try {
+      inflater.setInput(data, offset, length);
+      byte[] result = new byte[inflatedLength];
+      int position = 0;
+      while (position < inflatedLength) {
+        int n = inflater.inflate(result, position, inflatedLength - position);
+        if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          throw new CodecException("Truncated compressed data.");
+        }
+        position += n;
+      }
+      return result;
+    } catch (DataFormatException e) {
+      throw new CodecException("Corrupt compressed data.", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static final class Output {
+    byte[] data;
+    int size;
+
+    Output(int capacity) {
+      data = new byte[capacity];
+    }
+
+    private void ensure(int extra) {
+      if (size + extra > data.length) {
+        byte[] grown = new byte[Math.max(data.length * 2, size + extra)];
+        System.arraycopy(data, 0, grown, 0, size);
+        data = grown;
+      }
+    }
+
+    void write(int b) {
+      ensure(1);
+      data[size++] = (byte) b;
+    }
+
+    void write(byte[] b, int offset, int length) {
+      ensure(length);
+      System.arraycopy(b, offset, data, size, length);
+      size += length;
+    }
+
+    void writeVarLong(long value) {
+      ensure(10);
+      while ((value & ~0x7FL) != 0) {
+        data[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      data[size++] = (byte) value;
+    }
+
+    void writeZigZag(long value) {
+      writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeFixedInt(int value) {
+      ensure(4);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        data[size++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeFixedLong(long value) {
+      ensure(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        data[size++] = (byte) (value >>> shift);
+      }
+    }
+
+    byte[] toByteArray() {
+      byte[] result = new byte[size];
+      System.arraycopy(data, 0, result, 0, size);
+      return result;
+    }
+  }
+
+  private static final class Input {
+    final byte[] data;
+    int position;
+
+    Input(byte[] data, int position) {
+      this.data = data;
+      this.position = position;
+    }
+
+    private void require(int count) throws CodecException {
+      if (count < 0 || data.length - position < count) {
+        throw new CodecException("Unexpected end of data.");
+      }
+    }
+
+    byte read() throws CodecException {
+      require(1);
+      return data[position++];
+    }
+
+    long readVarLong() throws CodecException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        byte b = read();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new CodecException("Malformed variable-length integer.");
+    }
+
+    long readZigZag() throws CodecException {
+      long value = readVarLong();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readLength() throws CodecException {
+      long length = readVarLong();
+      if (length < 0 || length > data.length - position) {
+        // Every element occupies at least one byte, so this also bounds collection sizes.
+        throw new CodecException("Invalid length.");
+      }
+      return (int) length;
+    }
+
+    int readFixedInt() throws CodecException {
+      require(4);
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        value = (value << 8) | (data[position++] & 0xFF);
+      }
+      return value;
+    }
+
+    long readFixedLong() throws CodecException {
+      require(8);
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | (data[position++] & 0xFF);
+      }
+      return value;
+    }
+  }
+}
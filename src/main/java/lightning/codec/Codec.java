@@ -0,0 +1,21 @@
+package lightning.codec;
+
+/**
+ * Converts objects to and from bytes for storage (e.g. in session, user, and cache stores).
+ * Implementations must be thread-safe.
+ */
+public interface Codec {
+  /**
+   * @param value An object (may be null).
+   * @return An encoded representation of value.
+   * @throws CodecException If value cannot be encoded.
+   */
+  public byte[] encode(Object value) throws CodecException;
+
+  /**
+   * @param data Bytes produced by encode.
+   * @return The decoded object (may be null).
+   * @throws CodecException If data cannot be decoded.
+   */
+  public Object decode(byte[] data) throws CodecException;
+}
@@ -0,0 +1,17 @@
+package lightning.codec;
+
+public class CodecException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  public CodecException(String message) {
+    super(message);
+  }
+
+  public CodecException(Exception parent) {
+    super(parent);
+  }
+
+  public CodecException(String message, Exception parent) {
+    super(message, parent);
+  }
+}
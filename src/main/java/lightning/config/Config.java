@@ -85,7 +85,194 @@ public class Config {
    */
   public @Optional List<String> codeSearchPaths = ImmutableList.of("./src/main/java", "./src/test/java");
 
-  // TODO: Add options for Sessions and Auth.
+  /**
+   * Provides options for configuring authentication (see lightning.auth.Auth).
+   */
+  public @Required AuthConfig auth = new AuthConfig();
+  public static final class AuthConfig {
+    /**
+     * Whether to cache validated session auth tokens and users in memory, so that authenticated
+     * requests usually do not query the database for them. Changes made through Lightning are
+     * invalidated on every server over the InvalidationChannel bound in your injector module,
+     * which is required: bind one that reaches all of your servers (e.g. RedisInvalidationChannel)
+     * or, for a single server, a LocalInvalidationChannel. Servers that miss an invalidation observe
+     * the change up to cacheTtlSeconds late.
+     */
+    public @Optional boolean cacheEnabled = false;
+
+    /**
+     * The maximum amount of time to cache a token or user.
+     */
+    public @Optional long cacheTtlSeconds = 30;
+
+    /**
+     * The maximum number of tokens (and users) to cache.
+     */
+    public @Optional long cacheMaxEntries = 10000;
+
+    /**
+     * Whether to count failed login attempts (for throttling) in memory rather than by querying the
+     * auth_attempts table on every login attempt. Attempts are still logged to the database.
+     * Counts are kept per server unless throttleShared is enabled.
+     */
+    public @Optional boolean throttleInMemory = false;
+
+    /**
+     * Whether to also count failed login attempts in the configured cache (see CacheDriver) so that
+     * throttling is consistent across servers. Requires throttleInMemory.
+     */
+    public @Optional boolean throttleShared = false;
+
+    /**
+     * The maximum number of IP addresses and users for which to track failed login attempts in
+     * memory. The least recently used are forgotten first.
+     */
+    public @Optional long throttleMaxKeys = 100000;
+
+    /**
+     * Whether to write authentication attempts to the auth_attempts table asynchronously (in
+     * batches, on a background thread) rather than during the request. Attempts may be dropped if
+     * the queue is full (e.g. during an attack); consider also enabling throttleInMemory.
+     */
+    public @Optional boolean attemptWriteBehind = false;
+
+    /**
+     * The maximum number of queued authentication attempts.
+     */
+    public @Optional int attemptQueueSize = 10000;
+
+    /**
+     * The maximum number of authentication attempts written by a single statement.
+     */
+    public @Optional int attemptBatchSize = 500;
+
+    /**
+     * The maximum amount of time a request waits for space in a full queue before dropping an
+     * authentication attempt.
+     */
+    public @Optional long attemptEnqueueTimeoutMs = 5;
+
+    /**
+     * The BCrypt cost (log2 of the number of rounds) applied to new password hashes. Existing
+     * hashes with a lower cost are upgraded when their users next log in.
+     */
+    public @Optional int passwordLogRounds = 10;
+
+    /**
+     * If positive, the BCrypt cost is instead calibrated at startup so that hashing a password
+     * takes about this long on the current hardware (but never less than passwordLogRounds).
+     */
+    public @Optional long passwordHashTargetMs = 0;
+
+    /**
+     * The number of threads dedicated to password hashing (0 for the number of CPUs). Use -1 to
+     * hash on request threads instead.
+     */
+    public @Optional int passwordHashThreads = 0;
+
+    /**
+     * The maximum number of password hashes waiting for a thread. Requests that would exceed this
+     * fail with HTTP 429 (Too Many Requests).
+     */
+    public @Optional int passwordHashQueueSize = 256;
+
+    /**
+     * The maximum amount of time a request waits for a password hash (including queueing) before
+     * failing with HTTP 429 (Too Many Requests).
+     */
+    public @Optional long passwordHashTimeoutMs = 5000;
+  }
+
+  /**
+   * Provides options for configuring sessions (see lightning.sessions.Session).
+   */
+  public @Required SessionConfig session = new SessionConfig();
+  public static final class SessionConfig {
+    public static enum SessionStorage {
+      MYSQL,  // Stored in the 'sessions' table of the configured database.
+      MYSQL_KEYED, // Stored in MySQL with one row per key; saves write only the changed keys.
+      MEMORY, // Stored in memory; only suitable for one server or sticky load balancing.
+      COOKIE, // Stored on the client in an encrypted cookie; sessions too large for a cookie are
+              // stored in MYSQL (or your bound SessionStorageDriver).
+    }
+
+    /**
+     * Where to store sessions. Ignored if you bind a SessionStorageDriver in your injector module.
+     */
+    public @Optional SessionStorage storage = SessionStorage.MYSQL;
+
+    /**
+     * Sessions which are unused for this long are invalidated.
+     */
+    public @Optional long inactivityTimeoutSeconds = TimeUnit.DAYS.toSeconds(14);
+
+    /**
+     * Sessions which are read but not modified are kept alive (by refreshing their last use time)
+     * at most once per this many seconds, rather than on every request.
+     * Must be much smaller than inactivityTimeoutSeconds.
+     */
+    public @Optional long keepAliveGranularitySeconds = TimeUnit.MINUTES.toSeconds(5);
+
+    /**
+     * Whether to write sessions to MySQL asynchronously in batches (if storage is MYSQL or COOKIE).
+     * Sessions are read from the queue until written; queued writes are lost if the server crashes.
+     * Not supported with MYSQL_KEYED storage (which already writes only the changed keys).
+     */
+    public @Optional boolean writeBehind = false;
+
+    /**
+     * The maximum number of queued session writes (if writeBehind is enabled). If the queue is
+     * full, writes are performed on the request thread.
+     */
+    public @Optional int writeBehindQueueSize = 10000;
+
+    /**
+     * The maximum number of sessions written by a single statement (if writeBehind is enabled).
+     */
+    public @Optional int writeBehindBatchSize = 100;
+
+    /**
+     * How often to write queued sessions (if writeBehind is enabled).
+     */
+    public @Optional long writeBehindFlushIntervalMs = 1000;
+
+    /**
+     * The maximum number of sessions to hold (if storage is MEMORY). Least recently used sessions
+     * are evicted first.
+     */
+    public @Optional long memoryMaxEntries = 100000;
+
+    /**
+     * The approximate maximum amount of memory to use for sessions (if storage is MEMORY).
+     */
+    public @Optional long memoryMaxBytes = 1024 * 1024 * 256; // 256 MB
+
+    /**
+     * A file to which sessions should be written periodically and on shutdown, and from which they
+     * should be restored on start (if storage is MEMORY). Set to NULL to disable.
+     */
+    public @Optional String memorySnapshotFile = null;
+
+    /**
+     * How often to write the snapshot file (if memorySnapshotFile is set).
+     */
+    public @Optional long memorySnapshotIntervalSeconds = TimeUnit.MINUTES.toSeconds(5);
+
+    /**
+     * Secret keys used to encrypt session cookies (if storage is COOKIE). Sessions are encrypted
+     * with the first key and may be decrypted with any key; to rotate keys, add a new key at the
+     * front and remove the last key once sessions encrypted with it have timed out.
+     * If empty, a key is derived from server.hmacKey.
+     */
+    public @Optional List<String> cookieKeys = ImmutableList.of();
+
+    /**
+     * The maximum size of the session cookie (if storage is COOKIE), counting its name and signed
+     * value. Sessions which do not fit are stored on the server instead. Browsers typically limit
+     * cookies to 4096 bytes.
+     */
+    public @Optional int cookieMaxBytes = 3072;
+  }
 
   /**
    * Provides options for enabling SSL with the built-in server.
@@ -409,6 +596,37 @@ public class Config {
     public @Optional int outputBufferingLimitBytes = 1024 * 64;
   }
 
+  /**
+   * Provides options for configuring the cache (see lightning.cache.Cache).
+   * To enable caching, you must bind an implementation of CacheDriver in your injector module.
+   */
+  public @Required CacheConfig cache = new CacheConfig();
+  public static final class CacheConfig {
+    /**
+     * Key prefixes for which separate statistics (hits, misses, loads, etc.) should be collected.
+     * Statistics for keys matching several prefixes are attributed to the longest prefix.
+     * Example: ImmutableList.of("user:", "session:", "fragment:")
+     */
+    public @Optional List<String> statsKeyPrefixes = ImmutableList.of();
+
+    /**
+     * The maximum number of stale-while-revalidate refreshes to run concurrently.
+     */
+    public @Optional int refreshThreads = 4;
+
+    /**
+     * The maximum number of stale-while-revalidate refreshes to queue. Once full, stale values
+     * will continue to be served until a refresh can be queued.
+     */
+    public @Optional int refreshQueueSize = 256;
+
+    /**
+     * The maximum time (in milliseconds) to wait for another thread that is loading the same key
+     * before loading the key on the waiting thread.
+     */
+    public @Optional long loadWaitMs = 10000;
+  }
+
   /**
    * Provides options for configuring the sending of emails over SMTP.
    */
@@ -541,6 +759,45 @@ public class Config {
     public @Optional int maxStatementsCached = 500;
     public @Optional int acquireTimeoutMs = -1;
 
+    /*********************************************
+     * Driver Options
+     *********************************************/
+
+    /**
+     * Whether to enable the JDBC driver's performance options: multi-row rewriting of batched
+     * statements (rewriteBatchedStatements), server-side prepared statements and caching of
+     * prepared statements on each connection, and caching of session state to avoid redundant
+     * round trips.
+     *
+     * NOTE: Recommended for bulk writes (e.g. addBatch()/executeBatch() on prepared statements).
+     */
+    public @Optional boolean jdbcPerformanceProfile = false;
+
+    /**
+     * The number of prepared statements cached per connection by the driver (if
+     * jdbcPerformanceProfile is enabled).
+     */
+    public @Optional int preparedStatementCacheSize = 250;
+
+    /*********************************************
+     * Reaper Options
+     *********************************************
+     *
+     * The reaper periodically deletes expired rows from the tables used by the built-in session and
+     * auth drivers (sessions, auth_sessions, auth_tokens, auth_attempts) in bounded batches. Only
+     * one server (per database) reaps at a time.
+     */
+
+    public @Optional boolean reaperEnabled = false;
+    public @Optional long reaperIntervalS = 60;
+    public @Optional int reaperBatchSize = 1000;       // Maximum rows deleted per statement.
+    public @Optional int reaperMaxBatchesPerRun = 100; // Per table.
+
+    /**
+     * How long to keep login attempts (used for throttling) before reaping them.
+     */
+    public @Optional long authAttemptRetentionS = TimeUnit.DAYS.toSeconds(1);
+
     public boolean isEnabled() {
       return name != null && !name.isEmpty();
     }
@@ -583,6 +840,10 @@ public class Config {
     badIf(server.templateFilesPath != null && Paths.get(server.templateFilesPath).isAbsolute(), "templateFilesPath must not be absolute.");
     badIf(server.staticFilesPath != null && Paths.get(server.staticFilesPath).isAbsolute() && !SimpleHTTPServer.isMainClass(), "staticFilesPath must not be absolute.");
     badIf(server.enableHttp2 && !ssl.isEnabled(), "You must enable SSL to enable HTTP2.");
+    badIf(session.writeBehind && session.storage == SessionConfig.SessionStorage.MYSQL_KEYED,
+          "session.writeBehind is not supported with MYSQL_KEYED session storage.");
+    badIf(auth.throttleShared && !auth.throttleInMemory,
+          "auth.throttleShared requires auth.throttleInMemory.");
     badIf(autoReloadPrefixes != null &&
           Iterables.reduce(Iterables.map(autoReloadPrefixes,
                                          /*
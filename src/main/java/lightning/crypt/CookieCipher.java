@@ -0,0 +1,160 @@
+package lightning.crypt;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+
+/**
+ * Provides authenticated encryption (AES-256-GCM) for values stored on the client (e.g. cookies).
+ *
+ * Supports key rotation: values are always sealed with the first (current) key, but may be opened
+ * with any of the configured keys. Each sealed value carries an identifier of the key that sealed
+ * it. To rotate keys, add a new key to the front of the list and remove the oldest key once all
+ * values sealed with it have expired.
+ *
+ * Sealed format (URL-safe base64, no padding):
+ *   version (1 byte) | key id (4 bytes) | IV (12 bytes) | ciphertext + tag (16 bytes)
+ *
+ * This class is thread-safe.
+ */
+public final class CookieCipher {
+  private static final byte VERSION = 1;
+  private static final int KEY_ID_BYTES = 4;
+  private static final int IV_BYTES = 12;
+  private static final int TAG_BITS = 128;
+  private static final int HEADER_BYTES = 1 + KEY_ID_BYTES + IV_BYTES;
+  private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+  private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+    try {
+      return Cipher.getInstance(TRANSFORMATION);
+    } catch (GeneralSecurityException e) {
+      throw new RuntimeException(e); // Shouldn't happen (required by all JVMs).
+    }
+  });
+
+  private static final class Key {
+    final byte[] id;
+    final SecretKeySpec spec;
+
+    Key(String secret) {
+      byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+      this.id = Arrays.copyOf(Hashing.sha256().newHasher()
+          .putString("lightning-cookie-key-id:", StandardCharsets.UTF_8)
+          .putBytes(bytes)
+          .hash().asBytes(), KEY_ID_BYTES);
+      this.spec = new SecretKeySpec(Hashing.sha256().newHasher()
+          .putString("lightning-cookie-key:", StandardCharsets.UTF_8)
+          .putBytes(bytes)
+          .hash().asBytes(), "AES");
+    }
+  }
+
+  private final List<Key> keys;
+
+  /**
+   * @param secrets Secret keys (at least one); the first is used to seal values.
+   */
+  public CookieCipher(List<String> secrets) {
+    if (secrets == null || secrets.isEmpty()) {
+      throw new IllegalArgumentException("At least one key is required.");
+    }
+
+    ImmutableList.Builder<Key> builder = ImmutableList.builder();
+    for (String secret : secrets) {
+      builder.add(new Key(secret));
+    }
+
+    this.keys = builder.build();
+  }
+
+  /**
+   * Encrypts and authenticates a value.
+   * @param plaintext Data to seal.
+   * @param context Additional data which must be provided (unchanged) to open the value (e.g. the
+   *                cookie name, to prevent a value from being transplanted to another cookie).
+   * @return The sealed value (safe for use in cookies).
+   */
+  public String seal(byte[] plaintext, String context) {
+    Key key = keys.get(0);
+    byte[] iv = new byte[IV_BYTES];
+    Tokens.random().nextBytes(iv);
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    header.put(VERSION);
+    header.put(key.id);
+    header.put(iv);
+
+    try {
+      Cipher cipher = CIPHERS.get();
+      cipher.init(Cipher.ENCRYPT_MODE, key.spec, new GCMParameterSpec(TAG_BITS, iv));
+      cipher.updateAAD(header.array(), 0, 1 + KEY_ID_BYTES);
+      cipher.updateAAD(context.getBytes(StandardCharsets.UTF_8));
+
+      byte[] sealed = new byte[HEADER_BYTES + cipher.getOutputSize(plaintext.length)];
+      System.arraycopy(header.array(), 0, sealed, 0, HEADER_BYTES);
+      cipher.doFinal(plaintext, 0, plaintext.length, sealed, HEADER_BYTES);
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(sealed);
+    } catch (GeneralSecurityException e) {
+      throw new RuntimeException(e); // Shouldn't happen.
+    }
+  }
+
+  /**
+   * Decrypts and verifies a value produced by seal.
+   * @param sealed A sealed value.
+   * @param context The context provided to seal.
+   * @return The plain text, or null if the value is malformed, was tampered with, or was sealed
+   *         with a key that is not configured.
+   */
+  public byte[] open(String sealed, String context) {
+    byte[] data;
+
+    try {
+      data = Base64.getUrlDecoder().decode(sealed);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+
+    if (data.length < HEADER_BYTES + TAG_BITS / 8 || data[0] != VERSION) {
+      return null;
+    }
+
+    for (Key key : keys) {
+      if (!regionEquals(data, 1, key.id)) {
+        continue;
+      }
+
+      try {
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.DECRYPT_MODE, key.spec, new GCMParameterSpec(TAG_BITS, data, 1 + KEY_ID_BYTES, IV_BYTES));
+        cipher.updateAAD(data, 0, 1 + KEY_ID_BYTES);
+        cipher.updateAAD(context.getBytes(StandardCharsets.UTF_8));
+        return cipher.doFinal(data, HEADER_BYTES, data.length - HEADER_BYTES);
+      } catch (GeneralSecurityException e) {
+        continue; // Tampered with (or a key id collision).
+      }
+    }
+
+    return null;
+  }
+
+  private static boolean regionEquals(byte[] data, int offset, byte[] expected) {
+    for (int i = 0; i < expected.length; i++) {
+      if (data[offset + i] != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
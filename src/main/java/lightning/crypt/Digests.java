@@ -0,0 +1,32 @@
+package lightning.crypt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Computes unkeyed message digests (e.g. for hashing tokens before storing them, or for deriving
+ * short cache keys). Use Hmac for anything that must not be forgeable.
+ *
+ * MessageDigests are not thread-safe, but are reset after every digest() and hold no secrets, so
+ * each thread keeps a single instance that is shared across all callers.
+ */
+public final class Digests {
+  private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (GeneralSecurityException e) {
+      throw new RuntimeException(e); // Should not happen on any standard JVM.
+    }
+  });
+
+  private Digests() {}
+
+  /**
+   * @param data
+   * @return The SHA-256 digest of data (encoded as UTF-8) as lowercase hexadecimal.
+   */
+  public static String sha256Hex(String data) {
+    return Hmac.toHex(SHA256.get().digest(data.getBytes(StandardCharsets.UTF_8)));
+  }
+}
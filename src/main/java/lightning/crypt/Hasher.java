@@ -1,31 +1,19 @@
 package lightning.crypt;
 
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-
-import org.apache.commons.codec.binary.Hex;
-
-import com.google.common.base.Charsets;
-
 /**
  * Provides convenient macros for hashing values.
  */
 public class Hasher {
-  private static final String HMAC_ALGORITHM = "HmacSHA256";
-  private String sharedSecretKey = null;
-  private int hashCharLen = 0;
+  private final Hmac hmac;
+  private final int hashCharLen;
     
   public Hasher(String secretKey) {
     if (secretKey == null) {
       throw new IllegalStateException("Error: Must provide a secret key.");
     }
     
-    this.sharedSecretKey = secretKey;
-    this.hashCharLen = createSignature("UNUSED").length(); 
+    this.hmac = Hmac.sha256(secretKey);
+    this.hashCharLen = hmac.hexLength();
   }
     
   @FunctionalInterface
@@ -40,27 +28,27 @@ public class Hasher {
    * @return Hashed authentication token.
    */
   public static String hash(String plaintextToken) {
-    return com.google.common.hash.Hashing.sha256().hashString(plaintextToken, Charsets.UTF_8).toString();
+    return Digests.sha256Hex(plaintextToken);
   }
   
   /**
    * Generates a random token.
    * @param numBytes The number of bytes
-   * @param checker Checks whether or not a token is in use.
+   * @param checker Checks whether or not a token is in use (only consulted for tokens shorter than
+   *                Tokens.MIN_UNCHECKED_BYTES, which are otherwise unique).
    * @return Raw (unencrypted) token.
    */
   public static String generateToken(int numBytes, InUseChecker checker) throws Exception {
-    while (true) {
-      SecureRandom generator = new SecureRandom();
-      byte bytes[] = new byte[numBytes];
-      generator.nextBytes(bytes);
-      String token = Hex.encodeHexString(bytes);
-      if (checker.isInUse(token)) {
-        continue; // Pick again.
-      }
-      
-      return token;
-    }
+    return Tokens.hex(numBytes, checker);
+  }
+
+  /**
+   * Generates a random token without checking for collisions.
+   * @param numBytes The number of bytes
+   * @return Raw (unencrypted) token.
+   */
+  public static String generateToken(int numBytes) {
+    return Tokens.hex(numBytes);
   }
   
   /**
@@ -112,21 +100,10 @@ public class Hasher {
   /**
    * Signs a plain text value with an HMAC hash using secretKey.
    * @param plaintext The plain text value to be signed.
-   * @return The base-64 encoded hash signature.
+   * @return The hex encoded hash signature.
    */
   private String createSignature(String plaintext) {
-    SecretKeySpec key = new SecretKeySpec(sharedSecretKey.getBytes(), HMAC_ALGORITHM);
-    Mac mac;
-    
-    try {
-      mac = Mac.getInstance(HMAC_ALGORITHM);
-      mac.init(key);
-    } catch (InvalidKeyException | NoSuchAlgorithmException e) {
-      throw new RuntimeException(e); // Shouldn't happen.
-    }
-    
-    byte[] rawHmac = mac.doFinal(plaintext.getBytes());
-    return Hex.encodeHexString(rawHmac);
+    return hmac.hex(plaintext);
   }
   
   /**
@@ -136,6 +113,6 @@ public class Hasher {
    * @return Whether or not the signature for (plain text, secretKey) matches the provided signature.
    */
   private boolean verifySignature(String signature, String plaintext) {
-    return createSignature(plaintext).equals(signature);
+    return Hmac.constantTimeEquals(createSignature(plaintext), signature);
   }
 }
@@ -0,0 +1,171 @@
+package lightning.crypt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Computes HMACs with a fixed key.
+ *
+ * Creating and keying a javax.crypto.Mac is expensive relative to signing a short value, so each
+ * thread keeps its own pre-keyed Mac (cloned from a prototype) that is reused for every call.
+ * Signatures are encoded without intermediate copies where possible.
+ *
+ * Instances are thread-safe. Instances for the server's HMAC key are shared (see sha256()).
+ *
+ * Each instance holds one Mac per thread that has used it for as long as that thread lives, so
+ * instances should be long-lived (e.g. one per configured key); for short-lived or per-user keys,
+ * create and key a Mac locally instead.
+ *
+ * Also provides constant-time comparison for verifying signatures. For unkeyed digests, see
+ * Digests.
+ */
+public final class Hmac {
+  private static final String SHA256 = "HmacSHA256";
+  private static final int MAX_SHARED_KEYS = 16;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final Base64.Encoder BASE64 = Base64.getEncoder();
+  private static final ConcurrentHashMap<String, Hmac> SHARED = new ConcurrentHashMap<>();
+  private static final ThreadLocal<byte[]> BASE64_BUFFER = ThreadLocal.withInitial(() -> new byte[128]);
+
+  private final SecretKeySpec key;
+  private final Mac prototype; // Never used directly; cloned for each thread.
+  private final ThreadLocal<Mac> mac;
+
+  /**
+   * @param algorithm A MAC algorithm (e.g. HmacSHA256).
+   * @param key A secret key.
+   * @throws IllegalArgumentException If the algorithm is not supported or the key is not valid.
+   */
+  public Hmac(String algorithm, byte[] key) {
+    try {
+      this.key = new SecretKeySpec(key, algorithm);
+      this.prototype = Mac.getInstance(algorithm);
+      this.prototype.init(this.key);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalArgumentException(e);
+    }
+
+    this.mac = ThreadLocal.withInitial(this::copy);
+  }
+
+  /**
+   * @param key A secret key.
+   * @return A (shared) HMAC-SHA256 instance for key.
+   */
+  public static Hmac sha256(String key) {
+    Hmac hmac = SHARED.get(key);
+
+    if (hmac == null) {
+      if (SHARED.size() >= MAX_SHARED_KEYS) {
+        SHARED.clear(); // Keys are normally fixed by configuration; guards against misuse.
+      }
+
+      hmac = SHARED.computeIfAbsent(key, k -> new Hmac(SHA256, k.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    return hmac;
+  }
+
+  /**
+   * @param data
+   * @return The raw HMAC of data.
+   */
+  public byte[] compute(byte[] data) {
+    return mac.get().doFinal(data);
+  }
+
+  /**
+   * @param data
+   * @return The HMAC of data (encoded as UTF-8) as lowercase hexadecimal.
+   */
+  public String hex(String data) {
+    return toHex(compute(data.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * @param data
+   * @return The HMAC of data (encoded as UTF-8) as (padded) base64.
+   */
+  public String base64(String data) {
+    byte[] raw = compute(data.getBytes(StandardCharsets.UTF_8));
+    byte[] buffer = BASE64_BUFFER.get();
+    if (buffer.length < base64Length()) {
+      buffer = new byte[base64Length()];
+      BASE64_BUFFER.set(buffer);
+    }
+    int length = BASE64.encode(raw, buffer);
+    return new String(buffer, 0, length, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * @return The length of hex().
+   */
+  public int hexLength() {
+    return prototype.getMacLength() * 2;
+  }
+
+  /**
+   * @return The length of base64().
+   */
+  public int base64Length() {
+    return 4 * ((prototype.getMacLength() + 2) / 3);
+  }
+
+  /**
+   * Compares two strings in time that depends only on their lengths (not on their contents), so
+   * that comparing a signature does not reveal how much of it is correct.
+   * @return Whether or not a and b are equal.
+   */
+  public static boolean constantTimeEquals(String a, String b) {
+    if (a == null || b == null) {
+      return a == b;
+    }
+
+    if (a.length() != b.length()) {
+      return false;
+    }
+
+    int difference = 0;
+    for (int i = 0; i < a.length(); i++) {
+      difference |= a.charAt(i) ^ b.charAt(i);
+    }
+
+    return difference == 0;
+  }
+
+  /**
+   * @param bytes
+   * @return bytes as lowercase hexadecimal.
+   */
+  public static String toHex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+
+    for (int i = 0; i < bytes.length; i++) {
+      chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+      chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+    }
+
+    return new String(chars);
+  }
+
+  private Mac copy() {
+    try {
+      synchronized (prototype) {
+        return (Mac) prototype.clone();
+      }
+    } catch (CloneNotSupportedException e) {
+      try {
+        Mac mac = Mac.getInstance(prototype.getAlgorithm(), prototype.getProvider());
+        mac.init(key);
+        return mac;
+      } catch (GeneralSecurityException e2) {
+        throw new RuntimeException(e2); // Succeeded for the prototype; should not happen.
+      }
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package lightning.crypt;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lightning.http.TooManyRequestsException;
+
+/**
+ * Hashes and checks passwords using BCrypt.
+ *
+ * BCrypt is deliberately slow. So that a burst of logins cannot occupy every request thread (and
+ * starve unrelated requests), a hasher may run hashes on a dedicated, bounded pool of threads: if
+ * the pool and its queue are saturated (or a hash waits longer than the timeout), the request fails
+ * fast with a TooManyRequestsException (HTTP 429).
+ *
+ * The cost (log2 of the number of rounds) applied to new hashes is configurable and may be chosen
+ * by calibrate() to hit a target hash time on the current hardware. Use needsRehash() to detect
+ * hashes created with a lower cost (e.g. to upgrade them when a user next logs in).
+ *
+ * Users.hashPassword() and Users.checkPassword() use the default hasher (see setDefault()), which
+ * initially hashes on the calling thread with DEFAULT_LOG_ROUNDS.
+ */
+public final class PasswordHasher implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(PasswordHasher.class);
+
+  /**
+   * The cost applied to new hashes unless configured otherwise.
+   */
+  public static final int DEFAULT_LOG_ROUNDS = 10;
+  private static final int MAX_CALIBRATED_LOG_ROUNDS = 16;
+
+  private static volatile PasswordHasher defaultHasher = new PasswordHasher(DEFAULT_LOG_ROUNDS);
+
+  private final int logRounds;
+  private final @Nullable ThreadPoolExecutor executor;
+  private final long timeoutMs;
+  private final LongAdder hashes;
+  private final LongAdder rejections;
+
+  /**
+   * Creates a hasher that runs on the calling thread.
+   * @param logRounds The cost to apply to new hashes.
+   */
+  public PasswordHasher(int logRounds) {
+    this.logRounds = checkLogRounds(logRounds);
+    this.executor = null;
+    this.timeoutMs = 0;
+    this.hashes = new LongAdder();
+    this.rejections = new LongAdder();
+  }
+
+  /**
+   * Creates a hasher that runs on a dedicated pool of threads.
+   * @param logRounds The cost to apply to new hashes.
+   * @param threads The number of threads (typically the number of CPUs).
+   * @param queueSize The maximum number of hashes waiting for a thread.
+   * @param timeoutMs The maximum amount of time a caller waits for a hash (including queueing).
+   */
+  public PasswordHasher(int logRounds, int threads, int queueSize, long timeoutMs) {
+    if (threads < 1 || queueSize < 1 || timeoutMs < 1) {
+      throw new IllegalArgumentException("Threads, queue size, and timeout must be positive.");
+    }
+
+    this.logRounds = checkLogRounds(logRounds);
+    this.timeoutMs = timeoutMs;
+    this.hashes = new LongAdder();
+    this.rejections = new LongAdder();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueSize),
+        new ThreadFactoryBuilder()
+            .setNameFormat("lightning-password-hasher-%d")
+            .setDaemon(true)
+            .build(),
+        new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * @return The hasher used by Users.
+   */
+  public static PasswordHasher getDefault() {
+    return defaultHasher;
+  }
+
+  /**
+   * @param hasher The hasher to be used by Users.
+   */
+  public static void setDefault(PasswordHasher hasher) {
+    defaultHasher = hasher;
+  }
+
+  /**
+   * Finds the cost at which a hash takes approximately targetMs on this machine.
+   * @param targetMs The desired hash time.
+   * @param minLogRounds The minimum cost to return.
+   * @return The highest cost (at least minLogRounds) whose estimated hash time is at most targetMs.
+   */
+  public static int calibrate(long targetMs, int minLogRounds) {
+    checkLogRounds(minLogRounds);
+
+    BCrypt.hashpw("calibration", BCrypt.gensalt(4, Tokens.random())); // Warm up.
+    long start = System.nanoTime();
+    BCrypt.hashpw("calibration", BCrypt.gensalt(minLogRounds, Tokens.random()));
+    double ms = (System.nanoTime() - start) / 1e6;
+
+    // Each additional round doubles the work.
+    int logRounds = minLogRounds;
+    while (logRounds < MAX_CALIBRATED_LOG_ROUNDS && ms * 2 <= targetMs) {
+      logRounds++;
+      ms *= 2;
+    }
+
+    logger.info("Calibrated password hashing cost to {} (~{} ms per hash).", logRounds, Math.round(ms));
+    return logRounds;
+  }
+
+  /**
+   * @param hash A BCrypt hash.
+   * @return The cost with which hash was created.
+   */
+  public static int getLogRounds(String hash) {
+    int start = hash.indexOf('$', 1) + 1;
+
+    if (start <= 0 || start + 2 > hash.length()) {
+      throw new IllegalArgumentException("Invalid BCrypt hash.");
+    }
+
+    return Integer.parseInt(hash.substring(start, start + 2));
+  }
+
+  /**
+   * @return The cost applied to new hashes.
+   */
+  public int getLogRounds() {
+    return logRounds;
+  }
+
+  /**
+   * @param plaintextPassword A password.
+   * @return A salted hash of the password.
+   * @throws TooManyRequestsException If the hasher is saturated.
+   */
+  public String hash(String plaintextPassword) throws TooManyRequestsException {
+    return run(() -> BCrypt.hashpw(plaintextPassword, BCrypt.gensalt(logRounds, Tokens.random())));
+  }
+
+  /**
+   * @param hash A hash created by hash().
+   * @param plaintextPassword A password.
+   * @return Whether or not the password matches the hash.
+   * @throws TooManyRequestsException If the hasher is saturated.
+   */
+  public boolean check(String hash, String plaintextPassword) throws TooManyRequestsException {
+    return run(() -> BCrypt.checkpw(plaintextPassword, hash));
+  }
+
+  /**
+   * @param hash A hash created by hash().
+   * @return Whether or not the hash was created with a lower cost than is currently applied.
+   */
+  public boolean needsRehash(String hash) {
+    try {
+      return getLogRounds(hash) < logRounds;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return Counters describing the hasher's activity (suitable for JSON).
+   */
+  public Map<String, Object> getStats() {
+    return ImmutableMap.<String, Object>builder()
+        .put("logRounds", logRounds)
+        .put("hashes", hashes.sum())
+        .put("rejected", rejections.sum())
+        .put("queued", (executor != null) ? executor.getQueue().size() : 0)
+        .put("active", (executor != null) ? executor.getActiveCount() : 0)
+        .build();
+  }
+
+  /**
+   * Stops the hasher's threads (if any). If this is the default hasher, the default is reset.
+   */
+  @Override
+  public void close() {
+    if (defaultHasher == this) {
+      defaultHasher = new PasswordHasher(DEFAULT_LOG_ROUNDS);
+    }
+
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  private <T> T run(Callable<T> task) throws TooManyRequestsException {
+    hashes.increment();
+
+    if (executor == null) {
+      try {
+        return task.call();
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    Future<T> future;
+
+    try {
+      future = executor.submit(task);
+    } catch (RejectedExecutionException e) {
+      rejections.increment();
+      throw new TooManyRequestsException("Too many password hashes in progress.");
+    }
+
+    try {
+      return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(false);
+      rejections.increment();
+      throw new TooManyRequestsException("Timed out waiting for password hash.");
+    } catch (InterruptedException e) {
+      future.cancel(false);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private static int checkLogRounds(int logRounds) {
+    if (logRounds < 4 || logRounds > 31) {
+      throw new IllegalArgumentException("BCrypt cost must be between 4 and 31.");
+    }
+
+    return logRounds;
+  }
+}
@@ -1,14 +1,10 @@
 package lightning.crypt;
 
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import javax.servlet.http.Cookie;
 
 import org.slf4j.Logger;
@@ -28,7 +24,6 @@ import lightning.mvc.Param;
  */
 public class SecureCookieManager {
   private static final Logger logger = LoggerFactory.getLogger(SecureCookieManager.class);
-  private static final String HMAC_ALGORITHM = "HmacSHA256";
   private static final int LIFETIME_SECONDS = 60 * 60 * 24 * 14;
     
   /**
@@ -38,18 +33,7 @@ public class SecureCookieManager {
    * @return The base-64 encoded hash signature.
    */
   private static String sign(String plaintext, String secretKey) {
-    SecretKeySpec key = new SecretKeySpec(secretKey.getBytes(), HMAC_ALGORITHM);
-    Mac mac;
-    
-    try {
-      mac = Mac.getInstance(HMAC_ALGORITHM);
-      mac.init(key);
-    } catch (InvalidKeyException | NoSuchAlgorithmException e) {
-      throw new RuntimeException(e); // Shouldn't happen.
-    }
-    
-    byte[] rawHmac = mac.doFinal(plaintext.getBytes());
-    return Base64.getEncoder().encodeToString(rawHmac);
+    return Hmac.sha256(secretKey).base64(plaintext);
   }
   
   /**
@@ -60,7 +44,7 @@ public class SecureCookieManager {
    * @return Whether or not the signature for (plain text, secretKey) matches the provided signature.
    */
   private static boolean verifySignature(String hash, String plaintext, String secretKey) {
-    return sign(plaintext, secretKey).equals(hash);
+    return Hmac.constantTimeEquals(sign(plaintext, secretKey), hash);
   }
   
   /**
@@ -111,9 +95,21 @@ public class SecureCookieManager {
     this.response = response;
     this.sharedSecretKey = secretKey;
     this.alwaysSetSecureOnly = alwaysSetSecureOnly;
-    this.hashCharLen = sign("UNUSED", secretKey).length(); 
+    this.hashCharLen = Hmac.sha256(secretKey).base64Length();
   }
   
+  /**
+   * @param name Cookie name
+   * @param value Cookie value (raw)
+   * @return The size (in bytes) of the name and signed value of the cookie that set(name, value)
+   *         would send, which is what browsers count against their cookie size limits.
+   */
+  public int getEncodedSize(String name, String value) {
+    return name.getBytes(StandardCharsets.UTF_8).length + 1 // '='
+        + value.getBytes(StandardCharsets.UTF_8).length
+        + hashCharLen;
+  }
+
   /**
    * Creates and sets a cookie with the given name and value.
    * @param name Cookie name
@@ -42,7 +42,7 @@ public class TokenSets {
    * @throws Exception
    */
   public TokenSet createNew() throws Exception {
-    return new TokenSet(Hasher.generateToken(64, (x) -> false), hasher);
+    return new TokenSet(Hasher.generateToken(64), hasher);
   }
   
   /**
@@ -0,0 +1,87 @@
+package lightning.crypt;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import lightning.crypt.Hasher.InUseChecker;
+
+/**
+ * Generates cryptographically secure random tokens.
+ *
+ * Each thread uses its own SecureRandom (a DRBG where available) which is seeded once; generating
+ * a token never blocks on system entropy and never contends with other threads.
+ *
+ * Tokens of at least MIN_UNCHECKED_BYTES random bytes are (for all practical purposes) unique, so
+ * collision checks are only performed for shorter tokens.
+ */
+public final class Tokens {
+  /**
+   * Tokens with at least this many random bytes (128 bits) are not checked for collisions.
+   */
+  public static final int MIN_UNCHECKED_BYTES = 16;
+
+  private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+  private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(() -> {
+    try {
+      return SecureRandom.getInstance("DRBG");
+    } catch (NoSuchAlgorithmException e) {
+      return new SecureRandom(); // JRE <= 8.
+    }
+  });
+
+  private Tokens() {}
+
+  /**
+   * @return A SecureRandom for use by the current thread only.
+   */
+  public static SecureRandom random() {
+    return RANDOM.get();
+  }
+
+  /**
+   * @param numBytes Number of bytes.
+   * @return Random bytes.
+   */
+  public static byte[] randomBytes(int numBytes) {
+    byte[] bytes = new byte[numBytes];
+    RANDOM.get().nextBytes(bytes);
+    return bytes;
+  }
+
+  /**
+   * @param numBytes Number of random bytes.
+   * @return A token encoded as URL-safe base64 (without padding).
+   */
+  public static String base64Url(int numBytes) {
+    return BASE64_URL.encodeToString(randomBytes(numBytes));
+  }
+
+  /**
+   * @param numBytes Number of random bytes.
+   * @return A token encoded as lowercase hexadecimal.
+   */
+  public static String hex(int numBytes) {
+    return Hmac.toHex(randomBytes(numBytes));
+  }
+
+  /**
+   * Generates a hexadecimal token, checking short tokens for collisions.
+   * @param numBytes Number of random bytes.
+   * @param checker Checks whether a token is in use (only if numBytes < MIN_UNCHECKED_BYTES).
+   * @return A token.
+   * @throws Exception If the checker fails.
+   */
+  public static String hex(int numBytes, InUseChecker checker) throws Exception {
+    while (true) {
+      String token = hex(numBytes);
+
+      if (numBytes < MIN_UNCHECKED_BYTES && checker != null && checker.isInUse(token)) {
+        continue; // Pick again.
+      }
+
+      return token;
+    }
+  }
+}
@@ -0,0 +1,418 @@
+package lightning.db;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.WeakReference;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import lightning.enums.JsonFieldNamingPolicy;
+
+/**
+ * Maps rows to instances of a class (see RowMapper.of()).
+ *
+ * Classes with a no-argument constructor are instantiated with it and then have their (non-static,
+ * non-transient) fields set from the columns with matching names; fields without a matching column
+ * are left unchanged and columns without a matching field are ignored. Otherwise, the class must
+ * have exactly one constructor, each of whose parameters is filled from the column with the
+ * matching name (if compiled with -parameters) or else from the column in the same position.
+ *
+ * Field and parameter names are converted to column names using a naming policy and compared to
+ * column labels without regard to case.
+ *
+ * Column indexes are resolved once per query shape (the list of column labels), and the shape is
+ * read once per result set (drivers may return new metadata for every getMetaData() call, so
+ * result sets rather than their metadata are compared). Each field or
+ * parameter is bound to a MethodHandle that reads its column with the typed ResultSet getter for
+ * its type, so primitive values are not boxed. Following the conventions of ResultSets, boxed
+ * types are null for SQL NULL (primitives are zero) and booleans are true for positive integers.
+ *
+ * Instances are thread-safe.
+ */
+final class ClassRowMapper<T> implements RowMapper<T> {
+  private static final int MAX_SHAPES = 64;
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  private static final Map<Class<?>, String> READERS = ImmutableMap.<Class<?>, String>builder()
+      .put(long.class, "readLong")
+      .put(Long.class, "readLongObject")
+      .put(int.class, "readInt")
+      .put(Integer.class, "readIntObject")
+      .put(double.class, "readDouble")
+      .put(Double.class, "readDoubleObject")
+      .put(float.class, "readFloat")
+      .put(Float.class, "readFloatObject")
+      .put(boolean.class, "readBoolean")
+      .put(Boolean.class, "readBooleanObject")
+      .put(String.class, "readString")
+      .put(byte[].class, "readBytes")
+      .put(Timestamp.class, "readTimestamp")
+      .put(Date.class, "readDate")
+      .put(Time.class, "readTime")
+      .put(BigDecimal.class, "readBigDecimal")
+      .build();
+
+  /** A field (or constructor parameter) to be filled from a column. */
+  private static final class Target {
+    final String column; // Lower case; null if bound by position.
+    final Class<?> type;
+    final MethodHandle handle; // Setter (Object, type)void or null for constructor parameters.
+
+    Target(String column, Class<?> type, MethodHandle handle) {
+      this.column = column;
+      this.type = type;
+      this.handle = handle;
+    }
+  }
+
+  /** Column bindings for a query shape. */
+  private static final class Binding {
+    final MethodHandle[] setters; // (Object, ResultSet)void; field mode only.
+    final MethodHandle constructor; // (ResultSet)Object; constructor mode only.
+
+    Binding(MethodHandle[] setters, MethodHandle constructor) {
+      this.setters = setters;
+      this.constructor = constructor;
+    }
+  }
+
+  /** The binding used for the most recently mapped result set. */
+  private static final class LastBinding {
+    final WeakReference<ResultSet> result; // Weak so that closed result sets can be collected.
+    final Binding binding;
+
+    LastBinding(ResultSet result, Binding binding) {
+      this.result = new WeakReference<>(result);
+      this.binding = binding;
+    }
+  }
+
+  private final Class<T> type;
+  private final MethodHandle factory; // ()Object; null in constructor mode.
+  private final MethodHandle constructor; // (P1, ..., Pn)Object; null in field mode.
+  private final List<Target> targets;
+  private final ConcurrentHashMap<List<String>, Binding> shapes;
+  private volatile LastBinding last;
+
+  ClassRowMapper(Class<T> type, JsonFieldNamingPolicy policy) {
+    this.type = type;
+    this.shapes = new ConcurrentHashMap<>();
+
+    try {
+      Constructor<T> noArgs = findNoArgsConstructor(type);
+      ImmutableList.Builder<Target> targets = ImmutableList.builder();
+
+      if (noArgs != null) {
+        noArgs.setAccessible(true);
+        this.factory = LOOKUP.unreflectConstructor(noArgs).asType(MethodType.methodType(Object.class));
+        this.constructor = null;
+
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+          for (Field field : c.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers()) || field.isSynthetic()) {
+              continue;
+            }
+
+            field.setAccessible(true);
+            MethodHandle setter = LOOKUP.unreflectSetter(field)
+                .asType(MethodType.methodType(void.class, Object.class, field.getType()));
+            targets.add(new Target(columnName(field.getName(), policy), field.getType(), setter));
+          }
+        }
+      } else {
+        Constructor<?>[] constructors = type.getDeclaredConstructors();
+
+        if (constructors.length != 1) {
+          throw new IllegalArgumentException(
+              "Cannot map rows to " + type.getName() + ": requires a no-argument constructor or exactly one constructor.");
+        }
+
+        constructors[0].setAccessible(true);
+        this.factory = null;
+        this.constructor = LOOKUP.unreflectConstructor(constructors[0]);
+
+        for (Parameter parameter : constructors[0].getParameters()) {
+          String column = parameter.isNamePresent() ? columnName(parameter.getName(), policy) : null;
+          targets.add(new Target(column, parameter.getType(), null));
+        }
+      }
+
+      this.targets = targets.build();
+    } catch (IllegalAccessException | RuntimeException e) {
+      throw (e instanceof IllegalArgumentException)
+          ? (IllegalArgumentException) e
+          : new IllegalArgumentException("Cannot map rows to " + type.getName() + ".", e);
+    }
+  }
+
+  @Override
+  public T map(ResultSet row) throws SQLException {
+    LastBinding previous = last;
+    Binding binding;
+
+    if (previous != null && previous.result.get() == row) {
+      binding = previous.binding; // Same result set as the previous row.
+    } else {
+      binding = bind(row.getMetaData());
+      last = new LastBinding(row, binding);
+    }
+
+    return map(binding, row);
+  }
+
+  /**
+   * @param result A result set.
+   * @return A mapper for the rows of result (only) that resolves columns once rather than
+   *         checking the shape of every row.
+   * @throws SQLException On failure.
+   */
+  RowMapper<T> forResultSet(ResultSet result) throws SQLException {
+    Binding binding = bind(result.getMetaData());
+    return (row) -> map(binding, row);
+  }
+
+  private T map(Binding binding, ResultSet row) throws SQLException {
+    try {
+      Object instance;
+
+      if (binding.constructor != null) {
+        instance = (Object) binding.constructor.invokeExact(row);
+      } else {
+        instance = (Object) factory.invokeExact();
+        for (MethodHandle setter : binding.setters) {
+          setter.invokeExact(instance, row);
+        }
+      }
+
+      return type.cast(instance);
+    } catch (SQLException | RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new SQLException("Failed to map row to " + type.getName() + ".", e);
+    }
+  }
+
+  /**
+   * @return The binding for the shape of the result set described by metadata.
+   */
+  private Binding bind(ResultSetMetaData metadata) throws SQLException {
+    List<String> labels = new ArrayList<>(metadata.getColumnCount());
+    for (int i = 1; i <= metadata.getColumnCount(); i++) {
+      labels.add(metadata.getColumnLabel(i).toLowerCase(Locale.ROOT));
+    }
+
+    Binding binding = shapes.get(labels);
+
+    if (binding == null) {
+      if (shapes.size() >= MAX_SHAPES) {
+        shapes.clear(); // Shapes are normally fixed by the queries in code; guards against misuse.
+      }
+
+      binding = createBinding(labels);
+      shapes.put(labels, binding);
+    }
+
+    return binding;
+  }
+
+  private Binding createBinding(List<String> labels) throws SQLException {
+    Map<String, Integer> indexes = new HashMap<>();
+    for (int i = labels.size() - 1; i >= 0; i--) {
+      indexes.put(labels.get(i), i + 1); // The first column wins if labels repeat.
+    }
+
+    if (constructor == null) {
+      List<MethodHandle> setters = new ArrayList<>();
+
+      for (Target target : targets) {
+        Integer index = indexes.get(target.column);
+        if (index != null) {
+          setters.add(MethodHandles.filterArguments(target.handle, 1, reader(target.type, index)));
+        }
+      }
+
+      return new Binding(setters.toArray(new MethodHandle[setters.size()]), null);
+    }
+
+    MethodHandle handle = constructor;
+    for (int i = 0; i < targets.size(); i++) {
+      Target target = targets.get(i);
+      Integer index = (target.column != null) ? indexes.get(target.column) : Integer.valueOf(i + 1);
+
+      if (index == null || index > labels.size()) {
+        throw new SQLException(String.format("Cannot map rows to %s: no column for constructor parameter %s.",
+            type.getName(), (target.column != null) ? target.column : Integer.toString(i)));
+      }
+
+      handle = MethodHandles.filterArguments(handle, i, reader(target.type, index));
+    }
+
+    // Pass the same ResultSet to every reader.
+    handle = MethodHandles.permuteArguments(handle,
+        MethodType.methodType(handle.type().returnType(), ResultSet.class), new int[targets.size()]);
+    return new Binding(null, handle.asType(MethodType.methodType(Object.class, ResultSet.class)));
+  }
+
+  /**
+   * @return A handle (ResultSet)type that reads the column at index.
+   */
+  private static MethodHandle reader(Class<?> type, int index) {
+    try {
+      String name = READERS.get(type);
+      MethodHandle reader;
+
+      if (name != null) {
+        reader = LOOKUP.findStatic(ClassRowMapper.class, name,
+            MethodType.methodType(type, ResultSet.class, int.class));
+      } else {
+        reader = LOOKUP.findStatic(ClassRowMapper.class, "readObject",
+            MethodType.methodType(Object.class, ResultSet.class, int.class, Class.class));
+        reader = MethodHandles.insertArguments(reader, 2, type)
+            .asType(MethodType.methodType(type, ResultSet.class, int.class));
+      }
+
+      return MethodHandles.insertArguments(reader, 1, index);
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new RuntimeException(e); // Readers are declared below; should not happen.
+    }
+  }
+
+  private static <T> Constructor<T> findNoArgsConstructor(Class<T> type) {
+    try {
+      return type.getDeclaredConstructor();
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return The (lower case) column name for a field or parameter name under a naming policy.
+   */
+  static String columnName(String name, JsonFieldNamingPolicy policy) {
+    switch (policy) {
+      case LOWER_CASE_WITH_UNDERSCORES:
+        return separateCamelCase(name, '_').toLowerCase(Locale.ROOT);
+      case LOWER_CASE_WITH_DASHES:
+        return separateCamelCase(name, '-').toLowerCase(Locale.ROOT);
+      case IDENTITY:
+      case UPPER_CAMEL_CASE:
+      default:
+        return name.toLowerCase(Locale.ROOT); // Labels are compared without regard to case.
+    }
+  }
+
+  private static String separateCamelCase(String name, char separator) {
+    StringBuilder result = new StringBuilder(name.length() + 4);
+
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (Character.isUpperCase(c) && result.length() != 0) {
+        result.append(separator);
+      }
+      result.append(c);
+    }
+
+    return result.toString();
+  }
+
+  /*********************************************
+   * Readers (bound to columns by reader())
+   *********************************************/
+
+  private static long readLong(ResultSet rs, int i) throws SQLException {
+    return rs.getLong(i);
+  }
+
+  private static Long readLongObject(ResultSet rs, int i) throws SQLException {
+    long value = rs.getLong(i);
+    return rs.wasNull() ? null : value;
+  }
+
+  private static int readInt(ResultSet rs, int i) throws SQLException {
+    return rs.getInt(i);
+  }
+
+  private static Integer readIntObject(ResultSet rs, int i) throws SQLException {
+    int value = rs.getInt(i);
+    return rs.wasNull() ? null : value;
+  }
+
+  private static double readDouble(ResultSet rs, int i) throws SQLException {
+    return rs.getDouble(i);
+  }
+
+  private static Double readDoubleObject(ResultSet rs, int i) throws SQLException {
+    double value = rs.getDouble(i);
+    return rs.wasNull() ? null : value;
+  }
+
+  private static float readFloat(ResultSet rs, int i) throws SQLException {
+    return rs.getFloat(i);
+  }
+
+  private static Float readFloatObject(ResultSet rs, int i) throws SQLException {
+    float value = rs.getFloat(i);
+    return rs.wasNull() ? null : value;
+  }
+
+  private static boolean readBoolean(ResultSet rs, int i) throws SQLException {
+    return rs.getInt(i) > 0; // SQL has no native booleans.
+  }
+
+  private static Boolean readBooleanObject(ResultSet rs, int i) throws SQLException {
+    int value = rs.getInt(i);
+    return rs.wasNull() ? null : value > 0;
+  }
+
+  private static String readString(ResultSet rs, int i) throws SQLException {
+    return rs.getString(i);
+  }
+
+  private static byte[] readBytes(ResultSet rs, int i) throws SQLException {
+    return rs.getBytes(i);
+  }
+
+  private static Timestamp readTimestamp(ResultSet rs, int i) throws SQLException {
+    return rs.getTimestamp(i);
+  }
+
+  private static Date readDate(ResultSet rs, int i) throws SQLException {
+    return rs.getDate(i);
+  }
+
+  private static Time readTime(ResultSet rs, int i) throws SQLException {
+    return rs.getTime(i);
+  }
+
+  private static BigDecimal readBigDecimal(ResultSet rs, int i) throws SQLException {
+    return rs.getBigDecimal(i);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object readObject(ResultSet rs, int i, Class<?> type) throws SQLException {
+    if (type.isEnum()) {
+      String value = rs.getString(i);
+      return (value != null) ? Enum.valueOf((Class<? extends Enum>) type, value) : null;
+    }
+
+    return rs.getObject(i, type);
+  }
+}
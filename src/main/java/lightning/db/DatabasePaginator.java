@@ -3,10 +3,17 @@ package lightning.db;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import lightning.cache.Cache;
+import lightning.cache.CacheException;
+import lightning.crypt.Digests;
+import lightning.crypt.Hmac;
 import lightning.http.NotFoundException;
 
 /**
@@ -28,12 +35,24 @@ import lightning.http.NotFoundException;
  *     }
  *   }
  *
+ * Counting the rows of a large result can cost more than fetching a page. Counts may be cached
+ * (keyed by the query and its parameters) so that they are shared between paginators and servers:
+ *   dbp = db.paginate(...).cacheCounts(cache, 300);
+ *
+ * Counts may also be approximated from the optimizer's row estimates (EXPLAIN) when the estimate
+ * exceeds a threshold; isCountExact() reports whether this occurred:
+ *   dbp = db.paginate(...).approximateCountsAbove(100000);
  */
 public class DatabasePaginator {
   final static Logger logger = LoggerFactory.getLogger(DatabasePaginator.class);
+  private static final String COUNT_KEY_PREFIX = "lightning-count:";
 
   private long rowCount = -1;
   private long pageCount = -1;
+  private boolean isCountExact = true;
+  private @Nullable Cache countCache;
+  private long countCacheTtlS;
+  private long approximateThreshold = -1;
   private final long pageSize;
   private final MySQLDatabase db;
   private final String query;
@@ -62,6 +81,39 @@ public class DatabasePaginator {
     this.parameters = parameters;
   }
 
+  /**
+   * Caches row counts in the given cache (shared by all paginators for the same query and
+   * parameters). Counts may therefore be up to ttlS seconds out of date.
+   * @param cache A cache.
+   * @param ttlS The amount of time for which a count is cached (in seconds).
+   * @return This paginator.
+   */
+  public DatabasePaginator cacheCounts(Cache cache, long ttlS) {
+    this.countCache = cache;
+    this.countCacheTtlS = ttlS;
+    return this;
+  }
+
+  /**
+   * Uses the optimizer's estimate of the number of rows (from EXPLAIN) instead of an exact count
+   * when the estimate is at least threshold.
+   * @param threshold A number of rows.
+   * @return This paginator.
+   */
+  public DatabasePaginator approximateCountsAbove(long threshold) {
+    this.approximateThreshold = threshold;
+    return this;
+  }
+
+  /**
+   * @return Whether getTotalRows() (and therefore getTotalPages()) is exact rather than estimated.
+   * @throws SQLException
+   */
+  public boolean isCountExact() throws SQLException {
+    calculatePages();
+    return isCountExact;
+  }
+
   /**
    * @return The total number of pages returned by your query.
    * @throws SQLException
@@ -124,6 +176,45 @@ public class DatabasePaginator {
       return; // Nothing to do.
     }
 
+    long count;
+
+    String cacheKey = (countCache != null) ? countCacheKey() : null;
+
+    if (cacheKey != null) {
+      try {
+        count = countCache.get(cacheKey, Long.class, this::countRows, countCacheTtlS);
+      } catch (CacheException e) {
+        if (e.getCause() instanceof SQLException) {
+          throw (SQLException) e.getCause();
+        }
+
+        logger.warn("Failed to read cached row count:", e);
+        count = countRows();
+      }
+    } else {
+      count = countRows();
+    }
+
+    // Approximate counts are encoded as -(count + 1) so that they can be cached as a single value.
+    isCountExact = count >= 0;
+    rowCount = isCountExact ? count : -(count + 1);
+    pageCount = (rowCount == 0) ? 1 : (rowCount / pageSize) + (rowCount % pageSize > 0 ? 1 : 0);
+    logger.debug("Found Count: rows=" + rowCount + " pages=" + pageCount + " exact=" + isCountExact);
+  }
+
+  /**
+   * @return The number of rows, or -(estimate + 1) if the count was approximated.
+   * @throws SQLException
+   */
+  private long countRows() throws SQLException {
+    if (approximateThreshold >= 0) {
+      long estimate = estimateRows();
+
+      if (estimate >= approximateThreshold) {
+        return -(estimate + 1);
+      }
+    }
+
     int selectStart = query.toLowerCase().indexOf("select ") + "select ".length();
     int selectEnd = query.toLowerCase().indexOf(" from ");
     String countQuery = query.substring(0, selectStart) + "COUNT(*) AS count" + query.substring(selectEnd);
@@ -134,10 +225,64 @@ public class DatabasePaginator {
         throw new SQLException("The count query failed.");
       }
 
-      rowCount = result.getLong("count");
-      pageCount = (rowCount == 0) ? 1 : (rowCount / pageSize) + (rowCount % pageSize > 0 ? 1 : 0);
+      return result.getLong("count");
+    }
+  }
+
+  /**
+   * @return The optimizer's estimate of the number of rows returned by the query (the product of
+   *         the estimated rows, after filtering, of each table in the plan).
+   * @throws SQLException
+   */
+  private long estimateRows() throws SQLException {
+    String explainQuery = "EXPLAIN " + (query.endsWith(";") ? query.substring(0, query.length() - 1) : query);
+    logger.debug("Explain Query: " + explainQuery);
+    double estimate = 1;
+
+    try (NamedPreparedStatement statement = db.prepare(explainQuery, parameters);
+         ResultSet result = statement.executeQuery()) {
+      while (result.next()) {
+        long rows = result.getLong("rows");
+        double filtered = result.getDouble("filtered");
+        estimate *= rows * (result.wasNull() ? 100 : filtered) / 100;
+      }
+    }
+
+    return Math.round(estimate);
+  }
+
+  /**
+   * @return A key for the count of this query, or null if a parameter value cannot be encoded
+   *         stably (i.e. its string form depends on its identity rather than its contents).
+   */
+  private @Nullable String countCacheKey() {
+    StringBuilder key = new StringBuilder(query.replaceAll("\\s+", " "));
+    key.append('\0').append(approximateThreshold);
+
+    for (Map.Entry<String, Object> entry : new TreeMap<>(parameters).entrySet()) {
+      Object value = entry.getValue();
+      key.append('\0').append(entry.getKey()).append('=');
+
+      if (value == null) {
+        key.append("null");
+      } else if (value instanceof byte[]) {
+        key.append("byte[]:").append(Hmac.toHex((byte[]) value));
+      } else if (hasIdentityToString(value)) {
+        return null;
+      } else {
+        key.append(value.getClass().getSimpleName()).append(':').append(value);
+      }
+    }
+
+    return COUNT_KEY_PREFIX + Digests.sha256Hex(key.toString());
+  }
+
+  private static boolean hasIdentityToString(Object value) {
+    try {
+      return value.getClass().getMethod("toString").getDeclaringClass() == Object.class;
+    } catch (NoSuchMethodException e) {
+      return true; // Not possible; every class has toString().
     }
-    logger.debug("Found Count: rows=" + rowCount + " pages=" + pageCount);
   }
 
   /**
@@ -0,0 +1,203 @@
+package lightning.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Periodically deletes expired rows from MySQL tables on a background thread.
+ *
+ * Rows are deleted in bounded batches (DELETE ... LIMIT n) so that no single statement holds locks
+ * for long or produces a large amount of replication traffic. A run stops after a fixed number of
+ * batches per table; any remaining rows are deleted by subsequent runs.
+ *
+ * When multiple servers share a database, only the server holding the reaper's DistributedLock
+ * performs a run; the others skip it.
+ *
+ * Each table should have an index on the expiration column.
+ *
+ * This class is thread-safe.
+ */
+public final class ExpiredRowReaper implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(ExpiredRowReaper.class);
+  private static final String LOCK_NAME = "lightning-expired-row-reaper";
+
+  private static final class Task {
+    final String table;
+    final String column;
+    final LongSupplier cutoff;
+    final LongAdder rowsDeleted = new LongAdder();
+
+    Task(String table, String column, LongSupplier cutoff) {
+      this.table = table;
+      this.column = column;
+      this.cutoff = cutoff;
+    }
+  }
+
+  private final MySQLDatabaseProvider provider;
+  private final int batchSize;
+  private final int maxBatchesPerRun;
+  private final List<Task> tasks;
+  private final ScheduledExecutorService executor;
+  private final LongAdder runs;
+  private final LongAdder skippedRuns;
+  private final LongAdder failedRuns;
+  private final AtomicLong lastRunMs;
+  private final AtomicLong lastRunTime;
+
+  /**
+   * @param provider Provides database connections.
+   * @param batchSize Maximum number of rows deleted by a single statement.
+   * @param maxBatchesPerRun Maximum number of statements executed per table per run.
+   */
+  public ExpiredRowReaper(MySQLDatabaseProvider provider, int batchSize, int maxBatchesPerRun) {
+    if (batchSize < 1 || maxBatchesPerRun < 1) {
+      throw new IllegalArgumentException("Batch size and batches per run must be positive.");
+    }
+
+    this.provider = provider;
+    this.batchSize = batchSize;
+    this.maxBatchesPerRun = maxBatchesPerRun;
+    this.tasks = new CopyOnWriteArrayList<>();
+    this.runs = new LongAdder();
+    this.skippedRuns = new LongAdder();
+    this.failedRuns = new LongAdder();
+    this.lastRunMs = new AtomicLong();
+    this.lastRunTime = new AtomicLong();
+    this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "lightning-reaper");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Registers a table to be reaped. Table and column names are not escaped.
+   * @param table The table name.
+   * @param column A numeric column (e.g. a UNIX timestamp).
+   * @param cutoff Supplies the value below which rows are expired (evaluated on each run).
+   * @return this
+   */
+  public ExpiredRowReaper register(String table, String column, LongSupplier cutoff) {
+    tasks.add(new Task(table, column, cutoff));
+    return this;
+  }
+
+  /**
+   * Schedules periodic runs.
+   * @param interval Time between the end of one run and the start of the next.
+   * @param unit Unit of interval.
+   * @return this
+   */
+  public ExpiredRowReaper start(long interval, TimeUnit unit) {
+    executor.scheduleWithFixedDelay(this::runQuietly, interval, interval, unit);
+    return this;
+  }
+
+  /**
+   * Performs a run on the calling thread.
+   * @return Whether or not the run was performed (false if another server held the lock).
+   * @throws Exception On failure.
+   */
+  public boolean run() throws Exception {
+    long start = System.currentTimeMillis();
+
+    try (MySQLDatabase db = provider.getDatabase()) {
+      DistributedLock lock = new DistributedLock(db, LOCK_NAME);
+
+      if (!lock.tryLock()) {
+        skippedRuns.increment();
+        return false;
+      }
+
+      try {
+        for (Task task : tasks) {
+          reap(db, task);
+        }
+      } finally {
+        lock.release();
+      }
+    } catch (Exception e) {
+      failedRuns.increment();
+      throw e;
+    }
+
+    runs.increment();
+    lastRunTime.set(start);
+    lastRunMs.set(System.currentTimeMillis() - start);
+    return true;
+  }
+
+  private void reap(MySQLDatabase db, Task task) throws SQLException {
+    String sql = "DELETE FROM " + task.table + " WHERE " + task.column + " < ? LIMIT " + batchSize + ";";
+    List<Object> params = new ArrayList<>(1);
+    params.add(task.cutoff.getAsLong());
+
+    for (int i = 0; i < maxBatchesPerRun; i++) {
+      PreparedStatement query = db.prepare(sql, params);
+      int deleted;
+
+      try {
+        deleted = query.executeUpdate();
+      } finally {
+        query.close();
+      }
+
+      task.rowsDeleted.add(deleted);
+
+      if (deleted < batchSize) {
+        return;
+      }
+    }
+
+    logger.debug("Reaper reached batch limit for {}; continuing next run.", task.table);
+  }
+
+  private void runQuietly() {
+    try {
+      run();
+    } catch (Exception e) {
+      logger.warn("Failed to reap expired rows:", e);
+    }
+  }
+
+  /**
+   * @return Counters describing the reaper's activity (suitable for JSON).
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Long> deleted = new LinkedHashMap<>();
+    for (Task task : tasks) {
+      deleted.merge(task.table, task.rowsDeleted.sum(), Long::sum);
+    }
+
+    return ImmutableMap.<String, Object>builder()
+        .put("runs", runs.sum())
+        .put("skippedRuns", skippedRuns.sum())
+        .put("failedRuns", failedRuns.sum())
+        .put("lastRunTimeMs", lastRunTime.get())
+        .put("lastRunDurationMs", lastRunMs.get())
+        .put("rowsDeleted", deleted)
+        .build();
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
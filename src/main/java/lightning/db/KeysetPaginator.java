@@ -0,0 +1,379 @@
+package lightning.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+import lightning.db.DatabasePaginator.DatabasePaginatorVisitor;
+import lightning.http.BadRequestException;
+
+/**
+ * A utility class to help with paginating database queries by key (also known as seek pagination).
+ *
+ * Unlike DatabasePaginator (which uses LIMIT offset, size and therefore reads and discards every
+ * row before the requested page), each page is fetched by seeking past the key of the last row of
+ * the previous page:
+ *   SELECT ... WHERE (...) AND (k1, k2) > (:last1, :last2) ORDER BY k1, k2 LIMIT size
+ * With an index on the key columns, every page is as fast to fetch as the first.
+ *
+ * Pages are identified by opaque continuation tokens rather than by number; a null token refers
+ * to the first page. Counting the total number of rows is optional (see getTotalRows()).
+ *
+ * Example:
+ *   kp = new KeysetPaginator(db, "SELECT * FROM users WHERE active = 1", ImmutableMap.of(),
+ *                            ImmutableList.of("id"), 50);
+ *   String token = null;
+ *   do {
+ *     token = kp.forEachRowInPage(token, (row) -> {
+ *       doSomethingWith(row);
+ *     });
+ *   } while (token != null);
+ *
+ * To page from the largest key to the smallest, pass descending = true (or use
+ * MySQLDatabase.paginateByKey(..., true)).
+ *
+ * The query must be of the form SELECT ... FROM ... [WHERE ...] (without subqueries or GROUP BY,
+ * HAVING, ORDER BY, LIMIT, or UNION clauses); other queries are rejected by the constructor. The
+ * key columns must be non-null, must uniquely identify a row, and must be selected by the query
+ * (their values are read using the column name following the last '.', e.g. "u.id" is read as
+ * "id"). Key values must be integers (including BigIntegers), decimals, strings, timestamps, or
+ * byte arrays.
+ */
+public class KeysetPaginator {
+  final static Logger logger = LoggerFactory.getLogger(KeysetPaginator.class);
+
+  private static final String PARAMETER_PREFIX = "lightning_keyset_";
+  private static final byte TYPE_LONG = 1;
+  private static final byte TYPE_STRING = 2;
+  private static final byte TYPE_TIMESTAMP = 3;
+  private static final byte TYPE_BYTES = 4;
+  private static final byte TYPE_BIG_INTEGER = 5;
+  private static final byte TYPE_BIG_DECIMAL = 6;
+  private static final Pattern WHERE = Pattern.compile("\\s*\\bwhere\\b\\s*", Pattern.CASE_INSENSITIVE);
+  private static final Pattern SUBQUERY = Pattern.compile("\\(\\s*select\\b", Pattern.CASE_INSENSITIVE);
+  private static final Pattern UNSUPPORTED_CLAUSE = Pattern.compile(
+      "\\b(group\\s+by|having|order\\s+by|limit|union)\\b", Pattern.CASE_INSENSITIVE);
+
+  private final MySQLDatabase db;
+  private final String query;
+  private final Map<String, Object> parameters;
+  private final List<String> keyColumns;
+  private final List<String> keyLabels;
+  private final long pageSize;
+  private final String firstPageQuery;
+  private final String nextPageQuery;
+  private long rowCount = -1;
+
+  /**
+   * @param db The database to use.
+   * @param query The text of a query (as would be formatted in a NamedPreparedStatement) with no
+   *              ORDER BY or LIMIT clause.
+   * @param parameters The values that fill in place-holders in the query text.
+   * @param keyColumns The columns that order the rows and uniquely identify each row.
+   * @param pageSize The size of each page.
+   */
+  public KeysetPaginator(MySQLDatabase db, String query, Map<String, Object> parameters,
+      List<String> keyColumns, long pageSize) {
+    this(db, query, parameters, keyColumns, pageSize, false);
+  }
+
+  /**
+   * @param db The database to use.
+   * @param query The text of a query (as would be formatted in a NamedPreparedStatement) with no
+   *              ORDER BY or LIMIT clause.
+   * @param parameters The values that fill in place-holders in the query text.
+   * @param keyColumns The columns that order the rows and uniquely identify each row.
+   * @param pageSize The size of each page.
+   * @param descending Whether to order rows by descending (rather than ascending) key.
+   * @throws IllegalArgumentException If the query is not of a supported form.
+   */
+  public KeysetPaginator(MySQLDatabase db, String query, Map<String, Object> parameters,
+      List<String> keyColumns, long pageSize, boolean descending) {
+    if (keyColumns.isEmpty() || pageSize < 1) {
+      throw new IllegalArgumentException("At least one key column and a positive page size are required.");
+    }
+
+    this.db = db;
+    this.query = query.trim().endsWith(";")
+        ? query.trim().substring(0, query.trim().length() - 1)
+        : query.trim();
+    this.parameters = parameters;
+    this.keyColumns = ImmutableList.copyOf(keyColumns);
+    this.pageSize = pageSize;
+
+    ImmutableList.Builder<String> labels = ImmutableList.builder();
+    for (String column : keyColumns) {
+      labels.add(column.substring(column.lastIndexOf('.') + 1).replace("`", ""));
+    }
+    this.keyLabels = labels.build();
+
+    // Precompute both query texts (they do not depend on the token).
+    StringBuilder keys = new StringBuilder();
+    StringBuilder values = new StringBuilder();
+    StringBuilder order = new StringBuilder();
+    for (int i = 0; i < keyColumns.size(); i++) {
+      String separator = (i == 0) ? "" : ", ";
+      keys.append(separator).append(keyColumns.get(i));
+      values.append(separator).append(":").append(PARAMETER_PREFIX).append(i);
+      order.append(separator).append(keyColumns.get(i)).append(descending ? " DESC" : " ASC");
+    }
+
+    String seek = (keyColumns.size() == 1)
+        ? String.format("%s %s %s", keys, descending ? "<" : ">", values)
+        : String.format("(%s) %s (%s)", keys, descending ? "<" : ">", values);
+    String suffix = String.format(" ORDER BY %s LIMIT %d;", order, pageSize + 1);
+    String masked = maskLiterals(this.query);
+
+    if (SUBQUERY.matcher(masked).find() || UNSUPPORTED_CLAUSE.matcher(masked).find()) {
+      throw new IllegalArgumentException(
+          "Query must be of the form SELECT ... FROM ... [WHERE ...] without subqueries: " + this.query);
+    }
+
+    Matcher where = WHERE.matcher(masked);
+    this.firstPageQuery = this.query + suffix;
+
+    if (!where.find()) {
+      this.nextPageQuery = this.query + " WHERE " + seek + suffix;
+    } else {
+      int start = where.start();
+      int end = where.end();
+      if (where.find()) {
+        throw new IllegalArgumentException("Query must contain at most one WHERE clause: " + this.query);
+      }
+      this.nextPageQuery = this.query.substring(0, start) + " WHERE (" + this.query.substring(end)
+          + ") AND " + seek + suffix;
+    }
+  }
+
+  /**
+   * @return query with the contents of quoted strings and identifiers replaced by spaces (so that
+   *         keywords are only matched outside of them). Offsets are preserved.
+   */
+  private static String maskLiterals(String query) {
+    char[] chars = query.toCharArray();
+    char quote = 0;
+
+    for (int i = 0; i < chars.length; i++) {
+      char c = chars[i];
+
+      if (quote == 0) {
+        if (c == '\'' || c == '"' || c == '`') {
+          quote = c;
+        }
+      } else if (c == '\\' && quote != '`' && i + 1 < chars.length) {
+        chars[i] = ' ';
+        chars[++i] = ' ';
+      } else if (c == quote) {
+        quote = 0; // A doubled quote closes and immediately re-opens the literal.
+      } else {
+        chars[i] = ' ';
+      }
+    }
+
+    return new String(chars);
+  }
+
+  /**
+   * @return The size of each page.
+   */
+  public long getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * NOTE: Runs a COUNT(*) over the entire result; avoid for large tables unless required.
+   * @return The total number of rows returned by your query.
+   * @throws SQLException
+   */
+  public long getTotalRows() throws SQLException {
+    if (rowCount == -1) {
+      rowCount = new DatabasePaginator(db, query, parameters, pageSize).getTotalRows();
+    }
+
+    return rowCount;
+  }
+
+  /**
+   * NOTE: Caller must close() to avoid leaking resources.
+   *
+   * The statement returns up to getPageSize() + 1 rows; the last row (if present) is not part of
+   * the page and indicates that another page exists.
+   *
+   * @param token A continuation token (or null for the first page).
+   * @return A statement to execute to fetch the rows for the page.
+   * @throws BadRequestException If the token is not valid.
+   * @throws SQLException On error.
+   */
+  public NamedPreparedStatement getQueryForPage(@Nullable String token) throws SQLException {
+    if (token == null) {
+      logger.debug("Fetching first page query=" + firstPageQuery);
+      return db.prepare(firstPageQuery, parameters);
+    }
+
+    List<Object> values = decodeToken(token);
+    Map<String, Object> pageParameters = new HashMap<>(parameters);
+    for (int i = 0; i < values.size(); i++) {
+      pageParameters.put(PARAMETER_PREFIX + i, values.get(i));
+    }
+
+    logger.debug("Fetching page query=" + nextPageQuery);
+    return db.prepare(nextPageQuery, pageParameters);
+  }
+
+  /**
+   * Executes a function once for every row in a page.
+   * @param token A continuation token (or null for the first page).
+   * @param fn A function to execute for every row in the page.
+   * @return A continuation token for the next page (or null if there are no more rows).
+   * @throws BadRequestException If the token is not valid.
+   * @throws Exception On error.
+   */
+  public @Nullable String forEachRowInPage(@Nullable String token, DatabasePaginatorVisitor fn) throws Exception {
+    try (NamedPreparedStatement statement = getQueryForPage(token);
+         ResultSet result = statement.executeQuery()) {
+      String lastToken = null;
+
+      for (long i = 0; i < pageSize && result.next(); i++) {
+        fn.apply(result);
+
+        if (i == pageSize - 1) {
+          lastToken = getToken(result);
+        }
+      }
+
+      return (lastToken != null && result.next()) ? lastToken : null;
+    }
+  }
+
+  /**
+   * @param row A row returned by the query.
+   * @return A continuation token for the page that begins after the row.
+   * @throws SQLException On error.
+   */
+  public String getToken(ResultSet row) throws SQLException {
+    List<Object> values = new ArrayList<>(keyLabels.size());
+
+    for (String label : keyLabels) {
+      values.add(row.getObject(label));
+    }
+
+    return encodeToken(values);
+  }
+
+  private String encodeToken(List<Object> values) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+
+      for (Object value : values) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+          out.writeByte(TYPE_LONG);
+          out.writeLong(((Number) value).longValue());
+        } else if (value instanceof String) {
+          out.writeByte(TYPE_STRING);
+          out.writeUTF((String) value);
+        } else if (value instanceof Timestamp) {
+          out.writeByte(TYPE_TIMESTAMP);
+          out.writeLong(((Timestamp) value).getTime());
+          out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof byte[]) {
+          out.writeByte(TYPE_BYTES);
+          out.writeInt(((byte[]) value).length);
+          out.write((byte[]) value);
+        } else if (value instanceof BigInteger) {
+          byte[] magnitude = ((BigInteger) value).toByteArray();
+          out.writeByte(TYPE_BIG_INTEGER);
+          out.writeInt(magnitude.length);
+          out.write(magnitude);
+        } else if (value instanceof BigDecimal) {
+          byte[] unscaled = ((BigDecimal) value).unscaledValue().toByteArray();
+          out.writeByte(TYPE_BIG_DECIMAL);
+          out.writeInt(((BigDecimal) value).scale());
+          out.writeInt(unscaled.length);
+          out.write(unscaled);
+        } else {
+          throw new IllegalArgumentException("Unsupported key column value: " + value);
+        }
+      }
+
+      out.flush();
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    } catch (IOException e) {
+      throw new RuntimeException(e); // Should not happen (writing to memory).
+    }
+  }
+
+  private List<Object> decodeToken(String token) {
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)));
+      List<Object> values = new ArrayList<>(keyColumns.size());
+
+      for (int i = 0; i < keyColumns.size(); i++) {
+        switch (in.readByte()) {
+          case TYPE_LONG:
+            values.add(in.readLong());
+            break;
+          case TYPE_STRING:
+            values.add(in.readUTF());
+            break;
+          case TYPE_TIMESTAMP:
+            Timestamp timestamp = new Timestamp(in.readLong());
+            timestamp.setNanos(in.readInt());
+            values.add(timestamp);
+            break;
+          case TYPE_BYTES:
+            values.add(readBytes(in));
+            break;
+          case TYPE_BIG_INTEGER:
+            values.add(new BigInteger(readBytes(in)));
+            break;
+          case TYPE_BIG_DECIMAL:
+            int scale = in.readInt();
+            values.add(new BigDecimal(new BigInteger(readBytes(in)), scale));
+            break;
+          default:
+            throw new IOException("Invalid type.");
+        }
+      }
+
+      if (in.available() > 0) {
+        throw new IOException("Trailing data.");
+      }
+
+      return values;
+    } catch (IOException | IllegalArgumentException e) {
+      throw new BadRequestException("Invalid page token.");
+    }
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > in.available()) {
+      throw new IOException("Invalid length.");
+    }
+    byte[] value = new byte[length];
+    in.readFully(value);
+    return value;
+  }
+}
@@ -5,6 +5,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Note: See MySQLDatabaseImpl for documentation and comments.
@@ -36,7 +37,14 @@ public interface MySQLDatabase extends AutoCloseable {
   public NamedPreparedStatement prepareInsert(String table, Map<String, ?> data) throws SQLException;
   public NamedPreparedStatement prepareReplace(String table, Map<String, ?> data) throws SQLException;
   public DatabasePaginator paginate(String query, Map<String, Object> data, long pageSize) throws SQLException;
+  public KeysetPaginator paginateByKey(String query, Map<String, Object> data, List<String> keyColumns, long pageSize) throws SQLException;
+  public KeysetPaginator paginateByKey(String query, Map<String, Object> data, List<String> keyColumns, long pageSize, boolean descending) throws SQLException;
   public PreparedStatement prepare(String query, List<Object> data) throws SQLException;
+  public <T> Stream<T> stream(String query, Map<String, ?> data, RowMapper<T> mapper) throws SQLException;
+  public int insertAll(String table, List<? extends Map<String, ?>> rows) throws SQLException;
+  public int insertAll(String table, List<? extends Map<String, ?>> rows, boolean atomic) throws SQLException;
+  public int replaceAll(String table, List<? extends Map<String, ?>> rows) throws SQLException;
+  public int replaceAll(String table, List<? extends Map<String, ?>> rows, boolean atomic) throws SQLException;
   public void save(Saveable saveable) throws SQLException;
 
   public static MySQLDatabase createConnection(MySQLDatabaseProvider provider) throws SQLException {
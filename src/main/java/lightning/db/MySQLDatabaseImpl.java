@@ -2,13 +2,17 @@ package lightning.db;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 /**
  * Encapsulates a connection to a MySQL database.
@@ -18,6 +22,12 @@ import java.util.concurrent.locks.ReentrantLock;
  * @see http://zetcode.com/db/mysqljava/
  */
 public class MySQLDatabaseImpl implements MySQLDatabase {
+  // Limits for statements written by insertAll() and replaceAll(). MAX_BATCH_BYTES is an estimate
+  // that stays well under the smallest default max_allowed_packet (4MB).
+  private static final int MAX_BATCH_ROWS = 1000;
+  private static final int MAX_BATCH_PARAMETERS = 65535; // MySQL's limit per statement.
+  private static final long MAX_BATCH_BYTES = 1 << 20;
+
   private final Connection connection;
   private final MySQLDatabaseProvider provider;
 
@@ -204,24 +214,236 @@ public class MySQLDatabaseImpl implements MySQLDatabase {
         connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
 
     for (int i = 0; i < data.size(); i++) {
-      Object value = data.get(i);
-
-      if (value instanceof Long) {
-        statement.setLong(i + 1, ((Long) value).longValue());
-      } else if (value instanceof Integer) {
-        statement.setInt(i + 1, ((Integer) value).intValue());
-      } else if (value instanceof String) {
-        statement.setString(i + 1, (String) value);
-      } else if (value instanceof Timestamp) {
-        statement.setTimestamp(i + 1, (Timestamp) value);
-      } else if (value instanceof Boolean) {
-        statement.setInt(i + 1, ((Boolean) value).booleanValue() ? 1 : 0); // SQL has no native booleans.
+      setParameter(statement, i + 1, data.get(i));
+    }
+
+    return statement;
+  }
+
+  /**
+   * Executes a query and lazily maps its rows as they are streamed from the server (rather than
+   * buffering the entire result in memory), for processing large results in constant memory.
+   *
+   * The stream must be closed (e.g. using try-with-resources) to release the statement. While the
+   * stream is open, no other queries may be executed on this connection. Closing the stream before
+   * consuming every row still reads (and discards) the remaining rows.
+   *
+   * @param query A prepared SQL statement with named parameters.
+   * @param data A map of named parameters to their values.
+   * @param mapper Converts each row.
+   * @return A stream of the mapped rows.
+   * @throws SQLException On failure.
+   */
+  @Override
+  public <T> Stream<T> stream(String query, Map<String, ?> data, RowMapper<T> mapper)
+      throws SQLException {
+    NamedPreparedStatement statement = prepare(query, data);
+
+    try {
+      statement.getStatement().setFetchSize(Integer.MIN_VALUE); // Stream rows (MySQL-specific).
+      ResultSet result = statement.executeQuery();
+
+      return ResultSets.stream(result, mapper).onClose(() -> {
+        try {
+          result.close();
+          statement.close();
+        } catch (SQLException e) {
+          throw new RuntimeException(e);
+        }
+      });
+    } catch (SQLException | RuntimeException e) {
+      statement.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Inserts many rows using multi-row INSERT statements (as a single transaction).
+   * @see {@link #insertAll(String, List, boolean)}
+   */
+  @Override
+  public int insertAll(String table, List<? extends Map<String, ?>> rows) throws SQLException {
+    return insertAll(table, rows, true);
+  }
+
+  /**
+   * Inserts many rows using multi-row INSERT statements.
+   *
+   * Rows are written in chunks (bounded by row count, parameter count, and estimated size so that
+   * each statement fits within max_allowed_packet); consecutive chunks of the same size reuse a
+   * single prepared statement. This is far faster than inserting rows one at a time.
+   *
+   * @param table Name of the table.
+   * @param rows Maps of column names to values. All rows must have the same columns.
+   * @param atomic Whether to write all of the rows in a single transaction (otherwise each chunk is
+   *               committed as it is written).
+   * @return The number of affected rows.
+   * @throws SQLException On failure.
+   */
+  @Override
+  public int insertAll(String table, List<? extends Map<String, ?>> rows, boolean atomic)
+      throws SQLException {
+    return writeAll("INSERT", table, rows, atomic);
+  }
+
+  /**
+   * Replaces many rows using multi-row REPLACE statements (as a single transaction).
+   * @see {@link #insertAll(String, List, boolean)}
+   */
+  @Override
+  public int replaceAll(String table, List<? extends Map<String, ?>> rows) throws SQLException {
+    return replaceAll(table, rows, true);
+  }
+
+  /**
+   * Replaces many rows using multi-row REPLACE statements.
+   * @see {@link #insertAll(String, List, boolean)}
+   * @return The number of affected rows (as reported by MySQL, a replaced row counts twice).
+   */
+  @Override
+  public int replaceAll(String table, List<? extends Map<String, ?>> rows, boolean atomic)
+      throws SQLException {
+    return writeAll("REPLACE", table, rows, atomic);
+  }
+
+  private int writeAll(String verb, String table, List<? extends Map<String, ?>> rows, boolean atomic)
+      throws SQLException {
+    if (rows.isEmpty()) {
+      return 0;
+    }
+
+    if (!atomic) {
+      return writeChunks(verb, table, rows);
+    }
+
+    try {
+      return transaction(() -> writeChunks(verb, table, rows));
+    } catch (SQLException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new SQLException(e);
+    }
+  }
+
+  private int writeChunks(String verb, String table, List<? extends Map<String, ?>> rows)
+      throws SQLException {
+    Set<String> columnSet = rows.get(0).keySet();
+    List<String> columns = new ArrayList<>(columnSet);
+
+    if (columns.isEmpty()) {
+      throw new SQLException("No columns specified.");
+    }
+
+    int maxRows = Math.max(1, Math.min(MAX_BATCH_ROWS, MAX_BATCH_PARAMETERS / columns.size()));
+    PreparedStatement statement = null;
+    int statementRows = 0;
+    int affected = 0;
+
+    try {
+      int start = 0;
+      while (start < rows.size()) {
+        // Find the end of the chunk.
+        int end = start;
+        long bytes = 0;
+        while (end < rows.size() && end - start < maxRows) {
+          Map<String, ?> row = rows.get(end);
+          if (!row.keySet().equals(columnSet)) {
+            throw new SQLException("All rows must have the same columns.");
+          }
+
+          long rowBytes = estimateSize(row);
+          if (end > start && bytes + rowBytes > MAX_BATCH_BYTES) {
+            break;
+          }
+
+          bytes += rowBytes;
+          end++;
+        }
+
+        if (statement == null || statementRows != end - start) {
+          if (statement != null) {
+            statement.close();
+          }
+          statementRows = end - start;
+          statement = connection.prepareStatement(insertQuery(verb, table, columns, statementRows));
+        } else {
+          statement.clearParameters();
+        }
+
+        int index = 1;
+        for (int i = start; i < end; i++) {
+          Map<String, ?> row = rows.get(i);
+          for (String column : columns) {
+            setParameter(statement, index++, row.get(column));
+          }
+        }
+
+        affected += statement.executeUpdate();
+        start = end;
+      }
+    } finally {
+      if (statement != null) {
+        statement.close();
+      }
+    }
+
+    return affected;
+  }
+
+  private static String insertQuery(String verb, String table, List<String> columns, int rows) {
+    StringBuilder text = new StringBuilder();
+    text.append(verb).append(" INTO ").append(table).append(" (");
+    text.append(String.join(", ", columns));
+    text.append(") VALUES ");
+
+    String row = "(" + Placeholders.list(columns.size()) + ")";
+
+    for (int i = 0; i < rows; i++) {
+      if (i > 0) {
+        text.append(", ");
+      }
+      text.append(row);
+    }
+
+    return text.append(";").toString();
+  }
+
+  /**
+   * @return A conservative estimate of the number of bytes row occupies in a statement.
+   */
+  private static long estimateSize(Map<String, ?> row) {
+    long bytes = 0;
+
+    for (Object value : row.values()) {
+      if (value instanceof String) {
+        bytes += 3L * ((String) value).length() + 4; // UTF-8 (BMP) plus quoting.
+      } else if (value instanceof byte[]) {
+        bytes += 2L * ((byte[]) value).length + 4; // Escaped.
       } else {
-        statement.setObject(i + 1, value);
+        bytes += 32;
       }
     }
 
-    return statement;
+    return bytes;
+  }
+
+  private static void setParameter(PreparedStatement statement, int index, Object value)
+      throws SQLException {
+    if (value instanceof Long) {
+      statement.setLong(index, ((Long) value).longValue());
+    } else if (value instanceof Integer) {
+      statement.setInt(index, ((Integer) value).intValue());
+    } else if (value instanceof String) {
+      statement.setString(index, (String) value);
+    } else if (value instanceof Timestamp) {
+      statement.setTimestamp(index, (Timestamp) value);
+    } else if (value instanceof Boolean) {
+      statement.setInt(index, ((Boolean) value).booleanValue() ? 1 : 0); // SQL has no native booleans.
+    } else if (value instanceof SQLNull) {
+      statement.setNull(index, ((SQLNull) value).getSqlType());
+    } else {
+      statement.setObject(index, value);
+    }
   }
   
   /**
@@ -239,6 +461,18 @@ public class MySQLDatabaseImpl implements MySQLDatabase {
     return new DatabasePaginator(this, query, data, pageSize);
   }
 
+  @Override
+  public KeysetPaginator paginateByKey(String query, Map<String, Object> data,
+      List<String> keyColumns, long pageSize) throws SQLException {
+    return new KeysetPaginator(this, query, data, keyColumns, pageSize);
+  }
+
+  @Override
+  public KeysetPaginator paginateByKey(String query, Map<String, Object> data,
+      List<String> keyColumns, long pageSize, boolean descending) throws SQLException {
+    return new KeysetPaginator(this, query, data, keyColumns, pageSize, descending);
+  }
+
   @Override
   public void save(Saveable saveable) throws SQLException {
     saveable.saveTo(this);
@@ -3,6 +3,8 @@ package lightning.db;
 import java.beans.PropertyVetoException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.sql.DataSource;
 
@@ -78,9 +80,27 @@ public final class MySQLDatabaseProviderImpl implements MySQLDatabaseProvider {
     // See http://www.mchange.com/projects/c3p0/
     ComboPooledDataSource source = new ComboPooledDataSource();
     String url = String.format("jdbc:mysql://%s:%d/%s", config.host, config.port, config.name);
+    List<String> options = new ArrayList<>();
 
     if (config.useSsl) {
-      url += "?verifyServerCertificate=true&useSSL=true&requireSSL=true";
+      options.add("verifyServerCertificate=true&useSSL=true&requireSSL=true");
+    }
+
+    if (config.jdbcPerformanceProfile) {
+      // See https://dev.mysql.com/doc/connector-j/en/connector-j-reference-configuration-properties.html
+      options.add("rewriteBatchedStatements=true");
+      options.add("useServerPrepStmts=true");
+      options.add("cachePrepStmts=true");
+      options.add("prepStmtCacheSize=" + config.preparedStatementCacheSize);
+      options.add("prepStmtCacheSqlLimit=2048");
+      options.add("useLocalSessionState=true");
+      options.add("cacheServerConfiguration=true");
+      options.add("elideSetAutoCommits=true");
+      options.add("maintainTimeStats=false");
+    }
+
+    if (!options.isEmpty()) {
+      url += "?" + String.join("&", options);
     }
 
     source.setJdbcUrl(url);
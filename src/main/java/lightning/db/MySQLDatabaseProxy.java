@@ -5,6 +5,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Implements a proxy which delegates to another instance of MySQLDatabase.
@@ -103,6 +104,39 @@ public class MySQLDatabaseProxy implements MySQLDatabase {
     return delegate.prepare(query, data);
   }
 
+  @Override
+  public <T> Stream<T> stream(String query, Map<String, ?> data, RowMapper<T> mapper)
+      throws SQLException {
+    lazyLoad();
+    return delegate.stream(query, data, mapper);
+  }
+
+  @Override
+  public int insertAll(String table, List<? extends Map<String, ?>> rows) throws SQLException {
+    lazyLoad();
+    return delegate.insertAll(table, rows);
+  }
+
+  @Override
+  public int insertAll(String table, List<? extends Map<String, ?>> rows, boolean atomic)
+      throws SQLException {
+    lazyLoad();
+    return delegate.insertAll(table, rows, atomic);
+  }
+
+  @Override
+  public int replaceAll(String table, List<? extends Map<String, ?>> rows) throws SQLException {
+    lazyLoad();
+    return delegate.replaceAll(table, rows);
+  }
+
+  @Override
+  public int replaceAll(String table, List<? extends Map<String, ?>> rows, boolean atomic)
+      throws SQLException {
+    lazyLoad();
+    return delegate.replaceAll(table, rows, atomic);
+  }
+
   @Override
   public DatabasePaginator paginate(String query, Map<String, Object> data, long pageSize)
       throws SQLException {
@@ -110,6 +144,20 @@ public class MySQLDatabaseProxy implements MySQLDatabase {
     return delegate.paginate(query, data, pageSize);
   }
 
+  @Override
+  public KeysetPaginator paginateByKey(String query, Map<String, Object> data,
+      List<String> keyColumns, long pageSize) throws SQLException {
+    lazyLoad();
+    return delegate.paginateByKey(query, data, keyColumns, pageSize);
+  }
+
+  @Override
+  public KeysetPaginator paginateByKey(String query, Map<String, Object> data,
+      List<String> keyColumns, long pageSize, boolean descending) throws SQLException {
+    lazyLoad();
+    return delegate.paginateByKey(query, data, keyColumns, pageSize, descending);
+  }
+
   @Override
   public void save(Saveable saveable) throws SQLException {
     lazyLoad();
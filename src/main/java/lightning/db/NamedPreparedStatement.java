@@ -13,14 +13,48 @@ import java.sql.Timestamp;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
 /**
  * Replacement for java.sql.PreparedStatement that allows parameter naming (e.g. using :name as a placeholder
  * instead of ?).
+ *
+ * Parsed queries (the rewritten SQL and the parameter index map) are cached by query text, and
+ * insertion queries by table and column names, so that repeated queries are not re-parsed. The
+ * caches are bounded and shared by all connections.
  * @see http://www.javaworld.com/article/2077706/core-java/named-parameters-for-preparedstatement.html
  */
 public final class NamedPreparedStatement implements AutoCloseable {
+  private static final long MAX_CACHED_QUERIES = 2000;
+
+  /** A query rewritten to use ? placeholders and the indexes of each named parameter. */
+  private static final class ParsedQuery {
+    final String sql;
+    final ImmutableMap<String, int[]> indexMap; // Arrays are shared; never modify them.
+
+    ParsedQuery(String query) {
+      Map<String, int[]> indexMap = new HashMap<>();
+      this.sql = parse(query, indexMap);
+      this.indexMap = ImmutableMap.copyOf(indexMap);
+    }
+  }
+
+  private static final LoadingCache<String, ParsedQuery> QUERIES = CacheBuilder.newBuilder()
+      .maximumSize(MAX_CACHED_QUERIES)
+      .build(CacheLoader.from(ParsedQuery::new));
+
+  /** Keys are [verb, table, column...]. */
+  private static final LoadingCache<List<String>, ParsedQuery> INSERTS = CacheBuilder.newBuilder()
+      .maximumSize(MAX_CACHED_QUERIES)
+      .build(CacheLoader.from(key -> new ParsedQuery(insertQueryFromColumns(key))));
+
   /**
    * Returns a named prepared statement for the given connection and query.
    * @param connection A database connection.
@@ -29,7 +63,7 @@ public final class NamedPreparedStatement implements AutoCloseable {
    * @throws SQLException On any error.
    */
   public static NamedPreparedStatement forQuery(Connection connection, String query) throws SQLException {
-    return new NamedPreparedStatement(connection, query);
+    return new NamedPreparedStatement(connection, QUERIES.getUnchecked(query));
   }
 
   /**
@@ -47,7 +81,7 @@ public final class NamedPreparedStatement implements AutoCloseable {
     if (data.isEmpty())
       throw new SQLException("No columns specified.");
 
-    NamedPreparedStatement statement = new NamedPreparedStatement(connection, insertQueryFromMap("INSERT", table, data));
+    NamedPreparedStatement statement = new NamedPreparedStatement(connection, insertQuery("INSERT", table, data));
     statement.setFromMap(data);
     return statement;
   }
@@ -67,26 +101,40 @@ public final class NamedPreparedStatement implements AutoCloseable {
     if (data.isEmpty())
       throw new SQLException("No columns specified.");
 
-    NamedPreparedStatement statement = new NamedPreparedStatement(connection, insertQueryFromMap("REPLACE", table, data));
+    NamedPreparedStatement statement = new NamedPreparedStatement(connection, insertQuery("REPLACE", table, data));
     statement.setFromMap(data);
     return statement;
   }
 
   /**
-   * Builds a named parameterized insertion query using column names from keys in the map.
+   * @param verb INSERT or REPLACE.
    * @param table
    * @param data
+   * @return The (cached) parsed insertion query for the table and the column names in the map.
+   */
+  private static ParsedQuery insertQuery(String verb, String table, Map<String, ?> data) {
+    return INSERTS.getUnchecked(ImmutableList.<String>builder()
+        .add(verb)
+        .add(table)
+        .addAll(data.keySet())
+        .build());
+  }
+
+  /**
+   * Builds a named parameterized insertion query.
+   * @param key [verb, table, column...]
    * @return
    */
-  private static String insertQueryFromMap(String verb, String table, Map<String, ?> data) {
+  private static String insertQueryFromColumns(List<String> key) {
+    List<String> columns = key.subList(2, key.size());
     StringBuilder text = new StringBuilder();
 
-    text.append(verb);
+    text.append(key.get(0));
     text.append(" INTO ");
-    text.append(table);
+    text.append(key.get(1));
     text.append("(");
 
-    for (String column : data.keySet()) {
+    for (String column : columns) {
       text.append(column);
       text.append(", ");
     }
@@ -94,7 +142,7 @@ public final class NamedPreparedStatement implements AutoCloseable {
 
     text.append(") VALUES (");
 
-    for (String column : data.keySet()) {
+    for (String column : columns) {
       text.append(":");
       text.append(column);
       text.append(", ");
@@ -116,13 +164,12 @@ public final class NamedPreparedStatement implements AutoCloseable {
    * Creates a NamedParameterStatement.  Wraps a call to
    * c.{@link Connection#prepareStatement(java.lang.String) prepareStatement}.
    * @param connection the database connection
-   * @param query      the parameterized query
+   * @param query      the parsed query
    * @throws SQLException if the statement could not be created
    */
-  private NamedPreparedStatement(Connection connection, String query) throws SQLException {
-      indexMap = new HashMap<>();
-      String parsedQuery = parse(query, indexMap);
-      statement = connection.prepareStatement(parsedQuery, Statement.RETURN_GENERATED_KEYS);
+  private NamedPreparedStatement(Connection connection, ParsedQuery query) throws SQLException {
+      indexMap = query.indexMap;
+      statement = connection.prepareStatement(query.sql, Statement.RETURN_GENERATED_KEYS);
   }
 
   /**
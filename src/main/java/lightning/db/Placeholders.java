@@ -0,0 +1,29 @@
+package lightning.db;
+
+/**
+ * Builds lists of positional (?) placeholders for statements whose number of parameters depends
+ * on their input (e.g. IN lists and multi-row VALUES).
+ *
+ * Example:
+ *   db.prepare("SELECT * FROM users WHERE id IN (" + Placeholders.list(ids.size()) + ");", ids);
+ */
+public final class Placeholders {
+  private Placeholders() {}
+
+  /**
+   * @param count The number of placeholders (at least one, since an empty list is not valid SQL).
+   * @return count placeholders separated by commas (e.g. "?, ?, ?").
+   * @throws IllegalArgumentException If count is less than one.
+   */
+  public static String list(int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("At least one placeholder is required.");
+    }
+
+    StringBuilder builder = new StringBuilder(count * 3);
+    for (int i = 0; i < count; i++) {
+      builder.append((i == 0) ? "?" : ", ?");
+    }
+    return builder.toString();
+  }
+}
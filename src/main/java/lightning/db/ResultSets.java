@@ -7,6 +7,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.annotation.Nullable;
 
@@ -113,4 +118,46 @@ public class ResultSets {
     
     return record;
   }
+
+  /**
+   * Lazily maps the remaining rows of a result set. Rows are read as the stream is consumed, so
+   * a result set that streams rows from the server (see MySQLDatabase.stream()) is processed in
+   * constant memory. The stream is sequential and may only be consumed once. Mappers may return
+   * null (e.g. for a nullable column), so the stream may contain nulls.
+   *
+   * SQLExceptions thrown while reading rows are rethrown wrapped in RuntimeExceptions.
+   *
+   * NOTE: Closing the stream does not close the result set; use onClose() if required.
+   * @param result
+   * @param mapper Converts each row.
+   * @return A stream of the mapped rows.
+   */
+  public static <T> Stream<T> stream(ResultSet result, RowMapper<T> mapper) {
+    Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(
+        Long.MAX_VALUE, Spliterator.ORDERED) {
+      private RowMapper<T> bound = null; // Bound to result on the first row (if supported).
+
+      @Override
+      public boolean tryAdvance(Consumer<? super T> action) {
+        try {
+          if (!result.next()) {
+            return false;
+          }
+
+          if (bound == null) {
+            bound = (mapper instanceof ClassRowMapper)
+                ? ((ClassRowMapper<T>) mapper).forResultSet(result)
+                : mapper;
+          }
+
+          action.accept(bound.map(result));
+          return true;
+        } catch (SQLException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+
+    return StreamSupport.stream(rows, false);
+  }
 }
@@ -0,0 +1,46 @@
+package lightning.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import lightning.enums.JsonFieldNamingPolicy;
+
+/**
+ * Converts the row a ResultSet's cursor is currently pointing to into an object.
+ *
+ * Mappers should read columns directly (preferably by index, e.g. row.getLong(1)) and must not
+ * move the cursor.
+ *
+ * Example:
+ *   RowMapper<User> mapper = (row) -> new User(row.getLong(1), row.getString(2));
+ *
+ * Mappers that bind columns to the fields (or constructor parameters) of a class by name may be
+ * created with of(); these are thread-safe and should be created once and reused:
+ *   static final RowMapper<User> USERS = RowMapper.of(User.class);
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+  public T map(ResultSet row) throws SQLException;
+
+  /**
+   * @param type A class.
+   * @return A mapper that binds columns named like the class's fields in lower case with
+   *         underscores (e.g. userId is read from user_id).
+   * @throws IllegalArgumentException If rows cannot be mapped to the class.
+   * @see ClassRowMapper
+   */
+  public static <T> RowMapper<T> of(Class<T> type) {
+    return of(type, JsonFieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES);
+  }
+
+  /**
+   * @param type A class.
+   * @param policy The naming policy that converts field names into column names.
+   * @return A mapper that binds columns to the class's fields by name.
+   * @throws IllegalArgumentException If rows cannot be mapped to the class.
+   * @see ClassRowMapper
+   */
+  public static <T> RowMapper<T> of(Class<T> type, JsonFieldNamingPolicy policy) {
+    return new ClassRowMapper<>(type, policy);
+  }
+}
@@ -9,6 +9,7 @@ import lightning.http.MethodNotAllowedException;
 import lightning.http.NotAuthorizedException;
 import lightning.http.NotFoundException;
 import lightning.http.NotImplementedException;
+import lightning.http.TooManyRequestsException;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -18,6 +19,7 @@ public enum HTTPStatus {
   FORBIDDEN(403),
   METHOD_NOT_ALLOWED(405),
   NOT_FOUND(404),
+  TOO_MANY_REQUESTS(429),
   INTERNAL_SERVER_ERROR(500),
   NOT_IMPLEMENTED(501),
   OK(200),
@@ -34,6 +36,7 @@ public enum HTTPStatus {
       .put(NotAuthorizedException.class, HTTPStatus.UNAUTHORIZED)
       .put(NotFoundException.class, HTTPStatus.NOT_FOUND)
       .put(NotImplementedException.class, HTTPStatus.NOT_IMPLEMENTED)
+      .put(TooManyRequestsException.class, HTTPStatus.TOO_MANY_REQUESTS)
       .build(); 
   
   private HTTPStatus(int code) {
@@ -8,7 +8,6 @@ import lightning.users.User;
 import lightning.users.Users;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 
@@ -121,20 +120,12 @@ public final class Group {
   }
   
   /**
-   * @return An iterator over users which MAY throw runtime exceptions.
+   * @return The users in the group (fetched in bulk).
    * @throws GroupsException On I/O failure.
    */
   public Iterable<User> getUsers(Users users) throws GroupsException {
     try {
-      return Iterables.transform(driver.getUsersInGroup(id), (gid) -> {
-        try {
-          return users.getById(gid);
-        } catch (Exception e) {
-          // Gross, but HTTP servlet will catch it. Not much else to do since Java iterators
-          // do not allow exceptions to be thrown in next().
-          throw new RuntimeException(e); 
-        }
-      });
+      return users.getByIds(Lists.newArrayList(driver.getUsersInGroup(id))).values();
     } catch (Exception e) {
       throw new GroupsException(e);
     } 
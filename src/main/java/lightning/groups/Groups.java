@@ -1,8 +1,13 @@
 package lightning.groups;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import com.google.common.collect.Lists;
+
 /**
  * Provides an API for interacting with the set of all Groups.
  * Utilize to fetch, create, and delete groups in the database.
@@ -45,6 +50,40 @@ public final class Groups {
     public boolean removeUsersFromGroup(long id, List<Long> userIds) throws Exception;
     public Set<Long> getGroupPrivilegesForUser(long userId) throws Exception;
     public void deleteDataForUser(long userId) throws Exception;
+
+    /**
+     * Fetches the groups of several users. Drivers backed by remote stores should override this to
+     * fetch all groups in a few round trips.
+     * @param userIds
+     * @return A map (in the order of userIds) containing an entry for each of userIds.
+     * @throws Exception
+     */
+    public default Map<Long, List<Group>> getAllForUsers(Collection<Long> userIds) throws Exception {
+      Map<Long, List<Group>> groups = new LinkedHashMap<>();
+
+      for (long userId : userIds) {
+        groups.put(userId, Lists.newArrayList(getAllForUser(userId)));
+      }
+
+      return groups;
+    }
+
+    /**
+     * Fetches the privileges several users inherit from groups. Drivers backed by remote stores
+     * should override this to fetch all privileges in a few round trips.
+     * @param userIds
+     * @return A map (in the order of userIds) containing an entry for each of userIds.
+     * @throws Exception
+     */
+    public default Map<Long, Set<Long>> getGroupPrivilegesForUsers(Collection<Long> userIds) throws Exception {
+      Map<Long, Set<Long>> privileges = new LinkedHashMap<>();
+
+      for (long userId : userIds) {
+        privileges.put(userId, getGroupPrivilegesForUser(userId));
+      }
+
+      return privileges;
+    }
   }
   
   private final GroupsDriver sharedDriver;
@@ -88,6 +127,19 @@ public final class Groups {
     }
   }
   
+  /**
+   * @param userIds
+   * @return A map (in the order of userIds) from user ID to the user's groups.
+   * @throws GroupsException
+   */
+  public Map<Long, List<Group>> getAllForUsers(Collection<Long> userIds) throws GroupsException {
+    try {
+      return sharedDriver.getAllForUsers(userIds);
+    } catch (Exception e) {
+      throw new GroupsException(e);
+    }
+  }
+  
   public Group create(String name) throws GroupsException {
     try {
       return sharedDriver.create(name);
@@ -112,6 +164,19 @@ public final class Groups {
     }
   }
   
+  /**
+   * @param userIds
+   * @return A map (in the order of userIds) from user ID to the privileges the user inherits from groups.
+   * @throws GroupsException
+   */
+  public Map<Long, Set<Long>> getGroupPrivilegesForUsers(Collection<Long> userIds) throws GroupsException {
+    try {
+      return sharedDriver.getGroupPrivilegesForUsers(userIds);
+    } catch (Exception e) {
+      throw new GroupsException(e);
+    }
+  }
+  
   public void deleteDataForUser(long userId) throws GroupsException {
     try {
       sharedDriver.deleteDataForUser(userId);
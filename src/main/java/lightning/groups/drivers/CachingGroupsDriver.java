@@ -0,0 +1,176 @@
+package lightning.groups.drivers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lightning.auth.AuthCache;
+import lightning.groups.Group;
+import lightning.groups.Groups.GroupsDriver;
+import lightning.users.PrivilegeSet;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * A groups driver that serves lookups of the privileges users inherit from groups from an
+ * AuthCache and invalidates the cache whenever group privileges or memberships change.
+ * All other operations are passed through to the underlying driver.
+ *
+ * Groups returned by this driver are bound to it (rather than to the underlying driver) so that
+ * mutations made through Group always invalidate the cache.
+ */
+public class CachingGroupsDriver implements GroupsDriver {
+  private final GroupsDriver delegate;
+  private final AuthCache cache;
+
+  public CachingGroupsDriver(GroupsDriver delegate, AuthCache cache) {
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  private Group rebind(Group group) {
+    return (group != null) ? new Group(this, group.getId(), group.getName()) : null;
+  }
+
+  @Override
+  public Group get(long id) throws Exception {
+    return rebind(delegate.get(id));
+  }
+
+  @Override
+  public Group getByName(String name) throws Exception {
+    return rebind(delegate.getByName(name));
+  }
+
+  @Override
+  public Iterable<Group> getAll() throws Exception {
+    return Iterables.transform(delegate.getAll(), this::rebind);
+  }
+
+  @Override
+  public Iterable<Group> getAllForUser(long userId) throws Exception {
+    return Iterables.transform(delegate.getAllForUser(userId), this::rebind);
+  }
+
+  @Override
+  public Map<Long, List<Group>> getAllForUsers(Collection<Long> userIds) throws Exception {
+    Map<Long, List<Group>> groups = new LinkedHashMap<>();
+    for (Map.Entry<Long, List<Group>> entry : delegate.getAllForUsers(userIds).entrySet()) {
+      List<Group> rebound = new ArrayList<>(entry.getValue().size());
+      for (Group group : entry.getValue()) {
+        rebound.add(rebind(group));
+      }
+      groups.put(entry.getKey(), rebound);
+    }
+    return groups;
+  }
+
+  @Override
+  public Group create(String name) throws Exception {
+    return rebind(delegate.create(name));
+  }
+
+  @Override
+  public void delete(long id) throws Exception {
+    try {
+      delegate.delete(id);
+    } finally {
+      cache.invalidateAllGroupPrivileges();
+    }
+  }
+
+  @Override
+  public void setName(long id, String name) throws Exception {
+    delegate.setName(id, name);
+  }
+
+  @Override
+  public boolean hasPrivileges(long id, List<Long> privileges) throws Exception {
+    return delegate.hasPrivileges(id, privileges);
+  }
+
+  @Override
+  public boolean grantPrivileges(long id, List<Long> privileges) throws Exception {
+    try {
+      return delegate.grantPrivileges(id, privileges);
+    } finally {
+      cache.invalidateAllGroupPrivileges();
+    }
+  }
+
+  @Override
+  public boolean revokePrivileges(long id, List<Long> privileges) throws Exception {
+    try {
+      return delegate.revokePrivileges(id, privileges);
+    } finally {
+      cache.invalidateAllGroupPrivileges();
+    }
+  }
+
+  @Override
+  public Set<Long> getPrivileges(long id) throws Exception {
+    return delegate.getPrivileges(id);
+  }
+
+  @Override
+  public Iterable<Long> getUsersInGroup(long id) throws Exception {
+    return delegate.getUsersInGroup(id);
+  }
+
+  @Override
+  public boolean groupHasUsers(long id, List<Long> userIds) throws Exception {
+    return delegate.groupHasUsers(id, userIds);
+  }
+
+  @Override
+  public boolean addUsersToGroup(long id, List<Long> userIds) throws Exception {
+    try {
+      return delegate.addUsersToGroup(id, userIds);
+    } finally {
+      invalidateUsers(userIds);
+    }
+  }
+
+  @Override
+  public boolean removeUsersFromGroup(long id, List<Long> userIds) throws Exception {
+    try {
+      return delegate.removeUsersFromGroup(id, userIds);
+    } finally {
+      invalidateUsers(userIds);
+    }
+  }
+
+  @Override
+  public Set<Long> getGroupPrivilegesForUser(long userId) throws Exception {
+    return cache.getGroupPrivilegesForUser(userId, () -> PrivilegeSet.copyOf(delegate.getGroupPrivilegesForUser(userId)));
+  }
+
+  @Override
+  public Map<Long, Set<Long>> getGroupPrivilegesForUsers(Collection<Long> userIds) throws Exception {
+    return new LinkedHashMap<>(cache.getGroupPrivilegesForUsers(userIds, missing -> {
+      Map<Long, PrivilegeSet> loaded = new LinkedHashMap<>();
+      for (Map.Entry<Long, Set<Long>> entry : delegate.getGroupPrivilegesForUsers(missing).entrySet()) {
+        loaded.put(entry.getKey(), PrivilegeSet.copyOf(entry.getValue()));
+      }
+      return loaded;
+    }));
+  }
+
+  @Override
+  public void deleteDataForUser(long userId) throws Exception {
+    try {
+      delegate.deleteDataForUser(userId);
+    } finally {
+      cache.invalidateGroupPrivilegesForUser(userId);
+    }
+  }
+
+  private void invalidateUsers(List<Long> userIds) {
+    for (long userId : userIds) {
+      cache.invalidateGroupPrivilegesForUser(userId);
+    }
+  }
+}
@@ -3,24 +3,33 @@ package lightning.groups.drivers;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 import lightning.db.MySQLDatabase;
 import lightning.db.MySQLDatabaseProvider;
 import lightning.db.NamedPreparedStatement;
+import lightning.db.Placeholders;
 import lightning.groups.Group;
 import lightning.groups.Groups.GroupsDriver;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 
 /**
  * A groups driver backed by MySQL.
+ * Bulk lookups are performed with one query (joining memberships) per CHUNK_SIZE users.
  * TODO: Finish this.
  */
 public class MySQLGroupDriver implements GroupsDriver {
+  private static final int CHUNK_SIZE = 500;
+
   private final MySQLDatabaseProvider provider;
   
   public MySQLGroupDriver(MySQLDatabaseProvider provider) {
@@ -105,8 +114,19 @@ public class MySQLGroupDriver implements GroupsDriver {
   }
 
   @Override
-  public Iterable<Long> getUsersInGroup(long id) throws Exception {
-    throw new Exception("Unimplemented!"); // TODO: Implement
+  public Iterable<Long> getUsersInGroup(long id) throws SQLException {
+    try (MySQLDatabase db = provider.getDatabase()) {
+      PreparedStatement query = db.prepare("SELECT user_id FROM group_membership WHERE group_id = ?;",
+          ImmutableList.of(id));
+      ResultSet result = query.executeQuery();
+      List<Long> userIds = new ArrayList<>();
+      while (result.next()) {
+        userIds.add(result.getLong("user_id"));
+      }
+      result.close();
+      query.close();
+      return userIds;
+    }
   }
 
   @Override
@@ -125,18 +145,79 @@ public class MySQLGroupDriver implements GroupsDriver {
   }
 
   @Override
-  public Iterable<Group> getAll() throws Exception {
-    throw new Exception("Unimplemented!"); // TODO: Implement
+  public Iterable<Group> getAll() throws SQLException {
+    try (MySQLDatabase db = provider.getDatabase()) {
+      PreparedStatement query = db.prepare("SELECT * FROM `groups` ORDER BY id;", ImmutableList.of());
+      ResultSet result = query.executeQuery();
+      List<Group> groups = new ArrayList<>();
+      while (result.next()) {
+        groups.add(new Group(this, result.getLong("id"), result.getString("name")));
+      }
+      result.close();
+      query.close();
+      return groups;
+    }
   }
 
   @Override
-  public Iterable<Group> getAllForUser(long id) throws Exception {
-    throw new Exception("Unimplemented!"); // TODO: Implement
+  public Iterable<Group> getAllForUser(long userId) throws SQLException {
+    return getAllForUsers(ImmutableList.of(userId)).get(userId);
+  }
+
+  @Override
+  public Map<Long, List<Group>> getAllForUsers(Collection<Long> userIds) throws SQLException {
+    Map<Long, List<Group>> groups = new LinkedHashMap<>();
+    for (long userId : userIds) {
+      groups.put(userId, new ArrayList<>());
+    }
+
+    try (MySQLDatabase db = provider.getDatabase()) {
+      for (List<Long> chunk : Iterables.partition(groups.keySet(), CHUNK_SIZE)) {
+        PreparedStatement query = db.prepare(""
+            + "SELECT m.user_id, g.id, g.name "
+            + "FROM group_membership m JOIN `groups` g ON g.id = m.group_id "
+            + "WHERE m.user_id IN (" + Placeholders.list(chunk.size()) + ") "
+            + "ORDER BY g.id;", new ArrayList<>(chunk));
+        ResultSet result = query.executeQuery();
+        while (result.next()) {
+          groups.get(result.getLong("user_id")).add(new Group(this, result.getLong("id"), result.getString("name")));
+        }
+        result.close();
+        query.close();
+      }
+    }
+
+    return groups;
   }
 
   @Override
-  public Set<Long> getGroupPrivilegesForUser(long userId) throws Exception {
-    return new TreeSet<>(); // TODO: Implement
+  public Set<Long> getGroupPrivilegesForUser(long userId) throws SQLException {
+    return getGroupPrivilegesForUsers(ImmutableList.of(userId)).get(userId);
+  }
+
+  @Override
+  public Map<Long, Set<Long>> getGroupPrivilegesForUsers(Collection<Long> userIds) throws SQLException {
+    Map<Long, Set<Long>> privileges = new LinkedHashMap<>();
+    for (long userId : userIds) {
+      privileges.put(userId, new TreeSet<>());
+    }
+
+    try (MySQLDatabase db = provider.getDatabase()) {
+      for (List<Long> chunk : Iterables.partition(privileges.keySet(), CHUNK_SIZE)) {
+        PreparedStatement query = db.prepare(""
+            + "SELECT DISTINCT m.user_id, p.privilege_id "
+            + "FROM group_membership m JOIN group_privileges p ON p.group_id = m.group_id "
+            + "WHERE m.user_id IN (" + Placeholders.list(chunk.size()) + ");", new ArrayList<>(chunk));
+        ResultSet result = query.executeQuery();
+        while (result.next()) {
+          privileges.get(result.getLong("user_id")).add(result.getLong("privilege_id"));
+        }
+        result.close();
+        query.close();
+      }
+    }
+
+    return privileges;
   }
 
   @Override
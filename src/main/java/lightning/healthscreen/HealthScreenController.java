@@ -2,9 +2,15 @@ package lightning.healthscreen;
 
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 import lightning.ann.Controller;
+import lightning.auth.drivers.AuthAttemptWriter;
+import lightning.cache.Cache;
 import lightning.config.Config;
+import lightning.db.ExpiredRowReaper;
 import lightning.enums.HTTPMethod;
+import lightning.inject.Injector;
 import lightning.mvc.HandlerContext;
 import lightning.routing.RouteMapper;
 import lightning.util.ReflectionUtil;
@@ -27,7 +33,34 @@ public class HealthScreenController {
         .build();
   }
 
+  public Map<String, Object> buildStatusModel(Cache cache) {
+    return new ImmutableMap.Builder<String, Object>()
+        .putAll(buildStatusModel())
+        .put("cache", cache.getStats().toMap())
+        .build();
+  }
+
+  public Map<String, Object> buildStatusModel(Cache cache,
+                                              @Nullable ExpiredRowReaper reaper,
+                                              @Nullable AuthAttemptWriter attemptWriter) {
+    ImmutableMap.Builder<String, Object> model = new ImmutableMap.Builder<String, Object>()
+        .putAll(buildStatusModel(cache));
+
+    if (reaper != null) {
+      model.put("reaper", reaper.getStats());
+    }
+
+    if (attemptWriter != null) {
+      model.put("authAttempts", attemptWriter.getStats());
+    }
+
+    return model.build();
+  }
+
   public void handleRequest(HandlerContext ctx) throws Exception {
-    ctx.sendJson(buildStatusModel());
+    Injector injector = ctx.globalInjector();
+    ctx.sendJson(buildStatusModel(ctx.cache(),
+                                  injector.getInjectedArgumentForClass(ExpiredRowReaper.class),
+                                  injector.getInjectedArgumentForClass(AuthAttemptWriter.class)));
   }
 }
@@ -0,0 +1,20 @@
+package lightning.http;
+
+/**
+ * An exception which corresponds to an HTTP 429 error.
+ */
+public final class TooManyRequestsException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public TooManyRequestsException() {
+    super();
+  }
+  
+  public TooManyRequestsException(String e) {
+    super(e);
+  }
+  
+  public TooManyRequestsException(Exception e) {
+    super(e);
+  }
+}
@@ -12,6 +12,7 @@ import lightning.http.MethodNotAllowedException;
 import lightning.http.NotAuthorizedException;
 import lightning.http.NotFoundException;
 import lightning.http.NotImplementedException;
+import lightning.http.TooManyRequestsException;
 
 public class DefaultExceptionViewProducer {
   private static final String VIEW_NAME = "error.ftl";
@@ -23,6 +24,7 @@ public class DefaultExceptionViewProducer {
       .put(NotAuthorizedException.class, "401")
       .put(NotFoundException.class, "404")
       .put(NotImplementedException.class, "501")
+      .put(TooManyRequestsException.class, "429")
       .build();
   private static final ImmutableMap<Class<? extends Throwable>, String> statusText = ImmutableMap.<Class<? extends Throwable>, String>builder()
       .put(AccessViolationException.class, "Forbidden")
@@ -32,6 +34,7 @@ public class DefaultExceptionViewProducer {
       .put(NotAuthorizedException.class, "Unauthorized")
       .put(NotFoundException.class, "Not Found")
       .put(NotImplementedException.class, "Not Implemented")
+      .put(TooManyRequestsException.class, "Too Many Requests")
       .build();
   private static final ImmutableMap<Class<? extends Throwable>, String> explanationText = ImmutableMap.<Class<? extends Throwable>, String>builder()
       .put(AccessViolationException.class, "You do not have permission to view this page.")
@@ -44,6 +47,7 @@ public class DefaultExceptionViewProducer {
               + "your session may have expired.")
       .put(NotFoundException.class, "We couldn't find the page you requested on our servers.")
       .put(NotImplementedException.class, "The feature you are trying to access is currently under construction.")
+      .put(TooManyRequestsException.class, "The server is too busy to process your request. Please try again in a moment.")
       .build();
   private static final ImmutableMap<Class<? extends Throwable>, Boolean> includeMessage = ImmutableMap.<Class<? extends Throwable>, Boolean>builder()
       .put(BadRequestException.class, true)
@@ -10,6 +10,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
 import javax.servlet.AsyncContext;
@@ -19,10 +20,15 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.Part;
 
 import lightning.auth.Auth;
+import lightning.auth.AuthCache;
 import lightning.auth.AuthException;
+import lightning.auth.LoginThrottle;
+import lightning.auth.drivers.AuthAttemptWriter;
+import lightning.auth.drivers.CachingAuthDriver;
 import lightning.auth.drivers.MySQLAuthDriver;
 import lightning.cache.Cache;
 import lightning.config.Config;
+import lightning.crypt.CookieCipher;
 import lightning.crypt.Hasher;
 import lightning.crypt.SecureCookieManager;
 import lightning.crypt.TokenSets;
@@ -38,6 +44,7 @@ import lightning.enums.JsonFieldNamingPolicy;
 import lightning.exceptions.LightningException;
 import lightning.groups.Groups;
 import lightning.groups.Groups.GroupsException;
+import lightning.groups.drivers.CachingGroupsDriver;
 import lightning.groups.drivers.MySQLGroupDriver;
 import lightning.http.AccessViolationException;
 import lightning.http.BadRequestException;
@@ -57,11 +64,13 @@ import lightning.mvc.Validator.FieldValidator;
 import lightning.server.LightningHandler;
 import lightning.sessions.Session;
 import lightning.sessions.Session.SessionException;
+import lightning.sessions.Session.SessionStorageDriver;
 import lightning.sessions.drivers.MySQLSessionDriver;
 import lightning.templates.TemplateEngine;
 import lightning.users.User;
 import lightning.users.Users;
 import lightning.users.Users.UsersException;
+import lightning.users.drivers.CachingUsersDriver;
 import lightning.users.drivers.MySQLUserDriver;
 import lightning.util.Time;
 
@@ -107,6 +116,7 @@ public class HandlerContext implements AutoCloseable, MySQLDatabaseProvider {
   private final MySQLDatabaseProvider dbp;
   public static final String ATTRIBUTE = HandlerContext.class.getCanonicalName();
   private AsyncContext asyncContext;
+  private Hasher hasher;
 
   public HandlerContext(Request rq, Response re, MySQLDatabaseProvider dbp, Config c, TemplateEngine te, FileServer fs, @Nullable Mailer mailer, JsonService jsonifier, Cache cache, InjectorModule globalModule, InjectorModule userModule) {
     logger.debug("context created");
@@ -123,10 +133,22 @@ public class HandlerContext implements AutoCloseable, MySQLDatabaseProvider {
     this.dbProxy = new MySQLDatabaseProxy(dbp);
     this.db = dbProxy;
     this.fs = fs;
-    this.session = Session.forRequest(rq, re, config, new MySQLSessionDriver(this));
-    this.groups = new Groups(new MySQLGroupDriver(this));
-    this.users = new Users(new MySQLUserDriver(this, groups), groups);
-    this.auth = Auth.forSession(session, new MySQLAuthDriver(this), users);
+    this.session = Session.forRequest(rq, re, config,
+        sharedOrDefault(globalModule, SessionStorageDriver.class, () -> new MySQLSessionDriver(this)),
+        sharedOrDefault(globalModule, CookieCipher.class, () -> null));
+    AuthCache authCache = sharedOrDefault(globalModule, AuthCache.class, () -> null);
+    LoginThrottle loginThrottle = sharedOrDefault(globalModule, LoginThrottle.class, () -> null);
+    AuthAttemptWriter attemptWriter = sharedOrDefault(globalModule, AuthAttemptWriter.class, () -> null);
+    if (authCache != null) {
+      this.groups = new Groups(new CachingGroupsDriver(new MySQLGroupDriver(this), authCache));
+      this.users = new Users(new CachingUsersDriver(new MySQLUserDriver(this, groups), groups, authCache), groups);
+      this.auth = Auth.forSession(session, new CachingAuthDriver(new MySQLAuthDriver(this, attemptWriter), authCache), users,
+          loginThrottle);
+    } else {
+      this.groups = new Groups(new MySQLGroupDriver(this));
+      this.users = new Users(new MySQLUserDriver(this, groups), groups);
+      this.auth = Auth.forSession(session, new MySQLAuthDriver(this, attemptWriter), users, loginThrottle);
+    }
     this.jsonifier = jsonifier;
     this.cache = cache;
     this.bindings = new InjectorModule();
@@ -149,6 +171,22 @@ public class HandlerContext implements AutoCloseable, MySQLDatabaseProvider {
     this.bindings.bindClassToInstance(Injector.class, this.injector);
   }
 
+  /**
+   * Returns the instance bound in the global module for a class (e.g. a driver shared by all
+   * requests), or the result of the fallback (e.g. a per-request driver) if none is bound.
+   */
+  private static <T> T sharedOrDefault(InjectorModule globalModule, Class<T> clazz, Supplier<T> fallback) {
+    T instance = null;
+
+    try {
+      instance = globalModule.getBindingForClass(clazz);
+    } catch (Exception e) {
+      logger.warn("Failed to resolve global binding for {}:", clazz, e);
+    }
+
+    return (instance != null) ? instance : fallback.get();
+  }
+
   public Injector injector() {
     return this.injector;
   }
@@ -172,7 +210,11 @@ public class HandlerContext implements AutoCloseable, MySQLDatabaseProvider {
   }
 
   public Hasher hasher() {
-    return new Hasher(config.server.hmacKey);
+    if (hasher == null) {
+      hasher = new Hasher(config.server.hmacKey);
+    }
+
+    return hasher;
   }
 
   public TokenSets tokens() {
@@ -13,6 +13,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.MultipartConfigElement;
 import javax.servlet.ServletException;
@@ -34,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.augustl.pathtravelagent.PathFormatException;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
 import lightning.ann.Before;
@@ -46,10 +48,20 @@ import lightning.ann.RequireXsrfToken;
 import lightning.ann.Route;
 import lightning.ann.Template;
 import lightning.ann.WebSocket;
+import lightning.auth.Auth;
+import lightning.auth.AuthCache;
+import lightning.auth.LoginThrottle;
+import lightning.auth.drivers.AuthAttemptWriter;
 import lightning.cache.Cache;
 import lightning.cache.CacheDriver;
 import lightning.cache.driver.ExceptingCacheDriver;
+import lightning.cache.driver.InvalidationChannel;
+import lightning.codec.BinaryCodec;
 import lightning.config.Config;
+import lightning.config.Config.SessionConfig.SessionStorage;
+import lightning.crypt.CookieCipher;
+import lightning.crypt.PasswordHasher;
+import lightning.db.ExpiredRowReaper;
 import lightning.db.MySQLDatabaseProvider;
 import lightning.debugmap.DebugMapController;
 import lightning.debugscreen.DebugScreen;
@@ -71,6 +83,7 @@ import lightning.http.MethodNotAllowedException;
 import lightning.http.NotAuthorizedException;
 import lightning.http.NotFoundException;
 import lightning.http.NotImplementedException;
+import lightning.http.TooManyRequestsException;
 import lightning.inject.Injector;
 import lightning.inject.InjectorModule;
 import lightning.io.BufferingHttpServletResponse;
@@ -88,10 +101,15 @@ import lightning.routing.RouteMapper;
 import lightning.routing.RouteMapper.Match;
 import lightning.scanner.ScanResult;
 import lightning.scanner.Scanner;
+import lightning.sessions.Session.SessionStorageDriver;
+import lightning.sessions.drivers.InMemorySessionDriver;
+import lightning.sessions.drivers.MySQLKeyedSessionDriver;
+import lightning.sessions.drivers.WriteBehindSessionDriver;
 import lightning.templates.FreeMarkerTemplateEngine;
 import lightning.templates.TemplateEngine;
 import lightning.util.DebugUtil;
 import lightning.util.MimeMatcher;
+import lightning.util.Time;
 import lightning.websockets.WebSocketHolder;
 
 public final class LightningHandler extends AbstractHandler {
@@ -103,7 +121,8 @@ public final class LightningHandler extends AbstractHandler {
       AccessViolationException.class,
       InternalServerErrorException.class,
       MethodNotAllowedException.class,
-      NotImplementedException.class);
+      NotImplementedException.class,
+      TooManyRequestsException.class);
 
   private final Scanner scanner;
   private final Mailer mailer;
@@ -119,6 +138,14 @@ public final class LightningHandler extends AbstractHandler {
   private final FilterMapper<Method> filters;
   private final JsonService jsonService;
   private final Cache cache;
+  private final SessionStorageDriver sessionDriver;
+  private final boolean ownsSessionDriver;
+  private final CookieCipher sessionCipher;
+  private final ExpiredRowReaper reaper;
+  private final AuthCache authCache;
+  private final LoginThrottle loginThrottle;
+  private final AuthAttemptWriter attemptWriter;
+  private final PasswordHasher passwordHasher;
   private final DebugScreen debugScreen;
   private final DefaultExceptionViewProducer exceptionViews;
   private final MimeMatcher outputBufferMatcher;
@@ -170,7 +197,124 @@ public final class LightningHandler extends AbstractHandler {
     // Set up cache driver.
     {
       CacheDriver driver = userInjectorModule.getBindingForClass(CacheDriver.class);
-      this.cache = new Cache((driver != null) ? driver : new ExceptingCacheDriver());
+      this.cache = new Cache((driver != null) ? driver : new ExceptingCacheDriver(),
+                             config.cache.refreshThreads,
+                             config.cache.refreshQueueSize,
+                             config.cache.statsKeyPrefixes,
+                             config.cache.loadWaitMs);
+    }
+
+    // Set up session storage (if not per-request MySQL).
+    {
+      SessionStorageDriver bound = userInjectorModule.getBindingForClass(SessionStorageDriver.class);
+      SessionStorageDriver driver = bound;
+
+      if (driver == null && config.session.storage == SessionStorage.MEMORY) {
+        driver = new InMemorySessionDriver(config.session.inactivityTimeoutSeconds,
+                                           config.session.memoryMaxEntries,
+                                           config.session.memoryMaxBytes,
+                                           BinaryCodec.getDefault(),
+                                           (config.session.memorySnapshotFile != null)
+                                               ? new File(config.resolveProjectPath(config.session.memorySnapshotFile))
+                                               : null,
+                                           config.session.memorySnapshotIntervalSeconds);
+      }
+
+      if (driver == null && config.session.storage == SessionStorage.MYSQL_KEYED) {
+        driver = new MySQLKeyedSessionDriver(dbProvider);
+      }
+
+      if (driver == null && config.session.writeBehind && config.session.storage != SessionStorage.MEMORY) {
+        driver = new WriteBehindSessionDriver(dbProvider,
+                                              BinaryCodec.getDefault(),
+                                              config.session.writeBehindQueueSize,
+                                              config.session.writeBehindBatchSize,
+                                              config.session.writeBehindFlushIntervalMs);
+      }
+
+      this.sessionDriver = driver;
+      this.ownsSessionDriver = (driver != bound); // An application-bound driver is closed by the application.
+    }
+
+    // Set up client-side session encryption.
+    if (config.session.storage == SessionStorage.COOKIE) {
+      this.sessionCipher = new CookieCipher(config.session.cookieKeys.isEmpty()
+          ? ImmutableList.of(config.server.hmacKey)
+          : config.session.cookieKeys);
+    } else {
+      this.sessionCipher = null;
+    }
+
+    // Set up auth cache.
+    if (config.auth.cacheEnabled) {
+      InvalidationChannel channel = userInjectorModule.getBindingForClass(InvalidationChannel.class);
+
+      if (channel == null) {
+        // Without a channel, logouts and privilege changes would not reach other servers' caches.
+        throw new LightningConfigException(
+            "auth.cacheEnabled requires an InvalidationChannel to be bound in your injector module " +
+            "(bind a LocalInvalidationChannel only if you run a single server).");
+      }
+
+      this.authCache = new AuthCache(channel,
+                                     config.auth.cacheMaxEntries,
+                                     config.auth.cacheTtlSeconds,
+                                     TimeUnit.SECONDS);
+    } else {
+      this.authCache = null;
+    }
+
+    // Set up login throttling.
+    if (config.auth.throttleInMemory) {
+      this.loginThrottle = new LoginThrottle(config.auth.throttleMaxKeys,
+                                             Auth.getMaxThrottledAttempts(),
+                                             Auth.getThrottlingPeriod(),
+                                             config.auth.throttleShared ? this.cache : null);
+    } else {
+      this.loginThrottle = null;
+    }
+
+    // Set up asynchronous auth attempt logging.
+    if (config.db.isEnabled() && config.auth.attemptWriteBehind) {
+      this.attemptWriter = new AuthAttemptWriter(dbProvider,
+                                                 config.auth.attemptQueueSize,
+                                                 config.auth.attemptBatchSize,
+                                                 config.auth.attemptEnqueueTimeoutMs);
+    } else {
+      this.attemptWriter = null;
+    }
+
+    // Set up password hashing.
+    {
+      int logRounds = (config.auth.passwordHashTargetMs > 0)
+          ? PasswordHasher.calibrate(config.auth.passwordHashTargetMs, config.auth.passwordLogRounds)
+          : config.auth.passwordLogRounds;
+      int threads = (config.auth.passwordHashThreads == 0)
+          ? Runtime.getRuntime().availableProcessors()
+          : config.auth.passwordHashThreads;
+      this.passwordHasher = (threads < 0)
+          ? new PasswordHasher(logRounds)
+          : new PasswordHasher(logRounds, threads, config.auth.passwordHashQueueSize, config.auth.passwordHashTimeoutMs);
+      PasswordHasher.setDefault(this.passwordHasher);
+    }
+
+    // Set up expired row reaper.
+    if (config.db.isEnabled() && config.db.reaperEnabled) {
+      this.reaper = new ExpiredRowReaper(dbProvider, config.db.reaperBatchSize, config.db.reaperMaxBatchesPerRun);
+
+      if (userInjectorModule.getBindingForClass(SessionStorageDriver.class) == null &&
+          config.session.storage != SessionStorage.MEMORY) {
+        long timeout = config.session.inactivityTimeoutSeconds;
+        this.reaper.register("sessions", "last_save", () -> Time.now() - timeout);
+      }
+
+      long retention = config.db.authAttemptRetentionS;
+      this.reaper.register("auth_sessions", "expires", Time::now)
+                 .register("auth_tokens", "expires", Time::now)
+                 .register("auth_attempts", "time", () -> Time.now() - retention)
+                 .start(config.db.reaperIntervalS, TimeUnit.SECONDS);
+    } else {
+      this.reaper = null;
     }
 
     // Set up debug screen.
@@ -227,6 +371,31 @@ public final class LightningHandler extends AbstractHandler {
       this.globalInjectorModule.bindClassToInstance(TemplateEngine.class, this.userTemplateEngine);
       this.globalInjectorModule.bindClassToInstance(Cache.class, this.cache);
       this.globalInjectorModule.bindClassToInstance(JsonService.class, this.jsonService);
+      this.globalInjectorModule.bindClassToInstance(PasswordHasher.class, this.passwordHasher);
+
+      if (this.sessionDriver != null) {
+        this.globalInjectorModule.bindClassToInstance(SessionStorageDriver.class, this.sessionDriver);
+      }
+
+      if (this.sessionCipher != null) {
+        this.globalInjectorModule.bindClassToInstance(CookieCipher.class, this.sessionCipher);
+      }
+
+      if (this.reaper != null) {
+        this.globalInjectorModule.bindClassToInstance(ExpiredRowReaper.class, this.reaper);
+      }
+
+      if (this.authCache != null) {
+        this.globalInjectorModule.bindClassToInstance(AuthCache.class, this.authCache);
+      }
+
+      if (this.loginThrottle != null) {
+        this.globalInjectorModule.bindClassToInstance(LoginThrottle.class, this.loginThrottle);
+      }
+
+      if (this.attemptWriter != null) {
+        this.globalInjectorModule.bindClassToInstance(AuthAttemptWriter.class, this.attemptWriter);
+      }
     }
 
     try {
@@ -291,7 +460,36 @@ public final class LightningHandler extends AbstractHandler {
   @Override
   public void destroy() {
    // TODO: Probably a few other things that need to be cleaned up.
-   fileServer.destroy();
+   if (fileServer != null) {
+     fileServer.destroy();
+   }
+
+   if (reaper != null) {
+     reaper.close();
+   }
+
+   if (authCache != null) {
+     authCache.close();
+   }
+
+   passwordHasher.close();
+
+   if (attemptWriter != null) {
+     try {
+       attemptWriter.close();
+     } catch (Exception e) {
+       LOGGER.warn("Failed to flush auth attempts:", e);
+     }
+   }
+
+   if (ownsSessionDriver && sessionDriver instanceof AutoCloseable) {
+     try {
+       ((AutoCloseable) sessionDriver).close();
+     } catch (Exception e) {
+       LOGGER.warn("Failed to close session driver:", e);
+     }
+   }
+
    super.destroy();
   }
 
@@ -1,16 +1,19 @@
 package lightning.sessions;
 
 import java.io.Serializable;
-import java.security.SecureRandom;
-import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import lightning.codec.BinaryCodec;
+import lightning.codec.CodecException;
 import lightning.config.Config;
+import lightning.crypt.CookieCipher;
+import lightning.crypt.Digests;
 import lightning.crypt.SecureCookieManager;
 import lightning.crypt.SecureCookieManager.InsecureCookieException;
+import lightning.crypt.Tokens;
 import lightning.http.HeadersAlreadySentException;
 import lightning.http.Request;
 import lightning.http.Response;
@@ -21,9 +24,6 @@ import lightning.util.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Charsets;
-import com.google.common.hash.Hashing;
-
 /**
  * Implements a session system.
  * Improves upon native session functionality by adding extra security features and
@@ -32,6 +32,10 @@ import com.google.common.hash.Hashing;
  * Session are loaded and saved lazily (no operations on storage unless necessary).
  * Any type of Serializable object can be stored in a session.
  *
+ * If a CookieCipher is provided, sessions are stored on the client in an encrypted cookie
+ * (requiring no server storage) as long as they fit within the configured cookie size; larger
+ * sessions are transparently moved to the storage driver (and back once they shrink).
+ *
  * TODO: Session will not get saved automatically when user handler sends HTTP content before the
  * session is saved (since after content is sent the session manager is not able to write the session
  * ID cookie). Happens because HandlerContext is closed (which invokes session save) after the user
@@ -48,8 +52,8 @@ public final class Session {
   private static final String SESSION_KEY_PREFIX = "$$session-";
   private static final String LAST_USE_KEY = SESSION_KEY_PREFIX + "lastuse";
   private static final String XSRF_KEY = SESSION_KEY_PREFIX + "xsrf";
-
-  private long inactivityTimeoutSeconds = 60 * 60 * 24 * 14; // TODO: An option for this.
+  private static final String CLIENT_COOKIE_NAME = "_sessionc";
+  private static final String CLIENT_ID_KEY = SESSION_KEY_PREFIX + "id";
 
   /**
    * Hashes a session token.
@@ -57,7 +61,7 @@ public final class Session {
    * @return Hashes session token.
    */
   private static String hashToken(String plaintextValue) {
-    return Hashing.sha256().hashString(plaintextValue, Charsets.UTF_8).toString();
+    return Digests.sha256Hex(plaintextValue);
   }
 
   /**
@@ -69,7 +73,20 @@ public final class Session {
       throw new RuntimeException("Error: Must install a session driver before using Session.");
     }
 
-    return new Session(request, response, config, driver);
+    return new Session(request, response, config, driver, null);
+  }
+
+  /**
+   * @param request An incoming HTTP request.
+   * @param cipher Cipher used to store sessions in client-side cookies (or null to always use driver).
+   * @return A session object for that request.
+   */
+  public static Session forRequest(Request request, Response response, Config config, SessionStorageDriver driver, CookieCipher cipher) {
+    if (driver == null) {
+      throw new RuntimeException("Error: Must install a session driver before using Session.");
+    }
+
+    return new Session(request, response, config, driver, cipher);
   }
 
   /**
@@ -154,6 +171,11 @@ public final class Session {
   private final SecureCookieManager cookies;
   private final Request request;
   private final Response response;
+  private final long inactivityTimeoutSeconds;
+  private final long keepAliveGranularitySeconds;
+  private final CookieCipher cipher;
+  private final int maxCookieBytes;
+  private boolean isClientSide;
   private boolean isLoaded;
   private boolean isDirty;
   private String rawIdentifier;
@@ -165,10 +187,15 @@ public final class Session {
    * @param response Spark HTTP response.
    * @param storage Driver used to store session information.
    */
-  private Session(Request request, Response response, Config config, SessionStorageDriver storage) {
+  private Session(Request request, Response response, Config config, SessionStorageDriver storage, CookieCipher cipher) {
     this.request = request;
     this.response = response;
     this.storage = storage;
+    this.inactivityTimeoutSeconds = config.session.inactivityTimeoutSeconds;
+    this.keepAliveGranularitySeconds = config.session.keepAliveGranularitySeconds;
+    this.cipher = cipher;
+    this.maxCookieBytes = config.session.cookieMaxBytes;
+    this.isClientSide = false;
     isDirty = false;
     isLoaded = false;
     cookies = SecureCookieManager.forRequest(request, response, config.server.hmacKey, config.ssl.isEnabled());
@@ -203,21 +230,11 @@ public final class Session {
   }
 
   /**
-   * @return A new, unused session identifier.
+   * @return A new session identifier. Identifiers are long enough that collisions need not be
+   *         checked for.
    */
-  private String generateSessionId() throws SessionDriverException {
-    while (true) {
-      SecureRandom generator = new SecureRandom();
-      byte bytes[] = new byte[SESSION_ID_BYTES];
-      generator.nextBytes(bytes);
-      String id = Base64.getEncoder().encodeToString(bytes);
-
-      if (storage.has(hashToken(id))) {
-        continue; // Pick again.
-      }
-
-      return id;
-    }
+  private String generateSessionId() {
+    return Tokens.base64Url(SESSION_ID_BYTES);
   }
 
   /**
@@ -327,7 +344,7 @@ public final class Session {
   public String getXSRFToken() throws Exception {
     lazyLoad();
     if (!data.containsKey(XSRF_KEY)) {
-      data.put(XSRF_KEY, lightning.crypt.Hasher.generateToken(XSRF_BYTES, (x) -> false));
+      data.put(XSRF_KEY, Tokens.hex(XSRF_BYTES));
       changedKeys.add(XSRF_KEY);
       isDirty = true;
     }
@@ -347,7 +364,7 @@ public final class Session {
   public String newXSRFToken() throws Exception {
     lazyLoad();
 
-    data.put(XSRF_KEY, lightning.crypt.Hasher.generateToken(XSRF_BYTES, (x) -> false));
+    data.put(XSRF_KEY, Tokens.hex(XSRF_BYTES));
     changedKeys.add(XSRF_KEY);
     isDirty = true;
 
@@ -365,14 +382,23 @@ public final class Session {
       return;
     }
 
-    if (!isDirty && rawIdentifier != null) {
-      // No need to do a full save, but should ensure the session doesn't expire.
-      storage.keepAliveIfExists(hashToken(rawIdentifier));
-      return;
+    if (!isDirty) {
+      // Nothing changed, but we should ensure the session doesn't expire. Sessions that were never
+      // stored need no keep-alive, and stored sessions need only one per keep-alive period (which
+      // refreshes the last use time without changing any other keys).
+      if (!data.containsKey(LAST_USE_KEY) || Time.now() - lastUse() < keepAliveGranularitySeconds) {
+        return;
+      }
+      isDirty = true;
     }
 
     data.put(LAST_USE_KEY, Time.now());
     changedKeys.add(LAST_USE_KEY);
+
+    if (cipher != null && saveToClient()) {
+      return;
+    }
+
     storage.put(hashToken(rawIdentifier), data, changedKeys);
     try {
       String existingCookie = cookies.get(SESSION_COOKIE_NAME);
@@ -391,6 +417,104 @@ public final class Session {
     isDirty = false;
   }
 
+  private long lastUse() {
+    return ((Number) data.getOrDefault(LAST_USE_KEY, 0L)).longValue();
+  }
+
+  /**
+   * Attempts to store the session in a client-side cookie.
+   * @return Whether or not the session fit within the cookie size limit (and was saved).
+   * @throws SessionException On failure.
+   */
+  private boolean saveToClient() throws SessionException {
+    String value;
+
+    try {
+      data.put(CLIENT_ID_KEY, rawIdentifier);
+      value = cipher.seal(BinaryCodec.getDefault().encode(data), CLIENT_COOKIE_NAME);
+    } catch (CodecException e) {
+      throw new SessionException(e);
+    } finally {
+      data.remove(CLIENT_ID_KEY);
+    }
+
+    int size = cookies.getEncodedSize(CLIENT_COOKIE_NAME, value);
+
+    if (size > maxCookieBytes) {
+      if (isClientSide) {
+        // Move to server-side storage.
+        logger.debug("Session too large for cookie ({} bytes); moving to storage: {}", size, rawIdentifier);
+        isClientSide = false;
+        changedKeys.addAll(data.keySet());
+        deleteCookie(CLIENT_COOKIE_NAME);
+      }
+      return false;
+    }
+
+    if (!isClientSide) {
+      // Move from server-side storage.
+      storage.invalidate(hashToken(rawIdentifier));
+      deleteCookie(SESSION_COOKIE_NAME);
+      isClientSide = true;
+    }
+
+    try {
+      cookies.set(CLIENT_COOKIE_NAME, value);
+    } catch (HeadersAlreadySentException e) {
+      logger.warn("Couldn't save session: HTTP headers already committed.");
+    }
+
+    logger.debug("Wrote session to cookie: {}", rawIdentifier);
+    isDirty = false;
+    changedKeys.clear();
+    return true;
+  }
+
+  private void deleteCookie(String name) {
+    if (cookies.has(name)) {
+      try {
+        cookies.delete(name);
+      } catch (HeadersAlreadySentException e) {
+        logger.warn("Couldn't delete cookie {}: HTTP headers already committed.", name);
+      }
+    }
+  }
+
+  /**
+   * Loads session data from the client-side cookie (if present and valid).
+   * @return Whether or not the session was loaded.
+   */
+  private boolean loadFromClient() {
+    String value;
+
+    try {
+      value = cookies.get(CLIENT_COOKIE_NAME);
+    } catch (InsecureCookieException e) {
+      return false;
+    }
+
+    byte[] plaintext = cipher.open(value, CLIENT_COOKIE_NAME);
+    if (plaintext == null) {
+      return false;
+    }
+
+    try {
+      @SuppressWarnings("unchecked")
+      Map<String, Object> decoded = (Map<String, Object>) BinaryCodec.getDefault().decode(plaintext);
+      Object id = decoded.remove(CLIENT_ID_KEY);
+      if (!(id instanceof String)) {
+        return false;
+      }
+      data = new HashMap<>(decoded);
+      rawIdentifier = (String) id;
+      isClientSide = true;
+      return true;
+    } catch (CodecException | ClassCastException e) {
+      logger.debug("Failed to decode session cookie:", e);
+      return false;
+    }
+  }
+
   /**
    * Loads all data attached to this session.
    * @throws SessionException
@@ -400,7 +524,21 @@ public final class Session {
       return;
     }
 
-    if (rawIdentifier == null) {
+    if (cipher != null && loadFromClient()) {
+      logger.debug("Loaded session from cookie: {}", rawIdentifier);
+      if (Time.now() - lastUse() > inactivityTimeoutSeconds) {
+        rawIdentifier = generateSessionId();
+        data = new HashMap<>();
+        deleteCookie(CLIENT_COOKIE_NAME);
+        logger.debug("Session invalidated due to timeout; regenerated as {}.", rawIdentifier);
+      }
+    } else if (rawIdentifier == null && cipher != null) {
+      // New sessions start on the client (a cookie is only written once there is data).
+      data = new HashMap<>();
+      isClientSide = true;
+      rawIdentifier = generateSessionId();
+      logger.debug("Created new session: {}", rawIdentifier);
+    } else if (rawIdentifier == null) {
       data = new HashMap<>();
       rawIdentifier = generateSessionId();
       cookies.set(SESSION_COOKIE_NAME, rawIdentifier);
@@ -414,7 +552,7 @@ public final class Session {
         rawIdentifier = generateSessionId();
         cookies.set(SESSION_COOKIE_NAME, rawIdentifier);
         logger.debug("Session invalidated due to fixation attempt; regenerated as {}.", rawIdentifier);
-      } else if (Time.now() - ((Long) data.getOrDefault(LAST_USE_KEY, 0)) > inactivityTimeoutSeconds) {
+      } else if (Time.now() - ((Number) data.getOrDefault(LAST_USE_KEY, 0L)).longValue() > inactivityTimeoutSeconds) {
         // Session time-outs.
         storage.invalidate(hashToken(rawIdentifier));
         rawIdentifier = generateSessionId();
@@ -437,10 +575,15 @@ public final class Session {
   public void regenerateId() throws SessionException {
     lazyLoad();
     logger.debug("Regenerating session: {}", rawIdentifier);
-    storage.invalidate(hashToken(rawIdentifier));
+    if (!isClientSide) {
+      storage.invalidate(hashToken(rawIdentifier));
+    }
     isDirty = true;
+    changedKeys.addAll(data.keySet()); // Everything must be written under the new identifier.
     rawIdentifier = generateSessionId();
-    cookies.set(SESSION_COOKIE_NAME, rawIdentifier);
+    if (!isClientSide) {
+      cookies.set(SESSION_COOKIE_NAME, rawIdentifier);
+    }
     logger.debug("Regenerated with new identifier: {}", rawIdentifier);
     save();
   }
@@ -0,0 +1,452 @@
+package lightning.sessions.drivers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lightning.codec.BinaryCodec;
+import lightning.codec.Codec;
+import lightning.codec.CodecException;
+import lightning.sessions.Session.SessionDriverException;
+import lightning.sessions.Session.SessionStorageDriver;
+import lightning.util.Time;
+
+/**
+ * A session driver implementation that keeps sessions in memory. Suitable for single-server
+ * deployments or clusters that route each session to a fixed server (sticky sessions).
+ *
+ * Sessions are partitioned across independently locked stripes. Each stripe holds its share of
+ * the entry and byte limits and evicts its least recently used sessions when over either limit.
+ * Sessions expire after a period without being saved or kept alive; expired sessions are removed
+ * by a background sweep over a timer wheel (so the cost of expiration is proportional to the
+ * number of expiring sessions rather than the number of sessions).
+ *
+ * Session data is stored encoded (so that callers cannot mutate stored sessions and so that
+ * memory usage can be bounded). Optionally, all sessions are periodically written to a snapshot
+ * file (and on close) and restored from it on construction.
+ */
+public class InMemorySessionDriver implements SessionStorageDriver, AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(InMemorySessionDriver.class);
+  private static final int STRIPES = 16;
+  private static final int WHEEL_SLOTS = 64;
+  private static final int ENTRY_OVERHEAD_BYTES = 96;
+  private static final int SNAPSHOT_MAGIC = 0x4C534E50; // "LSNP"
+  private static final int SNAPSHOT_VERSION = 1;
+
+  private static final class Entry {
+    final byte[] data;
+    final long bytes;
+    long lastSave;
+    long wheelTick; // The tick of the wheel slot in which this entry is filed.
+
+    Entry(byte[] data, long bytes, long lastSave) {
+      this.data = data;
+      this.bytes = bytes;
+      this.lastSave = lastSave;
+    }
+  }
+
+  private final class Stripe {
+    final ReentrantLock lock = new ReentrantLock();
+    final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // LRU order.
+    final List<Set<String>> wheel = new ArrayList<>(WHEEL_SLOTS);
+    long bytes = 0;
+
+    Stripe() {
+      for (int i = 0; i < WHEEL_SLOTS; i++) {
+        wheel.add(new HashSet<>());
+      }
+    }
+
+    // Caller must hold lock.
+    void file(String key, Entry entry) {
+      long tick = expirationTick(entry);
+      if (entry.wheelTick != tick) {
+        wheel.get(slot(entry.wheelTick)).remove(key);
+        entry.wheelTick = tick;
+      }
+      wheel.get(slot(tick)).add(key);
+    }
+
+    // Caller must hold lock.
+    void remove(String key) {
+      Entry entry = entries.remove(key);
+      if (entry != null) {
+        bytes -= entry.bytes;
+        wheel.get(slot(entry.wheelTick)).remove(key);
+      }
+    }
+
+    // Caller must hold lock.
+    void put(String key, Entry entry) {
+      remove(key);
+      entries.put(key, entry);
+      bytes += entry.bytes;
+      entry.wheelTick = expirationTick(entry);
+      wheel.get(slot(entry.wheelTick)).add(key);
+
+      Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+      while ((entries.size() > maxEntriesPerStripe || bytes > maxBytesPerStripe) && entries.size() > 1 && eldest.hasNext()) {
+        Map.Entry<String, Entry> victim = eldest.next();
+        if (victim.getKey().equals(key)) {
+          continue;
+        }
+        eldest.remove();
+        bytes -= victim.getValue().bytes;
+        wheel.get(slot(victim.getValue().wheelTick)).remove(victim.getKey());
+      }
+    }
+
+    // Caller must hold lock.
+    void sweep(long tick, long now) {
+      Set<String> keys = wheel.get(slot(tick));
+      if (keys.isEmpty()) {
+        return;
+      }
+
+      for (String key : new ArrayList<>(keys)) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+          keys.remove(key);
+        } else if (isExpired(entry, now)) {
+          remove(key);
+        } else {
+          file(key, entry); // Was kept alive; move to the slot for its new expiration.
+        }
+      }
+    }
+  }
+
+  private final Stripe[] stripes;
+  private final Codec codec;
+  private final long inactivityTimeoutSeconds;
+  private final long tickSeconds;
+  private final long maxEntriesPerStripe;
+  private final long maxBytesPerStripe;
+  private final File snapshotFile;
+  private final ScheduledExecutorService scheduler;
+  private long lastSweptTick;
+
+  /**
+   * @param inactivityTimeoutSeconds Sessions not saved or kept alive for this long are removed.
+   * @param maxEntries Maximum number of sessions to hold.
+   * @param maxBytes Approximate maximum amount of memory (in bytes) to use for sessions.
+   */
+  public InMemorySessionDriver(long inactivityTimeoutSeconds, long maxEntries, long maxBytes) {
+    this(inactivityTimeoutSeconds, maxEntries, maxBytes, BinaryCodec.getDefault(), null, 0);
+  }
+
+  /**
+   * @param inactivityTimeoutSeconds Sessions not saved or kept alive for this long are removed.
+   * @param maxEntries Maximum number of sessions to hold.
+   * @param maxBytes Approximate maximum amount of memory (in bytes) to use for sessions.
+   * @param codec Codec used to encode session data.
+   * @param snapshotFile File to restore sessions from (if it exists) and to write snapshots to (or null).
+   * @param snapshotIntervalSeconds Interval at which to write snapshots (0 to write only on close).
+   */
+  public InMemorySessionDriver(long inactivityTimeoutSeconds, long maxEntries, long maxBytes,
+                               Codec codec, File snapshotFile, long snapshotIntervalSeconds) {
+    if (inactivityTimeoutSeconds <= 0 || maxEntries <= 0 || maxBytes <= 0) {
+      throw new IllegalArgumentException("Timeout and limits must be positive.");
+    }
+
+    this.codec = codec;
+    this.inactivityTimeoutSeconds = inactivityTimeoutSeconds;
+    this.tickSeconds = Math.max(1, (inactivityTimeoutSeconds + WHEEL_SLOTS - 1) / WHEEL_SLOTS);
+    this.maxEntriesPerStripe = Math.max(1, maxEntries / STRIPES);
+    this.maxBytesPerStripe = Math.max(1, maxBytes / STRIPES);
+    this.snapshotFile = snapshotFile;
+    this.stripes = new Stripe[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+    this.lastSweptTick = Time.now() / tickSeconds;
+
+    if (snapshotFile != null && snapshotFile.exists()) {
+      try {
+        restore();
+      } catch (IOException e) {
+        logger.warn("Failed to restore sessions from snapshot {}:", snapshotFile, e);
+      }
+    }
+
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("lightning-session-sweeper-%d")
+        .build());
+    this.scheduler.scheduleWithFixedDelay(this::sweep, tickSeconds, tickSeconds, TimeUnit.SECONDS);
+
+    if (snapshotFile != null && snapshotIntervalSeconds > 0) {
+      this.scheduler.scheduleWithFixedDelay(() -> {
+        try {
+          snapshot();
+        } catch (IOException e) {
+          logger.warn("Failed to write session snapshot {}:", snapshotFile, e);
+        }
+      }, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  private Stripe stripe(String key) {
+    int hash = key.hashCode();
+    return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+  }
+
+  private static int slot(long tick) {
+    return (int) (tick % WHEEL_SLOTS);
+  }
+
+  private long expirationTick(Entry entry) {
+    // File in the first tick at which the entry is guaranteed to have expired.
+    return (entry.lastSave + inactivityTimeoutSeconds) / tickSeconds + 1;
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    return now - entry.lastSave > inactivityTimeoutSeconds;
+  }
+
+  private static long sizeOf(String key, byte[] data) {
+    return ENTRY_OVERHEAD_BYTES + 2L * key.length() + data.length;
+  }
+
+  /**
+   * Removes expired sessions from every slot of the wheel that has come due since the last sweep.
+   */
+  void sweep() {
+    try {
+      long now = Time.now();
+      long currentTick = now / tickSeconds;
+      long fromTick = Math.max(lastSweptTick + 1, currentTick - WHEEL_SLOTS + 1);
+
+      for (long tick = fromTick; tick <= currentTick; tick++) {
+        for (Stripe stripe : stripes) {
+          stripe.lock.lock();
+          try {
+            stripe.sweep(tick, now);
+          } finally {
+            stripe.lock.unlock();
+          }
+        }
+      }
+
+      lastSweptTick = currentTick;
+    } catch (RuntimeException e) {
+      logger.warn("Failed to sweep expired sessions:", e);
+    }
+  }
+
+  @Override
+  public Map<String, Object> get(String hashedId) throws SessionDriverException {
+    Stripe stripe = stripe(hashedId);
+    byte[] data;
+
+    stripe.lock.lock();
+    try {
+      Entry entry = stripe.entries.get(hashedId);
+      if (entry == null) {
+        return null;
+      }
+      if (isExpired(entry, Time.now())) {
+        stripe.remove(hashedId);
+        return null;
+      }
+      data = entry.data;
+    } finally {
+      stripe.lock.unlock();
+    }
+
+    try {
+      @SuppressWarnings("unchecked")
+      Map<String, Object> result = (Map<String, Object>) codec.decode(data);
+      return result;
+    } catch (CodecException e) {
+      throw new SessionDriverException(e);
+    }
+  }
+
+  @Override
+  public void put(String hashedId, Map<String, Object> data, Set<String> changedKeys) throws SessionDriverException {
+    byte[] encoded;
+
+    try {
+      encoded = codec.encode(data);
+    } catch (CodecException e) {
+      throw new SessionDriverException(e);
+    }
+
+    Stripe stripe = stripe(hashedId);
+    stripe.lock.lock();
+    try {
+      stripe.put(hashedId, new Entry(encoded, sizeOf(hashedId, encoded), Time.now()));
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean has(String hashedId) throws SessionDriverException {
+    Stripe stripe = stripe(hashedId);
+    stripe.lock.lock();
+    try {
+      Entry entry = stripe.entries.get(hashedId);
+      return entry != null && !isExpired(entry, Time.now());
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  @Override
+  public void invalidate(String hashedId) throws SessionDriverException {
+    Stripe stripe = stripe(hashedId);
+    stripe.lock.lock();
+    try {
+      stripe.remove(hashedId);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  @Override
+  public void keepAliveIfExists(String hashedId) throws SessionDriverException {
+    Stripe stripe = stripe(hashedId);
+    stripe.lock.lock();
+    try {
+      Entry entry = stripe.entries.get(hashedId);
+      if (entry != null) {
+        // Stays filed under its old expiration; the sweep will move it when that slot comes due.
+        entry.lastSave = Time.now();
+      }
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of sessions currently held (including expired sessions not yet swept).
+   */
+  public long size() {
+    long size = 0;
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        size += stripe.entries.size();
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Writes all sessions to the snapshot file (atomically replacing any previous snapshot).
+   * @throws IOException On failure.
+   */
+  public void snapshot() throws IOException {
+    if (snapshotFile == null) {
+      return;
+    }
+
+    File directory = snapshotFile.getAbsoluteFile().getParentFile();
+    File temporary = File.createTempFile(snapshotFile.getName(), ".tmp", directory);
+
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+
+        for (Stripe stripe : stripes) {
+          List<Map.Entry<String, Entry>> copy;
+          stripe.lock.lock();
+          try {
+            copy = new ArrayList<>(stripe.entries.entrySet());
+          } finally {
+            stripe.lock.unlock();
+          }
+
+          for (Map.Entry<String, Entry> item : copy) {
+            out.writeBoolean(true);
+            out.writeUTF(item.getKey());
+            out.writeLong(item.getValue().lastSave);
+            out.writeInt(item.getValue().data.length);
+            out.write(item.getValue().data);
+          }
+        }
+
+        out.writeBoolean(false);
+      }
+
+      Files.move(temporary.toPath(), snapshotFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary.toPath());
+    }
+  }
+
+  private void restore() throws IOException {
+    long now = Time.now();
+    int count = 0;
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+      if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+        throw new IOException("Unrecognized snapshot format.");
+      }
+
+      while (in.readBoolean()) {
+        String key = in.readUTF();
+        long lastSave = in.readLong();
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+
+        Entry entry = new Entry(data, sizeOf(key, data), lastSave);
+        if (isExpired(entry, now)) {
+          continue;
+        }
+
+        Stripe stripe = stripe(key);
+        stripe.lock.lock();
+        try {
+          stripe.put(key, entry);
+        } finally {
+          stripe.lock.unlock();
+        }
+        count++;
+      }
+    }
+
+    logger.info("Restored {} sessions from snapshot {}.", count, snapshotFile);
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+
+    try {
+      snapshot();
+    } catch (IOException e) {
+      logger.warn("Failed to write session snapshot {}:", snapshotFile, e);
+    }
+  }
+}
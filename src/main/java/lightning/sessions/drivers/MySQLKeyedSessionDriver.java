@@ -0,0 +1,167 @@
+package lightning.sessions.drivers;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import lightning.codec.BinaryCodec;
+import lightning.codec.Codec;
+import lightning.codec.CodecException;
+import lightning.db.MySQLDatabase;
+import lightning.db.MySQLDatabaseProvider;
+import lightning.sessions.Session.SessionDriverException;
+import lightning.sessions.Session.SessionStorageDriver;
+import lightning.util.Time;
+
+/**
+ * A session driver implementation that uses a MySQL database and stores each session key in its
+ * own row (in the session_data table), so that saving a session writes only the keys that changed
+ * rather than re-writing the entire session.
+ *
+ * The sessions table holds one (data-less) row per session which tracks its existence and last
+ * save time; deleting it removes the session's keys (via ON DELETE CASCADE).
+ *
+ * This class is thread-safe.
+ */
+public class MySQLKeyedSessionDriver implements SessionStorageDriver {
+  private static final byte[] NO_DATA = new byte[0];
+
+  private final MySQLDatabaseProvider provider;
+  private final Codec codec;
+
+  public MySQLKeyedSessionDriver(MySQLDatabaseProvider provider) {
+    this(provider, BinaryCodec.getDefault());
+  }
+
+  public MySQLKeyedSessionDriver(MySQLDatabaseProvider provider, Codec codec) {
+    this.provider = provider;
+    this.codec = codec;
+  }
+
+  @Override
+  public Map<String, Object> get(String hashedId) throws SessionDriverException {
+    try (MySQLDatabase db = provider.getDatabase()) {
+      PreparedStatement query = db.prepare(
+          "SELECT d.data_key, d.value FROM sessions s " +
+          "LEFT JOIN session_data d ON d.session_id = s.session_id " +
+          "WHERE s.session_id = ?;", params(hashedId));
+
+      try (ResultSet result = query.executeQuery()) {
+        Map<String, Object> data = null;
+
+        while (result.next()) {
+          if (data == null) {
+            data = new TreeMap<>();
+          }
+
+          String key = result.getString(1);
+          if (key != null) { // Session without any keys.
+            data.put(key, codec.decode(result.getBytes(2)));
+          }
+        }
+
+        return data;
+      } finally {
+        query.close();
+      }
+    } catch (SQLException | CodecException e) {
+      throw new SessionDriverException(e);
+    }
+  }
+
+  @Override
+  public void put(String hashedId, Map<String, Object> data, Set<String> changedKeys)
+      throws SessionDriverException {
+    List<Object> updates = new ArrayList<>();
+    List<Object> deletes = new ArrayList<>();
+    StringBuilder updateSql = new StringBuilder("REPLACE INTO session_data (session_id, data_key, value) VALUES ");
+    StringBuilder deleteSql = new StringBuilder("DELETE FROM session_data WHERE session_id = ? AND data_key IN (");
+    deletes.add(hashedId);
+
+    try {
+      for (String key : changedKeys) {
+        if (data.containsKey(key)) {
+          updateSql.append(updates.isEmpty() ? "(?, ?, ?)" : ", (?, ?, ?)");
+          updates.add(hashedId);
+          updates.add(key);
+          updates.add(codec.encode(data.get(key)));
+        } else {
+          deleteSql.append(deletes.size() == 1 ? "?" : ", ?");
+          deletes.add(key);
+        }
+      }
+    } catch (CodecException e) {
+      throw new SessionDriverException(e);
+    }
+
+    try (MySQLDatabase db = provider.getDatabase()) {
+      db.transaction(() -> {
+        execute(db, "INSERT INTO sessions (session_id, last_save, data) VALUES (?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE last_save = VALUES(last_save);",
+                params(hashedId, Time.now(), NO_DATA));
+
+        if (!updates.isEmpty()) {
+          execute(db, updateSql.append(";").toString(), updates);
+        }
+
+        if (deletes.size() > 1) {
+          execute(db, deleteSql.append(");").toString(), deletes);
+        }
+      });
+    } catch (Exception e) {
+      throw new SessionDriverException(e);
+    }
+  }
+
+  @Override
+  public boolean has(String hashedId) throws SessionDriverException {
+    try (MySQLDatabase db = provider.getDatabase()) {
+      PreparedStatement query = db.prepare("SELECT 1 FROM sessions WHERE session_id = ?;", params(hashedId));
+
+      try (ResultSet result = query.executeQuery()) {
+        return result.next();
+      } finally {
+        query.close();
+      }
+    } catch (SQLException e) {
+      throw new SessionDriverException(e);
+    }
+  }
+
+  @Override
+  public void invalidate(String hashedId) throws SessionDriverException {
+    try (MySQLDatabase db = provider.getDatabase()) {
+      execute(db, "DELETE FROM sessions WHERE session_id = ?;", params(hashedId));
+    } catch (SQLException e) {
+      throw new SessionDriverException(e);
+    }
+  }
+
+  @Override
+  public void keepAliveIfExists(String hashedId) throws SessionDriverException {
+    try (MySQLDatabase db = provider.getDatabase()) {
+      execute(db, "UPDATE sessions SET last_save = ? WHERE session_id = ?;", params(Time.now(), hashedId));
+    } catch (SQLException e) {
+      throw new SessionDriverException(e);
+    }
+  }
+
+  private static void execute(MySQLDatabase db, String sql, List<Object> params) throws SQLException {
+    PreparedStatement query = db.prepare(sql, params);
+    query.executeUpdate();
+    query.close();
+  }
+
+  private static List<Object> params(Object... values) {
+    List<Object> list = new ArrayList<>(values.length);
+    for (Object value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+}
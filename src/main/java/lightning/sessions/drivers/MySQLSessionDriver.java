@@ -1,11 +1,6 @@
 package lightning.sessions.drivers;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectOutputStream;
-import java.sql.Blob;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -13,6 +8,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
+import lightning.codec.BinaryCodec;
+import lightning.codec.Codec;
+import lightning.codec.CodecException;
 import lightning.db.MySQLDatabase;
 import lightning.db.MySQLDatabaseProvider;
 import lightning.db.NamedPreparedStatement;
@@ -20,39 +18,34 @@ import lightning.sessions.Session.SessionDriverException;
 import lightning.sessions.Session.SessionStorageDriver;
 import lightning.util.Time;
 
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
-
 /**
  * A session driver implementation that uses a MySQL database.
  * TODO: Implement automatic cleanup of old sessions.
  */
 public class MySQLSessionDriver implements SessionStorageDriver {
   private final MySQLDatabaseProvider provider;
+  private final Codec codec;
   
   public MySQLSessionDriver(MySQLDatabaseProvider provider) {
+    this(provider, BinaryCodec.getDefault());
+  }
+  
+  public MySQLSessionDriver(MySQLDatabaseProvider provider, Codec codec) {
     this.provider = provider;
+    this.codec = codec;
   }
   
-  private static void setBlob(PreparedStatement statement, int index, Object object) throws SQLException, IOException {
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    ObjectOutputStream oos = new ObjectOutputStream(baos);
-    oos.writeObject(object);
-    oos.flush();
-    byte[] bytes = baos.toByteArray();
-
+  private void setBlob(PreparedStatement statement, int index, Object object) throws SQLException, CodecException {
+    byte[] bytes = codec.encode(object);
     ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
     statement.setBinaryStream(index, bais, bytes.length);
   }
   
-  private static Object getBlob(ResultSet result, String column) throws SQLException, IOException, ClassNotFoundException {
-    Blob blob = result.getBlob(column);
+  private Object getBlob(ResultSet result, String column) throws SQLException, CodecException {
+    byte[] bytes = result.getBytes(column);
     if (result.wasNull())
       return null;
-    InputStream is = blob.getBinaryStream();
-    ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(is);
-    Object o = ois.readObject();
-    ois.close();
-    return o;
+    return codec.decode(bytes);
   }
 
   @Override
@@ -75,7 +68,7 @@ public class MySQLSessionDriver implements SessionStorageDriver {
       result.close();
       query.close();
       return data;
-    } catch (SQLException | IOException | ClassNotFoundException e) {
+    } catch (SQLException | CodecException e) {
       throw new SessionDriverException(e);
     }
   }
@@ -90,7 +83,7 @@ public class MySQLSessionDriver implements SessionStorageDriver {
       query.set("data", (stmt, i) -> {
         try {
           setBlob(stmt, i, data);
-        } catch (IOException e) {
+        } catch (CodecException e) {
           throw new SQLException(e);
         }
       });
@@ -0,0 +1,381 @@
+package lightning.sessions.drivers;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lightning.codec.BinaryCodec;
+import lightning.codec.Codec;
+import lightning.codec.CodecException;
+import lightning.db.MySQLDatabase;
+import lightning.db.MySQLDatabaseProvider;
+import lightning.db.NamedPreparedStatement;
+import lightning.sessions.Session.SessionDriverException;
+import lightning.sessions.Session.SessionStorageDriver;
+import lightning.util.Time;
+
+/**
+ * A session driver that uses the same table as MySQLSessionDriver but moves writes off of the
+ * request thread.
+ *
+ * - put() encodes the session and places it into a bounded queue (replacing any queued write for
+ *   the same session); a background thread flushes the queue periodically using multi-row REPLACE
+ *   statements. If the queue is full, the write is performed on the calling thread.
+ * - get() and has() observe queued writes (and writes that are being flushed), so a server always
+ *   reads its own writes. Other servers may observe a write up to one flush interval late.
+ * - keepAliveIfExists() is a no-op for sessions with a pending write (the write refreshes the
+ *   session) and is otherwise performed immediately.
+ * - invalidate() is performed immediately (and discards any queued write).
+ *
+ * Queued writes are lost if the process terminates without calling close().
+ *
+ * This class is thread-safe and should be shared between requests.
+ */
+public class WriteBehindSessionDriver implements SessionStorageDriver, AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(WriteBehindSessionDriver.class);
+
+  private static final class PendingWrite {
+    final byte[] data;
+    final long time;
+
+    PendingWrite(byte[] data, long time) {
+      this.data = data;
+      this.time = time;
+    }
+  }
+
+  private final MySQLDatabaseProvider provider;
+  private final Codec codec;
+  private final int maxQueueSize;
+  private final int batchSize;
+  private final ScheduledExecutorService executor;
+  private final Object lock;
+  private final LinkedHashMap<String, PendingWrite> writes; // Guarded by lock.
+  private final Map<String, PendingWrite> inflight;         // Guarded by lock.
+  private final Object flushLock;                           // Held while writing to the database.
+  private boolean isClosed;                                 // Guarded by lock.
+
+  public WriteBehindSessionDriver(MySQLDatabaseProvider provider) {
+    this(provider, BinaryCodec.getDefault(), 10000, 100, 1000);
+  }
+
+  /**
+   * @param provider Provides database connections.
+   * @param codec Used to encode session data.
+   * @param maxQueueSize Maximum number of queued writes.
+   * @param batchSize Maximum number of rows written by a single statement.
+   * @param flushIntervalMs How often to flush queued writes.
+   */
+  public WriteBehindSessionDriver(MySQLDatabaseProvider provider, Codec codec, int maxQueueSize,
+                                  int batchSize, long flushIntervalMs) {
+    if (maxQueueSize < 1 || batchSize < 1 || flushIntervalMs < 1) {
+      throw new IllegalArgumentException("Queue size, batch size, and flush interval must be positive.");
+    }
+
+    this.provider = provider;
+    this.codec = codec;
+    this.maxQueueSize = maxQueueSize;
+    this.batchSize = batchSize;
+    this.lock = new Object();
+    this.flushLock = new Object();
+    this.writes = new LinkedHashMap<>();
+    this.inflight = new HashMap<>();
+    this.isClosed = false;
+    this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "lightning-session-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.executor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Map<String, Object> get(String hashedId) throws SessionDriverException {
+    PendingWrite pending;
+
+    synchronized (lock) {
+      pending = pendingWrite(hashedId);
+    }
+
+    try {
+      if (pending != null) {
+        return decode(pending.data);
+      }
+
+      try (MySQLDatabase db = provider.getDatabase()) {
+        PreparedStatement query = db.prepare("SELECT data FROM sessions WHERE session_id = ?;", list(hashedId));
+
+        try (ResultSet result = query.executeQuery()) {
+          if (!result.next()) {
+            return null;
+          }
+
+          byte[] bytes = result.getBytes(1);
+          return result.wasNull() ? new TreeMap<>() : decode(bytes);
+        } finally {
+          query.close();
+        }
+      }
+    } catch (SQLException | CodecException e) {
+      throw new SessionDriverException(e);
+    }
+  }
+
+  @Override
+  public void put(String hashedId, Map<String, Object> data, Set<String> changedKeys)
+      throws SessionDriverException {
+    PendingWrite write;
+
+    try {
+      write = new PendingWrite(codec.encode(data), Time.now());
+    } catch (CodecException e) {
+      throw new SessionDriverException(e);
+    }
+
+    if (enqueue(hashedId, write)) {
+      return;
+    }
+
+    // The queue is full: apply back pressure by writing on the calling thread. The write is ordered
+    // with flushes (which may be writing an older version of the session) by holding flushLock.
+    synchronized (flushLock) {
+      synchronized (lock) {
+        if (enqueue(hashedId, write)) {
+          return; // A flush made room in the meantime.
+        }
+
+        writes.remove(hashedId); // Supersede any write re-queued by a failed flush.
+        inflight.put(hashedId, write);
+      }
+
+      Map<String, PendingWrite> batch = new LinkedHashMap<>();
+      batch.put(hashedId, write);
+
+      try {
+        writeBatch(batch);
+      } catch (SQLException e) {
+        throw new SessionDriverException(e);
+      } finally {
+        synchronized (lock) {
+          inflight.remove(hashedId, write);
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean has(String hashedId) throws SessionDriverException {
+    synchronized (lock) {
+      if (pendingWrite(hashedId) != null) {
+        return true;
+      }
+    }
+
+    try (MySQLDatabase db = provider.getDatabase()) {
+      PreparedStatement query = db.prepare("SELECT 1 FROM sessions WHERE session_id = ?;", list(hashedId));
+
+      try (ResultSet result = query.executeQuery()) {
+        return result.next();
+      } finally {
+        query.close();
+      }
+    } catch (SQLException e) {
+      throw new SessionDriverException(e);
+    }
+  }
+
+  @Override
+  public void invalidate(String hashedId) throws SessionDriverException {
+    // Wait for any in-progress flush so that it cannot resurrect the session afterwards.
+    synchronized (flushLock) {
+      synchronized (lock) {
+        writes.remove(hashedId);
+      }
+
+      try (MySQLDatabase db = provider.getDatabase()) {
+        PreparedStatement query = db.prepare("DELETE FROM sessions WHERE session_id = ?;", list(hashedId));
+        query.executeUpdate();
+        query.close();
+      } catch (SQLException e) {
+        throw new SessionDriverException(e);
+      }
+    }
+  }
+
+  @Override
+  public void keepAliveIfExists(String hashedId) throws SessionDriverException {
+    synchronized (lock) {
+      if (pendingWrite(hashedId) != null) {
+        return; // The pending write will refresh the session.
+      }
+    }
+
+    try (MySQLDatabase db = provider.getDatabase()) {
+      NamedPreparedStatement query = db.prepare("UPDATE sessions SET last_save = :time WHERE session_id = :id;");
+      query.setString("id", hashedId);
+      query.setLong("time", Time.now());
+      query.executeUpdate();
+      query.close();
+    } catch (SQLException e) {
+      throw new SessionDriverException(e);
+    }
+  }
+
+  /**
+   * Writes all queued writes to the database.
+   * @throws SessionDriverException On failure (failed writes are re-queued).
+   */
+  public void flush() throws SessionDriverException {
+    synchronized (flushLock) {
+      while (true) {
+        Map<String, PendingWrite> batch = new LinkedHashMap<>();
+
+        synchronized (lock) {
+          drain(writes.entrySet().iterator(), batch);
+          inflight.putAll(batch);
+        }
+
+        if (batch.isEmpty()) {
+          return;
+        }
+
+        try {
+          writeBatch(batch);
+        } catch (SQLException e) {
+          complete(batch, true);
+          throw new SessionDriverException(e);
+        }
+
+        complete(batch, false);
+      }
+    }
+  }
+
+  /**
+   * @return The number of queued writes.
+   */
+  public int getQueueSize() {
+    synchronized (lock) {
+      return writes.size();
+    }
+  }
+
+  /**
+   * Stops the background writer and flushes any queued writes.
+   */
+  @Override
+  public void close() throws SessionDriverException {
+    synchronized (lock) {
+      if (isClosed) {
+        return;
+      }
+      isClosed = true;
+    }
+
+    executor.shutdown();
+
+    try {
+      executor.awaitTermination(30, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    flush();
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (Exception e) {
+      logger.warn("Failed to flush session writes:", e);
+    }
+  }
+
+  private void drain(Iterator<Map.Entry<String, PendingWrite>> iterator, Map<String, PendingWrite> batch) {
+    while (iterator.hasNext() && batch.size() < batchSize) {
+      Map.Entry<String, PendingWrite> entry = iterator.next();
+      batch.put(entry.getKey(), entry.getValue());
+      iterator.remove();
+    }
+  }
+
+  // Requires lock.
+  private boolean enqueue(String hashedId, PendingWrite write) {
+    if (!isClosed && (writes.containsKey(hashedId) || writes.size() < maxQueueSize)) {
+      writes.put(hashedId, write);
+      return true;
+    }
+
+    return false;
+  }
+
+  // Requires lock.
+  private PendingWrite pendingWrite(String hashedId) {
+    PendingWrite write = writes.get(hashedId);
+    return (write != null) ? write : inflight.get(hashedId);
+  }
+
+  private void complete(Map<String, PendingWrite> batch, boolean failed) {
+    synchronized (lock) {
+      for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+        inflight.remove(entry.getKey(), entry.getValue());
+
+        // Re-queue failed writes unless a newer write has been queued in the meantime (invalidations
+        // and direct writes wait for the flush and therefore cannot be overwritten by a re-queue).
+        if (failed && !writes.containsKey(entry.getKey()) && writes.size() < maxQueueSize) {
+          writes.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+  }
+
+  private void writeBatch(Map<String, PendingWrite> batch) throws SQLException {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    StringBuilder sql = new StringBuilder("REPLACE INTO sessions (session_id, last_save, data) VALUES ");
+    List<Object> params = new ArrayList<>(batch.size() * 3);
+
+    for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+      sql.append(params.isEmpty() ? "(?, ?, ?)" : ", (?, ?, ?)");
+      params.add(entry.getKey());
+      params.add(entry.getValue().time);
+      params.add(entry.getValue().data);
+    }
+
+    try (MySQLDatabase db = provider.getDatabase()) {
+      PreparedStatement query = db.prepare(sql.append(";").toString(), params);
+      query.executeUpdate();
+      query.close();
+    }
+
+    logger.debug("Flushed {} session writes.", batch.size());
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> decode(byte[] bytes) throws CodecException {
+    Map<String, Object> data = (Map<String, Object>) codec.decode(bytes);
+    return (data != null) ? data : new TreeMap<>();
+  }
+
+  private static List<Object> list(Object value) {
+    List<Object> list = new ArrayList<>(1);
+    list.add(value);
+    return list;
+  }
+}
@@ -3,8 +3,7 @@ package lightning.totp;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.security.GeneralSecurityException;
 import java.util.Base64;
 import java.util.Date;
 import java.util.EnumMap;
@@ -93,6 +92,7 @@ public final class TOTP {
   private static final String URL_FORMAT = "otpauth://totp/%s%s?secret=%s&issuer=%s";
   private static final long TIME_STEP_MS = TimeUnit.SECONDS.toMillis(30);
   private static final int WINDOW_VARIANCE = 3;
+  private static final String ALGORITHM = "HmacSHA1";
 
   private static byte[] getLongAsBytesBigEndian(long value) {
     byte[] data = new byte[8];
@@ -147,12 +147,13 @@ public final class TOTP {
   }
 
   private final TOTPCheck checkToken(int token, long window) {
+    Mac mac = createMac();
     for (int i = -WINDOW_VARIANCE; i <= WINDOW_VARIANCE; i++) {
       if (window + i < 0) {
         continue;
       }
 
-      if (getTokenForWindow(window + i) == token) {
+      if (getTokenForWindow(mac, window + i) == token) {
         return new TOTPCheck(window + i, true);
       }
     }
@@ -171,24 +172,35 @@ public final class TOTP {
     return checkToken(token, getCurrentWindow());
   }
 
-  private final int getTokenForWindow(long window) {
+  /**
+   * Keys are per-user, so a Mac is created for each operation (and reused across the windows it
+   * checks) rather than cached in a thread-local, which would retain every key on pooled threads.
+   */
+  private final Mac createMac() {
     try {
-      SecretKeySpec skey = new SecretKeySpec(key, "HmacSHA1");
-      Mac mac = Mac.getInstance("HmacSHA1");
-      mac.init(skey);
-      byte[] hash = mac.doFinal(getLongAsBytesBigEndian(window));
-      int offset = hash[hash.length - 1] & 0xF;
-      long truncatedHash = 0;
-      for (int i = 0; i < 4; ++i) {
-        truncatedHash <<= 8;
-        truncatedHash |= (hash[offset + i] & 0xFF);
-      }
-      truncatedHash &= 0x7FFFFFFF;
-      truncatedHash %= (int)Math.pow(10, 6);
-      return (int) truncatedHash;
-    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-      throw new RuntimeException(e); // Should not happen on any standard JVM.
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(new SecretKeySpec(key, ALGORITHM));
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private final int getTokenForWindow(long window) {
+    return getTokenForWindow(createMac(), window);
+  }
+
+  private static final int getTokenForWindow(Mac mac, long window) {
+    byte[] hash = mac.doFinal(getLongAsBytesBigEndian(window));
+    int offset = hash[hash.length - 1] & 0xF;
+    long truncatedHash = 0;
+    for (int i = 0; i < 4; ++i) {
+      truncatedHash <<= 8;
+      truncatedHash |= (hash[offset + i] & 0xFF);
     }
+    truncatedHash &= 0x7FFFFFFF;
+    truncatedHash %= (int)Math.pow(10, 6);
+    return (int) truncatedHash;
   }
 
   /**
@@ -214,12 +226,13 @@ public final class TOTP {
    */
   public final Set<Integer> getAllValidTokens() {
     Set<Integer> result = new HashSet<>();
+    Mac mac = createMac();
     long base = getWindowFromTime((new Date()).getTime());
     for (int i = -WINDOW_VARIANCE; i <= WINDOW_VARIANCE; i++) {
       if (base + i < 0) {
         continue;
       }
-      result.add(getTokenForWindow(base + i));
+      result.add(getTokenForWindow(mac, base + i));
     }
     return result;
   }
@@ -0,0 +1,183 @@
+package lightning.users;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of privilege identifiers optimized for membership tests.
+ *
+ * Identifiers in [0, DENSE_LIMIT) (the common case) are stored in a bit set and tested in O(1);
+ * any others are stored in a sorted array and tested by binary search. Iterates in ascending order.
+ *
+ * Instances are safe to share between threads (e.g. in caches).
+ */
+public final class PrivilegeSet extends AbstractSet<Long> {
+  private static final int DENSE_LIMIT = 1 << 16;
+  private static final long[] NO_IDS = new long[0];
+  private static final PrivilegeSet EMPTY = new PrivilegeSet(new BitSet(0), NO_IDS);
+
+  private final BitSet dense;  // Never mutated after construction.
+  private final long[] sparse; // Sorted, distinct.
+  private final int size;
+
+  private PrivilegeSet(BitSet dense, long[] sparse) {
+    this.dense = dense;
+    this.sparse = sparse;
+    this.size = dense.cardinality() + sparse.length;
+  }
+
+  /**
+   * @return An empty set.
+   */
+  public static PrivilegeSet of() {
+    return EMPTY;
+  }
+
+  /**
+   * @param ids Privilege identifiers (duplicates are ignored).
+   * @return A set containing ids.
+   */
+  public static PrivilegeSet copyOf(Iterable<Long> ids) {
+    if (ids instanceof PrivilegeSet) {
+      return (PrivilegeSet) ids;
+    }
+
+    BitSet dense = new BitSet();
+    long[] sparse = NO_IDS;
+    int sparseCount = 0;
+
+    for (Long id : ids) {
+      if (id >= 0 && id < DENSE_LIMIT) {
+        dense.set(id.intValue());
+      } else {
+        if (sparseCount == sparse.length) {
+          sparse = Arrays.copyOf(sparse, Math.max(4, sparse.length * 2));
+        }
+        sparse[sparseCount++] = id;
+      }
+    }
+
+    return create(dense, sparse, sparseCount);
+  }
+
+  /**
+   * @return A set containing the privileges in a and b.
+   */
+  public static PrivilegeSet union(PrivilegeSet a, PrivilegeSet b) {
+    if (b.isEmpty()) {
+      return a;
+    }
+
+    if (a.isEmpty()) {
+      return b;
+    }
+
+    BitSet dense = (BitSet) a.dense.clone();
+    dense.or(b.dense);
+    long[] sparse = Arrays.copyOf(a.sparse, a.sparse.length + b.sparse.length);
+    System.arraycopy(b.sparse, 0, sparse, a.sparse.length, b.sparse.length);
+    return create(dense, sparse, sparse.length);
+  }
+
+  private static PrivilegeSet create(BitSet dense, long[] sparse, int sparseCount) {
+    if (dense.isEmpty() && sparseCount == 0) {
+      return EMPTY;
+    }
+
+    long[] ids = NO_IDS;
+
+    if (sparseCount > 0) {
+      Arrays.sort(sparse, 0, sparseCount);
+      ids = new long[sparseCount];
+      int n = 0;
+      for (int i = 0; i < sparseCount; i++) {
+        if (n == 0 || ids[n - 1] != sparse[i]) {
+          ids[n++] = sparse[i];
+        }
+      }
+      ids = Arrays.copyOf(ids, n);
+    }
+
+    return new PrivilegeSet(dense, ids);
+  }
+
+  /**
+   * @param id A privilege identifier.
+   * @return Whether or not the set contains id.
+   */
+  public boolean has(long id) {
+    if (id >= 0 && id < DENSE_LIMIT) {
+      return dense.get((int) id);
+    }
+
+    return sparse.length > 0 && Arrays.binarySearch(sparse, id) >= 0;
+  }
+
+  /**
+   * @param ids Privilege identifiers.
+   * @return Whether or not the set contains all of ids.
+   */
+  public boolean hasAll(Iterable<Long> ids) {
+    for (Long id : ids) {
+      if (id == null || !has(id)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return (o instanceof Long) && has((Long) o);
+  }
+
+  @Override
+  public boolean containsAll(Collection<?> c) {
+    for (Object o : c) {
+      if (!contains(o)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Iterator<Long> iterator() {
+    return new Iterator<Long>() {
+      // Negative sparse ids, then dense ids, then the remaining sparse ids.
+      private int sparseIndex = 0;
+      private int denseIndex = dense.nextSetBit(0);
+
+      @Override
+      public boolean hasNext() {
+        return sparseIndex < sparse.length || denseIndex >= 0;
+      }
+
+      @Override
+      public Long next() {
+        if (sparseIndex < sparse.length && (sparse[sparseIndex] < 0 || denseIndex < 0)) {
+          return sparse[sparseIndex++];
+        }
+
+        if (denseIndex < 0) {
+          throw new NoSuchElementException();
+        }
+
+        long id = denseIndex;
+        denseIndex = dense.nextSetBit(denseIndex + 1);
+        return id;
+      }
+    };
+  }
+}
@@ -43,8 +43,8 @@ public final class User {
   private String encryptedPassword;
   private long banExpiry;
   private Map<String, Object> properties;
-  private Set<Long> privileges;
-  private Set<Long> effectivePrivileges; // Includes from groups.
+  private PrivilegeSet privileges;          // Loaded on first use.
+  private PrivilegeSet effectivePrivileges; // Includes from groups.
   private Set<Long> privilegesToAdd;
   private Set<Long> privilegesToRemove;
   private boolean emailIsVerified;
@@ -53,6 +53,7 @@ public final class User {
   public User(UsersDriver driver, Groups groups, long id, String userName, String email, String encryptedPassword, String token, long banExpiry, boolean emailIsVerified, Map<String, Object> properties) {
     isDirty = false;
     this.driver = driver;
+    this.groups = groups;
     this.id = id;
     this.userName = userName;
     this.email = email;
@@ -139,6 +140,13 @@ public final class User {
     return Users.checkPassword(encryptedPassword, plaintextPassword);
   }
   
+  /**
+   * @return Whether or not the stored password hash should be upgraded (see PasswordHasher).
+   */
+  public boolean passwordNeedsRehash() {
+    return encryptedPassword != null && Users.passwordNeedsRehash(encryptedPassword);
+  }
+  
   public Set<String> getProperties() {
     return Collections.unmodifiableSet(properties.keySet());
   }
@@ -175,11 +183,13 @@ public final class User {
   
   
   public boolean hasPrivilege(long pid) throws GroupsException, UsersException {
-    return hasPrivileges(ImmutableList.of(pid));
+    fetchPrivilegesIfNotExist();
+    return this.effectivePrivileges.has(pid);
   }
   
   public boolean hasPrivilegeOnUser(long pid) throws GroupsException, UsersException {
-    return hasPrivilegesOnUser(ImmutableList.of(pid));
+    fetchPrivilegesIfNotExist();
+    return this.privileges.has(pid);
   }
   
   public void grantPrivilege(long pid) throws GroupsException, UsersException {
@@ -222,17 +232,15 @@ public final class User {
   
   public boolean hasPrivileges(List<Long> pids) throws GroupsException, UsersException {
     fetchPrivilegesIfNotExist();
-    return this.effectivePrivileges.containsAll(pids);
+    return this.effectivePrivileges.hasAll(pids);
   }
   
   public boolean hasPrivilegesOnUser(List<Long> pids) throws GroupsException, UsersException {
     fetchPrivilegesIfNotExist();
-    return this.privileges.containsAll(pids);
+    return this.privileges.hasAll(pids);
   }
   
   public void grantPrivileges(List<Long> pids) throws GroupsException, UsersException {
-    fetchPrivilegesIfNotExist();
-    
     if (this.privilegesToAdd == null) {
       this.privilegesToAdd = new TreeSet<>();
     }
@@ -242,8 +250,6 @@ public final class User {
   }
   
   public void revokePrivileges(List<Long> pids) throws GroupsException, UsersException {
-    fetchPrivilegesIfNotExist();
-    
     if (this.privilegesToRemove == null) {
       this.privilegesToRemove = new TreeSet<>();
     }
@@ -256,16 +262,24 @@ public final class User {
     return groups.getAllForUser(id);
   }
   
+  /**
+   * Loads the user's privileges (at most once per instance; drivers may also cache them across
+   * requests). Privilege checks are then membership tests on a PrivilegeSet without I/O.
+   */
   private void fetchPrivilegesIfNotExist() throws GroupsException, UsersException {
-    this.effectivePrivileges = groups.getGroupPrivilegesForUser(id);
+    if (this.effectivePrivileges != null) {
+      return;
+    }
+    
+    PrivilegeSet fromGroups = PrivilegeSet.copyOf(groups.getGroupPrivilegesForUser(id));
     
     try {
-      this.privileges = driver.getPrivileges(id);
+      this.privileges = PrivilegeSet.copyOf(driver.getPrivileges(id));
     } catch (Exception e) {
       throw new UsersException(e);
     }
     
-    this.effectivePrivileges.addAll(privileges);
+    this.effectivePrivileges = PrivilegeSet.union(privileges, fromGroups);
   }
   
   public void save() throws UsersException {
@@ -276,6 +290,14 @@ public final class User {
     try {
       driver.save(this, privilegesToAdd, privilegesToRemove);
       isDirty = false;
+      
+      if (privilegesToAdd != null || privilegesToRemove != null) {
+        // Reload on next use.
+        privilegesToAdd = null;
+        privilegesToRemove = null;
+        privileges = null;
+        effectivePrivileges = null;
+      }
     } catch (Exception e) {
       throw new UsersException(e);
     }
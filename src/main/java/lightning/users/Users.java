@@ -1,9 +1,13 @@
 package lightning.users;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
-import lightning.crypt.BCrypt;
+import lightning.crypt.PasswordHasher;
 import lightning.groups.Groups;
+import lightning.http.TooManyRequestsException;
 
 /**
  * Provides an API for interacting with the set of all users in the application.
@@ -29,6 +33,44 @@ public final class Users {
     public User create(String userName, String email, String plaintextPassword) throws Exception;
     public void delete(long userId) throws Exception;
     public void recordLogin(User user) throws Exception;
+
+    /**
+     * Fetches several users. Drivers backed by remote stores should override this to fetch all
+     * users in a few round trips.
+     * @param userIds
+     * @return A map (in the order of userIds) containing an entry for each user that exists.
+     * @throws Exception
+     */
+    public default Map<Long, User> getUsers(Collection<Long> userIds) throws Exception {
+      Map<Long, User> users = new LinkedHashMap<>();
+
+      for (long userId : userIds) {
+        User user = getUser(userId);
+
+        if (user != null) {
+          users.put(userId, user);
+        }
+      }
+
+      return users;
+    }
+
+    /**
+     * Fetches the privileges granted directly to several users. Drivers backed by remote stores
+     * should override this to fetch all privileges in a few round trips.
+     * @param userIds
+     * @return A map (in the order of userIds) containing an entry for each of userIds.
+     * @throws Exception
+     */
+    public default Map<Long, Set<Long>> getPrivilegesForUsers(Collection<Long> userIds) throws Exception {
+      Map<Long, Set<Long>> privileges = new LinkedHashMap<>();
+
+      for (long userId : userIds) {
+        privileges.put(userId, getPrivileges(userId));
+      }
+
+      return privileges;
+    }
   }
   
   public static class UsersException extends Exception {
@@ -51,12 +93,27 @@ public final class Users {
     this.groups = groups;
   }
   
-  public static String hashPassword(String plaintextPassword) {
-    return BCrypt.hashpw(plaintextPassword, BCrypt.gensalt(10));
+  /**
+   * Hashes a password using the default PasswordHasher.
+   * @throws TooManyRequestsException If the hasher is saturated.
+   */
+  public static String hashPassword(String plaintextPassword) throws TooManyRequestsException {
+    return PasswordHasher.getDefault().hash(plaintextPassword);
+  }
+  
+  /**
+   * Checks a password using the default PasswordHasher.
+   * @throws TooManyRequestsException If the hasher is saturated.
+   */
+  public static boolean checkPassword(String hash, String plaintextPassword) throws TooManyRequestsException {
+    return PasswordHasher.getDefault().check(hash, plaintextPassword);
   }
   
-  public static boolean checkPassword(String hash, String plaintextPassword) {
-    return BCrypt.checkpw(plaintextPassword, hash);
+  /**
+   * @return Whether or not hash was created with a lower cost than the default PasswordHasher applies.
+   */
+  public static boolean passwordNeedsRehash(String hash) {
+    return PasswordHasher.getDefault().needsRehash(hash);
   }
   
   public User getById(long id) throws UsersException {
@@ -91,6 +148,47 @@ public final class Users {
     }
   }
   
+  /**
+   * @param ids
+   * @return A map (in the order of ids) containing an entry for each user that exists.
+   * @throws UsersException
+   */
+  public Map<Long, User> getByIds(Collection<Long> ids) throws UsersException {
+    try {
+      return sharedDriver.getUsers(ids);
+    } catch (Exception e) {
+      throw new UsersException(e);
+    }
+  }
+  
+  /**
+   * Fetches the privileges of several users (including those inherited from groups).
+   * @param ids
+   * @return A map (in the order of ids) containing an entry for each of ids.
+   * @throws UsersException
+   */
+  public Map<Long, PrivilegeSet> getPrivilegesForUsers(Collection<Long> ids) throws UsersException {
+    try {
+      Map<Long, Set<Long>> direct = sharedDriver.getPrivilegesForUsers(ids);
+      Map<Long, Set<Long>> fromGroups = groups.getGroupPrivilegesForUsers(ids);
+      Map<Long, PrivilegeSet> privileges = new LinkedHashMap<>();
+
+      for (long id : ids) {
+        privileges.put(id, PrivilegeSet.union(
+            PrivilegeSet.copyOf(direct.getOrDefault(id, PrivilegeSet.of())),
+            PrivilegeSet.copyOf(fromGroups.getOrDefault(id, PrivilegeSet.of()))));
+      }
+
+      return privileges;
+    } catch (Exception e) {
+      throw new UsersException(e);
+    }
+  }
+  
+  /**
+   * @return All users. Drivers may fetch users lazily (in chunks) as the result is iterated.
+   * @throws UsersException
+   */
   public Iterable<User> getAll() throws UsersException {
     try {
       return sharedDriver.getAll();
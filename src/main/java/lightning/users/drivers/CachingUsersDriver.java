@@ -0,0 +1,173 @@
+package lightning.users.drivers;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import lightning.auth.AuthCache;
+import lightning.groups.Groups;
+import lightning.users.PrivilegeSet;
+import lightning.users.User;
+import lightning.users.Users.UsersDriver;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A users driver that serves lookups by ID (and of privileges) from an AuthCache and invalidates
+ * the cache whenever a user is changed. All other operations are passed through to the
+ * underlying driver.
+ *
+ * Users returned by this driver are bound to it (rather than to the underlying driver) so that
+ * User.save() always invalidates the cache.
+ */
+public class CachingUsersDriver implements UsersDriver {
+  /**
+   * An immutable copy of the stored fields of a user (shared between requests by the cache).
+   */
+  private static final class Snapshot {
+    final long id;
+    final String userName;
+    final String email;
+    final String encryptedPassword;
+    final String token;
+    final long banExpiry;
+    final boolean emailIsVerified;
+    final Map<String, Object> properties;
+
+    Snapshot(User user) {
+      this.id = user.getId();
+      this.userName = user.getUserName();
+      this.email = user.getEmail();
+      this.encryptedPassword = user.getEncryptedPassword();
+      this.token = user.getToken();
+      this.banExpiry = user.getBanExpiry();
+      this.emailIsVerified = user.emailIsVerified();
+      this.properties = ImmutableMap.copyOf(user.__getPropertyMap());
+    }
+  }
+
+  private final UsersDriver delegate;
+  private final Groups groups;
+  private final AuthCache cache;
+
+  public CachingUsersDriver(UsersDriver delegate, Groups groups, AuthCache cache) {
+    this.delegate = delegate;
+    this.groups = groups;
+    this.cache = cache;
+  }
+
+  private User toUser(Snapshot snapshot) {
+    if (snapshot == null) {
+      return null;
+    }
+
+    return new User(this, groups, snapshot.id, snapshot.userName, snapshot.email,
+        snapshot.encryptedPassword, snapshot.token, snapshot.banExpiry, snapshot.emailIsVerified,
+        snapshot.properties);
+  }
+
+  private User rebind(User user) {
+    return (user != null) ? toUser(new Snapshot(user)) : null;
+  }
+
+  @Override
+  public User getUser(long userId) throws Exception {
+    return toUser(cache.getUser(userId, () -> {
+      User user = delegate.getUser(userId);
+      return (user != null) ? new Snapshot(user) : null;
+    }));
+  }
+
+  @Override
+  public Map<Long, User> getUsers(Collection<Long> userIds) throws Exception {
+    Map<Long, Snapshot> snapshots = cache.getUsers(userIds, missing -> {
+      Map<Long, Snapshot> loaded = new LinkedHashMap<>();
+      for (User user : delegate.getUsers(missing).values()) {
+        loaded.put(user.getId(), new Snapshot(user));
+      }
+      return loaded;
+    });
+
+    Map<Long, User> users = new LinkedHashMap<>();
+    for (Map.Entry<Long, Snapshot> entry : snapshots.entrySet()) {
+      users.put(entry.getKey(), toUser(entry.getValue()));
+    }
+    return users;
+  }
+
+  @Override
+  public User getUserByName(String name) throws Exception {
+    return rebind(delegate.getUserByName(name));
+  }
+
+  @Override
+  public User getUserByEmail(String email) throws Exception {
+    return rebind(delegate.getUserByEmail(email));
+  }
+
+  @Override
+  public User getUserByToken(String token) throws Exception {
+    return rebind(delegate.getUserByToken(token));
+  }
+
+  @Override
+  public Iterable<User> getAll() throws Exception {
+    return delegate.getAll();
+  }
+
+  @Override
+  public User create(String userName, String email, String plaintextPassword) throws Exception {
+    return rebind(delegate.create(userName, email, plaintextPassword));
+  }
+
+  @Override
+  public void save(User user, Set<Long> addPrivileges, Set<Long> removePrivileges) throws Exception {
+    try {
+      delegate.save(user, addPrivileges, removePrivileges);
+    } finally {
+      cache.invalidateUser(user.getId());
+
+      if (addPrivileges != null || removePrivileges != null) {
+        cache.invalidateUserPrivileges(user.getId());
+      }
+    }
+  }
+
+  @Override
+  public Set<Long> getPrivileges(long userId) throws Exception {
+    return cache.getUserPrivileges(userId, () -> PrivilegeSet.copyOf(delegate.getPrivileges(userId)));
+  }
+
+  @Override
+  public Map<Long, Set<Long>> getPrivilegesForUsers(Collection<Long> userIds) throws Exception {
+    return new LinkedHashMap<>(cache.getUserPrivileges(userIds, missing -> {
+      Map<Long, PrivilegeSet> loaded = new LinkedHashMap<>();
+      for (Map.Entry<Long, Set<Long>> entry : delegate.getPrivilegesForUsers(missing).entrySet()) {
+        loaded.put(entry.getKey(), PrivilegeSet.copyOf(entry.getValue()));
+      }
+      return loaded;
+    }));
+  }
+
+  @Override
+  public void delete(long userId) throws Exception {
+    try {
+      delegate.delete(userId);
+    } finally {
+      cache.invalidateUser(userId);
+      cache.invalidateUserPrivileges(userId);
+      cache.invalidateGroupPrivilegesForUser(userId);
+      cache.invalidateSessionTokensForUser(userId);
+    }
+  }
+
+  @Override
+  public void recordLogin(User user) throws Exception {
+    try {
+      delegate.recordLogin(user);
+    } finally {
+      cache.invalidateUser(user.getId());
+    }
+  }
+}
@@ -1,46 +1,61 @@
 package lightning.users.drivers;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectOutputStream;
-import java.sql.Blob;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
 import lightning.auth.Auth;
+import lightning.codec.BinaryCodec;
+import lightning.codec.Codec;
+import lightning.codec.CodecException;
 import lightning.db.MySQLDatabase;
 import lightning.db.MySQLDatabaseProvider;
 import lightning.db.NamedPreparedStatement;
+import lightning.db.Placeholders;
 import lightning.db.ResultSets;
 import lightning.groups.Groups;
 import lightning.users.User;
 import lightning.users.Users;
 import lightning.users.Users.UsersDriver;
 
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
-
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 
 /**
  * An implementation of a users driver backed by MySQL.
+ *
+ * Bulk lookups are performed with one query per CHUNK_SIZE IDs, and getAll() fetches users in
+ * chunks (ordered by ID) as the result is iterated rather than loading every user at once.
  */
 public class MySQLUserDriver implements UsersDriver {
+  private static final int CHUNK_SIZE = 500;
+
   private final MySQLDatabaseProvider provider;
   private final Groups groups;
+  private final Codec codec;
 
   public MySQLUserDriver(MySQLDatabaseProvider provider, Groups groups) {
+    this(provider, groups, BinaryCodec.getDefault());
+  }
+
+  public MySQLUserDriver(MySQLDatabaseProvider provider, Groups groups, Codec codec) {
     this.provider = provider;
     this.groups = groups;
+    this.codec = codec;
   }
 
-  public User nextUser(ResultSet result) throws ClassNotFoundException, SQLException, IOException {
+  public User nextUser(ResultSet result) throws SQLException, CodecException {
     if (!result.next()) {
       return null;
     }
@@ -64,29 +79,21 @@ public class MySQLUserDriver implements UsersDriver {
         properties);
   }
 
-  private static void setBlob(PreparedStatement statement, int index, Object object) throws SQLException, IOException {
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    ObjectOutputStream oos = new ObjectOutputStream(baos);
-    oos.writeObject(object);
-    oos.flush();
-    byte[] bytes = baos.toByteArray();
+  private void setBlob(PreparedStatement statement, int index, Object object) throws SQLException, CodecException {
+    byte[] bytes = codec.encode(object);
     ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
     statement.setBinaryStream(index, bais, bytes.length);
   }
 
-  private static Object getBlob(ResultSet result, String column) throws SQLException, IOException, ClassNotFoundException {
-    Blob blob = result.getBlob(column);
+  private Object getBlob(ResultSet result, String column) throws SQLException, CodecException {
+    byte[] bytes = result.getBytes(column);
     if (result.wasNull())
       return null;
-    InputStream is = blob.getBinaryStream();
-    ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(is);
-    Object o = ois.readObject();
-    ois.close();
-    return o;
+    return codec.decode(bytes);
   }
 
   @Override
-  public User getUser(long userId) throws SQLException, ClassNotFoundException, IOException {
+  public User getUser(long userId) throws SQLException, CodecException {
     try (MySQLDatabase db = provider.getDatabase()) {
       PreparedStatement query = db.prepare("SELECT * FROM users WHERE id = ?;",
           ImmutableList.of(userId));
@@ -165,7 +172,7 @@ public class MySQLUserDriver implements UsersDriver {
       query.set("properties", (stmt, i) -> {
         try {
           setBlob(stmt, i, user.__getPropertyMap());
-        } catch (IOException e) {
+        } catch (CodecException e) {
           throw new SQLException(e);
         }
       });
@@ -177,12 +184,105 @@ public class MySQLUserDriver implements UsersDriver {
 
   @Override
   public Set<Long> getPrivileges(long userId) throws Exception {
-    return new TreeSet<>(); // TODO: implement
+    return getPrivilegesForUsers(ImmutableList.of(userId)).get(userId);
+  }
+
+  @Override
+  public Map<Long, User> getUsers(Collection<Long> userIds) throws SQLException, CodecException {
+    Map<Long, User> found = new TreeMap<>();
+
+    try (MySQLDatabase db = provider.getDatabase()) {
+      for (List<Long> chunk : Iterables.partition(userIds, CHUNK_SIZE)) {
+        PreparedStatement query = db.prepare("SELECT * FROM users WHERE id IN (" + Placeholders.list(chunk.size()) + ");",
+            new ArrayList<>(chunk));
+        ResultSet result = query.executeQuery();
+        User user;
+        while ((user = nextUser(result)) != null) {
+          found.put(user.getId(), user);
+        }
+        result.close();
+        query.close();
+      }
+    }
+
+    Map<Long, User> users = new LinkedHashMap<>();
+    for (long userId : userIds) {
+      if (found.containsKey(userId)) {
+        users.put(userId, found.get(userId));
+      }
+    }
+    return users;
+  }
+
+  @Override
+  public Map<Long, Set<Long>> getPrivilegesForUsers(Collection<Long> userIds) throws SQLException {
+    Map<Long, Set<Long>> privileges = new LinkedHashMap<>();
+    for (long userId : userIds) {
+      privileges.put(userId, new TreeSet<>());
+    }
+
+    try (MySQLDatabase db = provider.getDatabase()) {
+      for (List<Long> chunk : Iterables.partition(privileges.keySet(), CHUNK_SIZE)) {
+        PreparedStatement query = db.prepare("SELECT user_id, privilege_id FROM user_privileges WHERE user_id IN ("
+            + Placeholders.list(chunk.size()) + ");", new ArrayList<>(chunk));
+        ResultSet result = query.executeQuery();
+        while (result.next()) {
+          privileges.get(result.getLong("user_id")).add(result.getLong("privilege_id"));
+        }
+        result.close();
+        query.close();
+      }
+    }
+
+    return privileges;
   }
 
   @Override
-  public Iterable<User> getAll() throws Exception {
-    throw new Exception("Not implemented."); // TODO: implement
+  public Iterable<User> getAll() {
+    return () -> new AbstractIterator<User>() {
+      private long lastId = 0;
+      private Iterator<User> chunk = ImmutableList.<User>of().iterator();
+      private boolean isLastChunk = false;
+
+      @Override
+      protected User computeNext() {
+        if (!chunk.hasNext() && !isLastChunk) {
+          List<User> users = getChunkAfter(lastId);
+          isLastChunk = users.size() < CHUNK_SIZE;
+          chunk = users.iterator();
+        }
+
+        if (!chunk.hasNext()) {
+          return endOfData();
+        }
+
+        User user = chunk.next();
+        lastId = user.getId();
+        return user;
+      }
+    };
+  }
+
+  /**
+   * @return Up to CHUNK_SIZE users with IDs greater than lastId (in order of ID).
+   * @throws RuntimeException On failure (iterators cannot throw checked exceptions).
+   */
+  private List<User> getChunkAfter(long lastId) {
+    try (MySQLDatabase db = provider.getDatabase()) {
+      PreparedStatement query = db.prepare("SELECT * FROM users WHERE id > ? ORDER BY id LIMIT ?;",
+          ImmutableList.of(lastId, CHUNK_SIZE));
+      ResultSet result = query.executeQuery();
+      List<User> users = new ArrayList<>(CHUNK_SIZE);
+      User user;
+      while ((user = nextUser(result)) != null) {
+        users.add(user);
+      }
+      result.close();
+      query.close();
+      return users;
+    } catch (SQLException | CodecException e) {
+      throw new RuntimeException(e);
+    }
   }
 
   @Override
@@ -202,7 +302,7 @@ public class MySQLUserDriver implements UsersDriver {
       query.set("properties", (stmt, i) -> {
         try {
           setBlob(stmt, i, properties);
-        } catch (IOException e) {
+        } catch (CodecException e) {
           throw new SQLException(e);
         }
       });
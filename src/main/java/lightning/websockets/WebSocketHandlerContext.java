@@ -51,6 +51,7 @@ public class WebSocketHandlerContext {
   private final Cache cache;
   private final Injector injector;
   private final InjectorModule bindings;
+  private Hasher hasher;
   private Session session;
   private long userId;
   private User user;
@@ -282,7 +283,11 @@ public class WebSocketHandlerContext {
   }
 
   public Hasher hasher() {
-    return new Hasher(config().server.hmacKey);
+    if (hasher == null) {
+      hasher = new Hasher(config().server.hmacKey);
+    }
+
+    return hasher;
   }
 
   public TokenSets tokens() {
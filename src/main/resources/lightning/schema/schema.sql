@@ -14,6 +14,7 @@ DROP TABLE IF EXISTS `users`;
 DROP TABLE IF EXISTS `user_privileges`;
 DROP TABLE IF EXISTS `files`;
 DROP TABLE IF EXISTS `sessions`;
+DROP TABLE IF EXISTS `session_data`;
 DROP TABLE IF EXISTS `recovery_tokens`;
 DROP TABLE IF EXISTS `email_verification_tokens`;
 DROP TABLE IF EXISTS `auth_tokens`;
@@ -61,7 +62,17 @@ CREATE TABLE sessions (
   session_id varchar(255) not null,
   last_save int(64) unsigned not null,
   data mediumblob not null,
-  PRIMARY KEY(session_id)
+  PRIMARY KEY(session_id),
+  INDEX(last_save)
+) CHARACTER SET utf8 COLLATE utf8_general_ci;
+
+/* Only used by MySQLKeyedSessionDriver (one row per session key). */
+CREATE TABLE session_data (
+  session_id varchar(255) not null,
+  data_key varchar(255) not null,
+  value mediumblob not null,
+  PRIMARY KEY(session_id, data_key),
+  FOREIGN KEY(session_id) REFERENCES sessions(session_id) ON DELETE CASCADE
 ) CHARACTER SET utf8 COLLATE utf8_general_ci;
 
 CREATE TABLE recovery_tokens (
@@ -93,7 +104,8 @@ CREATE TABLE auth_tokens (
   expires int(64) UNSIGNED NOT NULL,
   PRIMARY KEY (user_id, token_hash),
   FOREIGN KEY(user_id) REFERENCES users(id) ON DELETE CASCADE,
-  UNIQUE(token_hash)
+  UNIQUE(token_hash),
+  INDEX(expires)
 ) CHARACTER SET utf8 COLLATE utf8_general_ci;
 
 CREATE TABLE auth_sessions (
@@ -102,7 +114,8 @@ CREATE TABLE auth_sessions (
   expires int(64) UNSIGNED NOT NULL,
   PRIMARY KEY (user_id, token_hash),
   FOREIGN KEY(user_id) REFERENCES users(id) ON DELETE CASCADE,
-  UNIQUE(token_hash)
+  UNIQUE(token_hash),
+  INDEX(expires)
 ) CHARACTER SET utf8 COLLATE utf8_general_ci;
 
 CREATE TABLE auth_attempts (
@@ -111,7 +124,10 @@ CREATE TABLE auth_attempts (
   time int(64) UNSIGNED NOT NULL,
   successful tinyint(1) UNSIGNED NOT NULL,
   fraudulent tinyint(1) UNSIGNED NOT NULL,
-  FOREIGN KEY(user_id) REFERENCES users(id) ON DELETE CASCADE
+  FOREIGN KEY(user_id) REFERENCES users(id) ON DELETE CASCADE,
+  INDEX(time),
+  INDEX(ipaddress, time),
+  INDEX(user_id, time)
 ) CHARACTER SET utf8 COLLATE utf8_general_ci;
 
 CREATE TABLE `groups` (
@@ -0,0 +1,107 @@
+package lightning.auth;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import lightning.cache.driver.LocalInvalidationChannel;
+
+public class AuthCacheTest {
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private AuthToken load(String hash, long userId) {
+    loads.incrementAndGet();
+    return new AuthToken(hash, userId, Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testCachesTokensUntilInvalidated() throws Exception {
+    AuthCache cache = new AuthCache(100, 1, TimeUnit.MINUTES);
+    assertEquals(1, cache.getSessionToken("a", () -> load("a", 1)).userId);
+    assertEquals(1, cache.getSessionToken("a", () -> load("a", 1)).userId);
+    assertEquals(1, loads.get());
+
+    cache.invalidateSessionToken("a");
+    cache.getSessionToken("a", () -> load("a", 1));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testDoesNotCacheMisses() throws Exception {
+    AuthCache cache = new AuthCache(100, 1, TimeUnit.MINUTES);
+    assertNull(cache.getSessionToken("a", () -> { loads.incrementAndGet(); return null; }));
+    assertNull(cache.getSessionToken("a", () -> { loads.incrementAndGet(); return null; }));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testInvalidatesAllTokensForUser() throws Exception {
+    AuthCache cache = new AuthCache(100, 1, TimeUnit.MINUTES);
+    cache.getSessionToken("a", () -> load("a", 1));
+    cache.getSessionToken("b", () -> load("b", 1));
+    cache.getSessionToken("c", () -> load("c", 2));
+
+    cache.invalidateSessionTokensForUser(1);
+    cache.getSessionToken("a", () -> load("a", 1));
+    cache.getSessionToken("b", () -> load("b", 1));
+    cache.getSessionToken("c", () -> load("c", 2));
+    assertEquals(5, loads.get());
+  }
+
+  @Test
+  public void testDoesNotCacheValueLoadedDuringInvalidation() throws Exception {
+    AuthCache cache = new AuthCache(100, 1, TimeUnit.MINUTES);
+    cache.getUser(1, () -> {
+      cache.invalidateUser(1); // Simulates a concurrent write.
+      return "stale";
+    });
+    assertEquals("fresh", cache.getUser(1, () -> "fresh"));
+  }
+
+  @Test
+  public void testInvalidationsReachPeers() throws Exception {
+    LocalInvalidationChannel channel = new LocalInvalidationChannel();
+    AuthCache a = new AuthCache(channel, 100, 1, TimeUnit.MINUTES);
+    AuthCache b = new AuthCache(channel, 100, 1, TimeUnit.MINUTES);
+    a.getUser(1, () -> "a1");
+    b.getUser(1, () -> "b1");
+
+    a.invalidateUser(1);
+    assertEquals("b2", b.getUser(1, () -> "b2"));
+    assertEquals("a2", a.getUser(1, () -> "a2"));
+  }
+
+  @Test
+  public void testBulkLoadsOnlyMissingUsers() throws Exception {
+    AuthCache cache = new AuthCache(100, 1, TimeUnit.MINUTES);
+    List<Collection<Long>> requests = new ArrayList<>();
+    AuthCache.BulkLoader<String> loader = ids -> {
+      requests.add(new ArrayList<>(ids));
+      Map<Long, String> users = new LinkedHashMap<>();
+      for (long id : ids) {
+        if (id != 3) { // 3 does not exist.
+          users.put(id, "user" + id);
+        }
+      }
+      return users;
+    };
+
+    assertEquals("user1", cache.getUser(1, () -> "user1"));
+    Map<Long, String> users = cache.getUsers(ImmutableList.of(2L, 1L, 3L), loader);
+    assertEquals(ImmutableList.of(2L, 1L), ImmutableList.copyOf(users.keySet()));
+    assertEquals(ImmutableList.of(ImmutableList.of(2L, 3L)), requests);
+
+    cache.getUsers(ImmutableList.of(1L, 2L), loader);
+    assertEquals(1, requests.size());
+  }
+}
@@ -0,0 +1,50 @@
+package lightning.auth;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LoginThrottleTest {
+  @Test
+  public void testCountsFailuresWithinWindow() {
+    LoginThrottle throttle = new LoginThrottle(1000, 10, 900, null);
+    throttle.recordFailure("1.2.3.4", 7, 1000);
+    throttle.recordFailure("1.2.3.4", 0, 1500);
+    throttle.recordFailure("5.6.7.8", 7, 1800);
+
+    assertEquals(AuthCountAndTimestamp.create(2, 1500), throttle.getFailuresByIP("1.2.3.4", 900));
+    assertEquals(AuthCountAndTimestamp.create(1, 1500), throttle.getFailuresByIP("1.2.3.4", 1200));
+    assertEquals(AuthCountAndTimestamp.create(2, 1800), throttle.getFailuresByUser(7, 900));
+    assertEquals(AuthCountAndTimestamp.create(0, 0), throttle.getFailuresByIP("9.9.9.9", 0));
+  }
+
+  @Test
+  public void testCapsFailuresPerKey() {
+    LoginThrottle throttle = new LoginThrottle(1000, 3, 900, null);
+    for (int i = 0; i < 10; i++) {
+      throttle.recordFailure("1.2.3.4", 0, 1000 + i);
+    }
+
+    assertEquals(AuthCountAndTimestamp.create(3, 1009), throttle.getFailuresByIP("1.2.3.4", 0));
+  }
+
+  @Test
+  public void testEvictsIdleKeys() {
+    LoginThrottle throttle = new LoginThrottle(1000, 10, 900, null);
+    throttle.recordFailure("1.2.3.4", 0, 1000);
+    assertEquals(1, throttle.size());
+
+    assertEquals(0, throttle.getFailuresByIP("1.2.3.4", 2000).rowCount());
+    assertEquals(0, throttle.size());
+  }
+
+  @Test
+  public void testBoundsKeys() {
+    LoginThrottle throttle = new LoginThrottle(16, 10, 900, null);
+    for (int i = 0; i < 1000; i++) {
+      throttle.recordFailure("10.0.0." + i, 0, 1000);
+    }
+
+    assertTrue(throttle.size() <= 16);
+  }
+}
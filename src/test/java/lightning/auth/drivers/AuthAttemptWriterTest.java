@@ -0,0 +1,138 @@
+package lightning.auth.drivers;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import lightning.auth.AuthAttempt;
+import lightning.db.FakeJdbc;
+import lightning.db.FakeJdbc.Execution;
+import lightning.db.FakeJdbc.Result;
+
+public class AuthAttemptWriterTest {
+  private static final String BLOCKER_IP = "blocker";
+  private static final long DELETED_USER = 99;
+
+  private CountDownLatch blocked;
+  private CountDownLatch release;
+  private volatile boolean databaseDown;
+  private FakeJdbc jdbc;
+
+  @Before
+  public void setUp() {
+    blocked = new CountDownLatch(1);
+    release = new CountDownLatch(1);
+    databaseDown = false;
+    jdbc = new FakeJdbc(this::respond);
+  }
+
+  private Result respond(String sql, List<Object> parameters) throws SQLException {
+    if (parameters.contains(BLOCKER_IP)) {
+      blocked.countDown();
+      Uninterruptibles.awaitUninterruptibly(release);
+    }
+    if (databaseDown) {
+      throw new SQLException("Communications link failure.", "08S01");
+    }
+    for (int i = 1; i < parameters.size(); i += 5) {
+      if (Long.valueOf(DELETED_USER).equals(parameters.get(i))) {
+        throw new SQLIntegrityConstraintViolationException("Cannot add or update a child row.", "23000");
+      }
+    }
+    return Result.updated(parameters.size() / 5);
+  }
+
+  /**
+   * Occupies the background writer so that subsequent attempts are written as a single batch.
+   */
+  private void block(AuthAttemptWriter writer) throws InterruptedException {
+    assertTrue(writer.enqueue(AuthAttempt.createFailed(BLOCKER_IP, 1)));
+    assertTrue(blocked.await(5, TimeUnit.SECONDS));
+  }
+
+  private static long stat(AuthAttemptWriter writer, String name) {
+    return ((Number) writer.getStats().get(name)).longValue();
+  }
+
+  @Test
+  public void testWritesBatches() throws Exception {
+    AuthAttemptWriter writer = new AuthAttemptWriter(jdbc.provider(), 100, 10, 0);
+    block(writer);
+    for (int i = 0; i < 3; i++) {
+      assertTrue(writer.enqueue(AuthAttempt.createFailed(i + 1, "1.2.3.4", 100 + i)));
+    }
+    release.countDown();
+    writer.close();
+
+    List<Execution> inserts = jdbc.executions("INSERT INTO auth_attempts");
+    assertEquals(2, inserts.size());
+    assertEquals(15, inserts.get(1).parameters.size());
+    assertEquals(4, stat(writer, "written"));
+    assertEquals(0, stat(writer, "failed"));
+    assertEquals(0, writer.getQueueSize());
+  }
+
+  @Test
+  public void testDropsOnlyRowsViolatingConstraints() throws Exception {
+    AuthAttemptWriter writer = new AuthAttemptWriter(jdbc.provider(), 100, 10, 0);
+    block(writer);
+    writer.enqueue(AuthAttempt.createFailed(1, "1.2.3.4", 100));
+    writer.enqueue(AuthAttempt.createFailed(DELETED_USER, "1.2.3.4", 101));
+    writer.enqueue(AuthAttempt.createSuccessful(2, "1.2.3.4", 102));
+    release.countDown();
+    writer.close();
+
+    // The blocker, the failed batch of 3, then 3 single rows.
+    List<Execution> inserts = jdbc.executions("INSERT INTO auth_attempts");
+    assertEquals(5, inserts.size());
+    assertEquals(15, inserts.get(1).parameters.size());
+    assertEquals(5, inserts.get(2).parameters.size());
+    assertEquals(3, stat(writer, "written"));
+    assertEquals(1, stat(writer, "failed"));
+  }
+
+  @Test
+  public void testDropsBatchOnOtherFailures() throws Exception {
+    AuthAttemptWriter writer = new AuthAttemptWriter(jdbc.provider(), 100, 10, 0);
+    block(writer);
+    writer.enqueue(AuthAttempt.createFailed(1, "1.2.3.4", 100));
+    writer.enqueue(AuthAttempt.createFailed(2, "1.2.3.4", 101));
+    databaseDown = true;
+    release.countDown();
+
+    try {
+      writer.close();
+    } catch (SQLException e) {
+      // The batch may be written by close() rather than the background thread.
+    }
+
+    // The blocker and the batch of 2, which is not retried row by row.
+    assertEquals(2, jdbc.executions("INSERT INTO auth_attempts").size());
+    assertEquals(3, stat(writer, "failed"));
+    assertEquals(0, stat(writer, "written"));
+  }
+
+  @Test
+  public void testDropsAttemptsWhenQueueIsFull() throws Exception {
+    AuthAttemptWriter writer = new AuthAttemptWriter(jdbc.provider(), 1, 10, 0);
+    block(writer);
+    assertTrue(writer.enqueue(AuthAttempt.createFailed("1.2.3.4", 100)));
+    assertFalse(writer.enqueue(AuthAttempt.createFailed("1.2.3.4", 101)));
+    assertEquals(1, stat(writer, "dropped"));
+    assertEquals(1, stat(writer, "queued"));
+
+    release.countDown();
+    writer.close();
+    assertEquals(2, stat(writer, "written"));
+    assertFalse(writer.enqueue(AuthAttempt.createFailed("1.2.3.4", 102))); // Closed.
+  }
+}
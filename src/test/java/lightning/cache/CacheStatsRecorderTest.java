@@ -0,0 +1,141 @@
+package lightning.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class CacheStatsRecorderTest {
+  @Test
+  public void testCountsTotals() {
+    CacheStatsRecorder recorder = new CacheStatsRecorder(ImmutableList.of());
+    recorder.recordHit("a");
+    recorder.recordHit("b");
+    recorder.recordHit("c");
+    recorder.recordMiss("a");
+    recorder.recordError("a");
+    recorder.recordLoad("a", TimeUnit.MILLISECONDS.toNanos(2), true);
+    recorder.recordLoad("a", TimeUnit.MILLISECONDS.toNanos(4), false);
+
+    CacheStats stats = recorder.snapshot(7);
+    assertEquals(3, stats.getHitCount());
+    assertEquals(1, stats.getMissCount());
+    assertEquals(4, stats.getRequestCount());
+    assertEquals(0.75, stats.getHitRatio(), 0.0);
+    assertEquals(2, stats.getLoadCount());
+    assertEquals(1, stats.getLoadFailureCount());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(6), stats.getTotalLoadTimeNanos());
+    assertEquals(3.0, stats.getAverageLoadTimeMs(), 0.0001);
+    assertEquals(1, stats.getErrorCount());
+    assertEquals(7, stats.getEvictionCount());
+    assertTrue(stats.getStatsByPrefix().isEmpty());
+  }
+
+  @Test
+  public void testEmptyStats() {
+    CacheStats stats = new CacheStatsRecorder(ImmutableList.of()).snapshot(0);
+    assertEquals(1.0, stats.getHitRatio(), 0.0);
+    assertEquals(0.0, stats.getAverageLoadTimeMs(), 0.0);
+    assertFalse(stats.toMap().containsKey("prefixes"));
+  }
+
+  @Test
+  public void testHistogramBuckets() {
+    CacheStatsRecorder recorder = new CacheStatsRecorder(ImmutableList.of());
+    recorder.recordLoad("k", 0, true);
+    recorder.recordLoad("k", TimeUnit.MILLISECONDS.toNanos(1), true);   // Bounds are inclusive.
+    recorder.recordLoad("k", TimeUnit.MILLISECONDS.toNanos(3), true);
+    recorder.recordLoad("k", TimeUnit.MILLISECONDS.toNanos(10000), true);
+    recorder.recordLoad("k", TimeUnit.MILLISECONDS.toNanos(10001), true);
+
+    Map<String, Long> histogram = recorder.snapshot(0).getLoadTimeHistogram();
+    assertEquals(CacheStatsRecorder.LOAD_TIME_BUCKETS_MS.length + 1, histogram.size());
+    assertEquals("<=1ms", histogram.keySet().iterator().next());
+    assertEquals(Long.valueOf(2), histogram.get("<=1ms"));
+    assertEquals(Long.valueOf(0), histogram.get("<=2ms"));
+    assertEquals(Long.valueOf(1), histogram.get("<=5ms"));
+    assertEquals(Long.valueOf(1), histogram.get("<=10000ms"));
+    assertEquals(Long.valueOf(1), histogram.get(">10000ms"));
+  }
+
+  @Test
+  public void testAttributesKeysToLongestPrefix() {
+    CacheStatsRecorder recorder = new CacheStatsRecorder(ImmutableList.of("user:", "user:session:", "user:"));
+    recorder.recordHit("user:1");
+    recorder.recordHit("user:session:1");
+    recorder.recordMiss("user:session:2");
+    recorder.recordError("user:session:2");
+    recorder.recordLoad("user:session:2", 5, false);
+    recorder.recordHit("other");
+
+    CacheStats stats = recorder.snapshot(3);
+    assertEquals(ImmutableSet.of("user:", "user:session:"), stats.getStatsByPrefix().keySet());
+
+    CacheStats users = stats.getStatsByPrefix().get("user:");
+    assertEquals(1, users.getHitCount());
+    assertEquals(0, users.getMissCount());
+    assertEquals(0, users.getLoadCount());
+
+    CacheStats sessions = stats.getStatsByPrefix().get("user:session:");
+    assertEquals(1, sessions.getHitCount());
+    assertEquals(1, sessions.getMissCount());
+    assertEquals(1, sessions.getErrorCount());
+    assertEquals(1, sessions.getLoadFailureCount());
+    assertEquals(0, sessions.getEvictionCount()); // Evictions are only available in aggregate.
+
+    assertEquals(3, stats.getHitCount());
+    assertEquals(3, stats.getEvictionCount());
+    assertTrue(stats.toMap().containsKey("prefixes"));
+  }
+
+  @Test
+  public void testAttributesBatchesToEachMatchedPrefix() {
+    CacheStatsRecorder recorder = new CacheStatsRecorder(ImmutableList.of("user:", "item:"));
+    recorder.recordLoad(ImmutableList.of("user:1", "user:2", "other"), 5, true);
+    recorder.recordError(ImmutableList.of("user:1", "item:1"));
+    recorder.recordError(ImmutableList.of());
+
+    CacheStats stats = recorder.snapshot(0);
+    assertEquals(1, stats.getLoadCount());
+    assertEquals(2, stats.getErrorCount());
+    assertEquals(1, stats.getStatsByPrefix().get("user:").getLoadCount()); // Once per batch.
+    assertEquals(1, stats.getStatsByPrefix().get("user:").getErrorCount());
+    assertEquals(0, stats.getStatsByPrefix().get("item:").getLoadCount());
+    assertEquals(1, stats.getStatsByPrefix().get("item:").getErrorCount());
+  }
+
+  @Test
+  public void testRecordsBulkReadsByPrefix() throws Exception {
+    MemoryCacheDriver driver = new MemoryCacheDriver();
+    Cache cache = new Cache(driver, 1, 1, ImmutableList.of("user:", "item:"));
+    driver.set("user:1", "cached", 0);
+
+    Map<String, String> values = cache.getAll(ImmutableList.of("user:1", "user:2", "item:1"), String.class,
+        (missing) -> {
+          Map<String, String> result = new HashMap<>();
+          for (String key : missing) {
+            result.put(key, "loaded");
+          }
+          return result;
+        });
+    assertEquals(3, values.size());
+    assertEquals(1, cache.getMulti(ImmutableList.of("item:1", "item:2")).size());
+
+    CacheStats stats = cache.getStats();
+    CacheStats users = stats.getStatsByPrefix().get("user:");
+    CacheStats items = stats.getStatsByPrefix().get("item:");
+    assertEquals(1, users.getHitCount());
+    assertEquals(1, users.getMissCount());
+    assertEquals(1, users.getLoadCount());
+    assertEquals(1, items.getHitCount());
+    assertEquals(2, items.getMissCount());
+    assertEquals(1, items.getLoadCount());
+    assertEquals(1, stats.getLoadCount());
+  }
+}
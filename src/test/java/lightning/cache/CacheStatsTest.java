@@ -0,0 +1,76 @@
+package lightning.cache;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class CacheStatsTest {
+  /** @return A driver over memory whose get() fails for "broken" and which reports 5 evictions. */
+  private static CacheDriver driver(MemoryCacheDriver memory) {
+    return (CacheDriver) Proxy.newProxyInstance(CacheStatsTest.class.getClassLoader(), new Class<?>[] {CacheDriver.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("evictionCount")) {
+            return 5L;
+          }
+          if (method.getName().equals("get") && "broken".equals(args[0])) {
+            throw new CacheException("Simulated failure.");
+          }
+          try {
+            return method.invoke(memory, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+  }
+
+  @Test
+  public void testRecordsCacheOperations() throws Exception {
+    Cache cache = new Cache(driver(new MemoryCacheDriver()), 1, 1, ImmutableList.of("user:"));
+
+    assertEquals("v", cache.get("user:1", String.class, () -> "v")); // Miss and load.
+    assertEquals("v", cache.get("user:1", String.class, () -> "other")); // Hit.
+    assertEquals("x", cache.get("item:1", String.class, () -> "x"));
+    try {
+      cache.get("item:2", String.class, () -> {
+        throw new IllegalStateException("failed");
+      });
+      fail();
+    } catch (CacheException e) {
+      // Expected.
+    }
+    try {
+      cache.get("broken");
+      fail();
+    } catch (CacheException e) {
+      // Expected.
+    }
+
+    CacheStats stats = cache.getStats();
+    assertEquals(1, stats.getHitCount());
+    assertEquals(3, stats.getMissCount());
+    assertEquals(3, stats.getLoadCount());
+    assertEquals(1, stats.getLoadFailureCount());
+    assertEquals(1, stats.getErrorCount());
+    assertEquals(5, stats.getEvictionCount());
+
+    CacheStats users = stats.getStatsByPrefix().get("user:");
+    assertEquals(1, users.getHitCount());
+    assertEquals(1, users.getMissCount());
+    assertEquals(1, users.getLoadCount());
+    assertEquals(0, users.getErrorCount());
+  }
+
+  @Test
+  public void testIgnoresEvictionCountFailures() throws Exception {
+    CacheDriver driver = (CacheDriver) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {CacheDriver.class},
+        (proxy, method, args) -> {
+          throw new UnsupportedOperationException(method.getName());
+        });
+    assertEquals(0, new Cache(driver).getStats().getEvictionCount());
+  }
+}
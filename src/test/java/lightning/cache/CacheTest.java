@@ -0,0 +1,232 @@
+package lightning.cache;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class CacheTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private <T> Future<T> submit(Callable<T> callable) {
+    return executor.submit(callable);
+  }
+
+  private static void awaitCount(AtomicInteger count, int expected) throws InterruptedException {
+    for (int i = 0; i < 500 && count.get() < expected; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, count.get());
+  }
+
+  @Test
+  public void testCoalescesConcurrentLoads() throws Exception {
+    MemoryCacheDriver driver = new MemoryCacheDriver();
+    Cache cache = new Cache(driver);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    CacheProducer<String> producer = () -> {
+      calls.incrementAndGet();
+      Uninterruptibles.awaitUninterruptibly(release);
+      return "value";
+    };
+
+    Future<String> first = submit(() -> cache.get("k", String.class, producer));
+    awaitCount(calls, 1);
+    Future<String> second = submit(() -> cache.get("k", String.class, producer));
+    Future<String> third = submit(() -> cache.get("k", String.class, producer));
+    awaitCount(driver.gets, 4);
+    Thread.sleep(50); // Let the waiters reach the in-flight load.
+
+    release.countDown();
+    assertEquals("value", first.get(5, TimeUnit.SECONDS));
+    assertEquals("value", second.get(5, TimeUnit.SECONDS));
+    assertEquals("value", third.get(5, TimeUnit.SECONDS));
+
+    // One producer call, one write, a single driver read per get() and one re-read by the leader.
+    assertEquals(1, calls.get());
+    assertEquals(1, driver.sets.get());
+    assertEquals(4, driver.gets.get());
+    assertEquals(1, cache.getStats().getLoadCount());
+  }
+
+  /**
+   * Returns a driver whose first get() misses, storing value just afterwards, as if another
+   * thread's load completed between that read and this thread's load.
+   */
+  private static CacheDriver racingDriver(MemoryCacheDriver delegate, String key, Object value) {
+    AtomicInteger reads = new AtomicInteger();
+    return (CacheDriver) Proxy.newProxyInstance(
+        CacheDriver.class.getClassLoader(), new Class<?>[] {CacheDriver.class}, (proxy, method, args) -> {
+          if (method.getName().equals("get") && reads.getAndIncrement() == 0) {
+            delegate.set(key, value, 0);
+            return null;
+          }
+          
+          try {
+            return method.invoke(delegate, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+  }
+
+  @Test
+  public void testLeaderUsesValueStoredAfterMiss() throws Exception {
+    Cache cache = new Cache(racingDriver(new MemoryCacheDriver(), "k", "stored"));
+    AtomicInteger calls = new AtomicInteger();
+
+    assertEquals("stored", cache.get("k", String.class, () -> {
+      calls.incrementAndGet();
+      return "produced";
+    }));
+    assertEquals(0, calls.get());
+    assertEquals(0, cache.getStats().getLoadCount());
+  }
+
+  @Test
+  public void testEntryLeaderUsesEntryStoredAfterMiss() throws Exception {
+    CacheEntry stored = new CacheEntry("stored", System.currentTimeMillis() + 60000, 0);
+    Cache cache = new Cache(racingDriver(new MemoryCacheDriver(), "k", stored));
+    AtomicInteger calls = new AtomicInteger();
+
+    assertEquals("stored", cache.get("k", String.class, () -> {
+      calls.incrementAndGet();
+      return "produced";
+    }, CacheLoadOptions.expireAfter(60)));
+    assertEquals(0, calls.get());
+  }
+
+  @Test
+  public void testWaiterLoadsItselfAfterTimeout() throws Exception {
+    Cache cache = new Cache(new MemoryCacheDriver(), 1, 1, ImmutableList.of(), 50);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+
+    Future<String> slow = submit(() -> cache.get("k", String.class, () -> {
+      calls.incrementAndGet();
+      Uninterruptibles.awaitUninterruptibly(release);
+      return "slow";
+    }));
+    awaitCount(calls, 1);
+
+    assertEquals("fast", cache.get("k", String.class, () -> "fast"));
+
+    release.countDown();
+    assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testWaitersReceiveLoadFailure() throws Exception {
+    Cache cache = new Cache(new MemoryCacheDriver());
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    CacheProducer<String> producer = () -> {
+      calls.incrementAndGet();
+      Uninterruptibles.awaitUninterruptibly(release);
+      throw new IllegalStateException("failed");
+    };
+
+    Future<String> first = submit(() -> cache.get("k", String.class, producer));
+    awaitCount(calls, 1);
+    Future<String> second = submit(() -> cache.get("k", String.class, producer));
+    Thread.sleep(50);
+    release.countDown();
+
+    for (Future<String> future : ImmutableList.of(first, second)) {
+      try {
+        future.get(5, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof CacheException);
+        assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+      }
+    }
+
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void testPlainAndOptionLoadsAreSeparate() throws Exception {
+    Cache cache = new Cache(new MemoryCacheDriver());
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+
+    Future<String> plain = submit(() -> cache.get("k", String.class, () -> {
+      calls.incrementAndGet();
+      Uninterruptibles.awaitUninterruptibly(release);
+      return "plain";
+    }));
+    awaitCount(calls, 1);
+
+    // Does not wait for (or receive the unwrapped value of) the plain load.
+    assertEquals("entry", cache.get("k", String.class, () -> "entry", CacheLoadOptions.expireAfter(60)));
+
+    release.countDown();
+    assertEquals("plain", plain.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testServesStaleValueWhileRefreshing() throws Exception {
+    MemoryCacheDriver driver = new MemoryCacheDriver();
+    Cache cache = new Cache(driver);
+    CacheLoadOptions options = CacheLoadOptions.expireAfter(60).staleFor(60);
+    driver.set("k", new CacheEntry("old", System.currentTimeMillis() - 1, 1), 0);
+
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    CacheProducer<String> producer = () -> {
+      calls.incrementAndGet();
+      Uninterruptibles.awaitUninterruptibly(release);
+      return "new";
+    };
+
+    // Stale reads return immediately and share a single background refresh.
+    assertEquals("old", cache.get("k", String.class, producer, options));
+    awaitCount(calls, 1);
+    assertEquals("old", cache.get("k", String.class, producer, options));
+    assertEquals("old", cache.get("k", String.class, producer, options));
+    assertEquals(1, calls.get());
+
+    release.countDown();
+
+    for (int i = 0; i < 500 && "old".equals(((CacheEntry) driver.get("k")).value); i++) {
+      Thread.sleep(10);
+    }
+
+    assertEquals("new", cache.get("k", String.class, producer, options));
+    assertEquals(1, calls.get()); // The refreshed value is fresh.
+  }
+
+  @Test
+  public void testFreshValueIsNotRefreshed() throws Exception {
+    MemoryCacheDriver driver = new MemoryCacheDriver();
+    Cache cache = new Cache(driver);
+    CacheLoadOptions options = CacheLoadOptions.expireAfter(60).staleFor(60);
+    AtomicInteger calls = new AtomicInteger();
+    CacheProducer<String> producer = () -> "v" + calls.incrementAndGet();
+
+    assertEquals("v1", cache.get("k", String.class, producer, options));
+    assertEquals("v1", cache.get("k", String.class, producer, options));
+    assertEquals(1, calls.get());
+  }
+}
@@ -0,0 +1,82 @@
+package lightning.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simple cache driver for tests, backed by a map. Expirations are ignored; check-and-set tokens
+ * are per-key version numbers. Counts calls to get() and set().
+ */
+public final class MemoryCacheDriver implements CacheDriver {
+  private static final class Item {
+    final Object value;
+    final long version;
+
+    Item(Object value, long version) {
+      this.value = value;
+      this.version = version;
+    }
+  }
+
+  private final Map<String, Item> items = new ConcurrentHashMap<>();
+  private final AtomicLong versions = new AtomicLong();
+  public final AtomicInteger gets = new AtomicInteger();
+  public final AtomicInteger sets = new AtomicInteger();
+
+  @Override
+  public void set(String key, Object value, long expiration) throws CacheException {
+    sets.incrementAndGet();
+    items.put(key, new Item(value, versions.incrementAndGet()));
+  }
+
+  @Override
+  public Object get(String key) throws CacheException {
+    gets.incrementAndGet();
+    Item item = items.get(key);
+    return (item != null) ? item.value : null;
+  }
+
+  @Override
+  public CacheResult gets(String key) throws CacheException {
+    Item item = items.get(key);
+    return (item != null) ? new CacheResult(item.version, item.value) : null;
+  }
+
+  @Override
+  public boolean delete(String key) throws CacheException {
+    return items.remove(key) != null;
+  }
+
+  @Override
+  public synchronized long incrdecr(String key, long amount, long initial, long expiration) throws CacheException {
+    Item item = items.get(key);
+    long value = (item != null) ? ((Number) item.value).longValue() + amount : initial;
+    items.put(key, new Item(value, versions.incrementAndGet()));
+    return value;
+  }
+
+  @Override
+  public boolean clear() throws CacheException {
+    items.clear();
+    return true;
+  }
+
+  @Override
+  public boolean touch(String key, long expiration) throws CacheException {
+    return items.containsKey(key);
+  }
+
+  @Override
+  public synchronized boolean cas(String key, Object token, Object value, long expiration) throws CacheException {
+    Item item = items.get(key);
+
+    if (item == null || !token.equals(item.version)) {
+      return false;
+    }
+
+    items.put(key, new Item(value, versions.incrementAndGet()));
+    return true;
+  }
+}
@@ -0,0 +1,382 @@
+package lightning.cache.driver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal in-process server speaking RESP2 that implements the subset of Redis commands used
+ * by RedisCacheDriver and RedisInvalidationChannel. Intended only for tests (no network access
+ * required).
+ */
+public final class FakeRedisServer implements AutoCloseable {
+  private static final class Entry {
+    final byte[] value;
+    final long expiresAtMs;
+
+    Entry(byte[] value, long expiresAtMs) {
+      this.value = value;
+      this.expiresAtMs = expiresAtMs;
+    }
+  }
+
+  private final ServerSocket socket;
+  private final Map<String, Entry> data = new HashMap<>();
+  private final Map<String, Long> versions = new HashMap<>();
+  private final Map<String, List<OutputStream>> subscribers = new HashMap<>();
+  private final List<Socket> clients = new ArrayList<>();
+  private final Thread acceptor;
+  private volatile boolean isClosed;
+
+  public FakeRedisServer() throws IOException {
+    socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    acceptor = new Thread(this::acceptLoop, "fake-redis-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public int getPort() {
+    return socket.getLocalPort();
+  }
+
+  public String getHost() {
+    return socket.getInetAddress().getHostAddress();
+  }
+
+  private void acceptLoop() {
+    while (!isClosed) {
+      try {
+        Socket client = socket.accept();
+        synchronized (clients) {
+          clients.add(client);
+        }
+        Thread t = new Thread(() -> serve(client), "fake-redis-client");
+        t.setDaemon(true);
+        t.start();
+      } catch (IOException e) {
+        return;
+      }
+    }
+  }
+
+  private void serve(Socket client) {
+    Map<String, Long> watched = new HashMap<>();
+    List<List<byte[]>> queued = null;
+
+    try (Socket c = client;
+         InputStream in = new BufferedInputStream(c.getInputStream());
+         OutputStream out = new BufferedOutputStream(c.getOutputStream())) {
+      while (true) {
+        List<byte[]> command = readCommand(in);
+        if (command == null) {
+          return;
+        }
+
+        String name = string(command.get(0)).toUpperCase();
+
+        if (name.equals("MULTI")) {
+          queued = new ArrayList<>();
+          writeSimple(out, "OK");
+        } else if (name.equals("EXEC")) {
+          synchronized (this) {
+            boolean dirty = false;
+            for (Map.Entry<String, Long> e : watched.entrySet()) {
+              if (!versions.getOrDefault(e.getKey(), 0L).equals(e.getValue())) {
+                dirty = true;
+              }
+            }
+            watched.clear();
+            if (dirty || queued == null) {
+              out.write("*-1\r\n".getBytes(StandardCharsets.US_ASCII));
+            } else {
+              out.write(("*" + queued.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+              for (List<byte[]> q : queued) {
+                execute(q, out);
+              }
+            }
+          }
+          queued = null;
+        } else if (name.equals("WATCH")) {
+          synchronized (this) {
+            for (int i = 1; i < command.size(); i++) {
+              String key = string(command.get(i));
+              watched.put(key, versions.getOrDefault(key, 0L));
+            }
+          }
+          writeSimple(out, "OK");
+        } else if (name.equals("SUBSCRIBE")) {
+          String channel = string(command.get(1));
+          synchronized (out) {
+            out.write("*3\r\n".getBytes(StandardCharsets.US_ASCII));
+            writeBulk(out, "subscribe".getBytes(StandardCharsets.US_ASCII));
+            writeBulk(out, command.get(1));
+            writeInteger(out, 1);
+            out.flush();
+          }
+          synchronized (this) {
+            subscribers.computeIfAbsent(channel, key -> new ArrayList<>()).add(out);
+          }
+        } else if (name.equals("UNWATCH")) {
+          watched.clear();
+          writeSimple(out, "OK");
+        } else if (queued != null) {
+          queued.add(command);
+          writeSimple(out, "QUEUED");
+        } else {
+          synchronized (this) {
+            execute(command, out);
+          }
+        }
+
+        if (in.available() == 0) {
+          synchronized (out) {
+            out.flush();
+          }
+        }
+      }
+    } catch (IOException e) {
+      // Client went away.
+    }
+  }
+
+  private Entry lookup(String key) {
+    Entry entry = data.get(key);
+    if (entry != null && entry.expiresAtMs > 0 && entry.expiresAtMs <= System.currentTimeMillis()) {
+      data.remove(key);
+      return null;
+    }
+    return entry;
+  }
+
+  private void put(String key, byte[] value, long expiresAtMs) {
+    data.put(key, new Entry(value, expiresAtMs));
+    versions.merge(key, 1L, Long::sum);
+  }
+
+  private void execute(List<byte[]> command, OutputStream out) throws IOException {
+    String name = string(command.get(0)).toUpperCase();
+
+    switch (name) {
+      case "PING":
+        writeSimple(out, "PONG");
+        return;
+      case "GET": {
+        Entry entry = lookup(string(command.get(1)));
+        writeBulk(out, entry == null ? null : entry.value);
+        return;
+      }
+      case "SET": {
+        String key = string(command.get(1));
+        boolean nx = false;
+        long expiresAtMs = 0;
+        for (int i = 3; i < command.size(); i++) {
+          String option = string(command.get(i)).toUpperCase();
+          if (option.equals("NX")) {
+            nx = true;
+          } else if (option.equals("EX")) {
+            expiresAtMs = System.currentTimeMillis() + Long.parseLong(string(command.get(++i))) * 1000;
+          }
+        }
+        if (nx && lookup(key) != null) {
+          writeBulk(out, null);
+          return;
+        }
+        put(key, command.get(2), expiresAtMs);
+        writeSimple(out, "OK");
+        return;
+      }
+      case "DEL": {
+        long count = 0;
+        for (int i = 1; i < command.size(); i++) {
+          String key = string(command.get(i));
+          if (lookup(key) != null) {
+            data.remove(key);
+            versions.merge(key, 1L, Long::sum);
+            count++;
+          }
+        }
+        writeInteger(out, count);
+        return;
+      }
+      case "EXISTS": {
+        writeInteger(out, lookup(string(command.get(1))) != null ? 1 : 0);
+        return;
+      }
+      case "EXPIRE": {
+        String key = string(command.get(1));
+        Entry entry = lookup(key);
+        if (entry == null) {
+          writeInteger(out, 0);
+          return;
+        }
+        data.put(key, new Entry(entry.value, System.currentTimeMillis() + Long.parseLong(string(command.get(2))) * 1000));
+        writeInteger(out, 1);
+        return;
+      }
+      case "PERSIST": {
+        String key = string(command.get(1));
+        Entry entry = lookup(key);
+        if (entry == null || entry.expiresAtMs == 0) {
+          writeInteger(out, 0);
+          return;
+        }
+        data.put(key, new Entry(entry.value, 0));
+        writeInteger(out, 1);
+        return;
+      }
+      case "INCRBY": {
+        String key = string(command.get(1));
+        Entry entry = lookup(key);
+        long value;
+        try {
+          value = (entry == null) ? 0 : Long.parseLong(string(entry.value));
+        } catch (NumberFormatException e) {
+          writeError(out, "ERR value is not an integer or out of range");
+          return;
+        }
+        value += Long.parseLong(string(command.get(2)));
+        put(key, Long.toString(value).getBytes(StandardCharsets.US_ASCII), entry == null ? 0 : entry.expiresAtMs);
+        writeInteger(out, value);
+        return;
+      }
+      case "MGET": {
+        out.write(("*" + (command.size() - 1) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        for (int i = 1; i < command.size(); i++) {
+          Entry entry = lookup(string(command.get(i)));
+          writeBulk(out, entry == null ? null : entry.value);
+        }
+        return;
+      }
+      case "PUBLISH": {
+        List<OutputStream> receivers = subscribers.getOrDefault(string(command.get(1)), new ArrayList<>());
+        long count = 0;
+        for (OutputStream receiver : new ArrayList<>(receivers)) {
+          try {
+            synchronized (receiver) {
+              receiver.write("*3\r\n".getBytes(StandardCharsets.US_ASCII));
+              writeBulk(receiver, "message".getBytes(StandardCharsets.US_ASCII));
+              writeBulk(receiver, command.get(1));
+              writeBulk(receiver, command.get(2));
+              receiver.flush();
+            }
+            count++;
+          } catch (IOException e) {
+            receivers.remove(receiver);
+          }
+        }
+        writeInteger(out, count);
+        return;
+      }
+      case "FLUSHDB":
+        for (String key : data.keySet()) {
+          versions.merge(key, 1L, Long::sum);
+        }
+        data.clear();
+        writeSimple(out, "OK");
+        return;
+      default:
+        writeError(out, "ERR unknown command '" + name + "'");
+    }
+  }
+
+  private static List<byte[]> readCommand(InputStream in) throws IOException {
+    int type = in.read();
+    if (type < 0) {
+      return null;
+    }
+    if (type != '*') {
+      throw new IOException("Expected array.");
+    }
+    int count = Integer.parseInt(readLine(in));
+    List<byte[]> args = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      if (in.read() != '$') {
+        throw new IOException("Expected bulk string.");
+      }
+      int length = Integer.parseInt(readLine(in));
+      byte[] arg = new byte[length];
+      int offset = 0;
+      while (offset < length) {
+        int n = in.read(arg, offset, length - offset);
+        if (n < 0) {
+          throw new IOException("Unexpected end of stream.");
+        }
+        offset += n;
+      }
+      in.read(); // \r
+      in.read(); // \n
+      args.add(arg);
+    }
+    return args;
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\r') {
+      if (c < 0) {
+        throw new IOException("Unexpected end of stream.");
+      }
+      sb.append((char) c);
+    }
+    in.read(); // \n
+    return sb.toString();
+  }
+
+  private static String string(byte[] data) {
+    return new String(data, StandardCharsets.UTF_8);
+  }
+
+  private static void writeSimple(OutputStream out, String value) throws IOException {
+    out.write(("+" + value + "\r\n").getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static void writeError(OutputStream out, String value) throws IOException {
+    out.write(("-" + value + "\r\n").getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static void writeInteger(OutputStream out, long value) throws IOException {
+    out.write((":" + value + "\r\n").getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static void writeBulk(OutputStream out, byte[] value) throws IOException {
+    if (value == null) {
+      out.write("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+      return;
+    }
+    out.write(("$" + value.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    out.write(value);
+    out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Closes every client connection (as if the server had restarted), but keeps accepting new ones.
+   */
+  public void dropClients() throws IOException {
+    synchronized (this) {
+      subscribers.clear();
+    }
+    synchronized (clients) {
+      for (Socket client : clients) {
+        client.close();
+      }
+      clients.clear();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    isClosed = true;
+    socket.close();
+  }
+}
@@ -0,0 +1,137 @@
+package lightning.cache.driver;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import lightning.cache.CacheDriver;
+import lightning.cache.CacheResult;
+import lightning.cache.MemoryCacheDriver;
+
+public class NearCacheDriverTest {
+  private MemoryCacheDriver memory;
+  private volatile Runnable afterRemoteGet;
+  private CacheDriver remote;
+  private LocalInvalidationChannel channel;
+
+  @Before
+  public void setUp() {
+    memory = new MemoryCacheDriver();
+    afterRemoteGet = null;
+    channel = new LocalInvalidationChannel();
+    remote = (CacheDriver) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {CacheDriver.class},
+        (proxy, method, args) -> {
+          Object result;
+          try {
+            result = method.invoke(memory, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+          Runnable hook = afterRemoteGet;
+          if (method.getName().equals("get") && hook != null) {
+            afterRemoteGet = null;
+            hook.run();
+          }
+          return result;
+        });
+  }
+
+  private NearCacheDriver near() {
+    return new NearCacheDriver(remote, channel, 100, 1, TimeUnit.MINUTES);
+  }
+
+  @Test
+  public void testServesReadsLocally() throws Exception {
+    NearCacheDriver near = near();
+    near.set("k", "v", 0);
+
+    assertEquals("v", near.get("k"));
+    assertEquals("v", near.get("k"));
+    assertEquals(1, memory.gets.get());
+
+    assertNull(near.get("missing"));
+    assertNull(near.get("missing"));
+    assertEquals(3, memory.gets.get()); // Misses are not cached.
+  }
+
+  @Test
+  public void testBroadcastsInvalidations() throws Exception {
+    NearCacheDriver a = near();
+    NearCacheDriver b = near();
+    a.set("k", "v1", 0);
+    a.set("other", "o", 0);
+    assertEquals("v1", a.get("k"));
+    assertEquals("o", a.get("other"));
+
+    b.set("k", "v2", 0);
+    assertEquals("v2", a.get("k"));
+
+    b.delete("k");
+    assertNull(a.get("k"));
+
+    b.clear();
+    assertNull(a.get("other"));
+
+    a.close();
+    b.set("k", "v3", 0); // Must not reach a closed driver.
+  }
+
+  @Test
+  public void testDoesNotCacheValueReadDuringInvalidation() throws Exception {
+    NearCacheDriver a = near();
+    NearCacheDriver b = near();
+    memory.set("k", "old", 0);
+
+    // b writes between a's remote read and a's local fill.
+    afterRemoteGet = () -> {
+      try {
+        b.set("k", "new", 0);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    };
+
+    assertEquals("old", a.get("k"));
+    assertEquals("new", a.get("k"));
+  }
+
+  @Test
+  public void testCasInvalidatesEvenOnFailure() throws Exception {
+    NearCacheDriver a = near();
+    NearCacheDriver b = near();
+    a.set("k", "v1", 0);
+    CacheResult stale = a.gets("k");
+    assertEquals("v1", a.get("k"));
+
+    // A write that a never heard about (e.g. a lost invalidation).
+    memory.set("k", "v2", 0);
+    assertEquals("v1", a.get("k"));
+
+    assertFalse(a.cas("k", stale.token, "v3", 0));
+    assertEquals("v2", a.get("k"));
+
+    // A successful cas invalidates peers.
+    assertEquals("v2", b.get("k"));
+    assertTrue(a.cas("k", a.gets("k").token, "v4", 0));
+    assertEquals("v4", b.get("k"));
+  }
+
+  @Test
+  public void testMultiKeyOperations() throws Exception {
+    NearCacheDriver a = near();
+    NearCacheDriver b = near();
+    a.setMulti(ImmutableMap.of("x", 1L, "y", 2L), 0);
+    assertEquals(2, a.getMulti(ImmutableList.of("x", "y", "z")).size());
+
+    b.deleteMulti(ImmutableList.of("x"));
+    assertEquals(ImmutableList.of("y"), ImmutableList.copyOf(a.getMulti(ImmutableList.of("x", "y")).keySet()));
+  }
+}
@@ -0,0 +1,122 @@
+package lightning.cache.driver;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import lightning.cache.CacheResult;
+
+public class RedisCacheDriverTest {
+  private FakeRedisServer server;
+  private RedisCacheDriver driver;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new FakeRedisServer();
+    driver = new RedisCacheDriver(server.getHost(), server.getPort());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    driver.close();
+    server.close();
+  }
+
+  @Test
+  public void testSetGetDelete() throws Exception {
+    assertNull(driver.get("missing"));
+
+    driver.set("list", ImmutableList.of("a", "b"), 0);
+    assertEquals(ImmutableList.of("a", "b"), driver.get("list"));
+
+    driver.set("string", "12", 0);
+    assertEquals("12", driver.get("string"));
+
+    driver.set("number", 12, 0);
+    assertEquals(12L, driver.get("number"));
+
+    assertTrue(driver.delete("list"));
+    assertFalse(driver.delete("list"));
+    assertNull(driver.get("list"));
+  }
+
+  @Test
+  public void testMultiKeyOperations() throws Exception {
+    driver.setMulti(ImmutableMap.of("a", "1", "b", 2, "c", ImmutableList.of(3)), 0);
+
+    Map<String, Object> values = driver.getMulti(ImmutableList.of("a", "b", "c", "d"));
+    assertEquals(ImmutableMap.of("a", "1", "b", 2L, "c", ImmutableList.of(3)), values);
+
+    assertEquals(2, driver.deleteMulti(ImmutableList.of("a", "b", "d")));
+    assertEquals(ImmutableMap.of("c", ImmutableList.of(3)), driver.getMulti(ImmutableList.of("a", "b", "c")));
+  }
+
+  @Test
+  public void testIncrementUsesInitialValue() throws Exception {
+    assertEquals(10, driver.incrdecr("counter", 5, 10, 0));
+    assertEquals(15, driver.incrdecr("counter", 5, 10, 0));
+    assertEquals(12, driver.incrdecr("counter", -3, 10, 0));
+    assertEquals(12L, driver.get("counter"));
+  }
+
+  @Test
+  public void testCheckAndSet() throws Exception {
+    driver.set("key", "first", 0);
+
+    CacheResult result = driver.gets("key");
+    assertEquals("first", result.value.stringValue());
+    assertTrue(driver.cas("key", result.token, "second", 0));
+    assertEquals("second", driver.get("key"));
+
+    // The old token is no longer valid.
+    assertFalse(driver.cas("key", result.token, "third", 0));
+    assertEquals("second", driver.get("key"));
+  }
+
+  @Test
+  public void testTouchAndClear() throws Exception {
+    assertFalse(driver.touch("key", 100));
+    driver.set("key", "value", 0);
+    assertTrue(driver.touch("key", 100));
+    assertTrue(driver.touch("key", 0));
+    assertTrue(driver.clear());
+    assertNull(driver.get("key"));
+  }
+
+  @Test
+  public void testConcurrentPipelinedIncrements() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    List<Future<?>> futures = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < 16; i++) {
+        futures.add(pool.submit(() -> {
+          for (int j = 0; j < 100; j++) {
+            driver.incrdecr("shared", 1, 1, 0);
+          }
+          return null;
+        }));
+      }
+
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    assertEquals(1600L, driver.get("shared"));
+  }
+}
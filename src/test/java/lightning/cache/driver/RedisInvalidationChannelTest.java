@@ -0,0 +1,135 @@
+package lightning.cache.driver;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class RedisInvalidationChannelTest {
+  private static final class RecordingListener implements InvalidationChannel.Listener {
+    final List<String> messages = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void onInvalidate(String key) {
+      messages.add(key);
+    }
+
+    @Override
+    public void onInvalidateAll() {
+      messages.add("*all*");
+    }
+  }
+
+  private FakeRedisServer server;
+  private RedisInvalidationChannel a;
+  private RedisInvalidationChannel b;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new FakeRedisServer();
+    a = new RedisInvalidationChannel(server.getHost(), server.getPort());
+    b = new RedisInvalidationChannel(server.getHost(), server.getPort());
+    awaitSubscribed(a);
+    awaitSubscribed(b);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    a.close();
+    b.close();
+    server.close();
+  }
+
+  private static void awaitSubscribed(RedisInvalidationChannel channel) throws InterruptedException {
+    for (int i = 0; i < 500 && !channel.isSubscribed(); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(channel.isSubscribed());
+  }
+
+  private static void awaitMessages(RecordingListener listener, List<String> expected) throws InterruptedException {
+    for (int i = 0; i < 500 && listener.messages.size() < expected.size(); i++) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(20); // Catch any unexpected extra deliveries.
+    assertEquals(expected, listener.messages);
+  }
+
+  @Test
+  public void testDeliversToPeersAndLocally() throws Exception {
+    RecordingListener local = new RecordingListener();
+    RecordingListener remote = new RecordingListener();
+    a.subscribe(local);
+    b.subscribe(remote);
+
+    a.publish("k1");
+    assertEquals(ImmutableList.of("k1"), local.messages); // Synchronous.
+    a.publishAll();
+    awaitMessages(remote, ImmutableList.of("k1", "*all*"));
+
+    b.publish("k2");
+    assertEquals(ImmutableList.of("k1", "*all*", "k2"), remote.messages);
+    awaitMessages(local, ImmutableList.of("k1", "*all*", "k2")); // No echoes of own messages.
+  }
+
+  @Test
+  public void testInvalidatesEverythingAfterReconnecting() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    b.subscribe(listener);
+
+    server.dropClients();
+    for (int i = 0; i < 500 && b.isSubscribed(); i++) {
+      Thread.sleep(10);
+    }
+    awaitSubscribed(a);
+    awaitSubscribed(b);
+    awaitMessages(listener, ImmutableList.of("*all*"));
+
+    a.publish("k");
+    awaitMessages(listener, ImmutableList.of("*all*", "k"));
+  }
+
+  @Test
+  public void testPublishDoesNotBlockWhileRedisIsDown() throws Exception {
+    FakeRedisServer down = new FakeRedisServer();
+    down.close();
+
+    try (RedisInvalidationChannel channel = new RedisInvalidationChannel(down.getHost(), down.getPort())) {
+      RecordingListener local = new RecordingListener();
+      channel.subscribe(local);
+
+      long start = System.nanoTime();
+      for (int i = 0; i < 20000; i++) { // Also overflows the queue.
+        channel.publish("k" + i);
+      }
+      long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      assertTrue("Publishing took " + elapsedMs + "ms", elapsedMs < 1000);
+      assertEquals(20000, local.messages.size());
+      assertFalse(channel.isSubscribed());
+    }
+  }
+
+  @Test
+  public void testNearCachesStayCoherent() throws Exception {
+    try (RedisCacheDriver remote = new RedisCacheDriver(server.getHost(), server.getPort());
+         NearCacheDriver x = new NearCacheDriver(remote, a, 100, 1, TimeUnit.MINUTES);
+         NearCacheDriver y = new NearCacheDriver(remote, b, 100, 1, TimeUnit.MINUTES)) {
+      x.set("k", "v1", 0);
+      assertEquals("v1", y.get("k"));
+
+      x.set("k", "v2", 0);
+      for (int i = 0; i < 500 && !"v2".equals(y.get("k")); i++) {
+        Thread.sleep(10);
+      }
+      assertEquals("v2", y.get("k"));
+    }
+  }
+}
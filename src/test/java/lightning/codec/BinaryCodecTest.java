@@ -0,0 +1,133 @@
+package lightning.codec;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class BinaryCodecTest {
+  private final BinaryCodec codec = new BinaryCodec();
+
+  private Object roundTrip(Object value) throws Exception {
+    return codec.decode(codec.encode(value));
+  }
+
+  @Test
+  public void testScalars() throws Exception {
+    List<Object> values = Arrays.asList(null, true, false, (byte) -3, (short) 300, 'x', 0, -1,
+        Integer.MAX_VALUE, Long.MIN_VALUE, 1.5f, Math.PI, "", "héllo wörld");
+
+    for (Object value : values) {
+      assertEquals(value, roundTrip(value));
+    }
+
+    assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) roundTrip(new byte[] {1, 2, 3}));
+  }
+
+  @Test
+  public void testCollections() throws Exception {
+    Map<String, Object> value = new HashMap<>();
+    value.put("list", ImmutableList.of(1L, "two", ImmutableList.of(3)));
+    value.put("set", ImmutableSet.of("a", "b"));
+    value.put("map", ImmutableMap.of("k", 1));
+    value.put("decimal", new BigDecimal("1.25")); // Falls back to serialization.
+
+    assertEquals(value, roundTrip(value));
+  }
+
+  @Test
+  public void testSortedMapStaysSorted() throws Exception {
+    TreeMap<String, Object> value = new TreeMap<>();
+    value.put("b", 2);
+    value.put("a", 1);
+
+    Object result = roundTrip(value);
+    assertTrue(result instanceof TreeMap);
+    assertEquals(value, result);
+  }
+
+  @Test
+  public void testPreservesOtherCollectionClasses() throws Exception {
+    LinkedList<String> list = new LinkedList<>(ImmutableList.of("a", "b"));
+    EnumMap<TimeUnit, Long> map = new EnumMap<>(TimeUnit.class);
+    map.put(TimeUnit.SECONDS, 1L);
+    TreeSet<String> reversed = new TreeSet<>(Comparator.reverseOrder());
+    reversed.addAll(ImmutableList.of("a", "b"));
+    ImmutableList<Long> immutable = ImmutableList.of(1L, 2L);
+
+    for (Object value : ImmutableList.<Object>of(list, map, reversed, immutable)) {
+      Object result = roundTrip(value);
+      assertEquals(value, result);
+      assertEquals(value.getClass(), result.getClass());
+    }
+
+    assertEquals(ImmutableList.of("b", "a"), ImmutableList.copyOf((TreeSet<?>) roundTrip(reversed)));
+  }
+
+  @Test
+  public void testNativeCollectionClasses() throws Exception {
+    assertEquals(ArrayList.class, roundTrip(new ArrayList<>(ImmutableList.of(1))).getClass());
+    assertTrue(roundTrip(new HashSet<>(ImmutableList.of(1))) instanceof HashSet);
+    assertTrue(roundTrip(new HashMap<>(ImmutableMap.of("k", 1))) instanceof HashMap);
+  }
+
+  @Test
+  public void testLargeValuesAreCompressed() throws Exception {
+    String large = Strings.repeat("lightning", 1000);
+    byte[] encoded = codec.encode(large);
+
+    assertTrue(encoded.length < large.length() / 10);
+    assertEquals(large, codec.decode(encoded));
+  }
+
+  @Test
+  public void testIsSmallerThanJavaSerialization() throws Exception {
+    Map<String, Object> value = new HashMap<>();
+    value.put("__lastuse", 1500000000L);
+    value.put("__xsrf", "abcdefghijklmnop");
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+      oos.writeObject(value);
+    }
+
+    assertTrue(codec.encode(value).length * 4 < baos.size());
+  }
+
+  @Test
+  public void testDecodesLegacyJavaSerialization() throws Exception {
+    List<String> value = new ArrayList<>(ImmutableList.of("a", "b"));
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+      oos.writeObject(value);
+    }
+
+    assertEquals(value, codec.decode(baos.toByteArray()));
+  }
+
+  @Test(expected = CodecException.class)
+  public void testRejectsTruncatedData() throws Exception {
+    byte[] encoded = codec.encode(ImmutableList.of("abc", "def"));
+    codec.decode(Arrays.copyOf(encoded, encoded.length - 2));
+  }
+}
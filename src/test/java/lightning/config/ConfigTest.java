@@ -0,0 +1,50 @@
+package lightning.config;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import lightning.config.Config.SessionConfig.SessionStorage;
+import lightning.exceptions.LightningException;
+
+public class ConfigTest {
+  private static Config config() {
+    Config config = new Config();
+    config.server.hmacKey = "key";
+    config.scanPrefixes = ImmutableList.of("app");
+    return config;
+  }
+
+  @Test
+  public void testWriteBehindRequiresWholeSessionStorage() throws Exception {
+    Config config = config();
+    config.session.writeBehind = true;
+    config.validate();
+
+    config.session.storage = SessionStorage.MYSQL_KEYED;
+    try {
+      config.validate();
+      fail();
+    } catch (LightningException e) {
+      assertTrue(e.getMessage().contains("writeBehind"));
+    }
+  }
+
+  @Test
+  public void testSharedThrottlingRequiresInMemoryThrottling() throws Exception {
+    Config config = config();
+    config.auth.throttleInMemory = true;
+    config.auth.throttleShared = true;
+    config.validate();
+
+    config.auth.throttleInMemory = false;
+    try {
+      config.validate();
+      fail();
+    } catch (LightningException e) {
+      assertTrue(e.getMessage().contains("throttleShared"));
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package lightning.crypt;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class CookieCipherTest {
+  private static final byte[] DATA = "hello world".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testRoundTrip() {
+    CookieCipher cipher = new CookieCipher(ImmutableList.of("secret"));
+    String sealed = cipher.seal(DATA, "_sessionc");
+    assertArrayEquals(DATA, cipher.open(sealed, "_sessionc"));
+    assertNotEquals(sealed, cipher.seal(DATA, "_sessionc"));
+  }
+
+  @Test
+  public void testRejectsTamperedValues() {
+    CookieCipher cipher = new CookieCipher(ImmutableList.of("secret"));
+    String sealed = cipher.seal(DATA, "_sessionc");
+    char last = sealed.charAt(sealed.length() - 1);
+    String tampered = sealed.substring(0, sealed.length() - 1) + (last == 'A' ? 'B' : 'A');
+
+    assertNull(cipher.open(tampered, "_sessionc"));
+    assertNull(cipher.open(sealed, "_other"));
+    assertNull(cipher.open("not a sealed value!", "_sessionc"));
+    assertNull(new CookieCipher(ImmutableList.of("other")).open(sealed, "_sessionc"));
+  }
+
+  @Test
+  public void testKeyRotation() {
+    CookieCipher oldCipher = new CookieCipher(ImmutableList.of("old"));
+    CookieCipher newCipher = new CookieCipher(ImmutableList.of("new", "old"));
+    assertArrayEquals(DATA, newCipher.open(oldCipher.seal(DATA, "c"), "c"));
+    assertNull(oldCipher.open(newCipher.seal(DATA, "c"), "c"));
+  }
+}
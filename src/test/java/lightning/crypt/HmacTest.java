@@ -0,0 +1,41 @@
+package lightning.crypt;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HmacTest {
+  @Test
+  public void testKnownVectors() {
+    // RFC 4231, test case 2.
+    Hmac hmac = Hmac.sha256("Jefe");
+    assertEquals("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843",
+        hmac.hex("what do ya want for nothing?"));
+    assertEquals(hmac.hexLength(), hmac.hex("").length());
+    assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", Digests.sha256Hex(""));
+  }
+
+  @Test
+  public void testSharedAndThreadSafe() throws Exception {
+    Hmac hmac = Hmac.sha256("key");
+    assertSame(hmac, Hmac.sha256("key"));
+
+    String expected = hmac.base64("value");
+    assertEquals(hmac.base64Length(), expected.length());
+
+    String[] actual = new String[1];
+    Thread thread = new Thread(() -> actual[0] = hmac.base64("value"));
+    thread.start();
+    thread.join();
+    assertEquals(expected, actual[0]);
+  }
+
+  @Test
+  public void testConstantTimeEquals() {
+    assertTrue(Hmac.constantTimeEquals("abc", "abc"));
+    assertFalse(Hmac.constantTimeEquals("abc", "abd"));
+    assertFalse(Hmac.constantTimeEquals("abc", "ab"));
+    assertFalse(Hmac.constantTimeEquals("abc", null));
+    assertTrue(Hmac.constantTimeEquals(null, null));
+  }
+}
@@ -0,0 +1,44 @@
+package lightning.crypt;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PasswordHasherTest {
+  @Test
+  public void testHashesAndChecksOnCallingThread() {
+    PasswordHasher hasher = new PasswordHasher(4);
+    String hash = hasher.hash("secret");
+    assertEquals(4, PasswordHasher.getLogRounds(hash));
+    assertTrue(hasher.check(hash, "secret"));
+    assertFalse(hasher.check(hash, "wrong"));
+  }
+
+  @Test
+  public void testHashesAndChecksOnExecutor() {
+    try (PasswordHasher hasher = new PasswordHasher(5, 2, 4, 10000)) {
+      String hash = hasher.hash("secret");
+      assertEquals(5, PasswordHasher.getLogRounds(hash));
+      assertTrue(hasher.check(hash, "secret"));
+      assertFalse(hasher.check(hash, "wrong"));
+      assertEquals(3L, hasher.getStats().get("hashes"));
+    }
+  }
+
+  @Test
+  public void testNeedsRehashOnlyForLowerCost() {
+    String hash = new PasswordHasher(4).hash("secret");
+    assertTrue(new PasswordHasher(5).needsRehash(hash));
+    assertFalse(new PasswordHasher(4).needsRehash(hash));
+    assertFalse(new PasswordHasher(4).needsRehash("not-a-hash"));
+  }
+
+  @Test
+  public void testCloseResetsDefault() {
+    PasswordHasher hasher = new PasswordHasher(4, 1, 1, 1000);
+    PasswordHasher.setDefault(hasher);
+    hasher.close();
+    assertNotSame(hasher, PasswordHasher.getDefault());
+    assertEquals(PasswordHasher.DEFAULT_LOG_ROUNDS, PasswordHasher.getDefault().getLogRounds());
+  }
+}
@@ -0,0 +1,16 @@
+package lightning.crypt;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SecureCookieManagerTest {
+  @Test
+  public void testEncodedSizeIncludesNameAndSignature() {
+    SecureCookieManager cookies = SecureCookieManager.forRequest(null, null, "key", false);
+    int signature = Hmac.sha256("key").base64Length();
+
+    assertEquals("name=".length() + "value".length() + signature, cookies.getEncodedSize("name", "value"));
+    assertEquals("n=".length() + 2 + signature, cookies.getEncodedSize("n", "\u00e9")); // UTF-8 bytes.
+  }
+}
@@ -0,0 +1,37 @@
+package lightning.crypt;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TokensTest {
+  @Test
+  public void testEncodings() {
+    assertTrue(Tokens.hex(16).matches("[0-9a-f]{32}"));
+    assertTrue(Tokens.base64Url(128).matches("[A-Za-z0-9_-]{171}"));
+    assertEquals(7, Tokens.randomBytes(7).length);
+  }
+
+  @Test
+  public void testTokensAreDistinct() {
+    Set<String> tokens = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(tokens.add(Tokens.base64Url(16)));
+    }
+  }
+
+  @Test
+  public void testCollisionChecksOnlyForShortTokens() throws Exception {
+    AtomicInteger checks = new AtomicInteger();
+    Tokens.hex(Tokens.MIN_UNCHECKED_BYTES, (x) -> checks.incrementAndGet() > 0);
+    assertEquals(0, checks.get());
+
+    String token = Tokens.hex(4, (x) -> checks.incrementAndGet() < 3);
+    assertEquals(3, checks.get());
+    assertEquals(8, token.length());
+  }
+}
@@ -0,0 +1,102 @@
+package lightning.db;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import lightning.cache.Cache;
+import lightning.cache.CacheDriver;
+import lightning.db.FakeJdbc.Result;
+
+public class DatabasePaginatorTest {
+  /** Answers COUNT(*) with 42 and EXPLAIN with a two-table plan. */
+  private static FakeJdbc fakeDatabase() {
+    return new FakeJdbc((sql, parameters) -> sql.startsWith("EXPLAIN")
+        ? Result.rows(ImmutableList.of("rows", "filtered"),
+                      ImmutableList.of(1000L, 50.0), ImmutableList.of(10L, 100.0))
+        : Result.rows(ImmutableList.of("count"), ImmutableList.of(42L)));
+  }
+
+  private static Cache memoryCache() {
+    Map<String, Object> data = new HashMap<>();
+    return new Cache((CacheDriver) Proxy.newProxyInstance(
+        DatabasePaginatorTest.class.getClassLoader(), new Class<?>[] {CacheDriver.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "get":
+              return data.get(args[0]);
+            case "set":
+              data.put((String) args[0], args[1]);
+              return null;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        }));
+  }
+
+  @Test
+  public void testCachesCounts() throws Exception {
+    FakeJdbc jdbc = fakeDatabase();
+    MySQLDatabase db = jdbc.database();
+    Cache cache = memoryCache();
+
+    for (int i = 0; i < 2; i++) {
+      DatabasePaginator paginator = db.paginate("SELECT * FROM t WHERE a = :a;", ImmutableMap.of("a", 1), 10)
+          .cacheCounts(cache, 60);
+      assertEquals(42, paginator.getTotalRows());
+      assertEquals(5, paginator.getTotalPages());
+      assertTrue(paginator.isCountExact());
+    }
+
+    assertEquals(ImmutableList.of("SELECT COUNT(*) AS count FROM t WHERE a = ?;"), jdbc.prepared);
+
+    // Different parameters are counted separately.
+    db.paginate("SELECT * FROM t WHERE a = :a;", ImmutableMap.of("a", 2), 10).cacheCounts(cache, 60).getTotalRows();
+    assertEquals(2, jdbc.prepared.size());
+  }
+
+  @Test
+  public void testKeysCountsByParameterContents() throws Exception {
+    FakeJdbc jdbc = fakeDatabase();
+    MySQLDatabase db = jdbc.database();
+    Cache cache = memoryCache();
+    String query = "SELECT * FROM t WHERE a = :a;";
+
+    // Equal byte arrays share a count; different ones do not.
+    db.paginate(query, ImmutableMap.of("a", new byte[] {1, 2}), 10).cacheCounts(cache, 60).getTotalRows();
+    db.paginate(query, ImmutableMap.of("a", new byte[] {1, 2}), 10).cacheCounts(cache, 60).getTotalRows();
+    assertEquals(1, jdbc.prepared.size());
+    db.paginate(query, ImmutableMap.of("a", new byte[] {1, 3}), 10).cacheCounts(cache, 60).getTotalRows();
+    assertEquals(2, jdbc.prepared.size());
+
+    // Values without a content-based string form are never cached.
+    Object opaque = new Object();
+    db.paginate(query, ImmutableMap.of("a", opaque), 10).cacheCounts(cache, 60).getTotalRows();
+    db.paginate(query, ImmutableMap.of("a", opaque), 10).cacheCounts(cache, 60).getTotalRows();
+    assertEquals(4, jdbc.prepared.size());
+  }
+
+  @Test
+  public void testApproximatesLargeCounts() throws Exception {
+    FakeJdbc jdbc = fakeDatabase();
+    DatabasePaginator paginator = new DatabasePaginator(jdbc.database(), "SELECT * FROM t JOIN u", ImmutableMap.of(), 100)
+        .approximateCountsAbove(1000);
+
+    assertEquals(5000, paginator.getTotalRows());
+    assertEquals(50, paginator.getTotalPages());
+    assertFalse(paginator.isCountExact());
+    assertEquals(ImmutableList.of("EXPLAIN SELECT * FROM t JOIN u"), jdbc.prepared);
+
+    paginator = new DatabasePaginator(jdbc.database(), "SELECT * FROM t JOIN u", ImmutableMap.of(), 100)
+        .approximateCountsAbove(10000);
+    assertEquals(42, paginator.getTotalRows());
+    assertTrue(paginator.isCountExact());
+  }
+}
@@ -0,0 +1,96 @@
+package lightning.db;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import lightning.db.FakeJdbc.Execution;
+import lightning.db.FakeJdbc.Result;
+
+public class ExpiredRowReaperTest {
+  private static FakeJdbc fakeDatabase(boolean lockAvailable, Deque<Integer> deletes) {
+    return new FakeJdbc((sql, parameters) -> {
+      if (sql.startsWith("SELECT GET_LOCK")) {
+        return Result.rows(ImmutableList.of("lock"), ImmutableList.of(lockAvailable ? 1 : 0));
+      } else if (sql.startsWith("SELECT RELEASE_LOCK")) {
+        return Result.rows(ImmutableList.of("lock"), ImmutableList.of(1));
+      } else if (sql.startsWith("DELETE")) {
+        if (deletes.isEmpty()) {
+          throw new SQLException("Unexpected delete.");
+        }
+        return Result.updated(deletes.poll());
+      }
+      return Result.updated(0);
+    });
+  }
+
+  @Test
+  public void testStopsAtShortBatchAndBatchLimit() throws Exception {
+    // "a": two full batches, then a short one. "b": full batches until the limit of 3 is reached.
+    FakeJdbc jdbc = fakeDatabase(true, new ArrayDeque<>(ImmutableList.of(10, 10, 4, 10, 10, 10)));
+    ExpiredRowReaper reaper = new ExpiredRowReaper(jdbc.provider(), 10, 3)
+        .register("a", "expires", () -> 100)
+        .register("b", "last_save", () -> 200);
+
+    assertTrue(reaper.run());
+
+    List<Execution> deletes = jdbc.executions("DELETE");
+    assertEquals(6, deletes.size());
+    assertEquals("DELETE FROM a WHERE expires < ? LIMIT 10;", deletes.get(0).sql);
+    assertEquals(ImmutableList.of(100L), deletes.get(0).parameters);
+    assertEquals("DELETE FROM b WHERE last_save < ? LIMIT 10;", deletes.get(5).sql);
+    assertEquals(ImmutableList.of(200L), deletes.get(5).parameters);
+    assertEquals(1, jdbc.executions("SELECT RELEASE_LOCK").size());
+
+    Map<String, Object> stats = reaper.getStats();
+    assertEquals(1L, stats.get("runs"));
+    assertEquals(0L, stats.get("skippedRuns"));
+    assertEquals(ImmutableMap.of("a", 24L, "b", 30L), stats.get("rowsDeleted"));
+    reaper.close();
+  }
+
+  @Test
+  public void testSkipsRunWhenLockIsHeld() throws Exception {
+    FakeJdbc jdbc = fakeDatabase(false, new ArrayDeque<>());
+    ExpiredRowReaper reaper = new ExpiredRowReaper(jdbc.provider(), 10, 3)
+        .register("a", "expires", () -> 100);
+
+    assertFalse(reaper.run());
+    assertTrue(jdbc.executions("DELETE").isEmpty());
+    assertTrue(jdbc.executions("SELECT RELEASE_LOCK").isEmpty());
+
+    Map<String, Object> stats = reaper.getStats();
+    assertEquals(0L, stats.get("runs"));
+    assertEquals(1L, stats.get("skippedRuns"));
+    reaper.close();
+  }
+
+  @Test
+  public void testCountsFailedRunsAndReleasesLock() throws Exception {
+    FakeJdbc jdbc = fakeDatabase(true, new ArrayDeque<>());
+    ExpiredRowReaper reaper = new ExpiredRowReaper(jdbc.provider(), 10, 3)
+        .register("a", "expires", () -> 100);
+
+    try {
+      reaper.run();
+      fail();
+    } catch (SQLException e) {
+      // Expected.
+    }
+
+    assertEquals(1, jdbc.executions("SELECT RELEASE_LOCK").size());
+    Map<String, Object> stats = reaper.getStats();
+    assertEquals(0L, stats.get("runs"));
+    assertEquals(1L, stats.get("failedRuns"));
+    reaper.close();
+  }
+}
@@ -0,0 +1,300 @@
+package lightning.db;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A fake JDBC driver for tests, built from dynamic proxies.
+ *
+ * Statements are answered by a Responder, which receives the SQL (with ? placeholders) and the
+ * parameters that were set on the statement. All calls on connections, statements, and result sets
+ * are recorded (as "name" or "name[args]") in calls; the SQL of each prepared statement is recorded
+ * in prepared, and each execution in executions. Instances are thread-safe.
+ */
+public final class FakeJdbc {
+  /** Answers executed statements. */
+  @FunctionalInterface
+  public interface Responder {
+    public Result respond(String sql, List<Object> parameters) throws SQLException;
+  }
+
+  /** The result of a statement: rows (for queries) and/or an update count. */
+  public static final class Result {
+    public final List<String> labels;
+    public final List<List<Object>> rows;
+    public final int updateCount;
+
+    private Result(List<String> labels, List<List<Object>> rows, int updateCount) {
+      this.labels = labels;
+      this.rows = rows;
+      this.updateCount = updateCount;
+    }
+
+    public static Result rows(List<String> labels, List<?>... rows) {
+      return rows(labels, Arrays.asList(rows));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Result rows(List<String> labels, List<? extends List<?>> rows) {
+      return new Result(labels, (List<List<Object>>) rows, 0);
+    }
+
+    public static Result updated(int count) {
+      return new Result(ImmutableList.of(), ImmutableList.of(), count);
+    }
+  }
+
+  /** An executed statement. */
+  public static final class Execution {
+    public final String sql;
+    public final List<Object> parameters;
+
+    Execution(String sql, List<Object> parameters) {
+      this.sql = sql;
+      this.parameters = parameters;
+    }
+  }
+
+  private static final Map<Class<?>, Object> DEFAULTS = ImmutableMap.<Class<?>, Object>builder()
+      .put(boolean.class, false)
+      .put(byte.class, (byte) 0)
+      .put(short.class, (short) 0)
+      .put(int.class, 0)
+      .put(long.class, 0L)
+      .put(float.class, 0.0f)
+      .put(double.class, 0.0)
+      .build();
+
+  public final List<String> prepared = Collections.synchronizedList(new ArrayList<>());
+  public final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+  public final List<Execution> executions = Collections.synchronizedList(new ArrayList<>());
+  private volatile Responder responder;
+
+  public FakeJdbc() {
+    this((sql, parameters) -> Result.updated(0));
+  }
+
+  public FakeJdbc(Responder responder) {
+    this.responder = responder;
+  }
+
+  public void setResponder(Responder responder) {
+    this.responder = responder;
+  }
+
+  /**
+   * @return The number of recorded calls with the given name (ignoring arguments).
+   */
+  public long count(String name) {
+    synchronized (calls) {
+      return calls.stream().filter(c -> c.equals(name) || c.startsWith(name + "[")).count();
+    }
+  }
+
+  /**
+   * @return The executions whose SQL starts with prefix.
+   */
+  public List<Execution> executions(String prefix) {
+    synchronized (executions) {
+      List<Execution> matching = new ArrayList<>();
+      for (Execution execution : executions) {
+        if (execution.sql.startsWith(prefix)) {
+          matching.add(execution);
+        }
+      }
+      return matching;
+    }
+  }
+
+  public MySQLDatabaseProvider provider() {
+    return new MySQLDatabaseProvider() {
+      @Override
+      public MySQLDatabase getDatabase() throws SQLException {
+        return MySQLDatabase.createConnection(this);
+      }
+
+      @Override
+      public Connection getConnection() throws SQLException {
+        return connection();
+      }
+    };
+  }
+
+  public MySQLDatabase database() throws SQLException {
+    return provider().getDatabase();
+  }
+
+  public Connection connection() {
+    return proxy(Connection.class, (method, args) -> {
+      switch (method.getName()) {
+        case "prepareStatement":
+          prepared.add((String) args[0]);
+          return statement((String) args[0]);
+        case "getTransactionIsolation":
+          return Connection.TRANSACTION_REPEATABLE_READ;
+        case "getAutoCommit":
+          return true;
+        default:
+          record(method, args);
+          return null;
+      }
+    });
+  }
+
+  /**
+   * @return A result set over result that records calls in this instance.
+   */
+  public ResultSet resultSet(Result result) {
+    ResultSetMetaData metadata = proxy(ResultSetMetaData.class, (method, args) -> {
+      switch (method.getName()) {
+        case "getColumnCount":
+          return result.labels.size();
+        case "getColumnLabel":
+        case "getColumnName":
+          record(method, args);
+          return result.labels.get((Integer) args[0] - 1);
+        default:
+          throw new UnsupportedOperationException(method.getName());
+      }
+    });
+
+    int[] position = new int[] {-1};
+    boolean[] wasNull = new boolean[1];
+    return proxy(ResultSet.class, (method, args) -> {
+      String name = method.getName();
+      if (!name.startsWith("get") && !name.equals("wasNull")) {
+        record(method, args);
+      }
+
+      switch (name) {
+        case "next":
+          return ++position[0] < result.rows.size();
+        case "getMetaData":
+          return metadata;
+        case "wasNull":
+          return wasNull[0];
+        case "close":
+        case "isClosed":
+          return null;
+        default:
+          if (!name.startsWith("get") || args == null || args.length == 0) {
+            return null;
+          }
+          int index = (args[0] instanceof Integer)
+              ? (Integer) args[0] - 1
+              : indexOf(result.labels, (String) args[0]);
+          Object value = result.rows.get(position[0]).get(index);
+          wasNull[0] = (value == null);
+          return convert(value, method.getReturnType());
+      }
+    });
+  }
+
+  private PreparedStatement statement(String sql) {
+    Map<Integer, Object> parameters = new TreeMap<>();
+    return proxy(PreparedStatement.class, (method, args) -> {
+      String name = method.getName();
+      record(method, args);
+
+      if (name.equals("setNull")) {
+        parameters.put((Integer) args[0], null);
+      } else if (name.startsWith("set") && args.length == 2 && args[0] instanceof Integer) {
+        parameters.put((Integer) args[0], args[1]);
+      } else if (name.equals("clearParameters")) {
+        parameters.clear();
+      } else if (name.equals("executeQuery") || name.equals("executeUpdate") || name.equals("execute")) {
+        List<Object> values = new ArrayList<>(parameters.values());
+        executions.add(new Execution(sql, values));
+        Result result = responder.respond(sql, values);
+
+        switch (name) {
+          case "executeQuery":
+            return resultSet(result);
+          case "executeUpdate":
+            return result.updateCount;
+          default:
+            return !result.labels.isEmpty();
+        }
+      } else if (name.equals("getGeneratedKeys")) {
+        return resultSet(Result.rows(ImmutableList.of("id")));
+      }
+
+      return null;
+    });
+  }
+
+  private void record(Method method, Object[] args) {
+    calls.add(method.getName() + ((args != null && args.length > 0) ? Arrays.toString(args) : ""));
+  }
+
+  private static int indexOf(List<String> labels, String label) {
+    for (int i = 0; i < labels.size(); i++) {
+      if (labels.get(i).equalsIgnoreCase(label)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("No such column: " + label);
+  }
+
+  private static Object convert(Object value, Class<?> type) {
+    if (value == null) {
+      return DEFAULTS.get(type);
+    }
+    if (value instanceof Number) {
+      Number number = (Number) value;
+      if (type == long.class) {
+        return number.longValue();
+      } else if (type == int.class) {
+        return number.intValue();
+      } else if (type == double.class) {
+        return number.doubleValue();
+      } else if (type == float.class) {
+        return number.floatValue();
+      } else if (type == boolean.class) {
+        return number.intValue() != 0;
+      } else if (type == String.class) {
+        return number.toString();
+      }
+    }
+    return value;
+  }
+
+  @FunctionalInterface
+  private interface Handler {
+    public Object invoke(Method method, Object[] args) throws Throwable;
+  }
+
+  private static <T> T proxy(Class<T> type, Handler handler) {
+    return type.cast(Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(), new Class<?>[] {type},
+        (proxy, method, args) -> {
+          if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+              case "equals":
+                return proxy == args[0];
+              case "hashCode":
+                return System.identityHashCode(proxy);
+              default:
+                return type.getSimpleName() + "@fake";
+            }
+          }
+          Object result = handler.invoke(method, args);
+          return (result == null && method.getReturnType().isPrimitive())
+              ? DEFAULTS.get(method.getReturnType())
+              : result;
+        }));
+  }
+}
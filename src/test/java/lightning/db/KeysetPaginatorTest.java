@@ -0,0 +1,181 @@
+package lightning.db;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import lightning.db.FakeJdbc.Result;
+import lightning.http.BadRequestException;
+
+public class KeysetPaginatorTest {
+  /**
+   * A fake database over rows (a, b) (in ascending order) that evaluates seek conditions on (a, b),
+   * descending order, and LIMIT.
+   */
+  private static FakeJdbc fakeDatabase(List<List<Object>> rows) {
+    return new FakeJdbc((sql, parameters) -> {
+      int limit = Integer.parseInt(sql.replaceAll("(?s).* LIMIT (\\d+);$", "$1"));
+      int n = parameters.size();
+      List<List<Object>> ordered = new ArrayList<>(rows);
+      List<List<Object>> result = new ArrayList<>();
+
+      if (sql.contains(" DESC")) {
+        ordered = Lists.reverse(ordered);
+      }
+
+      for (List<Object> row : ordered) {
+        if (sql.contains(") > (") && compare(row, parameters.get(n - 2), parameters.get(n - 1)) <= 0) {
+          continue;
+        }
+        if (sql.contains(") < (") && compare(row, parameters.get(n - 2), parameters.get(n - 1)) >= 0) {
+          continue;
+        }
+        result.add(row);
+      }
+
+      return Result.rows(ImmutableList.of("a", "b"), result.subList(0, Math.min(limit, result.size())));
+    });
+  }
+
+  private static int compare(List<Object> row, Object a, Object b) {
+    int c = Long.compare((Long) row.get(0), (Long) a);
+    return (c != 0) ? c : ((String) row.get(1)).compareTo((String) b);
+  }
+
+  @Test
+  public void testSeeksPastLastRow() throws Exception {
+    List<List<Object>> rows = new ArrayList<>();
+    for (long a = 0; a < 3; a++) {
+      for (String b : ImmutableList.of("x", "y")) {
+        rows.add(ImmutableList.of(a, b));
+      }
+    }
+
+    FakeJdbc jdbc = fakeDatabase(rows);
+    KeysetPaginator paginator = new KeysetPaginator(jdbc.database(),
+        "SELECT * FROM t WHERE c = :c OR d = :c;", ImmutableMap.of("c", 1),
+        ImmutableList.of("t.a", "`b`"), 4);
+
+    List<Object> seen = new ArrayList<>();
+    String token = paginator.forEachRowInPage(null, (row) -> seen.add(row.getObject("a") + "" + row.getObject("b")));
+    assertNotNull(token);
+    assertNull(paginator.forEachRowInPage(token, (row) -> seen.add(row.getObject("a") + "" + row.getObject("b"))));
+
+    assertEquals(ImmutableList.of("0x", "0y", "1x", "1y", "2x", "2y"), seen);
+    assertEquals(ImmutableList.of(
+        "SELECT * FROM t WHERE c = ? OR d = ? ORDER BY t.a ASC, `b` ASC LIMIT 5;",
+        "SELECT * FROM t WHERE (c = ? OR d = ?) AND (t.a, `b`) > (?, ?) ORDER BY t.a ASC, `b` ASC LIMIT 5;"),
+        jdbc.prepared);
+  }
+
+  private static List<List<Object>> grid() {
+    List<List<Object>> rows = new ArrayList<>();
+    for (long a = 0; a < 3; a++) {
+      for (String b : ImmutableList.of("x", "y")) {
+        rows.add(ImmutableList.of(a, b));
+      }
+    }
+    return rows;
+  }
+
+  @Test
+  public void testDescending() throws Exception {
+    FakeJdbc jdbc = fakeDatabase(grid());
+    KeysetPaginator paginator = jdbc.database().paginateByKey("SELECT * FROM t", ImmutableMap.of(),
+        ImmutableList.of("a", "b"), 4, true);
+
+    List<Object> seen = new ArrayList<>();
+    String token = paginator.forEachRowInPage(null, (row) -> seen.add(row.getObject("a") + "" + row.getObject("b")));
+    assertNotNull(token);
+    assertNull(paginator.forEachRowInPage(token, (row) -> seen.add(row.getObject("a") + "" + row.getObject("b"))));
+
+    assertEquals(ImmutableList.of("2y", "2x", "1y", "1x", "0y", "0x"), seen);
+    assertEquals(ImmutableList.of(
+        "SELECT * FROM t ORDER BY a DESC, b DESC LIMIT 5;",
+        "SELECT * FROM t WHERE (a, b) < (?, ?) ORDER BY a DESC, b DESC LIMIT 5;"),
+        jdbc.prepared);
+  }
+
+  /** @return The statement prepared for the page after a row with key value. */
+  private static String nextPageQuery(String query, Object value) throws Exception {
+    FakeJdbc jdbc = new FakeJdbc();
+    KeysetPaginator paginator = new KeysetPaginator(jdbc.database(), query, ImmutableMap.of(),
+        ImmutableList.of("a"), 10);
+    ResultSet row = jdbc.resultSet(Result.rows(ImmutableList.of("a"), ImmutableList.of(value)));
+    row.next();
+    paginator.getQueryForPage(paginator.getToken(row)).close();
+    return jdbc.prepared.get(0);
+  }
+
+  @Test
+  public void testFindsWhereClause() throws Exception {
+    assertEquals("SELECT *\nFROM t WHERE (c = 1) AND a > ? ORDER BY a ASC LIMIT 11;",
+        nextPageQuery("SELECT *\nFROM t\n\tWHERE\tc = 1", 1L));
+    assertEquals("SELECT * FROM t WHERE (c = ' where ' OR `where` = 'it''s where') AND a > ? ORDER BY a ASC LIMIT 11;",
+        nextPageQuery("SELECT * FROM t WHERE c = ' where ' OR `where` = 'it''s where'", 1L));
+    assertEquals("SELECT * FROM t WHERE a > ? ORDER BY a ASC LIMIT 11;",
+        nextPageQuery("SELECT * FROM t", 1L));
+    assertEquals("SELECT * FROM nowhere WHERE (c = 'order by') AND a > ? ORDER BY a ASC LIMIT 11;",
+        nextPageQuery("SELECT * FROM nowhere WHERE c = 'order by';", 1L));
+  }
+
+  @Test
+  public void testRejectsUnsupportedQueries() throws Exception {
+    for (String query : ImmutableList.of(
+        "SELECT * FROM t WHERE a IN (SELECT a FROM u WHERE b = 1)",
+        "SELECT * FROM (select * FROM u) v",
+        "SELECT * FROM t ORDER BY a",
+        "SELECT * FROM t WHERE c = 1\nLIMIT 5",
+        "SELECT c, COUNT(*) AS a FROM t GROUP BY c",
+        "SELECT * FROM t WHERE c = 1 UNION SELECT * FROM u WHERE c = 2")) {
+      try {
+        new KeysetPaginator(new FakeJdbc().database(), query, ImmutableMap.of(), ImmutableList.of("a"), 10);
+        fail(query);
+      } catch (IllegalArgumentException e) {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void testBigNumberKeys() throws Exception {
+    BigInteger unsigned = new BigInteger("18446744073709551615");
+    BigDecimal decimal = new BigDecimal("-12345678901234567890.125");
+
+    for (Object value : ImmutableList.<Object>of(unsigned, decimal, BigInteger.ZERO, BigDecimal.ZERO)) {
+      FakeJdbc jdbc = new FakeJdbc((sql, parameters) -> Result.rows(ImmutableList.of("a")));
+      KeysetPaginator paginator = new KeysetPaginator(jdbc.database(), "SELECT * FROM t",
+          ImmutableMap.of(), ImmutableList.of("a"), 10);
+      ResultSet row = jdbc.resultSet(Result.rows(ImmutableList.of("a"), ImmutableList.of(value)));
+      row.next();
+      assertNull(paginator.forEachRowInPage(paginator.getToken(row), (r) -> {}));
+      assertEquals(ImmutableList.of(value), jdbc.executions.get(0).parameters);
+    }
+  }
+
+  @Test
+  public void testLastPageHasNoToken() throws Exception {
+    FakeJdbc jdbc = fakeDatabase(ImmutableList.of(ImmutableList.of(1L, "x")));
+
+    KeysetPaginator paginator = new KeysetPaginator(jdbc.database(), "SELECT * FROM t",
+        ImmutableMap.of(), ImmutableList.of("a", "b"), 1);
+    assertNull(paginator.forEachRowInPage(null, (row) -> {}));
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testRejectsInvalidToken() throws Exception {
+    KeysetPaginator paginator = new KeysetPaginator(new FakeJdbc().database(), "SELECT * FROM t",
+        ImmutableMap.of(), ImmutableList.of("a"), 10);
+    paginator.getQueryForPage("bm90IGEgdG9rZW4");
+  }
+}
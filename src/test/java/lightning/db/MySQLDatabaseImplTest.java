@@ -0,0 +1,62 @@
+package lightning.db;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import lightning.db.FakeJdbc.Result;
+
+public class MySQLDatabaseImplTest {
+  @Test
+  public void testStreamsRowsLazily() throws Exception {
+    FakeJdbc jdbc = new FakeJdbc((sql, parameters) -> Result.rows(ImmutableList.of("id"),
+        ImmutableList.of(1L), ImmutableList.of(2L), ImmutableList.of(3L)));
+
+    try (Stream<Long> ids = jdbc.database().stream("SELECT id FROM users WHERE a = :a;",
+        ImmutableMap.of("a", 1), (row) -> row.getLong(1))) {
+      assertTrue(jdbc.calls.contains("setFetchSize[" + Integer.MIN_VALUE + "]"));
+      assertEquals(0, jdbc.count("next"));
+      assertEquals(ImmutableList.of(1L, 2L), ids.limit(2).collect(Collectors.toList()));
+      assertEquals(2, jdbc.count("next"));
+    }
+
+    assertEquals(2, jdbc.count("close")); // The result set and the statement.
+  }
+
+  @Test
+  public void testInsertAllChunksRows() throws Exception {
+    List<Map<String, ?>> rows = new ArrayList<>();
+    for (int i = 0; i < 2500; i++) {
+      rows.add(ImmutableMap.of("id", (long) i, "name", "user" + i));
+    }
+
+    FakeJdbc jdbc = new FakeJdbc((sql, parameters) -> Result.updated(parameters.size() / 2));
+    assertEquals(2500, jdbc.database().insertAll("users", rows));
+
+    // Two full chunks share a statement; the remainder gets its own.
+    assertEquals(2, jdbc.prepared.size());
+    assertTrue(jdbc.prepared.get(0).startsWith("INSERT INTO users (id, name) VALUES (?, ?), (?, ?)"));
+    assertEquals(1000, jdbc.prepared.get(0).split("\\(\\?").length - 1);
+    assertEquals(500, jdbc.prepared.get(1).split("\\(\\?").length - 1);
+    assertEquals(3, jdbc.count("executeUpdate"));
+    assertTrue(jdbc.calls.contains("commit"));
+  }
+
+  @Test(expected = SQLException.class)
+  public void testReplaceAllRequiresSameColumns() throws Exception {
+    List<Map<String, ?>> rows = new ArrayList<>();
+    rows.add(ImmutableMap.of("id", 1L));
+    rows.add(ImmutableMap.of("name", "bob"));
+    new FakeJdbc().database().replaceAll("users", rows, false);
+  }
+}
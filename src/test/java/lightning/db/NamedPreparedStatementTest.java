@@ -0,0 +1,56 @@
+package lightning.db;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class NamedPreparedStatementTest {
+  private static List<String> setters(FakeJdbc jdbc) {
+    return jdbc.calls.stream().filter(c -> c.startsWith("set")).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testRewritesNamedParameters() throws Exception {
+    FakeJdbc jdbc = new FakeJdbc();
+    Connection connection = jdbc.connection();
+
+    for (int i = 0; i < 2; i++) { // The second iteration uses the cached parse.
+      NamedPreparedStatement query = NamedPreparedStatement.forQuery(connection,
+          "SELECT * FROM users WHERE name = :name AND note != ':name' AND (id = :id OR parent = :id);");
+      query.setString("name", "bob");
+      query.setLong("id", 7);
+    }
+
+    String expected = "SELECT * FROM users WHERE name = ? AND note != ':name' AND (id = ? OR parent = ?);";
+    assertEquals(Arrays.asList(expected, expected), jdbc.prepared);
+    assertEquals(Arrays.asList(
+        "setString[1, bob]", "setLong[2, 7]", "setLong[3, 7]",
+        "setString[1, bob]", "setLong[2, 7]", "setLong[3, 7]"), setters(jdbc));
+  }
+
+  @Test
+  public void testBuildsInsertions() throws Exception {
+    FakeJdbc jdbc = new FakeJdbc();
+    Connection connection = jdbc.connection();
+
+    NamedPreparedStatement.forInsert(connection, "users", ImmutableMap.of("id", 2L, "name", "Bob"));
+    NamedPreparedStatement.forReplace(connection, "users", ImmutableMap.of("id", 3L, "name", "Al"));
+    NamedPreparedStatement.forInsert(connection, "users", ImmutableMap.of("id", 4L, "name", "Cy"));
+
+    assertEquals(Arrays.asList(
+        "INSERT INTO users(id, name) VALUES (?, ?);",
+        "REPLACE INTO users(id, name) VALUES (?, ?);",
+        "INSERT INTO users(id, name) VALUES (?, ?);"), jdbc.prepared);
+    assertEquals(Arrays.asList(
+        "setLong[1, 2]", "setString[2, Bob]",
+        "setLong[1, 3]", "setString[2, Al]",
+        "setLong[1, 4]", "setString[2, Cy]"), setters(jdbc));
+  }
+}
@@ -0,0 +1,18 @@
+package lightning.db;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PlaceholdersTest {
+  @Test
+  public void testList() {
+    assertEquals("?", Placeholders.list(1));
+    assertEquals("?, ?, ?", Placeholders.list(3));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsEmptyList() {
+    Placeholders.list(0);
+  }
+}
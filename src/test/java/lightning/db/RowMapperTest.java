@@ -0,0 +1,149 @@
+package lightning.db;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import lightning.db.FakeJdbc.Result;
+import lightning.enums.JsonFieldNamingPolicy;
+
+public class RowMapperTest {
+  public enum Role { ADMIN, MEMBER }
+
+  public static class Account {
+    long id;
+    String userName;
+    Long parentId;
+    boolean isActive;
+    Role role;
+    transient String ignored = "unchanged";
+  }
+
+  public static final class Point {
+    final int x;
+    final Integer y;
+
+    public Point(int x, Integer y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  @Test
+  public void testMapsFieldsByName() throws Exception {
+    FakeJdbc jdbc = new FakeJdbc();
+    ResultSet result = jdbc.resultSet(Result.rows(
+        ImmutableList.of("ID", "user_name", "parent_id", "is_active", "role", "ignored", "extra"),
+        Arrays.asList(1L, "alice", null, 1, "ADMIN", "x", "y"),
+        Arrays.asList(2L, "bob", 1L, 0, null, "x", "y")));
+
+    List<Account> accounts = ResultSets.stream(result, RowMapper.of(Account.class)).collect(Collectors.toList());
+
+    assertEquals(2, accounts.size());
+    assertEquals(1L, accounts.get(0).id);
+    assertEquals("alice", accounts.get(0).userName);
+    assertNull(accounts.get(0).parentId);
+    assertTrue(accounts.get(0).isActive);
+    assertEquals(Role.ADMIN, accounts.get(0).role);
+    assertEquals("unchanged", accounts.get(0).ignored);
+    assertEquals(Long.valueOf(1), accounts.get(1).parentId);
+    assertFalse(accounts.get(1).isActive);
+    assertNull(accounts.get(1).role);
+
+    // Columns are resolved once per result set.
+    assertEquals(7, jdbc.count("getColumnLabel"));
+  }
+
+  /**
+   * @return A view of result whose getMetaData() returns a new object on every call (as
+   *         Connector/J does).
+   */
+  private static ResultSet withFreshMetadata(ResultSet result) {
+    return (ResultSet) Proxy.newProxyInstance(RowMapperTest.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+        (proxy, method, args) -> {
+          try {
+            Object value = method.invoke(result, args);
+            if (method.getName().equals("getMetaData")) {
+              ResultSetMetaData metadata = (ResultSetMetaData) value;
+              return Proxy.newProxyInstance(RowMapperTest.class.getClassLoader(), new Class<?>[] {ResultSetMetaData.class},
+                  (p, m, a) -> m.invoke(metadata, a));
+            }
+            return value;
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+  }
+
+  @Test
+  public void testResolvesColumnsOncePerResultSet() throws Exception {
+    RowMapper<Account> mapper = RowMapper.of(Account.class);
+    List<String> labels = ImmutableList.of("id", "user_name");
+    FakeJdbc jdbc = new FakeJdbc();
+
+    // Mapping row by row.
+    ResultSet result = withFreshMetadata(jdbc.resultSet(Result.rows(labels,
+        Arrays.asList(1L, "a"), Arrays.asList(2L, "b"), Arrays.asList(3L, "c"))));
+    List<String> names = new ArrayList<>();
+    while (result.next()) {
+      names.add(mapper.map(result).userName);
+    }
+    assertEquals(ImmutableList.of("a", "b", "c"), names);
+    assertEquals(2, jdbc.count("getColumnLabel"));
+
+    // Streaming.
+    result = withFreshMetadata(jdbc.resultSet(Result.rows(labels,
+        Arrays.asList(4L, "d"), Arrays.asList(5L, "e"), Arrays.asList(6L, "f"))));
+    assertEquals(ImmutableList.of(4L, 5L, 6L),
+        ResultSets.stream(result, mapper).map((a) -> a.id).collect(Collectors.toList()));
+    assertEquals(4, jdbc.count("getColumnLabel"));
+
+    // A new result set with another shape is bound separately.
+    result = withFreshMetadata(jdbc.resultSet(Result.rows(ImmutableList.of("user_name"), Arrays.asList("g"))));
+    assertTrue(result.next());
+    assertEquals("g", mapper.map(result).userName);
+    assertEquals(0L, mapper.map(result).id);
+  }
+
+  @Test
+  public void testMapsConstructorParameters() throws Exception {
+    ResultSet result = new FakeJdbc().resultSet(Result.rows(ImmutableList.of("x", "y"),
+        Arrays.asList(3, null), Arrays.asList(4, 5)));
+
+    List<Point> points = ResultSets.stream(result, RowMapper.of(Point.class, JsonFieldNamingPolicy.IDENTITY))
+        .collect(Collectors.toList());
+
+    assertEquals(3, points.get(0).x);
+    assertNull(points.get(0).y);
+    assertEquals(4, points.get(1).x);
+    assertEquals(Integer.valueOf(5), points.get(1).y);
+  }
+
+  @Test
+  public void testStreamsNullRows() throws Exception {
+    ResultSet result = new FakeJdbc().resultSet(Result.rows(ImmutableList.of("parent_id"),
+        Arrays.asList(1L), Arrays.asList((Object) null)));
+
+    // Mappers may return null (e.g. for a nullable column).
+    List<Long> parents = ResultSets.stream(result, (row) -> ResultSets.getLong(row, "parent_id"))
+        .collect(Collectors.toList());
+
+    assertEquals(Arrays.asList(1L, null), parents);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsUnmappableClasses() {
+    RowMapper.of(ResultSet.class);
+  }
+}
@@ -0,0 +1,94 @@
+package lightning.groups.drivers;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import lightning.db.FakeJdbc;
+import lightning.db.FakeJdbc.Execution;
+import lightning.db.FakeJdbc.Result;
+import lightning.groups.Group;
+
+public class MySQLGroupDriverTest {
+  /** A fake database in which every even user is a member of group 2 (which grants privilege 20). */
+  private static FakeJdbc fakeDatabase() {
+    return new FakeJdbc((sql, parameters) -> {
+      List<List<Object>> rows = new ArrayList<>();
+
+      if (sql.startsWith("SELECT m.user_id, g.id, g.name")) {
+        for (Object id : parameters) {
+          if ((Long) id % 2 == 0) {
+            rows.add(ImmutableList.of(id, 2L, "evens"));
+          }
+        }
+        return Result.rows(ImmutableList.of("user_id", "id", "name"), rows);
+      } else if (sql.startsWith("SELECT DISTINCT m.user_id, p.privilege_id")) {
+        for (Object id : parameters) {
+          if ((Long) id % 2 == 0) {
+            rows.add(ImmutableList.of(id, 20L));
+          }
+        }
+        return Result.rows(ImmutableList.of("user_id", "privilege_id"), rows);
+      }
+
+      throw new AssertionError("Unexpected query: " + sql);
+    });
+  }
+
+  private static List<Long> ids(long from, long to) {
+    return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+  }
+
+  private static List<Integer> parameterCounts(FakeJdbc jdbc) {
+    return jdbc.executions.stream().map((Execution e) -> e.parameters.size()).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testNoUsers() throws Exception {
+    FakeJdbc jdbc = fakeDatabase();
+    MySQLGroupDriver driver = new MySQLGroupDriver(jdbc.provider());
+
+    assertTrue(driver.getAllForUsers(ImmutableList.of()).isEmpty());
+    assertTrue(driver.getGroupPrivilegesForUsers(ImmutableList.of()).isEmpty());
+    assertTrue(jdbc.executions.isEmpty());
+  }
+
+  @Test
+  public void testGetAllForUsersChunksIds() throws Exception {
+    FakeJdbc jdbc = fakeDatabase();
+    MySQLGroupDriver driver = new MySQLGroupDriver(jdbc.provider());
+
+    driver.getAllForUsers(ids(1, 500));
+    assertEquals(ImmutableList.of(500), parameterCounts(jdbc));
+
+    jdbc.executions.clear();
+    Map<Long, List<Group>> groups = driver.getAllForUsers(ids(1, 1001));
+    assertEquals(ImmutableList.of(500, 500, 1), parameterCounts(jdbc));
+    assertEquals(1001, groups.size());
+    assertEquals(1, groups.get(1000L).size());
+    assertEquals("evens", groups.get(1000L).get(0).getName());
+    assertTrue(groups.get(1001L).isEmpty());
+  }
+
+  @Test
+  public void testGetGroupPrivilegesForUsersChunksIds() throws Exception {
+    FakeJdbc jdbc = fakeDatabase();
+    MySQLGroupDriver driver = new MySQLGroupDriver(jdbc.provider());
+
+    Map<Long, Set<Long>> privileges = driver.getGroupPrivilegesForUsers(ids(1, 501));
+    assertEquals(ImmutableList.of(500, 1), parameterCounts(jdbc));
+    assertEquals(501, privileges.size());
+    assertEquals(ImmutableSet.of(20L), privileges.get(500L));
+    assertEquals(ImmutableSet.of(), privileges.get(501L));
+  }
+}
@@ -0,0 +1,72 @@
+package lightning.sessions.drivers;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import lightning.codec.BinaryCodec;
+
+public class InMemorySessionDriverTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testPutGetInvalidate() throws Exception {
+    try (InMemorySessionDriver driver = new InMemorySessionDriver(3600, 1000, 1024 * 1024)) {
+      assertNull(driver.get("a"));
+      assertFalse(driver.has("a"));
+
+      Map<String, Object> data = new HashMap<>(ImmutableMap.of("user", 5L));
+      driver.put("a", data, ImmutableSet.of("user"));
+      data.put("mutated", true); // Must not affect the stored copy.
+
+      assertTrue(driver.has("a"));
+      assertEquals(ImmutableMap.of("user", 5L), driver.get("a"));
+
+      driver.keepAliveIfExists("a");
+      driver.keepAliveIfExists("missing");
+      driver.invalidate("a");
+      assertNull(driver.get("a"));
+    }
+  }
+
+  @Test
+  public void testEvictsWhenOverEntryLimit() throws Exception {
+    // 16 stripes with one entry each.
+    try (InMemorySessionDriver driver = new InMemorySessionDriver(3600, 16, 1024 * 1024)) {
+      for (int i = 0; i < 1000; i++) {
+        driver.put("session-" + i, ImmutableMap.of("i", i), ImmutableSet.of("i"));
+      }
+
+      assertTrue(driver.size() <= 16);
+      assertEquals(ImmutableMap.of("i", 999), driver.get("session-999"));
+    }
+  }
+
+  @Test
+  public void testSnapshotRestore() throws Exception {
+    File snapshot = new File(folder.getRoot(), "sessions.bin");
+
+    try (InMemorySessionDriver driver = new InMemorySessionDriver(3600, 1000, 1024 * 1024, BinaryCodec.getDefault(), snapshot, 0)) {
+      driver.put("a", ImmutableMap.of("k", "v"), ImmutableSet.of("k"));
+      driver.put("b", ImmutableMap.of("k", "w"), ImmutableSet.of("k"));
+    }
+
+    assertTrue(snapshot.exists());
+
+    try (InMemorySessionDriver driver = new InMemorySessionDriver(3600, 1000, 1024 * 1024, BinaryCodec.getDefault(), snapshot, 0)) {
+      assertEquals(2, driver.size());
+      assertEquals(ImmutableMap.of("k", "v"), driver.get("a"));
+      assertEquals(ImmutableMap.of("k", "w"), driver.get("b"));
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package lightning.sessions.drivers;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import lightning.codec.BinaryCodec;
+import lightning.db.FakeJdbc;
+import lightning.db.FakeJdbc.Result;
+import lightning.sessions.Session.SessionDriverException;
+
+public class MySQLKeyedSessionDriverTest {
+  private Set<String> sessions;
+  private Map<String, Map<String, byte[]>> data;
+  private volatile boolean failDataWrites;
+  private FakeJdbc jdbc;
+  private MySQLKeyedSessionDriver driver;
+
+  @Before
+  public void setUp() {
+    sessions = new HashSet<>();
+    data = new TreeMap<>();
+    failDataWrites = false;
+    jdbc = new FakeJdbc(this::respond);
+    driver = new MySQLKeyedSessionDriver(jdbc.provider(), BinaryCodec.getDefault());
+  }
+
+  /** Evaluates the driver's statements against sessions and data (ignoring transactions). */
+  private Result respond(String sql, List<Object> parameters) throws SQLException {
+    String id = (String) parameters.get(sql.startsWith("UPDATE") ? 1 : 0);
+
+    if (sql.startsWith("SELECT d.data_key, d.value FROM sessions")) {
+      List<List<Object>> rows = new ArrayList<>();
+      if (sessions.contains(id)) {
+        for (Map.Entry<String, byte[]> entry : data.getOrDefault(id, ImmutableMap.of()).entrySet()) {
+          rows.add(ImmutableList.of(entry.getKey(), entry.getValue()));
+        }
+        if (rows.isEmpty()) {
+          List<Object> empty = new ArrayList<>();
+          empty.add(null);
+          empty.add(null);
+          rows.add(empty);
+        }
+      }
+      return Result.rows(ImmutableList.of("data_key", "value"), rows);
+    } else if (sql.startsWith("SELECT 1 FROM sessions")) {
+      return sessions.contains(id)
+          ? Result.rows(ImmutableList.of("1"), ImmutableList.of(1))
+          : Result.rows(ImmutableList.of("1"));
+    } else if (sql.startsWith("INSERT INTO sessions")) {
+      sessions.add(id);
+      return Result.updated(1);
+    } else if (sql.startsWith("REPLACE INTO session_data")) {
+      if (failDataWrites) {
+        throw new SQLException("Simulated failure.");
+      }
+      for (int i = 0; i < parameters.size(); i += 3) {
+        data.computeIfAbsent(id, k -> new TreeMap<>()).put((String) parameters.get(i + 1), (byte[]) parameters.get(i + 2));
+      }
+      return Result.updated(parameters.size() / 3);
+    } else if (sql.startsWith("DELETE FROM session_data")) {
+      for (Object key : parameters.subList(1, parameters.size())) {
+        data.getOrDefault(id, new TreeMap<>()).remove(key);
+      }
+      return Result.updated(parameters.size() - 1);
+    } else if (sql.startsWith("DELETE FROM sessions")) {
+      data.remove(id); // ON DELETE CASCADE.
+      return Result.updated(sessions.remove(id) ? 1 : 0);
+    } else if (sql.startsWith("UPDATE sessions")) {
+      return Result.updated(sessions.contains(id) ? 1 : 0);
+    }
+    throw new AssertionError("Unexpected query: " + sql);
+  }
+
+  @Test
+  public void testWritesOnlyChangedKeys() throws Exception {
+    driver.put("s", ImmutableMap.of("a", 1L, "b", 2L), ImmutableSet.of("a", "b"));
+    assertEquals(6, jdbc.executions("REPLACE").get(0).parameters.size());
+
+    driver.put("s", ImmutableMap.of("a", 1L, "b", 3L), ImmutableSet.of("b"));
+    assertEquals(2, jdbc.executions("REPLACE").size());
+    assertEquals(ImmutableList.of("s", "b"), jdbc.executions("REPLACE").get(1).parameters.subList(0, 2));
+    assertTrue(jdbc.executions("DELETE").isEmpty());
+
+    assertEquals(ImmutableMap.of("a", 1L, "b", 3L), driver.get("s"));
+  }
+
+  @Test
+  public void testDeletesRemovedKeys() throws Exception {
+    driver.put("s", ImmutableMap.of("a", 1L, "b", 2L), ImmutableSet.of("a", "b"));
+    driver.put("s", ImmutableMap.of("a", 1L), ImmutableSet.of("b", "c"));
+
+    assertEquals(1, jdbc.executions("REPLACE").size());
+    assertEquals(ImmutableList.of("s", "b", "c"), jdbc.executions("DELETE FROM session_data").get(0).parameters);
+    assertEquals(ImmutableMap.of("a", 1L), driver.get("s"));
+  }
+
+  @Test
+  public void testSessionWithoutKeys() throws Exception {
+    assertNull(driver.get("s"));
+    assertFalse(driver.has("s"));
+
+    driver.put("s", ImmutableMap.of(), ImmutableSet.of());
+    assertEquals(1, jdbc.executions("INSERT").size()); // Only the sessions row is written.
+    assertTrue(jdbc.executions("REPLACE").isEmpty());
+    assertTrue(jdbc.executions("DELETE").isEmpty());
+    assertTrue(driver.has("s"));
+    assertEquals(ImmutableMap.of(), driver.get("s"));
+  }
+
+  @Test
+  public void testInvalidateRemovesKeys() throws Exception {
+    driver.put("s", ImmutableMap.of("a", 1L), ImmutableSet.of("a"));
+    driver.put("t", ImmutableMap.of("a", 2L), ImmutableSet.of("a"));
+    driver.invalidate("s");
+
+    assertNull(driver.get("s"));
+    assertFalse(driver.has("s"));
+    assertEquals(ImmutableMap.of("a", 2L), driver.get("t"));
+  }
+
+  @Test
+  public void testKeepAlive() throws Exception {
+    driver.keepAliveIfExists("s");
+    assertEquals(1, jdbc.executions("UPDATE sessions").size());
+    assertEquals("s", jdbc.executions("UPDATE sessions").get(0).parameters.get(1));
+    assertFalse(driver.has("s")); // Does not create the session.
+  }
+
+  @Test
+  public void testSaveIsTransactional() throws Exception {
+    driver.put("s", ImmutableMap.of("a", 1L), ImmutableSet.of("a"));
+    assertTrue(jdbc.calls.contains("commit"));
+    assertFalse(jdbc.calls.contains("rollback"));
+
+    failDataWrites = true;
+    try {
+      driver.put("s", ImmutableMap.of("a", 2L), ImmutableSet.of("a"));
+      fail();
+    } catch (SessionDriverException e) {
+      assertTrue(jdbc.calls.contains("rollback"));
+    }
+  }
+}
@@ -0,0 +1,255 @@
+package lightning.sessions.drivers;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import lightning.codec.BinaryCodec;
+import lightning.db.FakeJdbc;
+import lightning.db.FakeJdbc.Result;
+
+public class WriteBehindSessionDriverTest {
+  private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+  private Map<String, byte[]> table;
+  private CountDownLatch writing;
+  private CountDownLatch release;
+  private volatile boolean failWrites;
+  private FakeJdbc jdbc;
+
+  @Before
+  public void setUp() {
+    table = new ConcurrentHashMap<>();
+    writing = new CountDownLatch(1);
+    release = new CountDownLatch(0);
+    failWrites = false;
+    jdbc = new FakeJdbc(this::respond);
+  }
+
+  private Result respond(String sql, List<Object> parameters) throws SQLException {
+    if (sql.startsWith("REPLACE INTO sessions")) {
+      writing.countDown();
+      Uninterruptibles.awaitUninterruptibly(release);
+      if (failWrites) {
+        throw new SQLException("Simulated failure.");
+      }
+      for (int i = 0; i < parameters.size(); i += 3) {
+        table.put((String) parameters.get(i), (byte[]) parameters.get(i + 2));
+      }
+      return Result.updated(parameters.size() / 3);
+    } else if (sql.startsWith("SELECT data FROM sessions")) {
+      byte[] data = table.get(parameters.get(0));
+      return (data != null)
+          ? Result.rows(ImmutableList.of("data"), ImmutableList.of(data))
+          : Result.rows(ImmutableList.of("data"));
+    } else if (sql.startsWith("SELECT 1 FROM sessions")) {
+      return table.containsKey(parameters.get(0))
+          ? Result.rows(ImmutableList.of("1"), ImmutableList.of(1))
+          : Result.rows(ImmutableList.of("1"));
+    } else if (sql.startsWith("DELETE FROM sessions")) {
+      return Result.updated(table.remove(parameters.get(0)) != null ? 1 : 0);
+    }
+    return Result.updated(0);
+  }
+
+  private WriteBehindSessionDriver driver(int maxQueueSize) {
+    return new WriteBehindSessionDriver(jdbc.provider(), BinaryCodec.getDefault(), maxQueueSize, 100, NEVER);
+  }
+
+  private Thread start(ThrowingRunnable runnable) {
+    Thread thread = new Thread(() -> {
+      try {
+        runnable.run();
+      } catch (Exception e) {
+        // Verified by the caller through the database state.
+      }
+    });
+    thread.start();
+    return thread;
+  }
+
+  private interface ThrowingRunnable {
+    public void run() throws Exception;
+  }
+
+  @Test
+  public void testCoalescesWritesIntoOneBatch() throws Exception {
+    try (WriteBehindSessionDriver driver = driver(10)) {
+      driver.put("a", ImmutableMap.of("v", 1L), ImmutableSet.of("v"));
+      driver.put("a", ImmutableMap.of("v", 2L), ImmutableSet.of("v"));
+      driver.put("b", ImmutableMap.of("v", 3L), ImmutableSet.of("v"));
+      assertEquals(2, driver.getQueueSize());
+      assertTrue(jdbc.executions("REPLACE").isEmpty());
+
+      driver.flush();
+
+      assertEquals(1, jdbc.executions("REPLACE").size());
+      assertEquals(6, jdbc.executions("REPLACE").get(0).parameters.size());
+      assertEquals(0, driver.getQueueSize());
+      assertEquals(ImmutableMap.of("v", 2L), driver.get("a"));
+      assertEquals(ImmutableMap.of("v", 3L), driver.get("b"));
+    }
+  }
+
+  @Test
+  public void testReadsOwnWritesDuringFlush() throws Exception {
+    release = new CountDownLatch(1);
+
+    try (WriteBehindSessionDriver driver = driver(10)) {
+      driver.put("a", ImmutableMap.of("v", 1L), ImmutableSet.of("v"));
+      Thread flusher = start(driver::flush);
+      assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+      // The write has left the queue but has not reached the database.
+      assertEquals(0, driver.getQueueSize());
+      assertFalse(table.containsKey("a"));
+      assertTrue(driver.has("a"));
+      assertEquals(ImmutableMap.of("v", 1L), driver.get("a"));
+
+      release.countDown();
+      flusher.join();
+      assertTrue(table.containsKey("a"));
+      assertEquals(ImmutableMap.of("v", 1L), driver.get("a"));
+    }
+  }
+
+  @Test
+  public void testWritesOnCallingThreadWhenQueueIsFull() throws Exception {
+    try (WriteBehindSessionDriver driver = driver(1)) {
+      driver.put("a", ImmutableMap.of("v", 1L), ImmutableSet.of("v"));
+      driver.put("a", ImmutableMap.of("v", 2L), ImmutableSet.of("v")); // Replaces the queued write.
+      assertTrue(jdbc.executions("REPLACE").isEmpty());
+
+      driver.put("b", ImmutableMap.of("v", 3L), ImmutableSet.of("v"));
+      assertEquals(1, jdbc.executions("REPLACE").size());
+      assertTrue(table.containsKey("b"));
+      assertEquals(1, driver.getQueueSize());
+    }
+  }
+
+  @Test
+  public void testDirectWriteWaitsForFlush() throws Exception {
+    release = new CountDownLatch(1);
+
+    try (WriteBehindSessionDriver driver = driver(1)) {
+      driver.put("a", ImmutableMap.of("v", 1L), ImmutableSet.of("v"));
+      Thread flusher = start(driver::flush);
+      assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+      // The queue has room again, so this is queued rather than racing the flush.
+      driver.put("a", ImmutableMap.of("v", 2L), ImmutableSet.of("v"));
+      assertEquals(1, driver.getQueueSize());
+      assertEquals(ImmutableMap.of("v", 2L), driver.get("a"));
+
+      // The queue is full, so this waits for the in-progress flush instead of racing it.
+      Thread writer = start(() -> driver.put("b", ImmutableMap.of("v", 3L), ImmutableSet.of("v")));
+      writer.join(100);
+      assertTrue(writer.isAlive());
+
+      release.countDown();
+      flusher.join();
+      writer.join();
+      assertEquals(ImmutableMap.of("v", 3L), driver.get("b")); // Queued, since the flush made room.
+
+      driver.flush();
+      assertEquals(ImmutableMap.of("v", 2L), driver.get("a"));
+      assertTrue(table.containsKey("b"));
+    }
+  }
+
+  @Test
+  public void testFailedFlushDoesNotOverwriteNewerWrite() throws Exception {
+    release = new CountDownLatch(1);
+    failWrites = true;
+
+    try (WriteBehindSessionDriver driver = driver(10)) {
+      driver.put("a", ImmutableMap.of("v", 1L), ImmutableSet.of("v"));
+      driver.put("b", ImmutableMap.of("v", 1L), ImmutableSet.of("v"));
+      Thread flusher = start(driver::flush);
+      assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+      driver.put("a", ImmutableMap.of("v", 2L), ImmutableSet.of("v"));
+      release.countDown();
+      flusher.join();
+
+      // The failed write for "b" is re-queued; the newer write for "a" is kept.
+      assertEquals(2, driver.getQueueSize());
+      assertEquals(ImmutableMap.of("v", 2L), driver.get("a"));
+      assertEquals(ImmutableMap.of("v", 1L), driver.get("b"));
+
+      failWrites = false;
+      driver.flush();
+      assertEquals(0, driver.getQueueSize());
+      assertEquals(ImmutableMap.of("v", 2L), driver.get("a"));
+    }
+  }
+
+  @Test
+  public void testInvalidateDuringFlush() throws Exception {
+    release = new CountDownLatch(1);
+
+    try (WriteBehindSessionDriver driver = driver(10)) {
+      driver.put("a", ImmutableMap.of("v", 1L), ImmutableSet.of("v"));
+      Thread flusher = start(driver::flush);
+      assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+      Thread invalidator = start(() -> driver.invalidate("a"));
+      invalidator.join(100);
+      assertTrue(invalidator.isAlive());
+      assertTrue(jdbc.executions("DELETE").isEmpty());
+
+      release.countDown();
+      flusher.join();
+      invalidator.join();
+
+      // The delete is ordered after the flushed write.
+      assertEquals(1, jdbc.executions("DELETE").size());
+      assertFalse(table.containsKey("a"));
+      assertNull(driver.get("a"));
+      assertFalse(driver.has("a"));
+    }
+  }
+
+  @Test
+  public void testKeepAlive() throws Exception {
+    try (WriteBehindSessionDriver driver = driver(10)) {
+      driver.put("a", ImmutableMap.of("v", 1L), ImmutableSet.of("v"));
+      driver.keepAliveIfExists("a"); // Covered by the queued write.
+      assertTrue(jdbc.executions("UPDATE").isEmpty());
+
+      driver.keepAliveIfExists("b");
+      assertEquals(1, jdbc.executions("UPDATE").size());
+      assertEquals(ImmutableList.of("b"), jdbc.executions("UPDATE").get(0).parameters.subList(1, 2));
+    }
+  }
+
+  @Test
+  public void testCloseFlushesQueue() throws Exception {
+    WriteBehindSessionDriver driver = driver(10);
+    driver.put("a", ImmutableMap.of("v", 1L), ImmutableSet.of("v"));
+    driver.put("b", ImmutableMap.of("v", 2L), ImmutableSet.of("v"));
+    driver.close();
+
+    assertEquals(1, jdbc.executions("REPLACE").size());
+    assertEquals(ImmutableSet.of("a", "b"), table.keySet());
+    assertEquals(0, driver.getQueueSize());
+
+    // Writes after close are performed on the calling thread.
+    driver.put("c", ImmutableMap.of("v", 3L), ImmutableSet.of("v"));
+    assertTrue(table.containsKey("c"));
+    assertEquals(0, driver.getQueueSize());
+  }
+}
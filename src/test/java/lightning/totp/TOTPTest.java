@@ -0,0 +1,34 @@
+package lightning.totp;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class TOTPTest {
+  private static final byte[] KEY = "12345678901234567890".getBytes(StandardCharsets.US_ASCII);
+
+  @Test
+  public void testAcceptsCurrentTokens() throws Exception {
+    TOTP totp = new TOTP(KEY);
+    int token = totp.getCurrentToken();
+    assertTrue(totp.getAllValidTokens().contains(token));
+    assertTrue(totp.checkToken(token).isValid);
+
+    // Instances with the same key agree; instances with other keys do not share state.
+    assertEquals(token, new TOTP(totp.getSecretKeyB32()).getCurrentToken());
+    assertEquals(totp.getAllValidTokens(), new TOTP(KEY.clone()).getAllValidTokens());
+    assertNotEquals(totp.getAllValidTokens(), new TOTP(new byte[20]).getAllValidTokens());
+  }
+
+  @Test
+  public void testRejectsOtherTokens() {
+    TOTP totp = new TOTP(KEY);
+    int token = 0;
+    while (totp.getAllValidTokens().contains(token)) {
+      token++;
+    }
+    assertFalse(totp.checkToken(token).isValid);
+  }
+}
@@ -0,0 +1,46 @@
+package lightning.users;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class PrivilegeSetTest {
+  @Test
+  public void testMembership() {
+    PrivilegeSet set = PrivilegeSet.copyOf(ImmutableList.of(1L, 5L, 5L, 70000L, -3L, Long.MAX_VALUE));
+    assertEquals(5, set.size());
+    assertTrue(set.has(1));
+    assertTrue(set.has(5));
+    assertTrue(set.has(70000));
+    assertTrue(set.has(-3));
+    assertTrue(set.has(Long.MAX_VALUE));
+    assertFalse(set.has(2));
+    assertFalse(set.has(70001));
+    assertTrue(set.hasAll(ImmutableList.of(1L, 70000L)));
+    assertFalse(set.hasAll(ImmutableList.of(1L, 2L)));
+    assertFalse(set.contains("1"));
+  }
+
+  @Test
+  public void testIteratesInOrderAndEqualsSets() {
+    PrivilegeSet set = PrivilegeSet.copyOf(ImmutableList.of(70000L, 3L, -1L, 0L));
+    List<Long> ids = new ArrayList<>(set);
+    assertEquals(ImmutableList.of(-1L, 0L, 3L, 70000L), ids);
+    assertEquals(ImmutableSet.of(-1L, 0L, 3L, 70000L), set);
+  }
+
+  @Test
+  public void testUnion() {
+    PrivilegeSet a = PrivilegeSet.copyOf(ImmutableList.of(1L, 100000L));
+    PrivilegeSet b = PrivilegeSet.copyOf(ImmutableList.of(2L, 100000L));
+    assertEquals(ImmutableSet.of(1L, 2L, 100000L), PrivilegeSet.union(a, b));
+    assertSame(a, PrivilegeSet.union(a, PrivilegeSet.of()));
+    assertTrue(PrivilegeSet.copyOf(ImmutableList.of()).isEmpty());
+  }
+}
@@ -0,0 +1,160 @@
+package lightning.users.drivers;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import lightning.db.FakeJdbc;
+import lightning.db.FakeJdbc.Execution;
+import lightning.db.FakeJdbc.Result;
+import lightning.users.User;
+
+public class MySQLUserDriverTest {
+  private static final List<String> USER_COLUMNS = ImmutableList.of("id", "username", "email",
+      "encrypted_password", "secret_key", "banned_until", "email_verified", "properties");
+
+  /** A fake database containing users 1..count, where each user has privilege (id * 10). */
+  private static FakeJdbc fakeDatabase(long count) {
+    return new FakeJdbc((sql, parameters) -> {
+      List<List<Object>> rows = new ArrayList<>();
+
+      if (sql.startsWith("SELECT * FROM users WHERE id IN")) {
+        for (Object id : parameters) {
+          if ((Long) id >= 1 && (Long) id <= count) {
+            rows.add(user((Long) id));
+          }
+        }
+        return Result.rows(USER_COLUMNS, rows);
+      } else if (sql.startsWith("SELECT * FROM users WHERE id >")) {
+        long after = (Long) parameters.get(0);
+        int limit = (Integer) parameters.get(1);
+        for (long id = after + 1; id <= count && rows.size() < limit; id++) {
+          rows.add(user(id));
+        }
+        return Result.rows(USER_COLUMNS, rows);
+      } else if (sql.startsWith("SELECT user_id, privilege_id FROM user_privileges")) {
+        for (Object id : parameters) {
+          if ((Long) id >= 1 && (Long) id <= count) {
+            rows.add(ImmutableList.of(id, (Long) id * 10));
+          }
+        }
+        return Result.rows(ImmutableList.of("user_id", "privilege_id"), rows);
+      }
+
+      throw new AssertionError("Unexpected query: " + sql);
+    });
+  }
+
+  private static List<Object> user(long id) {
+    List<Object> row = new ArrayList<>();
+    row.add(id);
+    row.add("user" + id);
+    row.add("user" + id + "@example.com");
+    row.add("password");
+    row.add("token" + id);
+    row.add(0L);
+    row.add(1);
+    row.add(null);
+    return row;
+  }
+
+  private static List<Long> ids(long from, long to) {
+    return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+  }
+
+  private static List<Integer> parameterCounts(FakeJdbc jdbc, String prefix) {
+    return jdbc.executions(prefix).stream().map((Execution e) -> e.parameters.size()).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testGetUsersWithNoIds() throws Exception {
+    FakeJdbc jdbc = fakeDatabase(10);
+    MySQLUserDriver driver = new MySQLUserDriver(jdbc.provider(), null);
+
+    assertTrue(driver.getUsers(ImmutableList.of()).isEmpty());
+    assertTrue(driver.getPrivilegesForUsers(ImmutableList.of()).isEmpty());
+    assertTrue(jdbc.executions.isEmpty());
+  }
+
+  @Test
+  public void testGetUsersChunksIds() throws Exception {
+    FakeJdbc jdbc = fakeDatabase(2000);
+    MySQLUserDriver driver = new MySQLUserDriver(jdbc.provider(), null);
+
+    assertEquals(500, driver.getUsers(ids(1, 500)).size());
+    assertEquals(ImmutableList.of(500), parameterCounts(jdbc, "SELECT * FROM users"));
+
+    jdbc.executions.clear();
+    assertEquals(501, driver.getUsers(ids(1, 501)).size());
+    assertEquals(ImmutableList.of(500, 1), parameterCounts(jdbc, "SELECT * FROM users"));
+
+    jdbc.executions.clear();
+    assertEquals(1001, driver.getUsers(ids(1, 1001)).size());
+    assertEquals(ImmutableList.of(500, 500, 1), parameterCounts(jdbc, "SELECT * FROM users"));
+    assertTrue(jdbc.executions("SELECT * FROM users").get(0).sql.contains("IN (?, ?, "));
+  }
+
+  @Test
+  public void testGetUsersPreservesOrderAndSkipsMissing() throws Exception {
+    FakeJdbc jdbc = fakeDatabase(600);
+    MySQLUserDriver driver = new MySQLUserDriver(jdbc.provider(), null);
+
+    List<Long> ids = new ArrayList<>(ids(1, 601));
+    Collections.reverse(ids);
+    Map<Long, User> users = driver.getUsers(ids);
+
+    assertEquals(600, users.size());
+    assertEquals(Long.valueOf(600), users.keySet().iterator().next());
+    assertEquals("user42", users.get(42L).getUserName());
+    assertFalse(users.containsKey(601L));
+  }
+
+  @Test
+  public void testGetPrivilegesForUsersChunksIds() throws Exception {
+    FakeJdbc jdbc = fakeDatabase(500);
+    MySQLUserDriver driver = new MySQLUserDriver(jdbc.provider(), null);
+
+    Map<Long, Set<Long>> privileges = driver.getPrivilegesForUsers(ids(1, 501));
+    assertEquals(ImmutableList.of(500, 1), parameterCounts(jdbc, "SELECT user_id"));
+    assertEquals(501, privileges.size());
+    assertEquals(ImmutableSet.of(5000L), privileges.get(500L));
+    assertEquals(ImmutableSet.of(), privileges.get(501L)); // Users without privileges are included.
+  }
+
+  private static List<Long> getAll(MySQLUserDriver driver) {
+    List<Long> ids = new ArrayList<>();
+    for (User user : driver.getAll()) {
+      ids.add(user.getId());
+    }
+    return ids;
+  }
+
+  @Test
+  public void testGetAllFetchesChunks() throws Exception {
+    FakeJdbc jdbc = fakeDatabase(0);
+    assertEquals(ImmutableList.of(), getAll(new MySQLUserDriver(jdbc.provider(), null)));
+    assertEquals(1, jdbc.executions.size());
+
+    // A full last chunk requires one more (empty) query to detect the end.
+    jdbc = fakeDatabase(500);
+    assertEquals(ids(1, 500), getAll(new MySQLUserDriver(jdbc.provider(), null)));
+    assertEquals(2, jdbc.executions.size());
+
+    jdbc = fakeDatabase(1001);
+    assertEquals(ids(1, 1001), getAll(new MySQLUserDriver(jdbc.provider(), null)));
+    assertEquals(3, jdbc.executions.size());
+    assertEquals(ImmutableList.of(0L, 500), jdbc.executions.get(0).parameters);
+    assertEquals(ImmutableList.of(1000L, 500), jdbc.executions.get(2).parameters);
+  }
+}